@@ -0,0 +1,23 @@
+package it.bm.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.bm.service.AdmissionControlService;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AdmissionControlConfig {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilterRegistration(
+            AdmissionControlService admissionControlService, ObjectMapper objectMapper) {
+        FilterRegistrationBean<AdmissionControlFilter> reg =
+                new FilterRegistrationBean<>(new AdmissionControlFilter(admissionControlService, objectMapper));
+        reg.addUrlPatterns("/api/v1/report/*");
+        reg.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return reg;
+    }
+
+}
@@ -0,0 +1,122 @@
+package it.bm.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.bm.model.AdmissionRejectedException;
+import it.bm.model.enums.AdmissionLane;
+import it.bm.model.response.ErrorResponse;
+import it.bm.service.AdmissionControlService;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/*
+ * Runs after Spring Security, so the principal is known, but before the DispatcherServlet: a refused upload is
+ * answered before its multipart body is parsed and spooled, which is the point of refusing it early. A request that
+ * goes async, an NDJSON section streamed after the controller returns, keeps its permit until the stream is over.
+ */
+@RequiredArgsConstructor
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String UPLOAD_PATH = "/api/v1/report/upload-csv";
+    private static final String SUMMARY_PATH = "/api/v1/report/summary";
+    private static final String CHUNKED_UPLOADS_PATH = "/api/v1/report/uploads/";
+    private static final String COMPLETE_SUFFIX = "/complete";
+
+    private final AdmissionControlService admissionControlService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionControlService.isEnabled() || laneOf(request) == null;
+    }
+
+    /* the async dispatch that writes a stream already runs under the permit of its request */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        AdmissionControlService.Permit permit;
+        try {
+            permit = admissionControlService.acquire(laneOf(request));
+        } catch (AdmissionRejectedException e) {
+            reject(response, e);
+            return;
+        }
+        boolean sample = false;
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            sample = response.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()
+                    && request.getAttribute(AdmissionControlService.NO_LATENCY_SAMPLE) == null;
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(releaseOnEnd(permit));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permit.release(sample);
+            }
+        }
+    }
+
+    /*
+     * The async context cannot end before this dispatch returns, so the listener added after the chain sees the end.
+     * A stream is released without a latency sample: it lasts as long as the client takes to read it.
+     */
+    private static AsyncListener releaseOnEnd(AdmissionControlService.Permit permit) {
+        return new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                permit.release(false);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                permit.release(false);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                permit.release(false);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                event.getAsyncContext().addListener(this);
+            }
+        };
+    }
+
+    private static AdmissionLane laneOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("GET".equals(request.getMethod()) && (SUMMARY_PATH.equals(path) || path.startsWith(SUMMARY_PATH + "/"))) {
+            return AdmissionLane.SUMMARY;
+        }
+        if ("POST".equals(request.getMethod()) && (UPLOAD_PATH.equals(path)
+                || path.startsWith(CHUNKED_UPLOADS_PATH) && path.endsWith(COMPLETE_SUFFIX))) {
+            return AdmissionLane.UPLOAD;
+        }
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, AdmissionRejectedException e) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfter().toSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(e.getErrorCode(), System.currentTimeMillis()));
+    }
+}
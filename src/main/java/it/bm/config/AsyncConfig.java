@@ -4,43 +4,83 @@ import it.bm.util.MDCUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.core.task.TaskDecorator;
 import org.springframework.core.task.TaskExecutor;
-import org.springframework.retry.annotation.EnableRetry;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
 
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 @Configuration
-@EnableAsync
-@EnableRetry
 public class AsyncConfig {
 
-    @Value("${spring.task.execution.pool.core-size:5}")
-    private int corePoolSize;
+    @Value("${ingestion.executor.pool-size:4}")
+    private int ingestionPoolSize;
 
-    @Value("${spring.task.execution.pool.max-size:10}")
-    private int maxPoolSize;
+    @Value("${ingestion.executor.queue-capacity:10}")
+    private int ingestionQueueCapacity;
 
-    @Value("${spring.task.execution.pool.queue-capacity:25}")
-    private int queueCapacity;
+    @Value("${ingestion.jobs.pool-size:2}")
+    private int jobsPoolSize;
 
-    @Value("${spring.task.execution.thread-name-prefix:notification-}")
-    private String threadNamePrefix;
+    @Value("${ingestion.jobs.queue-capacity:20}")
+    private int jobsQueueCapacity;
 
-    @Bean("notificationExecutor")
-    public TaskExecutor taskExecutor() {
+    @Value("${ingestion.parallel.parallelism:0}")
+    private int parseParallelism;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /*
+     * With spring.threads.virtual.enabled the executors below run each task on its own virtual thread: a task
+     * blocked on JDBC, Kafka or SMTP no longer holds a pool thread, and the pool and queue sizes become the
+     * semaphore bounds of VirtualThreadTaskExecutor. Tomcat and the Kafka listeners switch on the same property.
+     */
+    @Bean("ingestionExecutor")
+    public TaskExecutor ingestionExecutor() {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor("ingestion-", ingestionPoolSize, ingestionQueueCapacity, new MdcTaskDecorator());
+        }
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(corePoolSize);
-        executor.setMaxPoolSize(maxPoolSize);
-        executor.setQueueCapacity(queueCapacity);
-        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(ingestionPoolSize);
+        executor.setMaxPoolSize(ingestionPoolSize);
+        executor.setQueueCapacity(ingestionQueueCapacity);
+        executor.setThreadNamePrefix("ingestion-");
         executor.setTaskDecorator(new MdcTaskDecorator());
         executor.initialize();
         return executor;
     }
 
+    /*
+     * Upload jobs outlive the request that submitted them: besides the MDC, the submitter's security context is
+     * carried over so that auditing still records who uploaded the rows.
+     */
+    @Bean("ingestionJobExecutor")
+    public AsyncTaskExecutor ingestionJobExecutor() {
+        MdcTaskDecorator mdcTaskDecorator = new MdcTaskDecorator();
+        TaskDecorator taskDecorator = runnable -> new DelegatingSecurityContextRunnable(mdcTaskDecorator.decorate(runnable));
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor("ingestion-job-", jobsPoolSize, jobsQueueCapacity, taskDecorator);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobsPoolSize);
+        executor.setMaxPoolSize(jobsPoolSize);
+        executor.setQueueCapacity(jobsQueueCapacity);
+        executor.setThreadNamePrefix("ingestion-job-");
+        executor.setTaskDecorator(taskDecorator);
+        executor.initialize();
+        return executor;
+    }
+
+    /* CPU bound parse work, sized on the cores unless ingestion.parallel.parallelism says otherwise */
+    @Bean(name = "parseExecutor", destroyMethod = "shutdown")
+    public ForkJoinPool parseExecutor() {
+        return new ForkJoinPool(parseParallelism > 0 ? parseParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
     public static class MdcTaskDecorator implements TaskDecorator {
         @Override
         public Runnable decorate(Runnable runnable) {
@@ -33,6 +33,9 @@ public class KafkaConfig {
     @Value("${upselling-service.kafka.client-id:upselling-service-id}")
     private String upsellingServiceClientId;
 
+    @Value("${expiring-services.kafka.client-id:expiring-services-id}")
+    private String expiringServicesClientId;
+
     @Value("${kafka.producer.acks:all}")
     private String producerAcks;
 
@@ -66,6 +69,16 @@ public class KafkaConfig {
         return new KafkaTemplate<>(factory);
     }
 
+    @Bean("expiringServicesKafkaTemplate")
+    public KafkaTemplate<String, Object> expiringServicesKafkaTemplate() {
+        Map<String, Object> configProps = createBaseProducerConfig();
+        configProps.put(ProducerConfig.CLIENT_ID_CONFIG, expiringServicesClientId);
+
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(configProps);
+
+        return new KafkaTemplate<>(factory);
+    }
+
     private Map<String, Object> createBaseProducerConfig() {
         Map<String, Object> configProps = new HashMap<>();
 
@@ -0,0 +1,82 @@
+package it.bm.config;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * One virtual thread per task, with the bounds a ThreadPoolTaskExecutor takes from its pool and queue kept by two
+ * semaphores: at most concurrency tasks run at once, the others wait on a cheap blocked virtual thread, in
+ * submission order, and past concurrency + queueCapacity pending tasks execute throws TaskRejectedException like a
+ * full pool queue does. The decorator runs on the submitting thread, so MDC and security context are captured
+ * where they are set.
+ */
+public class VirtualThreadTaskExecutor implements AsyncTaskExecutor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore running;
+    private final Semaphore pending;
+    private final TaskDecorator taskDecorator;
+
+    public VirtualThreadTaskExecutor(String threadNamePrefix, int concurrency, int queueCapacity, TaskDecorator taskDecorator) {
+        this.threadFactory = Thread.ofVirtual().name(threadNamePrefix, 1).factory();
+        this.running = new Semaphore(concurrency, true);
+        this.pending = new Semaphore(concurrency + queueCapacity);
+        this.taskDecorator = taskDecorator;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!pending.tryAcquire()) {
+            throw new TaskRejectedException("Executor " + this + " did not accept task: " + task);
+        }
+        try {
+            Runnable decorated = taskDecorator.decorate(task);
+            threadFactory.newThread(() -> run(decorated)).start();
+        } catch (RuntimeException | Error e) {
+            pending.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        FutureTask<Object> future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    /* a future cancelled while its task waited for a turn does nothing once it gets one */
+    private void run(Runnable task) {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            pending.release();
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            running.release();
+            pending.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadTaskExecutor[" + running.getQueueLength() + " waiting]";
+    }
+}
@@ -1,8 +1,12 @@
 package it.bm.exception;
 
+import it.bm.model.response.DuplicateUploadResponse;
 import it.bm.model.response.ErrorResponse;
+import it.bm.model.DuplicateUploadException;
 import it.bm.model.FileProcessingException;
+import it.bm.model.UploadConflictException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -45,6 +49,26 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
 
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleTaskRejectedException(TaskRejectedException ex) {
+        log.warn("Ingestion job rejected: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse("JOB_QUEUE_FULL", System.currentTimeMillis());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+    }
+
+    @ExceptionHandler(UploadConflictException.class)
+    public ResponseEntity<ErrorResponse> handleUploadConflictException(UploadConflictException ex) {
+        log.warn("Upload conflict: {}", ex.getMessage());
+        ErrorResponse error = new ErrorResponse("UPLOAD_CONFLICT", System.currentTimeMillis());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    @ExceptionHandler(DuplicateUploadException.class)
+    public ResponseEntity<DuplicateUploadResponse> handleDuplicateUploadException(DuplicateUploadException ex) {
+        log.warn("Duplicate upload: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(DuplicateUploadResponse.of(ex.getEarlierIngestion()));
+    }
+
     @ExceptionHandler(AuthenticationException.class)
     public ResponseEntity<ErrorResponse> handleAuthenticationException(AuthenticationException ex) {
         log.error("Authentication exception occurred", ex);
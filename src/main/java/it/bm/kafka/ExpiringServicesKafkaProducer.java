@@ -0,0 +1,38 @@
+package it.bm.kafka;
+
+import it.bm.model.kafka.ExpiringServiceDTO;
+import it.bm.util.MDCUtil;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static it.bm.util.Constant.CORRELATION_ID_HEADER_NAME;
+
+@Component
+public class ExpiringServicesKafkaProducer {
+    @Value("${event.topic.expiring-services}")
+    private String topicExpiringServices;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    public ExpiringServicesKafkaProducer(@Qualifier("expiringServicesKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    public CompletableFuture<SendResult<String, Object>> sendMessage(ExpiringServiceDTO message) {
+        String correlationId = MDCUtil.getCorrelationId();
+
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topicExpiringServices, message);
+        if (correlationId != null) {
+            record.headers().add(new RecordHeader(CORRELATION_ID_HEADER_NAME, correlationId.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        return kafkaTemplate.send(record);
+    }
+}
@@ -8,11 +8,13 @@ import org.apache.kafka.common.header.internals.RecordHeader;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 import static it.bm.util.Constant.CORRELATION_ID_HEADER_NAME;
 
@@ -26,7 +28,7 @@ public class UpsellingServiceKafkaProducer {
         this.kafkaTemplate = kafkaTemplate;
     }
 
-    public void sendMessage(UpsellingServiceDTO message) {
+    public CompletableFuture<SendResult<String, Object>> sendMessage(UpsellingServiceDTO message) {
         String correlationId = MDCUtil.getCorrelationId();
 
         ProducerRecord<String, Object> record = new ProducerRecord<>(topicUpsellingService, message);
@@ -34,6 +36,6 @@ public class UpsellingServiceKafkaProducer {
             record.headers().add(new RecordHeader(CORRELATION_ID_HEADER_NAME, correlationId.getBytes(StandardCharsets.UTF_8)));
         }
 
-        kafkaTemplate.send(record);
+        return kafkaTemplate.send(record);
     }
 }
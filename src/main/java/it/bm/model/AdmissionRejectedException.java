@@ -0,0 +1,21 @@
+package it.bm.model;
+
+import it.bm.model.enums.AdmissionLane;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final AdmissionLane lane;
+    private final String errorCode;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(AdmissionLane lane, String errorCode, Duration retryAfter, String message) {
+        super(message);
+        this.lane = lane;
+        this.errorCode = errorCode;
+        this.retryAfter = retryAfter;
+    }
+}
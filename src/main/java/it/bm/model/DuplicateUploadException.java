@@ -0,0 +1,15 @@
+package it.bm.model;
+
+import it.bm.model.entity.IngestedFile;
+import lombok.Getter;
+
+@Getter
+public class DuplicateUploadException extends RuntimeException {
+
+    private final IngestedFile earlierIngestion;
+
+    public DuplicateUploadException(IngestedFile earlierIngestion) {
+        super("Content already ingested by job " + earlierIngestion.getJobId());
+        this.earlierIngestion = earlierIngestion;
+    }
+}
@@ -0,0 +1,7 @@
+package it.bm.model;
+
+public class UploadConflictException extends RuntimeException {
+    public UploadConflictException(String message) {
+        super(message);
+    }
+}
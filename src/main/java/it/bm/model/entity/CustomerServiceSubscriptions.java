@@ -30,9 +30,11 @@ import java.time.LocalDateTime;
 @EntityListeners(AuditingEntityListener.class)
 public class CustomerServiceSubscriptions {
 
+    public static final int ID_ALLOCATION_SIZE = 30;
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cust_sub_seq")
-    @SequenceGenerator(name = "cust_sub_seq", sequenceName = "cust_sub_seq", allocationSize =30)
+    @SequenceGenerator(name = "cust_sub_seq", sequenceName = "cust_sub_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Column(name = "customer_id", nullable = false)
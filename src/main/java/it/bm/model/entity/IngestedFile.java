@@ -0,0 +1,66 @@
+package it.bm.model.entity;
+
+import it.bm.model.enums.IngestedFileStatus;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "ingested_file")
+public class IngestedFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sha256", nullable = false, unique = true, length = 64)
+    private String sha256;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private IngestedFileStatus status;
+
+    @Column(name = "rows_persisted")
+    private Long rowsPersisted;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "created_by", nullable = false, updatable = false, length = 100)
+    private String createdBy;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public IngestedFile(String sha256, String fileName, long sizeBytes, UUID jobId, IngestedFileStatus status,
+                        String createdBy, LocalDateTime createdAt) {
+        this.sha256 = sha256;
+        this.fileName = fileName;
+        this.sizeBytes = sizeBytes;
+        this.jobId = jobId;
+        this.status = status;
+        this.createdBy = createdBy;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,7 @@
+package it.bm.model.enums;
+
+/* the endpoints behind admission control, each with its own concurrency limit and per principal quota */
+public enum AdmissionLane {
+    UPLOAD,
+    SUMMARY
+}
@@ -0,0 +1,6 @@
+package it.bm.model.enums;
+
+/* the notifications that are sent once per customer and service within the deduplication window */
+public enum AlertType {
+    UPSELLING
+}
@@ -0,0 +1,47 @@
+package it.bm.model.enums;
+
+import java.util.Arrays;
+
+import static it.bm.util.Constant.EXTENSION_GZIP;
+import static it.bm.util.Constant.EXTENSION_ZSTD;
+
+public enum Compression {
+    NONE("", new byte[0]),
+    GZIP(EXTENSION_GZIP, new byte[]{(byte) 0x1f, (byte) 0x8b}),
+    ZSTD(EXTENSION_ZSTD, new byte[]{(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd});
+
+    public static final int MAGIC_SIZE = 4;
+
+    private final String extension;
+    private final byte[] magic;
+
+    Compression(String extension, byte[] magic) {
+        this.extension = extension;
+        this.magic = magic;
+    }
+
+    public static Compression fromMagic(byte[] prefix) {
+        for (Compression compression : values()) {
+            if (compression != NONE && prefix.length >= compression.magic.length
+                    && Arrays.equals(prefix, 0, compression.magic.length, compression.magic, 0, compression.magic.length)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    public static Compression fromFilename(String filename) {
+        String lowerCaseFilename = filename.toLowerCase();
+        for (Compression compression : values()) {
+            if (compression != NONE && lowerCaseFilename.endsWith(compression.extension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /* name of the content once decompressed, data.csv.gz is validated as data.csv */
+    public String stripExtension(String filename) {
+        return filename.substring(0, filename.length() - extension.length());
+    }
+}
@@ -0,0 +1,6 @@
+package it.bm.model.enums;
+
+public enum IngestedFileStatus {
+    IN_PROGRESS,
+    COMPLETED;
+}
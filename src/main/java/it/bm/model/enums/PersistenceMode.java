@@ -0,0 +1,7 @@
+package it.bm.model.enums;
+
+public enum PersistenceMode {
+    JPA,
+    COPY,
+    UPSERT;
+}
@@ -0,0 +1,21 @@
+package it.bm.model.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum RejectReason {
+    MALFORMED_RECORD("record is malformed"),
+    MISSING_CUSTOMER_ID("customer_id is missing or blank"),
+    INVALID_STATUS("status is not a known subscription status"),
+    INVALID_ACTIVATION_DATE("activation_date is not a valid yyyy-MM-dd date"),
+    INVALID_EXPIRATION_DATE("expiration_date is not a valid yyyy-MM-dd date"),
+    EXPIRATION_BEFORE_ACTIVATION("expiration_date is before activation_date"),
+    INVALID_AMOUNT("amount is not a decimal number with at most two significant fraction digits"),
+    AMOUNT_OUT_OF_RANGE("amount is not positive or exceeds 99999999.99");
+
+    private final String description;
+
+    RejectReason(String description) {
+        this.description = description;
+    }
+}
@@ -0,0 +1,11 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.enums.AlertType;
+
+public record AlertKey(String customerId, String serviceType, AlertType alertType) {
+
+    /* the form kept by the in-memory filter, the separator cannot appear in the CSV values */
+    public String asFilterKey() {
+        return alertType.name() + '\u0000' + customerId + '\u0000' + serviceType;
+    }
+}
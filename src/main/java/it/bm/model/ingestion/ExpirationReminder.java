@@ -0,0 +1,7 @@
+package it.bm.model.ingestion;
+
+import java.time.LocalDate;
+
+/* the running subscriptions expiring on expirationDate, to remind daysLeft days before */
+public record ExpirationReminder(LocalDate expirationDate, int daysLeft) {
+}
@@ -0,0 +1,5 @@
+package it.bm.model.ingestion;
+
+/* a running subscription read for its expiration reminder, id is the key the day's rows are paged on */
+public record ExpiringSubscription(long id, String customerId, String serviceType) {
+}
@@ -0,0 +1,89 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.enums.IngestionJobState;
+import it.bm.model.enums.PersistenceMode;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+@Getter
+public class IngestionJob {
+
+    private final UUID id = UUID.randomUUID();
+    private final String fileName;
+    private final PersistenceMode persistenceMode;
+    private final String submittedBy;
+    private final String sha256;
+    private final Instant submittedAt = Instant.now();
+    private volatile IngestionStats stats = new IngestionStats();
+    private volatile IngestionJobState state = IngestionJobState.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+    private volatile Future<?> future;
+
+    public IngestionJob(String fileName, PersistenceMode persistenceMode, String submittedBy, String sha256) {
+        this.fileName = fileName;
+        this.persistenceMode = persistenceMode;
+        this.submittedBy = submittedBy;
+        this.sha256 = sha256;
+    }
+
+    public void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /* false when the job was cancelled while still queued */
+    public synchronized boolean start(IngestionStats stats) {
+        if (state != IngestionJobState.QUEUED) {
+            return false;
+        }
+        state = IngestionJobState.RUNNING;
+        startedAt = Instant.now();
+        this.stats = stats;
+        return true;
+    }
+
+    public synchronized void complete() {
+        finish(IngestionJobState.COMPLETED, null);
+    }
+
+    public synchronized void fail(String error) {
+        finish(IngestionJobState.FAILED, error);
+    }
+
+    /*
+     * A queued job is skipped when its turn comes. A running job is interrupted and turns CANCELLED once its
+     * thread has stopped; chunks already committed by then stay in the database. Returns false for jobs that
+     * had already finished.
+     */
+    public synchronized boolean cancel() {
+        if (state.isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (state == IngestionJobState.QUEUED) {
+            finish(IngestionJobState.CANCELLED, null);
+        } else if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    public synchronized void cancelled() {
+        finish(IngestionJobState.CANCELLED, null);
+    }
+
+    private void finish(IngestionJobState finalState, String error) {
+        if (state.isFinished()) {
+            return;
+        }
+        this.state = finalState;
+        this.error = error;
+        this.finishedAt = Instant.now();
+        stats.finish();
+    }
+}
@@ -0,0 +1,165 @@
+package it.bm.model.ingestion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class IngestionStats {
+
+    public enum Stage {
+        PARSE,
+        ALERT,
+        PERSIST
+    }
+
+    private final long startedAtNanos = System.nanoTime();
+    private final RejectedRows rejectedRows;
+    private final AtomicLongArray stageRows = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong recordsRead = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong rowsInserted = new AtomicLong();
+    private final AtomicLong rowsUpdated = new AtomicLong();
+    private final AtomicLong rowsUnchanged = new AtomicLong();
+    private final AtomicLong rowsSkipped = new AtomicLong();
+    private final AtomicLong notificationsPublished = new AtomicLong();
+    private final AtomicLong notificationsFailed = new AtomicLong();
+    private final AtomicLong notificationsTimedOut = new AtomicLong();
+    private volatile long finishedAtNanos;
+
+    public IngestionStats() {
+        this(new RejectedRows());
+    }
+
+    public IngestionStats(RejectedRows rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+
+    public void record(Stage stage, long rows, long nanos) {
+        stageRows.addAndGet(stage.ordinal(), rows);
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    public void recordPersisted(UpsertResult result) {
+        rowsInserted.addAndGet(result.inserted());
+        rowsUpdated.addAndGet(result.updated());
+        rowsUnchanged.addAndGet(result.unchanged());
+        rowsSkipped.addAndGet(result.skipped());
+    }
+
+    public void recordPublished(PublishOutcome outcome) {
+        notificationsPublished.addAndGet(outcome.published());
+        notificationsFailed.addAndGet(outcome.failed());
+        notificationsTimedOut.addAndGet(outcome.timedOut());
+    }
+
+    public void chunkCompleted() {
+        chunks.incrementAndGet();
+    }
+
+    public void setRecordsRead(long records) {
+        recordsRead.set(records);
+    }
+
+    /* while parsing: at a chunk boundary every record read so far was either accepted or rejected */
+    public void advanceRecordsRead() {
+        recordsRead.accumulateAndGet(getRowsAccepted() + getRowsRejected(), Math::max);
+    }
+
+    public void finish() {
+        finishedAtNanos = System.nanoTime();
+    }
+
+    public long getRecordsRead() {
+        return recordsRead.get();
+    }
+
+    public long getRowsAccepted() {
+        return stageRows.get(Stage.PARSE.ordinal());
+    }
+
+    public long getRowsRejected() {
+        return rejectedRows.getTotal();
+    }
+
+    public long getRowsPersisted() {
+        return stageRows.get(Stage.PERSIST.ordinal());
+    }
+
+    public long getRowsInserted() {
+        return rowsInserted.get();
+    }
+
+    public long getRowsUpdated() {
+        return rowsUpdated.get();
+    }
+
+    public long getRowsUnchanged() {
+        return rowsUnchanged.get();
+    }
+
+    public long getRowsSkipped() {
+        return rowsSkipped.get();
+    }
+
+    public long getNotificationsPublished() {
+        return notificationsPublished.get();
+    }
+
+    public long getNotificationsFailed() {
+        return notificationsFailed.get();
+    }
+
+    public long getNotificationsTimedOut() {
+        return notificationsTimedOut.get();
+    }
+
+    public RejectedRows getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public long getStageRows(Stage stage) {
+        return stageRows.get(stage.ordinal());
+    }
+
+    public long getStageMillis(Stage stage) {
+        return stageNanos.get(stage.ordinal()) / 1_000_000;
+    }
+
+    public double getStageRowsPerSecond(Stage stage) {
+        long nanos = stageNanos.get(stage.ordinal());
+        return nanos == 0 ? 0 : stageRows.get(stage.ordinal()) * 1_000_000_000d / nanos;
+    }
+
+    public long getElapsedMillis() {
+        long end = finishedAtNanos == 0 ? System.nanoTime() : finishedAtNanos;
+        return (end - startedAtNanos) / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder()
+                .append("records=").append(getRecordsRead())
+                .append(", accepted=").append(getRowsAccepted())
+                .append(", rejected=").append(getRowsRejected()).append(' ').append(rejectedRows.getCounts())
+                .append(", persisted=").append(getRowsPersisted())
+                .append(" (inserted=").append(getRowsInserted())
+                .append(", updated=").append(getRowsUpdated())
+                .append(", unchanged=").append(getRowsUnchanged())
+                .append(", skipped=").append(getRowsSkipped()).append(')')
+                .append(", notifications=").append(getNotificationsPublished())
+                .append(" (failed=").append(getNotificationsFailed())
+                .append(", timedOut=").append(getNotificationsTimedOut()).append(')')
+                .append(", chunks=").append(getChunks())
+                .append(", elapsed=").append(getElapsedMillis()).append("ms");
+        for (Stage stage : Stage.values()) {
+            sb.append(", ").append(stage.name().toLowerCase())
+                    .append('=').append(getStageMillis(stage)).append("ms")
+                    .append(String.format(" (%.0f rows/s)", getStageRowsPerSecond(stage)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.model.kafka.UpsellingServiceDTO;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The notifications an upload raised, gathered until it is persisted and published together: upselling
+ * opportunities are coalesced per customer, so that a customer gets one message whatever the number of services.
+ * Filled from the single thread evaluating the alert rules.
+ */
+public class NotificationBatch {
+
+    private final Map<String, List<String>> upsellingServicesByCustomer = new LinkedHashMap<>();
+    private final List<ExpiredServicesDTO> expiredServices = new ArrayList<>();
+
+    public void addUpselling(String customerId, String serviceType) {
+        upsellingServicesByCustomer.computeIfAbsent(customerId, id -> new ArrayList<>(2)).add(serviceType);
+    }
+
+    public void addExpiredServices(String customerId, long numberOfExpiredServices) {
+        expiredServices.add(new ExpiredServicesDTO(customerId, numberOfExpiredServices));
+    }
+
+    public List<UpsellingServiceDTO> getUpsellingMessages() {
+        List<UpsellingServiceDTO> messages = new ArrayList<>(upsellingServicesByCustomer.size());
+        upsellingServicesByCustomer.forEach((customerId, services) -> messages.add(new UpsellingServiceDTO(customerId, services)));
+        return messages;
+    }
+
+    public List<ExpiredServicesDTO> getExpiredServicesMessages() {
+        return expiredServices;
+    }
+
+    public int size() {
+        return upsellingServicesByCustomer.size() + expiredServices.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,11 @@
+package it.bm.model.ingestion;
+
+/* what became of the notifications of an upload: acknowledged by Kafka, failed, or still unanswered at the timeout */
+public record PublishOutcome(int published, int failed, int timedOut) {
+
+    public static final PublishOutcome NONE = new PublishOutcome(0, 0, 0);
+
+    public int total() {
+        return published + failed + timedOut;
+    }
+}
@@ -0,0 +1,142 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.enums.RejectReason;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The rows rejected by one range of a parallel parse, held until the range is merged into the RejectedRows of the
+ * upload with its record numbers rebased. Only the rows the upload can still use are kept: the first sampleSize
+ * when there is no error file, every one of them otherwise, the first IN_MEMORY_ROWS in memory and then all of
+ * them spilled to a file next to the error file. Every row is counted. A range is filled by its parser and merged
+ * by another thread once the parse is over, so nothing here is locked.
+ */
+public class RangeRejectedRows implements AutoCloseable {
+
+    private static final int IN_MEMORY_ROWS = 256;
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private final RejectedRows target;
+    private final long[] counts = new long[REASONS.length];
+    private final List<RejectedRow> rows = new ArrayList<>();
+    private Path spillFile;
+    private DataOutputStream spill;
+    private long spilledRows;
+    private boolean spillFailed;
+
+    public RangeRejectedRows(RejectedRows target) {
+        this.target = target;
+    }
+
+    public void add(RejectedRow rejectedRow) {
+        counts[rejectedRow.reason().ordinal()]++;
+        if (target.errorFile == null) {
+            if (rows.size() < target.sampleSize) {
+                rows.add(rejectedRow);
+            }
+        } else if (spill == null && !spillFailed && rows.size() < IN_MEMORY_ROWS) {
+            rows.add(rejectedRow);
+        } else if (!spillFailed) {
+            try {
+                if (spill == null) {
+                    spillFile = Files.createTempFile(target.errorFile.toAbsolutePath().getParent(), "rejected-range-", ".tmp");
+                    spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+                    for (RejectedRow row : rows) {
+                        write(row);
+                    }
+                    rows.clear();
+                }
+                write(rejectedRow);
+            } catch (IOException e) {
+                spillFailed = true;
+                close();
+            }
+        }
+    }
+
+    /* counts every row of the range and records the kept ones in order, then deletes the spill file */
+    public void mergeInto(long recordsBefore) {
+        target.count(counts);
+        try {
+            for (RejectedRow row : rows) {
+                target.record(row.shiftedBy(recordsBefore));
+            }
+            if (spill != null) {
+                spill.close();
+                spill = null;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)))) {
+                    for (long i = 0; i < spilledRows; i++) {
+                        target.record(read(in).shiftedBy(recordsBefore));
+                    }
+                }
+            }
+            if (spillFailed) {
+                target.abandonErrorFile();
+            }
+        } catch (IOException e) {
+            target.abandonErrorFile();
+        } finally {
+            close();
+        }
+    }
+
+    /* what a range cancelled before its merge ends with; the rows kept so far are dropped */
+    @Override
+    public void close() {
+        rows.clear();
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } catch (IOException ignored) {
+            // the file is deleted anyway
+        }
+        spill = null;
+        try {
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+            }
+        } catch (IOException ignored) {
+            // a temporary file, nothing refers to it any more
+        }
+        spillFile = null;
+    }
+
+    private void write(RejectedRow row) throws IOException {
+        spill.writeLong(row.recordNumber());
+        spill.writeByte(row.reason().ordinal());
+        writeString(row.detail());
+        writeString(row.record());
+        spilledRows++;
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            spill.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        spill.writeInt(bytes.length);
+        spill.write(bytes);
+    }
+
+    private static RejectedRow read(DataInputStream in) throws IOException {
+        long recordNumber = in.readLong();
+        RejectReason reason = REASONS[in.readUnsignedByte()];
+        return new RejectedRow(recordNumber, reason, readString(in), readString(in));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
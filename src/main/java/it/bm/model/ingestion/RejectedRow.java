@@ -0,0 +1,14 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.enums.RejectReason;
+
+/*
+ * detail is the offending field as read, or the tokenizer's explanation for a malformed record; record is the row
+ * itself as read, cut to a bound, so that it can be fixed and sent again without going back to the source
+ */
+public record RejectedRow(long recordNumber, RejectReason reason, String detail, String record) {
+
+    public RejectedRow shiftedBy(long records) {
+        return new RejectedRow(recordNumber + records, reason, detail, record);
+    }
+}
@@ -0,0 +1,194 @@
+package it.bm.model.ingestion;
+
+import it.bm.model.enums.RejectReason;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Where the rows rejected while parsing an upload end up: counted by reason, the first sampleSize kept with their
+ * record number and, when an error file is given, every one of them written to it as CSV. The file is created with
+ * the first rejected row, a clean upload leaves nothing on disk. Failing to write it gives up on the file, never
+ * on the ingestion. Writes happen under a lock rather than a monitor, which would pin the carrier of a virtual
+ * parser thread for the whole write.
+ */
+public class RejectedRows implements AutoCloseable {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 20;
+
+    private static final String ERROR_FILE_HEADER = "record_number,reason,detail,record\n";
+
+    final int sampleSize;
+    final Path errorFile;
+    private final AtomicLongArray counts = new AtomicLongArray(RejectReason.values().length);
+    private final List<RejectedRow> sample = new ArrayList<>();
+    private final Lock lock = new ReentrantLock();
+    private Writer writer;
+    private boolean errorFileFailed;
+    private boolean closed;
+
+    public RejectedRows() {
+        this(DEFAULT_SAMPLE_SIZE, null);
+    }
+
+    public RejectedRows(int sampleSize, Path errorFile) {
+        this.sampleSize = sampleSize;
+        this.errorFile = errorFile;
+    }
+
+    public void add(RejectedRow rejectedRow) {
+        counts.incrementAndGet(rejectedRow.reason().ordinal());
+        record(rejectedRow);
+    }
+
+    /* samples and writes a row counted through count, what RangeRejectedRows merges a range with */
+    void record(RejectedRow rejectedRow) {
+        lock.lock();
+        try {
+            if (sample.size() < sampleSize) {
+                sample.add(rejectedRow);
+            }
+            if (errorFile != null && !errorFileFailed && !closed) {
+                try {
+                    write(rejectedRow);
+                } catch (IOException e) {
+                    discardErrorFile();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void count(long[] byReason) {
+        for (int i = 0; i < byReason.length; i++) {
+            counts.addAndGet(i, byReason[i]);
+        }
+    }
+
+    /* some rows were lost before reaching the file, so it would not hold every rejected row */
+    void abandonErrorFile() {
+        lock.lock();
+        try {
+            if (errorFile != null) {
+                discardErrorFile();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /* only the reasons that occurred, in declaration order */
+    public Map<RejectReason, Long> getCounts() {
+        Map<RejectReason, Long> byReason = new EnumMap<>(RejectReason.class);
+        for (RejectReason reason : RejectReason.values()) {
+            long count = counts.get(reason.ordinal());
+            if (count > 0) {
+                byReason.put(reason, count);
+            }
+        }
+        return byReason;
+    }
+
+    public List<RejectedRow> getSample() {
+        lock.lock();
+        try {
+            return List.copyOf(sample);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* the complete error file, once closed; empty when no row was rejected, none was asked for or writing it failed */
+    public Optional<Path> getErrorFile() {
+        lock.lock();
+        try {
+            return closed && writer == null && !errorFileFailed && errorFile != null && Files.exists(errorFile)
+                    ? Optional.of(errorFile) : Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* rows still arriving afterwards, from a parser being aborted, are counted but no longer written */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (writer == null) {
+                return;
+            }
+            writer.close();
+            writer = null;
+        } catch (IOException e) {
+            discardErrorFile();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(RejectedRow rejectedRow) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(errorFile, StandardCharsets.UTF_8);
+            writer.write(ERROR_FILE_HEADER);
+        }
+        writer.write(Long.toString(rejectedRow.recordNumber()));
+        writer.write(',');
+        writer.write(rejectedRow.reason().name());
+        writer.write(',');
+        writeQuoted(rejectedRow.detail());
+        writer.write(',');
+        writeQuoted(rejectedRow.record());
+        writer.write('\n');
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        writer.write('"');
+        if (value != null) {
+            writer.write(value.replace("\"", "\"\""));
+        }
+        writer.write('"');
+    }
+
+    private void discardErrorFile() {
+        errorFileFailed = true;
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (IOException ignored) {
+            // the file is deleted anyway
+        }
+        writer = null;
+        try {
+            Files.deleteIfExists(errorFile);
+        } catch (IOException ignored) {
+            // nothing more to do, getErrorFile no longer exposes it
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getTotal() + " " + getCounts();
+    }
+}
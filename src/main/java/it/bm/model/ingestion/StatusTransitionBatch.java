@@ -0,0 +1,7 @@
+package it.bm.model.ingestion;
+
+import java.time.LocalDate;
+
+/* One batch of the status transition: rows looked at, rows turned EXPIRED and the key the next batch starts after */
+public record StatusTransitionBatch(long scanned, long expired, LocalDate lastExpirationDate, long lastId) {
+}
@@ -0,0 +1,6 @@
+package it.bm.model.ingestion;
+
+import java.nio.file.Path;
+
+public record UploadPart(int partNumber, long size, String sha256, Path path) {
+}
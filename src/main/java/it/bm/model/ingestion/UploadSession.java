@@ -0,0 +1,132 @@
+package it.bm.model.ingestion;
+
+import it.bm.util.FileUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+@Getter
+public class UploadSession {
+
+    private final UUID id = UUID.randomUUID();
+    private final String fileName;
+    private final String createdBy;
+    private final Instant createdAt = Instant.now();
+    private final Path directory;
+    @Getter(AccessLevel.NONE)
+    private final NavigableMap<Integer, UploadPart> parts = new ConcurrentSkipListMap<>();
+    /* part uploads share the lock, completion and abort take it exclusively */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /* makes moving a part file in place and recording it one step when the same part is sent twice at once */
+    private final Lock partLock = new ReentrantLock();
+    /*
+     * SHA-256 of parts 1..digestedParts, fed while they were written. A part that follows them is written through a
+     * copy of the digest, which replaces it once the part is stored if nothing changed meanwhile; parts sent out of
+     * order are read back when the upload is completed. Guarded by partLock, like the rest of the digest state.
+     */
+    @Getter(AccessLevel.NONE)
+    private MessageDigest contentDigest = FileUtil.newSha256();
+    @Getter(AccessLevel.NONE)
+    private int digestedParts;
+    @Getter(AccessLevel.NONE)
+    private long digestVersion;
+    private volatile Instant lastActivityAt = createdAt;
+    private volatile UUID jobId;
+
+    public UploadSession(String fileName, String createdBy, Path baseDirectory) {
+        this.fileName = fileName;
+        this.createdBy = createdBy;
+        this.directory = baseDirectory.resolve(id.toString());
+    }
+
+    public List<UploadPart> getParts() {
+        return List.copyOf(parts.values());
+    }
+
+    /* the digest a part is written through along with its own, empty unless it follows the parts digested so far */
+    public Optional<DigestContinuation> continueDigest(int partNumber) {
+        return partNumber == digestedParts + 1
+                ? Optional.of(new DigestContinuation(copy(contentDigest), digestVersion)) : Optional.empty();
+    }
+
+    /*
+     * A part sent again with the same content leaves the digest as it is, one with a different content among the
+     * digested parts starts it over.
+     */
+    public void putPart(UploadPart part, Optional<DigestContinuation> continuation) {
+        UploadPart previous = parts.put(part.partNumber(), part);
+        if (previous != null && part.partNumber() <= digestedParts && !previous.sha256().equals(part.sha256())) {
+            contentDigest = FileUtil.newSha256();
+            digestedParts = 0;
+            digestVersion++;
+        } else if (continuation.isPresent() && continuation.get().version() == digestVersion
+                && part.partNumber() == digestedParts + 1) {
+            contentDigest = continuation.get().digest();
+            digestedParts = part.partNumber();
+            digestVersion++;
+        }
+        lastActivityAt = Instant.now();
+    }
+
+    /* SHA-256 of parts 1..n, reading back only the parts that were not digested while they were written */
+    public String getContentSha256() throws IOException {
+        partLock.lock();
+        try {
+            MessageDigest digest = copy(contentDigest);
+            FileUtil.digest(digest, parts.tailMap(digestedParts, false).values().stream().map(UploadPart::path).toList());
+            return HexFormat.of().formatHex(digest.digest());
+        } finally {
+            partLock.unlock();
+        }
+    }
+
+    public long getTotalBytes() {
+        return parts.values().stream().mapToLong(UploadPart::size).sum();
+    }
+
+    /* parts are numbered from 1 and must have no gaps for the upload to be assembled */
+    public List<Integer> getMissingParts() {
+        if (parts.isEmpty()) {
+            return List.of(1);
+        }
+        return IntStream.rangeClosed(1, parts.lastKey())
+                .filter(partNumber -> !parts.containsKey(partNumber))
+                .boxed()
+                .toList();
+    }
+
+    public boolean isCompleted() {
+        return jobId != null;
+    }
+
+    public void completed(UUID jobId) {
+        this.jobId = jobId;
+        lastActivityAt = Instant.now();
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record DigestContinuation(MessageDigest digest, long version) {
+    }
+}
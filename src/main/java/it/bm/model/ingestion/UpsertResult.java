@@ -0,0 +1,20 @@
+package it.bm.model.ingestion;
+
+/*
+ * Outcome of persisting a chunk: rows written for the first time, rows changed, rows already up to date and rows
+ * an append mode skipped because their subscription already exists
+ */
+public record UpsertResult(long inserted, long updated, long unchanged, long skipped) {
+
+    public UpsertResult(long inserted, long updated, long unchanged) {
+        this(inserted, updated, unchanged, 0);
+    }
+
+    public static UpsertResult inserted(long rows) {
+        return new UpsertResult(rows, 0, 0);
+    }
+
+    public static UpsertResult appended(long inserted, long skipped) {
+        return new UpsertResult(inserted, 0, 0, skipped);
+    }
+}
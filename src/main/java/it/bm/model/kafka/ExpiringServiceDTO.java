@@ -0,0 +1,6 @@
+package it.bm.model.kafka;
+
+import java.time.LocalDate;
+
+public record ExpiringServiceDTO(String customerId, String serviceType, LocalDate expirationDate, int daysLeft) {
+}
@@ -1,4 +1,37 @@
 package it.bm.model.kafka;
 
-public record UpsellingServiceDTO(String customerId, String upsellingService) {
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/* every upselling opportunity of a customer found by one upload, in one message */
+public record UpsellingServiceDTO(String customerId, List<String> upsellingServices) {
+
+    public UpsellingServiceDTO {
+        upsellingServices = List.copyOf(upsellingServices);
+    }
+
+    public UpsellingServiceDTO(String customerId, String upsellingService) {
+        this(customerId, List.of(upsellingService));
+    }
+
+    /*
+     * The first service, still written under the field of the single-service messages so that consumers not yet
+     * reading upsellingServices keep working during the transition; to be dropped once they all do.
+     */
+    @Deprecated
+    @JsonProperty("upsellingService")
+    public String upsellingService() {
+        return upsellingServices.isEmpty() ? null : upsellingServices.get(0);
+    }
+
+    /* messages written before opportunities were grouped carry a single upsellingService */
+    @JsonCreator
+    static UpsellingServiceDTO fromJson(@JsonProperty("customerId") String customerId,
+                                        @JsonProperty("upsellingServices") List<String> upsellingServices,
+                                        @JsonProperty("upsellingService") String upsellingService) {
+        return upsellingServices != null ? new UpsellingServiceDTO(customerId, upsellingServices)
+                : new UpsellingServiceDTO(customerId, upsellingService == null ? List.of() : List.of(upsellingService));
+    }
 }
@@ -0,0 +1,34 @@
+package it.bm.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestedFileStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record DuplicateUploadResponse(
+        String errorCode,
+        long timestamp,
+        @Schema(description = "Hex encoded SHA-256 of the upload content")
+        String sha256,
+        @Schema(description = "Name of the file with the same content ingested earlier")
+        String fileName,
+        @Schema(description = "Ingestion job of the earlier upload")
+        UUID jobId,
+        @Schema(description = "IN_PROGRESS while the earlier upload is still being ingested")
+        IngestedFileStatus status,
+        @Schema(description = "User that sent the earlier upload")
+        String ingestedBy,
+        LocalDateTime ingestedAt,
+        LocalDateTime completedAt,
+        @Schema(description = "Rows written by the earlier ingestion, once completed")
+        Long rowsPersisted
+) {
+
+    public static DuplicateUploadResponse of(IngestedFile ingestedFile) {
+        return new DuplicateUploadResponse("DUPLICATE_UPLOAD", System.currentTimeMillis(), ingestedFile.getSha256(),
+                ingestedFile.getFileName(), ingestedFile.getJobId(), ingestedFile.getStatus(), ingestedFile.getCreatedBy(),
+                ingestedFile.getCreatedAt(), ingestedFile.getCompletedAt(), ingestedFile.getRowsPersisted());
+    }
+}
@@ -0,0 +1,91 @@
+package it.bm.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.bm.model.enums.IngestionJobState;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.enums.RejectReason;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.IngestionStats.Stage;
+import it.bm.model.ingestion.RejectedRow;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public record IngestionJobResponse(
+        @Schema(description = "Job identifier")
+        UUID jobId,
+        @Schema(description = "Name of the uploaded file")
+        String fileName,
+        @Schema(description = "Job state")
+        IngestionJobState state,
+        @Schema(description = "True once a cancellation was requested, until the job stops")
+        boolean cancelRequested,
+        @Schema(description = "How rows are written, null when the configured default applies")
+        PersistenceMode persistenceMode,
+        @Schema(description = "User that submitted the upload")
+        String submittedBy,
+        @Schema(description = "Hex encoded SHA-256 of the upload content, null when deduplication is disabled")
+        String sha256,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant finishedAt,
+        @Schema(description = "Records read from the file so far")
+        long recordsRead,
+        @Schema(description = "Rows that passed validation")
+        long rowsAccepted,
+        @Schema(description = "Rows skipped because invalid")
+        long rowsRejected,
+        @Schema(description = "Rows skipped so far by reason")
+        Map<RejectReason, Long> rejectedByReason,
+        @Schema(description = "First rows skipped, with their record number, offending value and the row as read")
+        List<RejectedRow> rejectedSample,
+        @Schema(description = "Rows written to the database")
+        long rowsPersisted,
+        @Schema(description = "Persisted rows that were new")
+        long rowsInserted,
+        @Schema(description = "Persisted rows that changed an existing subscription, UPSERT mode only")
+        long rowsUpdated,
+        @Schema(description = "Persisted rows identical to the existing subscription, UPSERT mode only")
+        long rowsUnchanged,
+        @Schema(description = "Rows whose subscription already existed, skipped by the JPA and COPY modes")
+        long rowsSkipped,
+        @Schema(description = "Notifications of the upload acknowledged by Kafka, set once the job has ingested every row")
+        long notificationsPublished,
+        @Schema(description = "Notifications of the upload Kafka rejected, upselling ones are raised again by the next upload")
+        long notificationsFailed,
+        @Schema(description = "Notifications of the upload still unacknowledged at the publish timeout")
+        long notificationsTimedOut,
+        @Schema(description = "Wall clock time of the job in milliseconds")
+        long elapsedMillis,
+        @Schema(description = "Rows written per second of wall clock time")
+        double rowsPerSecond,
+        @Schema(description = "Rows, time and throughput of each pipeline stage")
+        Map<String, StageTiming> stages,
+        @Schema(description = "Failure reason, for FAILED jobs")
+        String error
+) {
+
+    public record StageTiming(long rows, long millis, double rowsPerSecond) {
+    }
+
+    public static IngestionJobResponse of(IngestionJob job) {
+        IngestionStats stats = job.getStats();
+        Map<String, StageTiming> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage.name().toLowerCase(), new StageTiming(stats.getStageRows(stage), stats.getStageMillis(stage),
+                    stats.getStageRowsPerSecond(stage)));
+        }
+        long elapsedMillis = job.getStartedAt() == null ? 0 : stats.getElapsedMillis();
+        return new IngestionJobResponse(job.getId(), job.getFileName(), job.getState(), job.isCancelRequested(),
+                job.getPersistenceMode(), job.getSubmittedBy(), job.getSha256(), job.getSubmittedAt(), job.getStartedAt(), job.getFinishedAt(),
+                stats.getRecordsRead(), stats.getRowsAccepted(), stats.getRowsRejected(),
+                stats.getRejectedRows().getCounts(), stats.getRejectedRows().getSample(), stats.getRowsPersisted(),
+                stats.getRowsInserted(), stats.getRowsUpdated(), stats.getRowsUnchanged(), stats.getRowsSkipped(),
+                stats.getNotificationsPublished(), stats.getNotificationsFailed(), stats.getNotificationsTimedOut(),
+                elapsedMillis, elapsedMillis == 0 ? 0 : stats.getRowsPersisted() * 1000d / elapsedMillis, stages, job.getError());
+    }
+}
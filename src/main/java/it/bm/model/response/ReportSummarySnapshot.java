@@ -0,0 +1,19 @@
+package it.bm.model.response;
+
+import java.time.Instant;
+
+/*
+ * A report summary as it is sent: its JSON, the strong ETag of those bytes and when it was computed. A stale one is
+ * the last summary computed, served because the current one was not ready in time; a cached one was served from the
+ * cache without waiting for a computation.
+ */
+public record ReportSummarySnapshot(byte[] body, String eTag, Instant computedAt, boolean stale, boolean cached) {
+
+    public ReportSummarySnapshot asStale() {
+        return new ReportSummarySnapshot(body, eTag, computedAt, true, false);
+    }
+
+    public ReportSummarySnapshot asCached() {
+        return new ReportSummarySnapshot(body, eTag, computedAt, stale, true);
+    }
+}
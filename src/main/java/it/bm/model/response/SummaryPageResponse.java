@@ -0,0 +1,19 @@
+package it.bm.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.function.Function;
+
+public record SummaryPageResponse<T>(
+        @Schema(description = "Entries of the page, in customer order")
+        List<T> items,
+        @Schema(description = "Customer to pass as after to read the next page, null on the last page")
+        String nextAfter
+) {
+
+    /* a page shorter than asked for is the last one */
+    public static <T> SummaryPageResponse<T> of(List<T> items, int size, Function<T, String> customerId) {
+        return new SummaryPageResponse<>(items, items.size() < size ? null : customerId.apply(items.get(items.size() - 1)));
+    }
+}
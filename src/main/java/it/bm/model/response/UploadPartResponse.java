@@ -0,0 +1,18 @@
+package it.bm.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.bm.model.ingestion.UploadPart;
+
+public record UploadPartResponse(
+        @Schema(description = "Part number, parts are assembled in ascending order starting from 1")
+        int partNumber,
+        @Schema(description = "Size of the stored part in bytes")
+        long size,
+        @Schema(description = "Hex encoded SHA-256 of the stored part")
+        String sha256
+) {
+
+    public static UploadPartResponse of(UploadPart part) {
+        return new UploadPartResponse(part.partNumber(), part.size(), part.sha256());
+    }
+}
@@ -0,0 +1,35 @@
+package it.bm.model.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.bm.model.ingestion.UploadSession;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record UploadSessionResponse(
+        @Schema(description = "Upload identifier")
+        UUID uploadId,
+        @Schema(description = "Name of the file being uploaded")
+        String fileName,
+        @Schema(description = "User that initiated the upload")
+        String createdBy,
+        Instant createdAt,
+        Instant lastActivityAt,
+        @Schema(description = "Ingestion job started by the completion, null while parts are still accepted")
+        UUID jobId,
+        @Schema(description = "Total size of the stored parts in bytes")
+        long totalBytes,
+        @Schema(description = "Stored parts, a client resuming an upload only sends the ones missing or differing")
+        List<UploadPartResponse> parts,
+        @Schema(description = "Part numbers below the highest stored one that are still missing")
+        List<Integer> missingParts
+) {
+
+    public static UploadSessionResponse of(UploadSession session) {
+        return new UploadSessionResponse(session.getId(), session.getFileName(), session.getCreatedBy(),
+                session.getCreatedAt(), session.getLastActivityAt(), session.getJobId(), session.getTotalBytes(),
+                session.getParts().stream().map(UploadPartResponse::of).toList(),
+                session.isCompleted() || session.getParts().isEmpty() ? List.of() : session.getMissingParts());
+    }
+}
@@ -0,0 +1,57 @@
+package it.bm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Reads the per customer totals of EXPIRED subscriptions that the triggers of customer_expired_counter keep up to
+ * date on every insert, update and delete of customer_service_subscriptions. Lookups go by primary key, so their
+ * cost follows the number of customers asked for and not the size of the table.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CustomerExpiredCounterRepository {
+
+    private static final String COUNTS_ABOVE_SQL = """
+            SELECT customer_id, expired_count
+            FROM customer_expired_counter
+            WHERE customer_id = ANY (?) AND expired_count > ?
+            """;
+    private static final String CUSTOMERS_ABOVE_SQL = """
+            SELECT customer_id
+            FROM customer_expired_counter
+            WHERE expired_count > ?
+            ORDER BY customer_id
+            """;
+    private static final int LOOKUP_BATCH_SIZE = 5_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Map<String, Long> findExpiredCountsAbove(Collection<String> customerIds, long limit) {
+        Map<String, Long> counts = new HashMap<>();
+        List<String> ids = new ArrayList<>(customerIds);
+        for (int from = 0; from < ids.size(); from += LOOKUP_BATCH_SIZE) {
+            Object[] batch = ids.subList(from, Math.min(ids.size(), from + LOOKUP_BATCH_SIZE)).toArray();
+            jdbcTemplate.query(con -> {
+                PreparedStatement statement = con.prepareStatement(COUNTS_ABOVE_SQL);
+                statement.setArray(1, con.createArrayOf("varchar", batch));
+                statement.setLong(2, limit);
+                return statement;
+            }, (RowCallbackHandler) rs -> counts.put(rs.getString("customer_id"), rs.getLong("expired_count")));
+        }
+        return counts;
+    }
+
+    public List<String> findCustomersWithExpiredCountAbove(long limit) {
+        return jdbcTemplate.queryForList(CUSTOMERS_ABOVE_SQL, String.class, limit);
+    }
+}
@@ -0,0 +1,105 @@
+package it.bm.repository;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class CustomerServiceSubscriptionsCopyRepository {
+
+    private static final String COPY_SQL = """
+            COPY customer_service_subscriptions
+                (id, customer_id, service_type, amount, activation_date, expiration_date, status_id, created_at, created_by)
+            FROM STDIN (FORMAT text)
+            """;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SubscriptionIdAllocator subscriptionIdAllocator;
+    private final AuditorAware<String> auditorProvider;
+
+    /*
+     * Writes the rows with a single COPY FROM STDIN on the connection bound to the current transaction.
+     * Ids come from cust_sub_seq and the audit columns are filled here, since neither Hibernate nor the
+     * AuditingEntityListener take part in this path; the entities are updated to mirror what was written.
+     */
+    public long copyIn(List<CustomerServiceSubscriptions> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        long[] ids = subscriptionIdAllocator.allocate(records.size());
+        String createdBy = auditorProvider.getCurrentAuditor().orElse("system");
+        LocalDateTime createdAt = LocalDateTime.now();
+
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            PGCopyOutputStream copyStream = new PGCopyOutputStream(connection.unwrap(PGConnection.class), COPY_SQL, COPY_BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    CustomerServiceSubscriptions record = records.get(i);
+                    writer.write(Long.toString(ids[i]));
+                    writer.write('\t');
+                    writeEscaped(writer, record.getCustomerId());
+                    writer.write('\t');
+                    writeEscaped(writer, record.getServiceType());
+                    writer.write('\t');
+                    writer.write(record.getAmount().toPlainString());
+                    writer.write('\t');
+                    writer.write(record.getActivationDate().toString());
+                    writer.write('\t');
+                    writer.write(record.getExpirationDate().toString());
+                    writer.write('\t');
+                    writer.write(Long.toString(record.getStatus().getId()));
+                    writer.write('\t');
+                    writer.write(createdAt.toString());
+                    writer.write('\t');
+                    writeEscaped(writer, createdBy);
+                    writer.write('\n');
+                }
+                writer.flush();
+                return copyStream.endCopy();
+            } catch (IOException e) {
+                if (copyStream.isActive()) {
+                    copyStream.cancelCopy();
+                }
+                throw new DataAccessResourceFailureException("COPY into customer_service_subscriptions failed", e);
+            }
+        });
+
+        for (int i = 0; i < records.size(); i++) {
+            CustomerServiceSubscriptions record = records.get(i);
+            record.setId(ids[i]);
+            record.setCreatedAt(createdAt);
+            record.setCreatedBy(createdBy);
+        }
+        return copied == null ? 0 : copied;
+    }
+
+    private static void writeEscaped(Writer writer, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> writer.write("\\\\");
+                case '\t' -> writer.write("\\t");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                default -> writer.write(c);
+            }
+        }
+    }
+}
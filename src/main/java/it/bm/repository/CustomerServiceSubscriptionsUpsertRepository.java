@@ -0,0 +1,194 @@
+package it.bm.repository;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.UpsertResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class CustomerServiceSubscriptionsUpsertRepository {
+
+    /*
+     * The whole chunk travels as one array per column and is unnested server side, so a chunk is a single
+     * statement and a single round trip whatever its size. Rows whose values did not change are filtered by the
+     * WHERE of the update and are not rewritten, which spares the table a dead tuple for every unchanged row.
+     * xmax is 0 only on tuples created by this statement, so RETURNING tells inserts from updates.
+     */
+    private static final String UPSERT_SQL = """
+            INSERT INTO customer_service_subscriptions AS c
+                (id, customer_id, service_type, amount, activation_date, expiration_date, status_id, created_at, created_by)
+            SELECT u.id, u.customer_id, u.service_type, u.amount, u.activation_date, u.expiration_date, u.status_id, ?, ?
+            FROM unnest(?::bigint[], ?::varchar[], ?::varchar[], ?::numeric[], ?::date[], ?::date[], ?::bigint[])
+                AS u (id, customer_id, service_type, amount, activation_date, expiration_date, status_id)
+            ON CONFLICT (customer_id, service_type, activation_date) DO UPDATE
+                SET amount = EXCLUDED.amount,
+                    expiration_date = EXCLUDED.expiration_date,
+                    status_id = EXCLUDED.status_id
+                WHERE (c.amount, c.expiration_date, c.status_id)
+                    IS DISTINCT FROM (EXCLUDED.amount, EXCLUDED.expiration_date, EXCLUDED.status_id)
+            RETURNING xmax = 0 AS inserted
+            """;
+
+    /* 1-based positions in the chunk of the rows whose natural key is already in the table */
+    private static final String EXISTING_KEYS_SQL = """
+            SELECT u.ord
+            FROM unnest(?::varchar[], ?::varchar[], ?::date[]) WITH ORDINALITY
+                AS u (customer_id, service_type, activation_date, ord)
+            WHERE EXISTS (SELECT 1 FROM customer_service_subscriptions c
+                          WHERE c.customer_id = u.customer_id
+                            AND c.service_type = u.service_type
+                            AND c.activation_date = u.activation_date)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SubscriptionIdAllocator subscriptionIdAllocator;
+    private final AuditorAware<String> auditorProvider;
+
+    /*
+     * Inserts or updates the rows by natural key (customer_id, service_type, activation_date) on the connection
+     * bound to the current transaction. A statement cannot touch the same row twice, so a key repeated within the
+     * chunk is written once with its last values and its earlier occurrences are counted as updated. New rows take
+     * their id from cust_sub_seq like the COPY path; the ids allocated for rows that end up as updates are skipped.
+     */
+    public UpsertResult upsert(List<CustomerServiceSubscriptions> records) {
+        if (records.isEmpty()) {
+            return new UpsertResult(0, 0, 0);
+        }
+        List<CustomerServiceSubscriptions> rows = lastByNaturalKey(records);
+        long superseded = records.size() - rows.size();
+        long[] ids = subscriptionIdAllocator.allocate(rows.size());
+        String createdBy = auditorProvider.getCurrentAuditor().orElse("system");
+        LocalDateTime createdAt = LocalDateTime.now();
+
+        long[] written = jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+                bind(statement, connection, rows, ids, createdAt, createdBy);
+                long inserted = 0;
+                long updated = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        if (resultSet.getBoolean(1)) {
+                            inserted++;
+                        } else {
+                            updated++;
+                        }
+                    }
+                }
+                return new long[]{inserted, updated};
+            }
+        });
+        long inserted = written[0];
+        long updated = written[1];
+        return new UpsertResult(inserted, updated + superseded, rows.size() - inserted - updated);
+    }
+
+    /*
+     * The rows of the chunk an append can write: those whose natural key is neither in the table nor on an earlier
+     * row of the chunk, looked up in one statement with the keys travelling as arrays like in upsert. A row of the
+     * same key committed by a concurrent upload after the lookup still fails the chunk on the unique index.
+     */
+    public List<CustomerServiceSubscriptions> withoutExistingKeys(List<CustomerServiceSubscriptions> records) {
+        if (records.isEmpty()) {
+            return records;
+        }
+        boolean[] existing = jdbcTemplate.execute((ConnectionCallback<boolean[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(EXISTING_KEYS_SQL)) {
+                bindKeys(statement, connection, records);
+                boolean[] found = new boolean[records.size()];
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        found[(int) resultSet.getLong(1) - 1] = true;
+                    }
+                }
+                return found;
+            }
+        });
+        Set<NaturalKey> seen = new HashSet<>(records.size() * 2);
+        List<CustomerServiceSubscriptions> rows = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            CustomerServiceSubscriptions record = records.get(i);
+            if (!existing[i] && seen.add(new NaturalKey(record.getCustomerId(), record.getServiceType(), record.getActivationDate()))) {
+                rows.add(record);
+            }
+        }
+        return rows.size() == records.size() ? records : rows;
+    }
+
+    private static List<CustomerServiceSubscriptions> lastByNaturalKey(List<CustomerServiceSubscriptions> records) {
+        Map<NaturalKey, CustomerServiceSubscriptions> byKey = new LinkedHashMap<>(records.size() * 2);
+        for (CustomerServiceSubscriptions record : records) {
+            byKey.put(new NaturalKey(record.getCustomerId(), record.getServiceType(), record.getActivationDate()), record);
+        }
+        return byKey.size() == records.size() ? records : new ArrayList<>(byKey.values());
+    }
+
+    private static void bind(PreparedStatement statement, Connection connection, List<CustomerServiceSubscriptions> rows,
+                             long[] ids, LocalDateTime createdAt, String createdBy) throws SQLException {
+        int size = rows.size();
+        Long[] id = new Long[size];
+        String[] customerId = new String[size];
+        String[] serviceType = new String[size];
+        BigDecimal[] amount = new BigDecimal[size];
+        String[] activationDate = new String[size];
+        String[] expirationDate = new String[size];
+        Long[] statusId = new Long[size];
+        for (int i = 0; i < size; i++) {
+            CustomerServiceSubscriptions row = rows.get(i);
+            id[i] = ids[i];
+            customerId[i] = row.getCustomerId();
+            serviceType[i] = row.getServiceType();
+            amount[i] = row.getAmount();
+            activationDate[i] = row.getActivationDate().toString();
+            expirationDate[i] = row.getExpirationDate().toString();
+            statusId[i] = row.getStatus().getId();
+        }
+        statement.setTimestamp(1, Timestamp.valueOf(createdAt));
+        statement.setString(2, createdBy);
+        statement.setArray(3, connection.createArrayOf("bigint", id));
+        statement.setArray(4, connection.createArrayOf("varchar", customerId));
+        statement.setArray(5, connection.createArrayOf("varchar", serviceType));
+        statement.setArray(6, connection.createArrayOf("numeric", amount));
+        statement.setArray(7, connection.createArrayOf("varchar", activationDate));
+        statement.setArray(8, connection.createArrayOf("varchar", expirationDate));
+        statement.setArray(9, connection.createArrayOf("bigint", statusId));
+    }
+
+    private static void bindKeys(PreparedStatement statement, Connection connection,
+                                 List<CustomerServiceSubscriptions> rows) throws SQLException {
+        int size = rows.size();
+        String[] customerId = new String[size];
+        String[] serviceType = new String[size];
+        String[] activationDate = new String[size];
+        for (int i = 0; i < size; i++) {
+            CustomerServiceSubscriptions row = rows.get(i);
+            customerId[i] = row.getCustomerId();
+            serviceType[i] = row.getServiceType();
+            activationDate[i] = row.getActivationDate().toString();
+        }
+        statement.setArray(1, connection.createArrayOf("varchar", customerId));
+        statement.setArray(2, connection.createArrayOf("varchar", serviceType));
+        statement.setArray(3, connection.createArrayOf("varchar", activationDate));
+    }
+
+    private record NaturalKey(String customerId, String serviceType, LocalDate activationDate) {
+    }
+}
@@ -0,0 +1,53 @@
+package it.bm.repository;
+
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestedFileStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface IngestedFileRepository extends JpaRepository<IngestedFile, Long> {
+
+    Optional<IngestedFile> findBySha256(String sha256);
+
+    /* 0 when a row with the same digest exists: the unique constraint settles concurrent uploads of one file */
+    @Modifying
+    @Query(value = """
+            INSERT INTO ingested_file (sha256, file_name, size_bytes, job_id, status, created_at, created_by)
+            VALUES (:sha256, :fileName, :sizeBytes, :jobId, 'IN_PROGRESS', :createdAt, :createdBy)
+            ON CONFLICT (sha256) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("sha256") String sha256,
+                       @Param("fileName") String fileName,
+                       @Param("sizeBytes") long sizeBytes,
+                       @Param("jobId") UUID jobId,
+                       @Param("createdAt") LocalDateTime createdAt,
+                       @Param("createdBy") String createdBy);
+
+    @Modifying
+    @Query("""
+            UPDATE IngestedFile f
+            SET f.status = :status, f.rowsPersisted = :rowsPersisted, f.completedAt = :completedAt
+            WHERE f.sha256 = :sha256 AND f.jobId = :jobId
+            """)
+    int markCompleted(@Param("sha256") String sha256,
+                      @Param("jobId") UUID jobId,
+                      @Param("rowsPersisted") long rowsPersisted,
+                      @Param("completedAt") LocalDateTime completedAt,
+                      @Param("status") IngestedFileStatus status);
+
+    @Modifying
+    @Query("DELETE FROM IngestedFile f WHERE f.sha256 = :sha256 AND f.jobId = :jobId")
+    int deleteBySha256AndJobId(@Param("sha256") String sha256, @Param("jobId") UUID jobId);
+
+    @Modifying
+    @Query("DELETE FROM IngestedFile f WHERE f.sha256 = :sha256")
+    int deleteBySha256(@Param("sha256") String sha256);
+}
@@ -0,0 +1,137 @@
+package it.bm.repository;
+
+import it.bm.model.enums.AlertType;
+import it.bm.model.ingestion.AlertKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class NotificationDedupRepository {
+
+    private static final String FIND_ACTIVE_SQL = """
+            SELECT d.customer_id, d.service_type, d.alert_type
+            FROM notification_dedup d
+            JOIN unnest(?::varchar[], ?::varchar[], ?::varchar[]) AS k (customer_id, service_type, alert_type)
+                ON d.customer_id = k.customer_id AND d.service_type = k.service_type AND d.alert_type = k.alert_type
+            WHERE d.expires_at > now()
+            """;
+
+    /*
+     * A key is claimed when it is new or its window is over; a key another upload holds is left alone and not
+     * returned, so concurrent uploads, on this instance or another, never both send the same alert.
+     */
+    private static final String CLAIM_SQL = """
+            INSERT INTO notification_dedup AS d (customer_id, service_type, alert_type, expires_at)
+            SELECT k.customer_id, k.service_type, k.alert_type, now() + make_interval(secs => ?)
+            FROM unnest(?::varchar[], ?::varchar[], ?::varchar[]) AS k (customer_id, service_type, alert_type)
+            ORDER BY 1, 2, 3
+            ON CONFLICT (customer_id, service_type, alert_type) DO UPDATE
+                SET expires_at = EXCLUDED.expires_at
+                WHERE d.expires_at <= now()
+            RETURNING d.customer_id, d.service_type, d.alert_type
+            """;
+
+    private static final String ACTIVE_PAGE_SQL = """
+            SELECT customer_id, service_type, alert_type
+            FROM notification_dedup
+            WHERE (customer_id, service_type, alert_type) > (?, ?, ?) AND expires_at > now()
+            ORDER BY customer_id, service_type, alert_type
+            LIMIT ?
+            """;
+
+    private static final String RELEASE_SQL =
+            "DELETE FROM notification_dedup WHERE customer_id = ? AND service_type = ? AND alert_type = ?";
+
+    private static final String RELEASE_ALL_SQL = """
+            DELETE FROM notification_dedup d
+            USING unnest(?::varchar[], ?::varchar[], ?::varchar[]) AS k (customer_id, service_type, alert_type)
+            WHERE d.customer_id = k.customer_id AND d.service_type = k.service_type AND d.alert_type = k.alert_type
+            """;
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM notification_dedup WHERE expires_at <= now()";
+
+    private static final int PAGE_SIZE = 10_000;
+
+    private static final RowMapper<AlertKey> ALERT_KEY_MAPPER = (rs, rowNum) -> new AlertKey(
+            rs.getString("customer_id"), rs.getString("service_type"), AlertType.valueOf(rs.getString("alert_type")));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<AlertKey> findActive(Collection<AlertKey> keys) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(FIND_ACTIVE_SQL);
+            bindKeys(statement, 1, keys);
+            return statement;
+        }, ALERT_KEY_MAPPER);
+    }
+
+    /* keys must be distinct, a statement cannot update the same row twice */
+    public List<AlertKey> claim(Collection<AlertKey> keys, Duration ttl) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(CLAIM_SQL);
+            statement.setDouble(1, ttl.toMillis() / 1000.0);
+            bindKeys(statement, 2, keys);
+            return statement;
+        }, ALERT_KEY_MAPPER);
+    }
+
+    public void release(AlertKey key) {
+        jdbcTemplate.update(RELEASE_SQL, key.customerId(), key.serviceType(), key.alertType().name());
+    }
+
+    public int releaseAll(Collection<AlertKey> keys) {
+        return jdbcTemplate.update(con -> {
+            PreparedStatement statement = con.prepareStatement(RELEASE_ALL_SQL);
+            bindKeys(statement, 1, keys);
+            return statement;
+        });
+    }
+
+    public int deleteExpired() {
+        return jdbcTemplate.update(DELETE_EXPIRED_SQL);
+    }
+
+    /* keyset pagination over the primary key, so that no page holds a long running cursor open */
+    public long forEachActive(Consumer<AlertKey> consumer) {
+        Object[] after = {"", "", "", PAGE_SIZE};
+        long count = 0;
+        List<AlertKey> page;
+        do {
+            page = jdbcTemplate.query(ACTIVE_PAGE_SQL, ALERT_KEY_MAPPER, after);
+            page.forEach(consumer);
+            count += page.size();
+            if (!page.isEmpty()) {
+                AlertKey last = page.get(page.size() - 1);
+                after = new Object[]{last.customerId(), last.serviceType(), last.alertType().name(), PAGE_SIZE};
+            }
+        } while (page.size() == PAGE_SIZE);
+        return count;
+    }
+
+    private static void bindKeys(PreparedStatement statement, int firstIndex, Collection<AlertKey> keys) throws SQLException {
+        int size = keys.size();
+        String[] customerIds = new String[size];
+        String[] serviceTypes = new String[size];
+        String[] alertTypes = new String[size];
+        int i = 0;
+        for (AlertKey key : keys) {
+            customerIds[i] = key.customerId();
+            serviceTypes[i] = key.serviceType();
+            alertTypes[i] = key.alertType().name();
+            i++;
+        }
+        statement.setArray(firstIndex, statement.getConnection().createArrayOf("varchar", customerIds));
+        statement.setArray(firstIndex + 1, statement.getConnection().createArrayOf("varchar", serviceTypes));
+        statement.setArray(firstIndex + 2, statement.getConnection().createArrayOf("varchar", alertTypes));
+    }
+}
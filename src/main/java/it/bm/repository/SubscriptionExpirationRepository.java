@@ -0,0 +1,131 @@
+package it.bm.repository;
+
+import it.bm.model.ingestion.ExpirationReminder;
+import it.bm.model.ingestion.ExpiringSubscription;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+
+/*
+ * The subscriptions still running, ACTIVE or PENDING_RENEWAL, read for the expiration reminders from
+ * idx_customer_subscriptions_running_expiration: the predicates repeat the one of the partial index with the status
+ * ids as literals, a bound parameter would not let the planner use it. The reminders of a day are claimed in
+ * expiration_reminder_run by the instance that sends them.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SubscriptionExpirationRepository {
+
+    /* a loose index scan: one probe of the index per distinct date rather than a read of every running row */
+    private static final String RUNNING_EXPIRATION_DATES_SQL = """
+            WITH RECURSIVE dates AS (
+                (SELECT c.expiration_date
+                 FROM customer_service_subscriptions c
+                 WHERE c.status_id IN (%1$s) AND c.expiration_date > ?
+                 ORDER BY c.expiration_date
+                 LIMIT 1)
+                UNION ALL
+                SELECT (SELECT c.expiration_date
+                        FROM customer_service_subscriptions c
+                        WHERE c.status_id IN (%1$s) AND c.expiration_date > d.expiration_date
+                        ORDER BY c.expiration_date
+                        LIMIT 1)
+                FROM dates d
+                WHERE d.expiration_date IS NOT NULL
+            )
+            SELECT expiration_date FROM dates WHERE expiration_date IS NOT NULL
+            """;
+
+    private static final String RUNNING_EXPIRING_ON_SQL = """
+            SELECT c.id, c.customer_id, c.service_type
+            FROM customer_service_subscriptions c
+            WHERE c.status_id IN (%1$s) AND c.expiration_date = ? AND c.id > ?
+            ORDER BY c.id
+            LIMIT ?
+            """;
+
+    private static final String RUNNING_STATUS_IDS_SQL = """
+            SELECT id FROM subscription_status WHERE code IN ('ACTIVE', 'PENDING_RENEWAL') ORDER BY id
+            """;
+
+    /*
+     * A day is claimed when it is new, when this instance already holds it, or when the instance holding it has
+     * not made progress for a lease; a completed day is never claimed again. The last id sent is returned.
+     */
+    private static final String CLAIM_RUN_SQL = """
+            INSERT INTO expiration_reminder_run AS r (expiration_date, days_left, claimed_by, claimed_at, last_id)
+            VALUES (?, ?, ?, now(), 0)
+            ON CONFLICT (expiration_date, days_left) DO UPDATE
+                SET claimed_by = EXCLUDED.claimed_by, claimed_at = EXCLUDED.claimed_at
+                WHERE r.completed_at IS NULL
+                  AND (r.claimed_by = EXCLUDED.claimed_by OR r.claimed_at < now() - make_interval(secs => ?))
+            RETURNING r.last_id
+            """;
+
+    private static final String RUN_PROGRESS_SQL = """
+            UPDATE expiration_reminder_run SET last_id = ?, claimed_at = now()
+            WHERE expiration_date = ? AND days_left = ? AND claimed_by = ?
+            """;
+
+    private static final String RUN_COMPLETED_SQL = """
+            UPDATE expiration_reminder_run SET completed_at = now()
+            WHERE expiration_date = ? AND days_left = ? AND claimed_by = ?
+            """;
+
+    private static final String DELETE_RUNS_BEFORE_SQL = "DELETE FROM expiration_reminder_run WHERE expiration_date < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile String runningStatusIds;
+
+    public List<LocalDate> findRunningExpirationDatesAfter(LocalDate date) {
+        return jdbcTemplate.queryForList(RUNNING_EXPIRATION_DATES_SQL.formatted(this.runningStatusIds()), LocalDate.class,
+                Date.valueOf(date));
+    }
+
+    /* the page of running subscriptions expiring on the date after the given id, in id order */
+    public List<ExpiringSubscription> findRunningExpiringOn(LocalDate date, long afterId, int limit) {
+        return jdbcTemplate.query(RUNNING_EXPIRING_ON_SQL.formatted(this.runningStatusIds()),
+                (rs, rowNum) -> new ExpiringSubscription(rs.getLong("id"), rs.getString("customer_id"), rs.getString("service_type")),
+                Date.valueOf(date), afterId, limit);
+    }
+
+    /* the last id sent of the day, empty when another instance holds it or it is complete */
+    public OptionalLong claimRun(ExpirationReminder reminder, String instanceId, Duration lease) {
+        List<Long> lastId = jdbcTemplate.queryForList(CLAIM_RUN_SQL, Long.class, Date.valueOf(reminder.expirationDate()),
+                reminder.daysLeft(), instanceId, lease.toMillis() / 1000.0);
+        return lastId.isEmpty() ? OptionalLong.empty() : OptionalLong.of(lastId.get(0));
+    }
+
+    /* false when another instance took the day over, the caller must stop sending */
+    public boolean recordProgress(ExpirationReminder reminder, String instanceId, long lastId) {
+        return jdbcTemplate.update(RUN_PROGRESS_SQL, lastId, Date.valueOf(reminder.expirationDate()), reminder.daysLeft(),
+                instanceId) == 1;
+    }
+
+    public void completeRun(ExpirationReminder reminder, String instanceId) {
+        jdbcTemplate.update(RUN_COMPLETED_SQL, Date.valueOf(reminder.expirationDate()), reminder.daysLeft(), instanceId);
+    }
+
+    public int deleteRunsBefore(LocalDate date) {
+        return jdbcTemplate.update(DELETE_RUNS_BEFORE_SQL, Date.valueOf(date));
+    }
+
+    /* the status ids are fixed once the schema is migrated, they are read on the first query */
+    private String runningStatusIds() {
+        String ids = runningStatusIds;
+        if (ids == null) {
+            ids = jdbcTemplate.queryForList(RUNNING_STATUS_IDS_SQL, Long.class).stream()
+                    .map(String::valueOf).collect(Collectors.joining(", "));
+            runningStatusIds = ids;
+        }
+        return ids;
+    }
+}
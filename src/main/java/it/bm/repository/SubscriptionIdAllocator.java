@@ -0,0 +1,43 @@
+package it.bm.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+import static it.bm.model.entity.CustomerServiceSubscriptions.ID_ALLOCATION_SIZE;
+
+/*
+ * Reserves ids from cust_sub_seq for rows written outside Hibernate. Each nextval hands out the block
+ * (value - ID_ALLOCATION_SIZE, value], the same interpretation Hibernate's pooled optimizer uses, so ids
+ * allocated here never collide with ids allocated by the JPA path.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SubscriptionIdAllocator {
+
+    private static final String NEXT_BLOCKS_SQL = "SELECT nextval('cust_sub_seq') FROM generate_series(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long[] allocate(int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        while (filled < count) {
+            int blocks = (count - filled + ID_ALLOCATION_SIZE - 1) / ID_ALLOCATION_SIZE;
+            List<Long> highValues = jdbcTemplate.queryForList(NEXT_BLOCKS_SQL, Long.class, blocks);
+            for (long high : highValues) {
+                long low = high - ID_ALLOCATION_SIZE + 1;
+                if (low < 1) {
+                    // the very first value of the sequence does not own a full block
+                    continue;
+                }
+                for (long id = low; id <= high && filled < count; id++) {
+                    ids[filled++] = id;
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,81 @@
+package it.bm.repository;
+
+import it.bm.model.ingestion.StatusTransitionBatch;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/* Turns the running subscriptions, ACTIVE or PENDING_RENEWAL, whose expiration date has passed into EXPIRED */
+@Repository
+@RequiredArgsConstructor
+public class SubscriptionStatusTransitionRepository {
+
+    /*
+     * One statement, hence one short transaction, per batch. The batch is the next window of running rows in
+     * (expiration_date, id) order, read from idx_customer_subscriptions_running_expiration: the predicate repeats the
+     * one of the partial index with the status ids as literals, a bound parameter would not let the planner use it.
+     * The rows left EXPIRED by earlier runs are not in the index, a run reads only those turned since. Rows locked by
+     * an upload are skipped rather than waited for, the next run takes them. The expired counters follow through the
+     * update trigger of customer_expired_counter.
+     */
+    private static final String EXPIRE_BATCH_SQL = """
+            WITH scanned AS (
+                SELECT c.expiration_date, c.id
+                FROM customer_service_subscriptions c
+                WHERE c.status_id IN (%1$s)
+                  AND (c.expiration_date, c.id) > (?, ?) AND c.expiration_date < ?
+                ORDER BY c.expiration_date, c.id
+                LIMIT ?
+            ), locked AS (
+                SELECT c.id
+                FROM customer_service_subscriptions c
+                JOIN scanned k ON k.id = c.id
+                WHERE c.status_id IN (%1$s)
+                  AND c.expiration_date < ?
+                FOR UPDATE OF c SKIP LOCKED
+            ), expired AS (
+                UPDATE customer_service_subscriptions c
+                SET status_id = (SELECT id FROM subscription_status WHERE code = 'EXPIRED')
+                FROM locked l
+                WHERE c.id = l.id
+                RETURNING c.id
+            )
+            SELECT (SELECT count(*) FROM scanned) AS scanned, (SELECT count(*) FROM expired) AS expired,
+                   last.expiration_date, last.id
+            FROM (SELECT expiration_date, id FROM scanned ORDER BY expiration_date DESC, id DESC LIMIT 1) last
+            """;
+
+    private static final String RUNNING_STATUS_IDS_SQL = """
+            SELECT id FROM subscription_status WHERE code IN ('ACTIVE', 'PENDING_RENEWAL') ORDER BY id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile String expireBatchSql;
+
+    /* the batch of up to batchSize rows after the given key expiring before the given date, empty past the last one */
+    public Optional<StatusTransitionBatch> expireBatch(LocalDate expiringBefore, LocalDate afterExpirationDate, long afterId,
+                                                       int batchSize) {
+        List<StatusTransitionBatch> batch = jdbcTemplate.query(this.expireBatchSql(), (rs, rowNum) -> new StatusTransitionBatch(
+                        rs.getLong("scanned"), rs.getLong("expired"), rs.getObject("expiration_date", LocalDate.class),
+                        rs.getLong("id")),
+                afterExpirationDate, afterId, expiringBefore, batchSize, expiringBefore);
+        return batch.stream().findFirst();
+    }
+
+    /* the status ids are fixed once the schema is migrated, they are read on the first batch */
+    private String expireBatchSql() {
+        String sql = expireBatchSql;
+        if (sql == null) {
+            List<Long> runningIds = jdbcTemplate.queryForList(RUNNING_STATUS_IDS_SQL, Long.class);
+            sql = EXPIRE_BATCH_SQL.formatted(runningIds.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+            expireBatchSql = sql;
+        }
+        return sql;
+    }
+}
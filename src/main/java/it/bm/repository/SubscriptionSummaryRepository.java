@@ -0,0 +1,278 @@
+package it.bm.repository;
+
+import it.bm.model.projection.AvgCustomerSpending;
+import it.bm.model.projection.ServiceTypeCount;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/*
+ * Reads the report summary from the aggregate tables that the triggers of customer_service_subscriptions keep up to
+ * date, and reconciles them with the subscriptions table. A reconciliation recomputes the figures of its keys and
+ * writes only those that differ, in a repeatable read transaction: a row the triggers changed after its snapshot
+ * makes it fail with a serialization error instead of being overwritten with a stale value.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SubscriptionSummaryRepository {
+
+    private static final String RUNNING_BY_SERVICE_TYPE_SQL = """
+            SELECT service_type, running_count
+            FROM service_type_summary
+            WHERE running_count > 0
+            ORDER BY service_type
+            """;
+
+    private static final String AVERAGE_SPENDING_SQL = """
+            SELECT customer_id, amount_sum / subscription_count AS avg_amount
+            FROM customer_summary
+            WHERE subscription_count > 0
+            ORDER BY customer_id
+            """;
+
+    private static final String EXPIRING_BETWEEN_SQL = """
+            SELECT DISTINCT customer_id
+            FROM customer_expiration_summary
+            WHERE expiration_date BETWEEN ? AND ? AND running_count > 0
+            ORDER BY customer_id
+            """;
+
+    /*
+     * The sections of the summary that grow with the customers, in customer order after a given customer: the key
+     * of the next page, or where a broken stream resumes. Read as a page with a LIMIT, or streamed through a cursor.
+     */
+    private static final String AVERAGE_SPENDING_AFTER_SQL = """
+            SELECT customer_id, amount_sum / subscription_count AS avg_amount
+            FROM customer_summary
+            WHERE subscription_count > 0 AND customer_id > ?
+            ORDER BY customer_id
+            """;
+
+    private static final String EXPIRED_ABOVE_AFTER_SQL = """
+            SELECT customer_id
+            FROM customer_expired_counter
+            WHERE expired_count > ? AND customer_id > ?
+            ORDER BY customer_id
+            """;
+
+    private static final String EXPIRING_BETWEEN_AFTER_SQL = """
+            SELECT DISTINCT customer_id
+            FROM customer_expiration_summary
+            WHERE expiration_date BETWEEN ? AND ? AND running_count > 0 AND customer_id > ?
+            ORDER BY customer_id
+            """;
+
+    private static final String PAGE_LIMIT = "LIMIT ?";
+
+    private static final RowMapper<AvgCustomerSpending> AVERAGE_SPENDING_MAPPER =
+            (rs, rowNum) -> new AvgCustomerSpending(rs.getString("customer_id"), rs.getDouble("avg_amount"));
+
+    /* the customer closing the next range of the given size, or the last customer of either table */
+    private static final String NEXT_CUSTOMER_BOUNDARY_SQL = """
+            SELECT coalesce(
+                (SELECT customer_id FROM customer_summary WHERE customer_id > ? ORDER BY customer_id OFFSET ? LIMIT 1),
+                greatest((SELECT max(customer_id) FROM customer_summary),
+                         (SELECT max(customer_id) FROM customer_service_subscriptions)))
+            """;
+
+    private static final String RECONCILE_SERVICE_TYPES_SQL = """
+            WITH fresh AS (
+                SELECT c.service_type, count(*) AS running_count
+                FROM customer_service_subscriptions c
+                JOIN subscription_status s ON s.id = c.status_id
+                WHERE s.code IN ('ACTIVE', 'PENDING_RENEWAL')
+                GROUP BY c.service_type
+            ), wrong AS (
+                SELECT coalesce(f.service_type, k.service_type) AS service_type, f.running_count
+                FROM fresh f
+                FULL JOIN service_type_summary k ON k.service_type = f.service_type
+                WHERE f.running_count IS DISTINCT FROM k.running_count
+            ), removed AS (
+                DELETE FROM service_type_summary k USING wrong w
+                WHERE k.service_type = w.service_type AND w.running_count IS NULL
+                RETURNING 1
+            ), fixed AS (
+                INSERT INTO service_type_summary AS k (service_type, running_count, updated_at)
+                SELECT service_type, running_count, now() FROM wrong WHERE running_count IS NOT NULL ORDER BY service_type
+                ON CONFLICT (service_type) DO UPDATE
+                    SET running_count = EXCLUDED.running_count, updated_at = EXCLUDED.updated_at
+                RETURNING 1
+            )
+            SELECT (SELECT count(*) FROM removed) + (SELECT count(*) FROM fixed)
+            """;
+
+    private static final String RECONCILE_CUSTOMERS_SQL = """
+            WITH fresh AS (
+                SELECT customer_id, count(*) AS subscription_count, sum(amount) AS amount_sum
+                FROM customer_service_subscriptions
+                WHERE customer_id > ? AND customer_id <= ?
+                GROUP BY customer_id
+            ), wrong AS (
+                SELECT coalesce(f.customer_id, k.customer_id) AS customer_id, f.subscription_count, f.amount_sum
+                FROM fresh f
+                FULL JOIN (SELECT * FROM customer_summary WHERE customer_id > ? AND customer_id <= ?) k
+                    ON k.customer_id = f.customer_id
+                WHERE f.subscription_count IS DISTINCT FROM k.subscription_count OR f.amount_sum IS DISTINCT FROM k.amount_sum
+            ), removed AS (
+                DELETE FROM customer_summary k USING wrong w
+                WHERE k.customer_id = w.customer_id AND w.subscription_count IS NULL
+                RETURNING 1
+            ), fixed AS (
+                INSERT INTO customer_summary AS k (customer_id, subscription_count, amount_sum, updated_at)
+                SELECT customer_id, subscription_count, amount_sum, now() FROM wrong
+                WHERE subscription_count IS NOT NULL ORDER BY customer_id
+                ON CONFLICT (customer_id) DO UPDATE
+                    SET subscription_count = EXCLUDED.subscription_count, amount_sum = EXCLUDED.amount_sum,
+                        updated_at = EXCLUDED.updated_at
+                RETURNING 1
+            )
+            SELECT (SELECT count(*) FROM removed) + (SELECT count(*) FROM fixed)
+            """;
+
+    private static final String RECONCILE_EXPIRED_COUNTERS_SQL = """
+            WITH fresh AS (
+                SELECT c.customer_id, count(*) AS expired_count
+                FROM customer_service_subscriptions c
+                JOIN subscription_status s ON s.id = c.status_id
+                WHERE c.customer_id > ? AND c.customer_id <= ? AND s.code = 'EXPIRED'
+                GROUP BY c.customer_id
+            ), wrong AS (
+                SELECT coalesce(f.customer_id, k.customer_id) AS customer_id, f.expired_count
+                FROM fresh f
+                FULL JOIN (SELECT * FROM customer_expired_counter WHERE customer_id > ? AND customer_id <= ?) k
+                    ON k.customer_id = f.customer_id
+                WHERE f.expired_count IS DISTINCT FROM k.expired_count
+            ), removed AS (
+                DELETE FROM customer_expired_counter k USING wrong w
+                WHERE k.customer_id = w.customer_id AND w.expired_count IS NULL
+                RETURNING 1
+            ), fixed AS (
+                INSERT INTO customer_expired_counter AS k (customer_id, expired_count, updated_at)
+                SELECT customer_id, expired_count, now() FROM wrong WHERE expired_count IS NOT NULL ORDER BY customer_id
+                ON CONFLICT (customer_id) DO UPDATE
+                    SET expired_count = EXCLUDED.expired_count, updated_at = EXCLUDED.updated_at
+                RETURNING 1
+            )
+            SELECT (SELECT count(*) FROM removed) + (SELECT count(*) FROM fixed)
+            """;
+
+    private static final String RECONCILE_CUSTOMER_EXPIRATIONS_SQL = """
+            WITH fresh AS (
+                SELECT c.expiration_date, c.customer_id, count(*) AS running_count
+                FROM customer_service_subscriptions c
+                JOIN subscription_status s ON s.id = c.status_id
+                WHERE c.customer_id > ? AND c.customer_id <= ? AND s.code IN ('ACTIVE', 'PENDING_RENEWAL')
+                GROUP BY c.expiration_date, c.customer_id
+            ), wrong AS (
+                SELECT coalesce(f.expiration_date, k.expiration_date) AS expiration_date,
+                       coalesce(f.customer_id, k.customer_id) AS customer_id, f.running_count
+                FROM fresh f
+                FULL JOIN (SELECT * FROM customer_expiration_summary WHERE customer_id > ? AND customer_id <= ?) k
+                    ON k.expiration_date = f.expiration_date AND k.customer_id = f.customer_id
+                WHERE f.running_count IS DISTINCT FROM k.running_count
+            ), removed AS (
+                DELETE FROM customer_expiration_summary k USING wrong w
+                WHERE k.expiration_date = w.expiration_date AND k.customer_id = w.customer_id AND w.running_count IS NULL
+                RETURNING 1
+            ), fixed AS (
+                INSERT INTO customer_expiration_summary AS k (expiration_date, customer_id, running_count)
+                SELECT expiration_date, customer_id, running_count FROM wrong
+                WHERE running_count IS NOT NULL ORDER BY expiration_date, customer_id
+                ON CONFLICT (expiration_date, customer_id) DO UPDATE
+                    SET running_count = EXCLUDED.running_count
+                RETURNING 1
+            )
+            SELECT (SELECT count(*) FROM removed) + (SELECT count(*) FROM fixed)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /* ACTIVE and PENDING_RENEWAL subscriptions per service type */
+    public List<ServiceTypeCount> findRunningCountsByServiceType() {
+        return jdbcTemplate.query(RUNNING_BY_SERVICE_TYPE_SQL,
+                (rs, rowNum) -> new ServiceTypeCount(rs.getString("service_type"), rs.getLong("running_count")));
+    }
+
+    public List<AvgCustomerSpending> findAverageSpendingPerCustomer() {
+        return jdbcTemplate.query(AVERAGE_SPENDING_SQL, AVERAGE_SPENDING_MAPPER);
+    }
+
+    public List<AvgCustomerSpending> findAverageSpendingPage(String afterCustomerId, int size) {
+        return jdbcTemplate.query(AVERAGE_SPENDING_AFTER_SQL + PAGE_LIMIT, AVERAGE_SPENDING_MAPPER, afterCustomerId, size);
+    }
+
+    /* in a read only transaction, which the driver needs to fetch the rows fetchSize at a time through a cursor */
+    @Transactional(readOnly = true)
+    public void forEachAverageSpending(String afterCustomerId, int fetchSize, Consumer<? super AvgCustomerSpending> consumer) {
+        this.stream(AVERAGE_SPENDING_AFTER_SQL, fetchSize,
+                rs -> consumer.accept(AVERAGE_SPENDING_MAPPER.mapRow(rs, 0)), afterCustomerId);
+    }
+
+    public List<String> findCustomersWithExpiredCountAbovePage(long limit, String afterCustomerId, int size) {
+        return jdbcTemplate.queryForList(EXPIRED_ABOVE_AFTER_SQL + PAGE_LIMIT, String.class, limit, afterCustomerId, size);
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachCustomerWithExpiredCountAbove(long limit, String afterCustomerId, int fetchSize, Consumer<? super String> consumer) {
+        this.stream(EXPIRED_ABOVE_AFTER_SQL, fetchSize, rs -> consumer.accept(rs.getString("customer_id")), limit, afterCustomerId);
+    }
+
+    /* customers with an ACTIVE or PENDING_RENEWAL subscription expiring between the two dates, both included */
+    public List<String> findCustomersWithRunningExpiringBetween(LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForList(EXPIRING_BETWEEN_SQL, String.class, from, to);
+    }
+
+    public List<String> findCustomersWithRunningExpiringBetweenPage(LocalDate from, LocalDate to, String afterCustomerId, int size) {
+        return jdbcTemplate.queryForList(EXPIRING_BETWEEN_AFTER_SQL + PAGE_LIMIT, String.class, from, to, afterCustomerId, size);
+    }
+
+    @Transactional(readOnly = true)
+    public void forEachCustomerWithRunningExpiringBetween(LocalDate from, LocalDate to, String afterCustomerId, int fetchSize,
+                                                         Consumer<? super String> consumer) {
+        this.stream(EXPIRING_BETWEEN_AFTER_SQL, fetchSize, rs -> consumer.accept(rs.getString("customer_id")),
+                from, to, afterCustomerId);
+    }
+
+    /* the last customer of the range of up to size customers after the given one, empty past the last customer */
+    public Optional<String> findNextCustomerBoundary(String afterCustomerId, int size) {
+        String boundary = jdbcTemplate.queryForObject(NEXT_CUSTOMER_BOUNDARY_SQL, String.class, afterCustomerId, size - 1);
+        return Optional.ofNullable(boundary).filter(customerId -> customerId.compareTo(afterCustomerId) > 0);
+    }
+
+    /* the service type rows corrected; aggregates the whole table, the service types have no narrower range */
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public long reconcileServiceTypes() {
+        return jdbcTemplate.queryForObject(RECONCILE_SERVICE_TYPES_SQL, Long.class);
+    }
+
+    /* the customer, expired counter and expiration day rows corrected for the customers after one up to another */
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public long reconcileCustomers(String afterCustomerId, String upToCustomerId) {
+        long corrected = 0;
+        for (String sql : List.of(RECONCILE_CUSTOMERS_SQL, RECONCILE_EXPIRED_COUNTERS_SQL, RECONCILE_CUSTOMER_EXPIRATIONS_SQL)) {
+            corrected += jdbcTemplate.queryForObject(sql, Long.class,
+                    afterCustomerId, upToCustomerId, afterCustomerId, upToCustomerId);
+        }
+        return corrected;
+    }
+
+    private void stream(String sql, int fetchSize, RowCallbackHandler handler, Object... args) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            new ArgumentPreparedStatementSetter(args).setValues(statement);
+            return statement;
+        }, handler);
+    }
+}
@@ -7,30 +7,45 @@ import io.swagger.v3.oas.annotations.media.Encoding;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.projection.AvgCustomerSpending;
+import it.bm.model.response.DuplicateUploadResponse;
+import it.bm.model.response.IngestionJobResponse;
 import it.bm.model.response.ReportSummaryResponse;
+import it.bm.model.response.SummaryPageResponse;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.UUID;
 
 @Tag(name = "Report", description = "Endpoints to upload CSV data and retrieve report summaries")
 public interface ReportController {
 
     @Operation(
             summary = "Upload CSV file",
-            description = "Accepts a CSV file, processes it, and creates/updates the report dataset.",
+            description = "Validates a CSV file and queues an ingestion job that processes it and creates/updates the report dataset. " +
+                    "The job is followed through the URL in the Location header.",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "File upload successful",
-                            content = @Content(mediaType = MediaType.TEXT_PLAIN_VALUE,
-                                    schema = @Schema(example = "File upload successful"))),
+                    @ApiResponse(responseCode = "202", description = "File accepted, ingestion job queued",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = IngestionJobResponse.class))),
                     @ApiResponse(responseCode = "400", description = "Invalid argument within file or format"),
+                    @ApiResponse(responseCode = "409", description = "Same content already ingested, or being ingested",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = DuplicateUploadResponse.class))),
                     @ApiResponse(responseCode = "415", description = "Unsupported media type"),
-                    @ApiResponse(responseCode = "500", description = "Server error while processing file")
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent uploads, overall or by the caller, retry after the Retry-After seconds"),
+                    @ApiResponse(responseCode = "500", description = "Server error while processing file"),
+                    @ApiResponse(responseCode = "503", description = "Ingestion job queue is full")
             }
     )
-    ResponseEntity<String> uploadFile(@Parameter(
+    ResponseEntity<IngestionJobResponse> uploadFile(@Parameter(
             description = "CSV file to upload.",
             required = true,
             content = @Content(
@@ -38,18 +53,146 @@ public interface ReportController {
                     schema = @Schema(type = "string", format = "binary"),
                     encoding = @Encoding(name = "file", contentType = "text/csv")
             )
-    ) @RequestParam("file") MultipartFile file) throws IOException;
+    ) @RequestParam("file") MultipartFile file,
+                                      @Parameter(description = "How rows are written: JPA (entity saveAll), COPY (PostgreSQL bulk COPY) or UPSERT (insert or update by customer, service type and activation date). Defaults to the configured mode.")
+                                      @RequestParam(value = "persistenceMode", required = false) PersistenceMode persistenceMode,
+                                      @Parameter(description = "Ingest the file even if the same content was already ingested")
+                                      @RequestParam(value = "force", defaultValue = "false") boolean force) throws IOException;
+
+    @Operation(
+            summary = "Get ingestion job",
+            description = "Returns state, progress and per stage timing of an ingestion job.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Job returned",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = IngestionJobResponse.class))),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired job")
+            }
+    )
+    ResponseEntity<IngestionJobResponse> getJob(@Parameter(description = "Job identifier returned by the upload") @PathVariable("jobId") UUID jobId);
+
+    @Operation(
+            summary = "Download rejected rows",
+            description = "Returns, as CSV, every row a finished ingestion job skipped: record number, reason, offending value and the raw record as it was read.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Rejected rows returned",
+                            content = @Content(mediaType = "text/csv")),
+                    @ApiResponse(responseCode = "404", description = "Unknown, expired or still running job, or no row rejected")
+            }
+    )
+    ResponseEntity<Resource> getRejectedRows(@Parameter(description = "Job identifier returned by the upload") @PathVariable("jobId") UUID jobId);
+
+    @Operation(
+            summary = "Cancel ingestion job",
+            description = "Cancels a queued job or interrupts a running one. Chunks already persisted by a running job are kept.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Cancellation accepted",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = IngestionJobResponse.class))),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired job"),
+                    @ApiResponse(responseCode = "409", description = "Job already finished")
+            }
+    )
+    ResponseEntity<IngestionJobResponse> cancelJob(@Parameter(description = "Job identifier returned by the upload") @PathVariable("jobId") UUID jobId);
 
     @Operation(
             summary = "Get summary report",
-            description = "Returns the computed summary of the uploaded dataset.",
+            description = "Returns the computed summary of the uploaded dataset. The response carries an ETag: a request " +
+                    "whose If-None-Match matches it is answered 304 without a body. When a fresh summary takes too long, " +
+                    "the last one is returned with the X-Summary-Stale header set to true.",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Summary returned",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = ReportSummaryResponse.class))),
+                    @ApiResponse(responseCode = "304", description = "Summary unchanged since the ETag in If-None-Match"),
                     @ApiResponse(responseCode = "404", description = "No data available"),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds"),
                     @ApiResponse(responseCode = "500", description = "Server error")
             }
     )
-    ResponseEntity<ReportSummaryResponse> getSummaryReport();
+    ResponseEntity<byte[]> getSummaryReport();
+
+    @Operation(
+            summary = "Page the average spending per customer",
+            description = "Returns, in customer order, up to size entries of the averageSpendingPerCustomer section of the summary after the " +
+                    "given customer. Pass nextAfter as after to read the next page; it is null on the last one.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Page returned",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)),
+                    @ApiResponse(responseCode = "400", description = "Size out of range"),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<SummaryPageResponse<AvgCustomerSpending>> getAverageSpendingPage(
+            @Parameter(description = "Customer the page starts after, empty for the first page") @RequestParam(value = "after", defaultValue = "") String after,
+            @Parameter(description = "Entries per page, up to the configured maximum") @RequestParam(value = "size", required = false) Integer size);
+
+    @Operation(
+            summary = "Stream the average spending per customer",
+            description = "Streams, in customer order, every entry of the averageSpendingPerCustomer section of the summary after the given " +
+                    "customer as NDJSON, one line per entry, each an object with customerId and avgAmount. A broken stream resumes after its last line.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Entries streamed",
+                            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<StreamingResponseBody> streamAverageSpending(
+            @Parameter(description = "Customer the stream starts after, empty for all") @RequestParam(value = "after", defaultValue = "") String after);
+
+    @Operation(
+            summary = "Page the customers with more than one expired service",
+            description = "Returns, in customer order, up to size entries of the customersWithMoreThanOneServiceExpired section of the summary after the " +
+                    "given customer. Pass nextAfter as after to read the next page; it is null on the last one.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Page returned",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)),
+                    @ApiResponse(responseCode = "400", description = "Size out of range"),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<SummaryPageResponse<String>> getCustomersWithExpiredServicesPage(
+            @Parameter(description = "Customer the page starts after, empty for the first page") @RequestParam(value = "after", defaultValue = "") String after,
+            @Parameter(description = "Entries per page, up to the configured maximum") @RequestParam(value = "size", required = false) Integer size);
+
+    @Operation(
+            summary = "Stream the customers with more than one expired service",
+            description = "Streams, in customer order, every entry of the customersWithMoreThanOneServiceExpired section of the summary after the given " +
+                    "customer as NDJSON, one line per entry, each a customer id string. A broken stream resumes after its last line.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Entries streamed",
+                            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<StreamingResponseBody> streamCustomersWithExpiredServices(
+            @Parameter(description = "Customer the stream starts after, empty for all") @RequestParam(value = "after", defaultValue = "") String after);
+
+    @Operation(
+            summary = "Page the customers with services expiring within 15 days",
+            description = "Returns, in customer order, up to size entries of the customersWithServicesExpiringSoon section of the summary after the " +
+                    "given customer. Pass nextAfter as after to read the next page; it is null on the last one.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Page returned",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE)),
+                    @ApiResponse(responseCode = "400", description = "Size out of range"),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<SummaryPageResponse<String>> getCustomersExpiringSoonPage(
+            @Parameter(description = "Customer the page starts after, empty for the first page") @RequestParam(value = "after", defaultValue = "") String after,
+            @Parameter(description = "Entries per page, up to the configured maximum") @RequestParam(value = "size", required = false) Integer size);
+
+    @Operation(
+            summary = "Stream the customers with services expiring within 15 days",
+            description = "Streams, in customer order, every entry of the customersWithServicesExpiringSoon section of the summary after the given " +
+                    "customer as NDJSON, one line per entry, each a customer id string. A broken stream resumes after its last line.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Entries streamed",
+                            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent summary requests, overall or by the caller, retry after the Retry-After seconds")
+            }
+    )
+    ResponseEntity<StreamingResponseBody> streamCustomersExpiringSoon(
+            @Parameter(description = "Customer the stream starts after, empty for all") @RequestParam(value = "after", defaultValue = "") String after);
 }
@@ -1,21 +1,41 @@
 package it.bm.rest;
 
-import it.bm.model.response.ReportSummaryResponse;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.projection.AvgCustomerSpending;
+import it.bm.model.response.IngestionJobResponse;
+import it.bm.model.response.ReportSummarySnapshot;
+import it.bm.model.response.SummaryPageResponse;
+import it.bm.service.AdmissionControlService;
+import it.bm.service.IngestionJobService;
+import it.bm.service.ReportSectionService;
 import it.bm.service.ReportService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.UUID;
 
 @RestController
 @RequiredArgsConstructor
@@ -23,20 +43,115 @@ import java.io.IOException;
 @CrossOrigin(origins = "*")
 public class ReportControllerImpl implements ReportController {
 
+    private static final String SUMMARY_STALE_HEADER = "X-Summary-Stale";
+
     private final ReportService reportService;
+    private final ReportSectionService reportSectionService;
+    private final IngestionJobService ingestionJobService;
 
 
     @PostMapping(value = "/upload-csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("hasRole('REPORT_USER')")
-    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file) throws IOException {
-        reportService.createReport(file);
-        return ResponseEntity.status(HttpStatus.OK).body("File upload successful: " + file.getOriginalFilename());
+    public ResponseEntity<IngestionJobResponse> uploadFile(@RequestParam("file") MultipartFile file,
+                                                           @RequestParam(value = "persistenceMode", required = false) PersistenceMode persistenceMode,
+                                                           @RequestParam(value = "force", defaultValue = "false") boolean force) throws IOException {
+        IngestionJob job = ingestionJobService.submit(file, persistenceMode, force);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/v1/report/jobs/{jobId}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(IngestionJobResponse.of(job));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<IngestionJobResponse> getJob(@PathVariable("jobId") UUID jobId) {
+        return ingestionJobService.findJob(jobId)
+                .map(job -> ResponseEntity.ok(IngestionJobResponse.of(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/jobs/{jobId}/rejected-rows", produces = "text/csv")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<Resource> getRejectedRows(@PathVariable("jobId") UUID jobId) {
+        return ingestionJobService.findRejectedRowsFile(jobId)
+                .<ResponseEntity<Resource>>map(file -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                                .filename("rejected-rows-" + jobId + ".csv").build().toString())
+                        .body(new FileSystemResource(file)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/jobs/{jobId}/cancel")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<IngestionJobResponse> cancelJob(@PathVariable("jobId") UUID jobId) {
+        return ingestionJobService.cancelJob(jobId)
+                .map(job -> ResponseEntity.status(job.isCancelRequested() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                        .body(IngestionJobResponse.of(job)))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/summary")
     @PreAuthorize("hasRole('REPORT_USER')")
-    public ResponseEntity<ReportSummaryResponse> getSummaryReport() {
-        return ResponseEntity.ok(reportService.getReportSummary());
+    public ResponseEntity<byte[]> getSummaryReport() {
+        ReportSummarySnapshot snapshot = reportService.getReportSummarySnapshot();
+        if (snapshot.cached()) {
+            RequestContextHolder.currentRequestAttributes().setAttribute(AdmissionControlService.NO_LATENCY_SAMPLE,
+                    Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+        /* the If-None-Match of the request is matched against the ETag when the response is written, a 304 then */
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.eTag())
+                .cacheControl(CacheControl.noCache())
+                .header(SUMMARY_STALE_HEADER, String.valueOf(snapshot.stale()))
+                .body(snapshot.body());
+    }
+
+    @GetMapping("/summary/average-spending")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<SummaryPageResponse<AvgCustomerSpending>> getAverageSpendingPage(
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return ResponseEntity.ok(reportSectionService.getAverageSpendingPage(after, size));
     }
-}
 
+    @GetMapping(value = "/summary/average-spending/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<StreamingResponseBody> streamAverageSpending(@RequestParam(value = "after", defaultValue = "") String after) {
+        return ndjson(out -> reportSectionService.streamAverageSpending(after, out));
+    }
+
+    @GetMapping("/summary/customers-with-expired-services")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<SummaryPageResponse<String>> getCustomersWithExpiredServicesPage(
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return ResponseEntity.ok(reportSectionService.getCustomersWithExpiredServicesPage(after, size));
+    }
+
+    @GetMapping(value = "/summary/customers-with-expired-services/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<StreamingResponseBody> streamCustomersWithExpiredServices(@RequestParam(value = "after", defaultValue = "") String after) {
+        return ndjson(out -> reportSectionService.streamCustomersWithExpiredServices(after, out));
+    }
+
+    @GetMapping("/summary/customers-expiring-soon")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<SummaryPageResponse<String>> getCustomersExpiringSoonPage(
+            @RequestParam(value = "after", defaultValue = "") String after,
+            @RequestParam(value = "size", required = false) Integer size) {
+        return ResponseEntity.ok(reportSectionService.getCustomersExpiringSoonPage(after, size));
+    }
+
+    @GetMapping(value = "/summary/customers-expiring-soon/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<StreamingResponseBody> streamCustomersExpiringSoon(@RequestParam(value = "after", defaultValue = "") String after) {
+        return ndjson(out -> reportSectionService.streamCustomersExpiringSoon(after, out));
+    }
+
+    /* written on an async request thread once the handler returns, the rows are read then */
+    private static ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
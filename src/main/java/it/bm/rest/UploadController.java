@@ -0,0 +1,107 @@
+package it.bm.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.response.DuplicateUploadResponse;
+import it.bm.model.response.IngestionJobResponse;
+import it.bm.model.response.UploadPartResponse;
+import it.bm.model.response.UploadSessionResponse;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+@Tag(name = "Chunked upload", description = "Endpoints to upload large CSV files in resumable parts")
+public interface UploadController {
+
+    @Operation(
+            summary = "Initiate chunked upload",
+            description = "Opens an upload whose parts are then sent one by one. The upload is followed through the URL in the Location header.",
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "Upload initiated",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UploadSessionResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Invalid file name")
+            }
+    )
+    ResponseEntity<UploadSessionResponse> initiateUpload(
+            @Parameter(description = "Name of the CSV file being uploaded", required = true)
+            @RequestParam("fileName") String fileName) throws IOException;
+
+    @Operation(
+            summary = "Upload part",
+            description = "Stores a numbered part of the file, parts are assembled in ascending order starting from 1. " +
+                    "Sending a part again replaces it, so a failed part is simply retried.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Part stored",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UploadPartResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Invalid part number, part too large or checksum mismatch"),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired upload, or one started by another user"),
+                    @ApiResponse(responseCode = "409", description = "Upload already completed")
+            }
+    )
+    ResponseEntity<UploadPartResponse> uploadPart(
+            @Parameter(description = "Upload identifier") @PathVariable("uploadId") UUID uploadId,
+            @Parameter(description = "Part number, from 1") @PathVariable("partNumber") int partNumber,
+            @Parameter(description = "Hex encoded SHA-256 of the part, checked before the part is stored")
+            @RequestHeader(value = "X-Content-SHA256", required = false) String sha256,
+            @Parameter(hidden = true) InputStream content) throws IOException;
+
+    @Operation(
+            summary = "Get chunked upload",
+            description = "Returns the stored parts with their size and checksum, so that an interrupted upload can be resumed.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Upload returned",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UploadSessionResponse.class))),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired upload, or one started by another user")
+            }
+    )
+    ResponseEntity<UploadSessionResponse> getUpload(@Parameter(description = "Upload identifier") @PathVariable("uploadId") UUID uploadId);
+
+    @Operation(
+            summary = "Complete chunked upload",
+            description = "Validates the assembled file and queues an ingestion job that reads the parts in order. " +
+                    "Completing again returns the same job.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Upload complete, ingestion job queued",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = IngestionJobResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Missing parts or invalid file content"),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired upload, or one started by another user"),
+                    @ApiResponse(responseCode = "409", description = "Same content already ingested, or being ingested",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = DuplicateUploadResponse.class))),
+                    @ApiResponse(responseCode = "429", description = "Too many concurrent uploads, overall or by the caller, retry after the Retry-After seconds"),
+                    @ApiResponse(responseCode = "503", description = "Ingestion job queue is full, completion can be retried")
+            }
+    )
+    ResponseEntity<IngestionJobResponse> completeUpload(
+            @Parameter(description = "Upload identifier") @PathVariable("uploadId") UUID uploadId,
+            @Parameter(description = "How rows are written: JPA (entity saveAll), COPY (PostgreSQL bulk COPY) or UPSERT (insert or update by customer, service type and activation date). Defaults to the configured mode.")
+            @RequestParam(value = "persistenceMode", required = false) PersistenceMode persistenceMode,
+            @Parameter(description = "Ingest the file even if the same content was already ingested")
+            @RequestParam(value = "force", defaultValue = "false") boolean force) throws IOException;
+
+    @Operation(
+            summary = "Abort chunked upload",
+            description = "Discards an upload that was not completed together with its parts.",
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "Upload aborted"),
+                    @ApiResponse(responseCode = "404", description = "Unknown or expired upload, or one started by another user"),
+                    @ApiResponse(responseCode = "409", description = "Upload already completed")
+            }
+    )
+    ResponseEntity<Void> abortUpload(@Parameter(description = "Upload identifier") @PathVariable("uploadId") UUID uploadId) throws IOException;
+}
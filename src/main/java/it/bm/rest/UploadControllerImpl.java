@@ -0,0 +1,91 @@
+package it.bm.rest;
+
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.UploadSession;
+import it.bm.model.response.IngestionJobResponse;
+import it.bm.model.response.UploadPartResponse;
+import it.bm.model.response.UploadSessionResponse;
+import it.bm.service.ChunkedUploadService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/report/uploads")
+@CrossOrigin(origins = "*")
+public class UploadControllerImpl implements UploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+
+
+    @PostMapping
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<UploadSessionResponse> initiateUpload(@RequestParam("fileName") String fileName) throws IOException {
+        UploadSession session = chunkedUploadService.initiate(fileName);
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/v1/report/uploads/{uploadId}")
+                .buildAndExpand(session.getId())
+                .toUri();
+        return ResponseEntity.created(location).body(UploadSessionResponse.of(session));
+    }
+
+    @PutMapping(value = "/{uploadId}/parts/{partNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<UploadPartResponse> uploadPart(@PathVariable("uploadId") UUID uploadId,
+                                                         @PathVariable("partNumber") int partNumber,
+                                                         @RequestHeader(value = "X-Content-SHA256", required = false) String sha256,
+                                                         InputStream content) throws IOException {
+        return chunkedUploadService.putPart(uploadId, partNumber, content, sha256)
+                .map(part -> ResponseEntity.ok(UploadPartResponse.of(part)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{uploadId}")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<UploadSessionResponse> getUpload(@PathVariable("uploadId") UUID uploadId) {
+        return chunkedUploadService.findSession(uploadId)
+                .map(session -> ResponseEntity.ok(UploadSessionResponse.of(session)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<IngestionJobResponse> completeUpload(@PathVariable("uploadId") UUID uploadId,
+                                                               @RequestParam(value = "persistenceMode", required = false) PersistenceMode persistenceMode,
+                                                               @RequestParam(value = "force", defaultValue = "false") boolean force) throws IOException {
+        return chunkedUploadService.complete(uploadId, persistenceMode, force)
+                .map(job -> ResponseEntity.accepted()
+                        .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                                .path("/api/v1/report/jobs/{jobId}")
+                                .buildAndExpand(job.getId())
+                                .toUri())
+                        .body(IngestionJobResponse.of(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{uploadId}")
+    @PreAuthorize("hasRole('REPORT_USER')")
+    public ResponseEntity<Void> abortUpload(@PathVariable("uploadId") UUID uploadId) throws IOException {
+        return chunkedUploadService.abort(uploadId)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,151 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.bm.model.AdmissionRejectedException;
+import it.bm.model.enums.AdmissionLane;
+import it.bm.util.AdaptiveConcurrencyLimit;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Decides whether an upload or a summary request may run now. Each lane has a concurrency limit and a quota per
+ * principal, so that one analyst cannot take the whole limit. The summary limit adapts to latency, so that the
+ * requests let in are the ones the database can serve at their usual latency. The upload limit is fixed: an upload
+ * request only spools its body to disk and queues a job, its latency says nothing about the load of the ingestion,
+ * which the job quota and the bounds of the ingestion executors keep in check. A request over either is refused at
+ * once with the time after which trying again makes sense; nothing waits in a queue.
+ */
+@Service
+@Slf4j
+public class AdmissionControlService {
+
+    public static final String CONCURRENCY_LIMIT_EXCEEDED = "CONCURRENCY_LIMIT_EXCEEDED";
+    public static final String QUOTA_EXCEEDED = "QUOTA_EXCEEDED";
+    /* request attribute of a request whose latency says nothing about the load, an answer from a cache */
+    public static final String NO_LATENCY_SAMPLE = AdmissionControlService.class.getName() + ".NO_LATENCY_SAMPLE";
+
+    @Value("${admission.enabled:true}")
+    private boolean enabled;
+    @Value("${admission.upload.max-concurrency:4}")
+    private int uploadMaxConcurrency;
+    @Value("${admission.upload.per-principal:2}")
+    private int uploadPerPrincipal;
+    @Value("${admission.summary.max-concurrency:8}")
+    private int summaryMaxConcurrency;
+    @Value("${admission.summary.per-principal:4}")
+    private int summaryPerPrincipal;
+    @Value("${admission.quota-retry-after:PT30S}")
+    private Duration quotaRetryAfter;
+
+    private final IngestionJobService ingestionJobService;
+    private final AuditorAware<String> auditorProvider;
+    private final MeterRegistry meterRegistry;
+    private final Map<AdmissionLane, AdaptiveConcurrencyLimit> limits = new EnumMap<>(AdmissionLane.class);
+    private final Map<AdmissionLane, Map<String, Integer>> inFlightByPrincipal = new EnumMap<>(AdmissionLane.class);
+
+    public AdmissionControlService(IngestionJobService ingestionJobService,
+                                   AuditorAware<String> auditorProvider,
+                                   MeterRegistry meterRegistry) {
+        this.ingestionJobService = ingestionJobService;
+        this.auditorProvider = auditorProvider;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        limits.put(AdmissionLane.UPLOAD, new AdaptiveConcurrencyLimit(uploadMaxConcurrency, uploadMaxConcurrency));
+        limits.put(AdmissionLane.SUMMARY, new AdaptiveConcurrencyLimit(1, summaryMaxConcurrency));
+        for (AdmissionLane lane : AdmissionLane.values()) {
+            inFlightByPrincipal.put(lane, new ConcurrentHashMap<>());
+            Gauge.builder("admission.limit", limits.get(lane), AdaptiveConcurrencyLimit::getLimit)
+                    .tag("lane", lane.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * Admits a request of the current principal, the user name auditing records, or throws an
+     * AdmissionRejectedException. The permit must be released once the request has been served.
+     */
+    public Permit acquire(AdmissionLane lane) {
+        String principal = auditorProvider.getCurrentAuditor().orElse("system");
+        int used = inFlightByPrincipal.get(lane).merge(principal, 1, Integer::sum)
+                + (lane == AdmissionLane.UPLOAD ? ingestionJobService.countUnfinishedJobs(principal) : 0);
+        if (used > quota(lane)) {
+            releasePrincipal(lane, principal);
+            throw reject(lane, principal, QUOTA_EXCEEDED, quotaRetryAfter);
+        }
+        AdaptiveConcurrencyLimit limit = limits.get(lane);
+        if (!limit.tryAcquire()) {
+            releasePrincipal(lane, principal);
+            throw reject(lane, principal, CONCURRENCY_LIMIT_EXCEEDED, lane == AdmissionLane.UPLOAD
+                    ? quotaRetryAfter : Duration.ofNanos(limit.getLatencyNanos()));
+        }
+        return new Permit(lane, principal, System.nanoTime());
+    }
+
+    /*
+     * Uploads count the jobs the principal still has queued or running, the work an upload really starts, so the
+     * quota holds while the jobs outlive their requests. The request that has just queued its job is counted twice
+     * until it returns, a moment later.
+     */
+    private int quota(AdmissionLane lane) {
+        return lane == AdmissionLane.UPLOAD ? uploadPerPrincipal : summaryPerPrincipal;
+    }
+
+    private AdmissionRejectedException reject(AdmissionLane lane, String principal, String errorCode, Duration retryAfter) {
+        meterRegistry.counter("admission.rejected", "lane", lane.name().toLowerCase(), "reason", errorCode.toLowerCase()).increment();
+        log.info("{} request of {} refused: {}", lane, principal, errorCode);
+        return new AdmissionRejectedException(lane, errorCode, atLeastOneSecond(retryAfter),
+                lane + " request of " + principal + " refused: " + errorCode);
+    }
+
+    private static Duration atLeastOneSecond(Duration retryAfter) {
+        return Duration.ofSeconds(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+
+    private void releasePrincipal(AdmissionLane lane, String principal) {
+        inFlightByPrincipal.get(lane).computeIfPresent(principal, (p, inFlight) -> inFlight == 1 ? null : inFlight - 1);
+    }
+
+    public final class Permit {
+
+        private final AdmissionLane lane;
+        private final String principal;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(AdmissionLane lane, String principal, long startNanos) {
+            this.lane = lane;
+            this.principal = principal;
+            this.startNanos = startNanos;
+        }
+
+        /*
+         * only summaries that did the work are a latency sample: a failed request says nothing about the load, and
+         * the microseconds of an answer from the cache would drag the average far below the cost of a computation
+         */
+        public void release(boolean sample) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            long latencyNanos = sample && lane == AdmissionLane.SUMMARY ? System.nanoTime() - startNanos : -1;
+            limits.get(lane).release(latencyNanos);
+            releasePrincipal(lane, principal);
+        }
+    }
+}
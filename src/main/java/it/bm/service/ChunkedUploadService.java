@@ -0,0 +1,292 @@
+package it.bm.service;
+
+import it.bm.model.UploadConflictException;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.ingestion.UploadPart;
+import it.bm.model.ingestion.UploadSession;
+import it.bm.util.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+@Service
+@Slf4j
+public class ChunkedUploadService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${ingestion.uploads.dir:${java.io.tmpdir}/ingestion-uploads}")
+    private Path uploadsDir;
+    @Value("${ingestion.uploads.max-part-size:1GB}")
+    private DataSize maxPartSize;
+    @Value("${ingestion.uploads.max-parts:10000}")
+    private int maxParts;
+    @Value("${ingestion.uploads.expiry:PT24H}")
+    private Duration expiry;
+
+    private final FileValidationService fileValidationService;
+    private final IngestionJobService ingestionJobService;
+    private final AuditorAware<String> auditorProvider;
+    private final Map<UUID, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(FileValidationService fileValidationService,
+                                IngestionJobService ingestionJobService,
+                                AuditorAware<String> auditorProvider) {
+        this.fileValidationService = fileValidationService;
+        this.ingestionJobService = ingestionJobService;
+        this.auditorProvider = auditorProvider;
+    }
+
+    public UploadSession initiate(String fileName) throws IOException {
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("File must have a valid filename");
+        }
+        evictExpiredSessions();
+        UploadSession session = new UploadSession(fileName, auditorProvider.getCurrentAuditor().orElse("system"), uploadsDir);
+        Files.createDirectories(session.getDirectory());
+        sessions.put(session.getId(), session);
+        log.info("Upload {} initiated for file {} by {}", session.getId(), fileName, session.getCreatedBy());
+        return session;
+    }
+
+    public Optional<UploadSession> findSession(UUID uploadId) {
+        return Optional.ofNullable(this.findOwnSession(uploadId));
+    }
+
+    /*
+     * A part is written to a temporary file and renamed over its final name only once it is complete and matches
+     * the checksum the client sent, if any. Sending a part again, after a dropped connection or a checksum
+     * mismatch, simply replaces it, and an interrupted transfer never leaves a truncated part behind.
+     * A part that follows the parts already digested also feeds the digest of the whole content on its way to disk,
+     * so completing an upload sent in order does not read it again.
+     */
+    public Optional<UploadPart> putPart(UUID uploadId, int partNumber, InputStream content, String expectedSha256) throws IOException {
+        UploadSession session = this.findOwnSession(uploadId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (partNumber < 1 || partNumber > maxParts) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + maxParts);
+        }
+        Lock lock = session.getLock().readLock();
+        lock.lock();
+        try {
+            if (!this.isRegistered(session)) {
+                return Optional.empty();
+            }
+            if (session.isCompleted()) {
+                throw new UploadConflictException("Upload " + uploadId + " is already completed");
+            }
+            Path temporary = Files.createTempFile(session.getDirectory(), partFileName(partNumber), ".tmp");
+            try {
+                Lock partLock = session.getPartLock();
+                Optional<UploadSession.DigestContinuation> continuation;
+                partLock.lock();
+                try {
+                    continuation = session.continueDigest(partNumber);
+                } finally {
+                    partLock.unlock();
+                }
+                MessageDigest digest = FileUtil.newSha256();
+                long size = copy(content, temporary, digest, continuation.map(UploadSession.DigestContinuation::digest).orElse(null));
+                String sha256 = HexFormat.of().formatHex(digest.digest());
+                if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                    throw new IllegalArgumentException("Checksum mismatch for part " + partNumber + ": received " + sha256);
+                }
+                Path part = session.getDirectory().resolve(partFileName(partNumber));
+                UploadPart uploadPart = new UploadPart(partNumber, size, sha256, part);
+                partLock.lock();
+                try {
+                    Files.move(temporary, part, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    session.putPart(uploadPart, continuation);
+                } finally {
+                    partLock.unlock();
+                }
+                log.debug("Upload {} part {} stored, {} bytes", uploadId, partNumber, size);
+                return Optional.of(uploadPart);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Checks that parts 1..n are all there and validates the assembled content, then hands the parts to an
+     * ingestion job that reads them back to back: they are never copied into a single file. Completing again
+     * returns the same job, so a client that lost the response can retry safely. When the content was already
+     * ingested or the job queue is full the upload stays open, to be completed later or aborted.
+     */
+    public Optional<IngestionJob> complete(UUID uploadId, PersistenceMode persistenceMode, boolean force) throws IOException {
+        UploadSession session = this.findOwnSession(uploadId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!this.isRegistered(session)) {
+                return Optional.empty();
+            }
+            if (session.isCompleted()) {
+                return Optional.of(ingestionJobService.findJob(session.getJobId())
+                        .orElseThrow(() -> new UploadConflictException("Upload " + uploadId + " is already completed")));
+            }
+            List<Integer> missingParts = session.getMissingParts();
+            if (!missingParts.isEmpty()) {
+                throw new IllegalArgumentException("Upload " + uploadId + " is missing parts " + missingParts);
+            }
+            List<Path> files = session.getParts().stream().map(UploadPart::path).toList();
+            try (InputStream ignored = fileValidationService.validateCsvStream(FileUtil.concatenate(files), session.getFileName())) {
+                log.debug("Upload {} validated, {} parts, {} bytes", uploadId, files.size(), session.getTotalBytes());
+            }
+            IngestionJob job = ingestionJobService.submit(session.getFileName(), files, session.getContentSha256(),
+                    persistenceMode, force, () -> deleteParts(session));
+            session.completed(job.getId());
+            log.info("Upload {} completed, ingestion job {}", uploadId, job.getId());
+            return Optional.of(job);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* false for unknown uploads, completed ones belong to their job and are cancelled through it */
+    public boolean abort(UUID uploadId) throws IOException {
+        UploadSession session = this.findOwnSession(uploadId);
+        if (session == null) {
+            return false;
+        }
+        Lock lock = session.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!this.isRegistered(session)) {
+                return false;
+            }
+            if (session.isCompleted()) {
+                throw new UploadConflictException("Upload " + uploadId + " is already completed");
+            }
+            sessions.remove(uploadId);
+            FileUtil.deleteRecursively(session.getDirectory());
+            log.info("Upload {} aborted", uploadId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* an upload is only visible to the principal that initiated it, to anyone else it is unknown */
+    private UploadSession findOwnSession(UUID uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        String auditor = auditorProvider.getCurrentAuditor().orElse("system");
+        return session != null && session.getCreatedBy().equals(auditor) ? session : null;
+    }
+
+    /* checked once the session lock is held: an upload evicted meanwhile is gone, parts included */
+    private boolean isRegistered(UploadSession session) {
+        return sessions.get(session.getId()) == session;
+    }
+
+    /* contentDigest, when given, is fed the same bytes as digest */
+    private long copy(InputStream content, Path target, MessageDigest digest, MessageDigest contentDigest) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long size = 0;
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                size += read;
+                if (size > maxPartSize.toBytes()) {
+                    throw new IllegalArgumentException("Part exceeds the maximum size of " + maxPartSize);
+                }
+                digest.update(buffer, 0, read);
+                if (contentDigest != null) {
+                    contentDigest.update(buffer, 0, read);
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    private void deleteParts(UploadSession session) {
+        try {
+            FileUtil.deleteRecursively(session.getDirectory());
+        } catch (IOException e) {
+            log.warn("Could not delete parts of upload {}", session.getId(), e);
+        }
+    }
+
+    /*
+     * Open uploads idle for longer than the expiry are dropped with their parts, completed ones only leave the
+     * registry since their job deletes the parts. Directories left behind by a previous run are swept as well.
+     * A session is evicted under its write lock, expiry and completion checked again once it is held, so its parts
+     * are never deleted while a part is written, or while complete validates them and hands them to a job. A session
+     * whose lock is taken is in use, not idle, and is left for a later pass rather than waited for.
+     */
+    private void evictExpiredSessions() throws IOException {
+        Instant threshold = Instant.now().minus(expiry);
+        for (UploadSession session : sessions.values()) {
+            if (!session.getLastActivityAt().isBefore(threshold)) {
+                continue;
+            }
+            Lock lock = session.getLock().writeLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (session.getLastActivityAt().isBefore(threshold) && sessions.remove(session.getId(), session)) {
+                    if (!session.isCompleted()) {
+                        deleteParts(session);
+                    }
+                    log.info("Upload {} expired", session.getId());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!Files.isDirectory(uploadsDir)) {
+            return;
+        }
+        try (Stream<Path> directories = Files.list(uploadsDir)) {
+            for (Path directory : directories.toList()) {
+                if (isOrphanedUpload(directory) && Files.getLastModifiedTime(directory).toInstant().isBefore(threshold)) {
+                    FileUtil.deleteRecursively(directory);
+                }
+            }
+        }
+    }
+
+    /* only directories named after an upload are swept, anything else in the directory is left alone */
+    private boolean isOrphanedUpload(Path directory) {
+        try {
+            return !sessions.containsKey(UUID.fromString(directory.getFileName().toString()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String partFileName(int partNumber) {
+        return String.format("part-%05d", partNumber);
+    }
+}
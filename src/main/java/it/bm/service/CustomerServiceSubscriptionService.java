@@ -1,45 +1,70 @@
 package it.bm.service;
 
 import it.bm.model.entity.CustomerServiceSubscriptions;
-import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.UpsertResult;
 import it.bm.model.projection.AvgCustomerSpending;
 import it.bm.model.projection.ServiceTypeCount;
+import it.bm.repository.CustomerExpiredCounterRepository;
+import it.bm.repository.CustomerServiceSubscriptionsCopyRepository;
 import it.bm.repository.CustomerServiceSubscriptionsRepository;
+import it.bm.repository.CustomerServiceSubscriptionsUpsertRepository;
+import it.bm.repository.SubscriptionSummaryRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 @Service
 @RequiredArgsConstructor
 public class CustomerServiceSubscriptionService {
 
     private final CustomerServiceSubscriptionsRepository  customerServiceSubscriptionsRepository;
+    private final CustomerServiceSubscriptionsCopyRepository customerServiceSubscriptionsCopyRepository;
+    private final CustomerServiceSubscriptionsUpsertRepository customerServiceSubscriptionsUpsertRepository;
+    private final SubscriptionSummaryRepository subscriptionSummaryRepository;
+    private final CustomerExpiredCounterRepository customerExpiredCounterRepository;
 
+    /*
+     * JPA and COPY append the rows whose natural key is new and skip the others, so a re-sent row does not fail the
+     * whole upload on the unique key; UPSERT matches rows by natural key and reports what it changed
+     */
     @Transactional
-    public void saveAll(List<CustomerServiceSubscriptions> list) {
-        customerServiceSubscriptionsRepository.saveAll(list);
+    public UpsertResult saveAll(List<CustomerServiceSubscriptions> list, PersistenceMode persistenceMode) {
+        return switch (persistenceMode) {
+            case JPA -> append(list, rows -> customerServiceSubscriptionsRepository.saveAll(rows).size());
+            case COPY -> append(list, customerServiceSubscriptionsCopyRepository::copyIn);
+            case UPSERT -> customerServiceSubscriptionsUpsertRepository.upsert(list);
+        };
     }
 
+    private UpsertResult append(List<CustomerServiceSubscriptions> list, ToLongFunction<List<CustomerServiceSubscriptions>> writer) {
+        List<CustomerServiceSubscriptions> rows = customerServiceSubscriptionsUpsertRepository.withoutExistingKeys(list);
+        return UpsertResult.appended(writer.applyAsLong(rows), list.size() - rows.size());
+    }
+
+    /* ACTIVE and PENDING_RENEWAL subscriptions per service type */
     @Transactional(readOnly = true)
-    public List<ServiceTypeCount> countServicesByTypeWithStatus(List<SubscriptionStatusEnum> statuses) {
-        return customerServiceSubscriptionsRepository.countServicesByTypeWithStatus(statuses);
+    public List<ServiceTypeCount> countRunningServicesByType() {
+        return subscriptionSummaryRepository.findRunningCountsByServiceType();
     }
 
     @Transactional(readOnly = true)
     public List<AvgCustomerSpending> averageSpendingPerCustomer() {
-        return customerServiceSubscriptionsRepository.averageSpendingPerCustomer();
+        return subscriptionSummaryRepository.findAverageSpendingPerCustomer();
     }
 
     @Transactional(readOnly = true)
-    public List<String> findCustomersWithMultipleExpiredServices(SubscriptionStatusEnum status, Integer limitCount) {
-        return customerServiceSubscriptionsRepository.findCustomersWithMultipleExpiredServices(status, limitCount == null ? 1 : limitCount);
+    public List<String> findCustomersWithMoreExpiredServicesThan(long limitCount) {
+        return customerExpiredCounterRepository.findCustomersWithExpiredCountAbove(limitCount);
     }
 
+    /* customers with an ACTIVE or PENDING_RENEWAL subscription expiring from today to futureDate */
     @Transactional(readOnly = true)
-    public List<String> findCustomersWithServicesExpiringWithinDays(List<SubscriptionStatusEnum> statuses, LocalDate futureDate) {
-        return customerServiceSubscriptionsRepository.findCustomersWithServicesExpiringWithinDays(statuses, futureDate);
+    public List<String> findCustomersWithServicesExpiringBetween(LocalDate today, LocalDate futureDate) {
+        return subscriptionSummaryRepository.findCustomersWithRunningExpiringBetween(today, futureDate);
     }
 }
@@ -39,8 +39,9 @@ public class EmailService {
             helper.setFrom(fromEmail);
             helper.setTo(mailTo);
             helper.setSubject("Upselling opportunity for customer " + dto.customerId());
-            helper.setText("Since customer whose id is " + dto.customerId() + " has been subscribed to " + dto.upsellingService() +
-                    " service for more than 3 years, it is time to give our clients the opportunity for un upselling subscription.", true);
+            helper.setText("Since customer whose id is " + dto.customerId() + " has been subscribed to " + String.join(", ", dto.upsellingServices()) +
+                    (dto.upsellingServices().size() == 1 ? " service" : " services") +
+                    " for more than 3 years, it is time to give our clients the opportunity for un upselling subscription.", true);
 
             emailSender.send(message);
             log.info("Email successfully sent to {}", mailTo);
@@ -0,0 +1,253 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.ExpirationReminder;
+import it.bm.model.ingestion.ExpiringSubscription;
+import it.bm.model.kafka.ExpiringServiceDTO;
+import it.bm.repository.SubscriptionExpirationRepository;
+import it.bm.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Sends "expires in N days" reminders for the running subscriptions, N taken from the lead days, at the send hour
+ * of the day N days before the expiration. The timers are per expiration date, not per subscription: each date on
+ * which running subscriptions expire has one timer at a time on a timing wheel, the nearest lead still ahead, and
+ * when it fires the subscriptions running that day are read from the table, page by page, and the next lead is set.
+ * A subscription that stopped running or moved its expiration date in the meantime is simply not read. The wheel is
+ * filled with the expiration dates of the table at startup, in the background, and kept up to date by the uploads.
+ * Every instance keeps the same timers, the day's reminders are sent by the one that claims them in the table; one
+ * that stops halfway leaves its claim to another instance once the lease is over. Reminders whose time passed while
+ * the application was down are not sent.
+ */
+@Service
+@Slf4j
+public class ExpirationReminderService {
+
+    private static final Set<SubscriptionStatusEnum> RUNNING = Set.of(SubscriptionStatusEnum.ACTIVE, SubscriptionStatusEnum.PENDING_RENEWAL);
+    private static final int PAGE_SIZE = 10_000;
+    /* a page is a few seconds of sending, a claim without progress for this long belongs to a stopped instance */
+    private static final Duration CLAIM_LEASE = Duration.ofMinutes(10);
+
+    @Value("${expiring.reminders.enabled:true}")
+    private boolean enabled;
+    @Value("${expiring.reminders.lead-days:30,7,1}")
+    private int[] leadDays;
+    @Value("${expiring.reminders.send-hour:9}")
+    private int sendHour;
+    @Value("${expiring.reminders.tick:PT1M}")
+    private Duration tick;
+    @Value("${expiring.reminders.wheel-size:64}")
+    private int wheelSize;
+
+    private final SubscriptionExpirationRepository subscriptionExpirationRepository;
+    private final NotificationService notificationService;
+    private final MeterRegistry meterRegistry;
+    private final Counter sentCounter;
+    private final Counter skippedCounter;
+    private final Timer rebuildTimer;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<ExpirationReminder> scheduled = new HashSet<>();
+    private Clock clock = Clock.systemDefaultZone();
+    private TimingWheel<ExpirationReminder> wheel;
+    private ScheduledExecutorService ticker;
+
+    public ExpirationReminderService(SubscriptionExpirationRepository subscriptionExpirationRepository,
+                                     NotificationService notificationService, MeterRegistry meterRegistry) {
+        this.subscriptionExpirationRepository = subscriptionExpirationRepository;
+        this.notificationService = notificationService;
+        this.meterRegistry = meterRegistry;
+        this.sentCounter = meterRegistry.counter("expiring.reminders.sent");
+        this.skippedCounter = meterRegistry.counter("expiring.reminders.claimed.elsewhere");
+        this.rebuildTimer = meterRegistry.timer("expiring.reminders.rebuild");
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        this.initialize();
+        ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("expiration-reminders").daemon().factory());
+        ticker.execute(this::rebuild);
+        ticker.scheduleAtFixedRate(this::tick, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void initialize() {
+        leadDays = Arrays.stream(leadDays).filter(days -> days >= 0).boxed()
+                .sorted((a, b) -> b - a).distinct().mapToInt(Integer::intValue).toArray();
+        wheel = new TimingWheel<>(tick.toMillis(), wheelSize, clock.millis());
+        Gauge.builder("expiring.reminders.scheduled", this, ExpirationReminderService::scheduledCount).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /* the expiration dates of the persisted rows of an upload; dates that already have a timer leave the wheel as it is */
+    public void schedule(List<CustomerServiceSubscriptions> records) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now(clock);
+        long now = clock.millis();
+        lock.lock();
+        try {
+            for (CustomerServiceSubscriptions record : records) {
+                if (RUNNING.contains(record.getStatus().getCode()) && record.getExpirationDate().isAfter(today)) {
+                    this.scheduleNext(record.getExpirationDate(), Integer.MAX_VALUE, now);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* timers on the wheel, one per expiration date with a lead still ahead */
+    public int scheduledCount() {
+        lock.lock();
+        try {
+            return scheduled.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void rebuild() {
+        long start = System.nanoTime();
+        long now = clock.millis();
+        LocalDate today = LocalDate.now(clock);
+        try {
+            List<LocalDate> dates = subscriptionExpirationRepository.findRunningExpirationDatesAfter(today);
+            lock.lock();
+            try {
+                dates.forEach(date -> this.scheduleNext(date, Integer.MAX_VALUE, now));
+            } finally {
+                lock.unlock();
+            }
+            int purged = subscriptionExpirationRepository.deleteRunsBefore(today);
+            log.info("Expiration reminders loaded for {} expiration dates, {} scheduled, {} past claims purged",
+                    dates.size(), this.scheduledCount(), purged);
+        } catch (RuntimeException e) {
+            log.error("Expiration reminders could not be loaded, only the uploads from now on will schedule them", e);
+        } finally {
+            rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /* never throws: an exception would cancel the periodic run */
+    void tick() {
+        List<ExpirationReminder> due = new ArrayList<>();
+        long now = clock.millis();
+        lock.lock();
+        try {
+            wheel.advance(now, due::add);
+            due.forEach(scheduled::remove);
+        } finally {
+            lock.unlock();
+        }
+        for (ExpirationReminder reminder : due) {
+            try {
+                this.send(reminder);
+                lock.lock();
+                try {
+                    this.scheduleNext(reminder.expirationDate(), reminder.daysLeft(), now);
+                } finally {
+                    lock.unlock();
+                }
+            } catch (RuntimeException e) {
+                log.error("Expiration reminders {} days before {} could not be sent, retried on the next tick",
+                        reminder.daysLeft(), reminder.expirationDate(), e);
+                this.retry(reminder, now);
+            }
+        }
+    }
+
+    /* the day's reminders when this instance claims them, from the subscription after the last one already sent */
+    private void send(ExpirationReminder reminder) {
+        OptionalLong claimed = subscriptionExpirationRepository.claimRun(reminder, instanceId, CLAIM_LEASE);
+        if (claimed.isEmpty()) {
+            skippedCounter.increment();
+            log.debug("Expiration reminders {} days before {} claimed by another instance", reminder.daysLeft(), reminder.expirationDate());
+            return;
+        }
+        long lastId = claimed.getAsLong();
+        long sent = 0;
+        List<ExpiringSubscription> page;
+        do {
+            page = subscriptionExpirationRepository.findRunningExpiringOn(reminder.expirationDate(), lastId, PAGE_SIZE);
+            for (ExpiringSubscription subscription : page) {
+                notificationService.sendExpiringServiceNotification(new ExpiringServiceDTO(subscription.customerId(),
+                        subscription.serviceType(), reminder.expirationDate(), reminder.daysLeft()));
+            }
+            sentCounter.increment(page.size());
+            sent += page.size();
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).id();
+                if (!subscriptionExpirationRepository.recordProgress(reminder, instanceId, lastId)) {
+                    log.warn("Expiration reminders {} days before {} taken over by another instance after {} sent here",
+                            reminder.daysLeft(), reminder.expirationDate(), sent);
+                    return;
+                }
+            }
+        } while (page.size() == PAGE_SIZE);
+        subscriptionExpirationRepository.completeRun(reminder, instanceId);
+        log.info("{} expiration reminders sent {} days before {}", sent, reminder.daysLeft(), reminder.expirationDate());
+    }
+
+    private void retry(ExpirationReminder reminder, long now) {
+        lock.lock();
+        try {
+            if (scheduled.add(reminder)) {
+                wheel.schedule(reminder, now + tick.toMillis());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* the nearest lead shorter than beforeDays whose time is still ahead; the caller holds the lock */
+    private void scheduleNext(LocalDate expirationDate, int beforeDays, long now) {
+        for (int days : leadDays) {
+            if (days >= beforeDays) {
+                continue;
+            }
+            long sendAt = expirationDate.minusDays(days).atTime(sendHour, 0)
+                    .atZone(clock.getZone()).toInstant().toEpochMilli();
+            if (sendAt > now) {
+                ExpirationReminder reminder = new ExpirationReminder(expirationDate, days);
+                if (scheduled.add(reminder)) {
+                    wheel.schedule(reminder, Math.max(sendAt, wheel.currentTimeMillis() + 1));
+                }
+                return;
+            }
+        }
+    }
+}
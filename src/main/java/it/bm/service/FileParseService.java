@@ -1,90 +1,167 @@
 package it.bm.service;
 
-import it.bm.model.csv.CsvRecordDto;
 import it.bm.model.entity.CustomerServiceSubscriptions;
 import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.RejectReason;
 import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.util.csv.CsvRow;
+import it.bm.util.csv.CsvTokenizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Consumer;
 
+import static it.bm.util.Constant.HEADER_ACTIVATION_DATE;
+import static it.bm.util.Constant.HEADER_AMOUNT;
 import static it.bm.util.Constant.HEADER_CUSTOMER_ID;
+import static it.bm.util.Constant.HEADER_EXPIRATION_DATE;
+import static it.bm.util.Constant.HEADER_SERVICE_TYPE;
+import static it.bm.util.Constant.HEADER_STATUS;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FileParseService {
 
-    private final SubscriptionStatusService subscriptionStatusService;
+    private static final int INITIAL_CHUNK_CAPACITY = 1024;
+    /* bound of the raw text kept with a rejected row, a six column row is far shorter */
+    private static final int MAX_REJECTED_RECORD_BYTES = 1024;
 
-    public List<CustomerServiceSubscriptions> parseCsvRecordToEntity(MultipartFile file) {
-        List<CustomerServiceSubscriptions> validRecords = new ArrayList<>();
-
-        try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8));
-             CSVParser csvParser = CSVParser.parse(fileReader,
-                     CSVFormat.DEFAULT.builder()
-                             .setHeader()
-                             .setSkipHeaderRecord(true)
-                             .setIgnoreHeaderCase(true)
-                             .setTrim(true)
-                             .get()))  {
-
-            for (CSVRecord csvRecord : csvParser) {
-                CsvRecordDto dto = new CsvRecordDto(csvRecord);
-                Optional<CustomerServiceSubscriptions> optionalCsvData = validateAndMapToEntity(dto);
-                optionalCsvData.ifPresent(validRecords::add);
-            }
+    private static final List<String> COLUMNS = List.of(HEADER_CUSTOMER_ID, HEADER_SERVICE_TYPE, HEADER_ACTIVATION_DATE,
+            HEADER_EXPIRATION_DATE, HEADER_AMOUNT, HEADER_STATUS);
+    private static final int CUSTOMER_ID = 0;
+    private static final int SERVICE_TYPE = 1;
+    private static final int ACTIVATION_DATE = 2;
+    private static final int EXPIRATION_DATE = 3;
+    private static final int AMOUNT = 4;
+    private static final int STATUS = 5;
+
+    /* amount is a DECIMAL(10,2) column */
+    private static final int AMOUNT_SCALE = 2;
+    private static final long MAX_AMOUNT_CENTS = 9_999_999_999L;
+
+    private static final SubscriptionStatusEnum[] STATUSES = SubscriptionStatusEnum.values();
+    private static final byte[][] STATUS_NAMES = Arrays.stream(STATUSES)
+            .map(status -> status.name().getBytes(StandardCharsets.US_ASCII))
+            .toArray(byte[][]::new);
+
+    private final SubscriptionStatusService subscriptionStatusService;
 
+    /**
+     * Parses the stream handing valid rows to {@code chunkConsumer} every {@code chunkSize} rows,
+     * so that callers never hold more than one chunk per consumer call.
+     *
+     * @return the number of records read, valid or not
+     */
+    public long parseCsvInChunks(InputStream inputStream, int chunkSize, Consumer<List<CustomerServiceSubscriptions>> chunkConsumer,
+                                 RejectedRows rejectedRows) {
+        try (CsvTokenizer tokenizer = new CsvTokenizer(inputStream, COLUMNS)) {
+            return parseRecords(tokenizer, chunkSize, chunkConsumer, rejectedRows::add);
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse CSV data: " + e.getMessage());
         }
-        return validRecords;
     }
 
-    private Optional<CustomerServiceSubscriptions> validateAndMapToEntity(CsvRecordDto dto) {
-        try {
-            String customerId = dto.getCustomerId();
-            if (customerId == null || customerId.isBlank()) {
-                throw new IllegalArgumentException(HEADER_CUSTOMER_ID + " is missing or blank");
-            }
+    public CsvTokenizer newTokenizer(ByteBuffer byteBuffer) {
+        return new CsvTokenizer(byteBuffer, COLUMNS);
+    }
 
-            SubscriptionStatusEnum statusEnum = SubscriptionStatusEnum.valueOf(dto.getStatus().toUpperCase());
-            SubscriptionStatus status = subscriptionStatusService.findByCodeStatus(statusEnum);
-            if (status == null) {
-                throw new IllegalArgumentException("Invalid status: " + dto.getStatus());
+    /*
+     * Record numbers of the rejected rows are the tokenizer's own: for a tokenizer reading only a range of the
+     * file they are relative to the start of that range, and the caller is the one able to rebase them.
+     */
+    public long parseRecords(CsvTokenizer tokenizer, int chunkSize, Consumer<List<CustomerServiceSubscriptions>> chunkConsumer,
+                             Consumer<RejectedRow> rejectedRowConsumer) throws IOException {
+        CsvRow row = tokenizer.newRow();
+        List<CustomerServiceSubscriptions> chunk = new ArrayList<>(Math.min(chunkSize, INITIAL_CHUNK_CAPACITY));
+        while (tokenizer.next(row)) {
+            CustomerServiceSubscriptions csvData = validateAndMapToEntity(row, rejectedRowConsumer);
+            if (csvData != null) {
+                chunk.add(csvData);
+            }
+            if (chunk.size() >= chunkSize) {
+                chunkConsumer.accept(chunk);
+                chunk = new ArrayList<>(Math.min(chunkSize, INITIAL_CHUNK_CAPACITY));
             }
+        }
+        if (!chunk.isEmpty()) {
+            chunkConsumer.accept(chunk);
+        }
+        return tokenizer.getRecordNumber();
+    }
 
-            LocalDate activationDate = LocalDate.parse(dto.getActivationDate());
-            LocalDate expirationDate = LocalDate.parse(dto.getExpirationDate());
-            BigDecimal amount = new BigDecimal(dto.getAmount());
+    /*
+     * Fields are decoded from the tokenizer buffer and a bad row is reported with a RejectReason: no String is
+     * built for a valid row except customer and service, which come from the tokenizer dictionary so that rows
+     * repeating them share one instance, and no exception is thrown for an invalid one, which on files with many
+     * bad rows cost more than the parsing itself.
+     */
+    private CustomerServiceSubscriptions validateAndMapToEntity(CsvRow row, Consumer<RejectedRow> rejectedRowConsumer) {
+        if (row.isMalformed()) {
+            return reject(row, RejectReason.MALFORMED_RECORD, row.getMalformedReason(), rejectedRowConsumer);
+        }
+        if (row.isBlank(CUSTOMER_ID)) {
+            return reject(row, RejectReason.MISSING_CUSTOMER_ID, "", rejectedRowConsumer);
+        }
+        SubscriptionStatusEnum statusCode = parseStatus(row);
+        SubscriptionStatus status = statusCode == null ? null : subscriptionStatusService.findByCodeStatus(statusCode);
+        if (status == null) {
+            return reject(row, RejectReason.INVALID_STATUS, row.getString(STATUS), rejectedRowConsumer);
+        }
+        long activationDate = row.getEpochDay(ACTIVATION_DATE);
+        if (activationDate == CsvRow.INVALID) {
+            return reject(row, RejectReason.INVALID_ACTIVATION_DATE, row.getString(ACTIVATION_DATE), rejectedRowConsumer);
+        }
+        long expirationDate = row.getEpochDay(EXPIRATION_DATE);
+        if (expirationDate == CsvRow.INVALID) {
+            return reject(row, RejectReason.INVALID_EXPIRATION_DATE, row.getString(EXPIRATION_DATE), rejectedRowConsumer);
+        }
+        if (expirationDate < activationDate) {
+            return reject(row, RejectReason.EXPIRATION_BEFORE_ACTIVATION, row.getString(EXPIRATION_DATE), rejectedRowConsumer);
+        }
+        long amountCents = row.getCents(AMOUNT);
+        if (amountCents == CsvRow.INVALID) {
+            return reject(row, RejectReason.INVALID_AMOUNT, row.getString(AMOUNT), rejectedRowConsumer);
+        }
+        if (amountCents <= 0 || amountCents > MAX_AMOUNT_CENTS) {
+            return reject(row, RejectReason.AMOUNT_OUT_OF_RANGE, row.getString(AMOUNT), rejectedRowConsumer);
+        }
 
-            CustomerServiceSubscriptions csvData = new CustomerServiceSubscriptions();
-            csvData.setCustomerId(customerId);
-            csvData.setServiceType(dto.getServiceType());
-            csvData.setActivationDate(activationDate);
-            csvData.setExpirationDate(expirationDate);
-            csvData.setAmount(amount);
-            csvData.setStatus(status);
+        CustomerServiceSubscriptions csvData = new CustomerServiceSubscriptions();
+        csvData.setCustomerId(row.getDictionaryString(CUSTOMER_ID));
+        csvData.setServiceType(row.getDictionaryString(SERVICE_TYPE));
+        csvData.setActivationDate(LocalDate.ofEpochDay(activationDate));
+        csvData.setExpirationDate(LocalDate.ofEpochDay(expirationDate));
+        csvData.setAmount(BigDecimal.valueOf(amountCents, AMOUNT_SCALE));
+        csvData.setStatus(status);
+        return csvData;
+    }
 
-            return Optional.of(csvData);
+    private static CustomerServiceSubscriptions reject(CsvRow row, RejectReason reason, String detail,
+                                                       Consumer<RejectedRow> rejectedRowConsumer) {
+        rejectedRowConsumer.accept(new RejectedRow(row.getRecordNumber(), reason, detail,
+                row.getRawRecord(MAX_REJECTED_RECORD_BYTES)));
+        return null;
+    }
 
-        } catch (IllegalArgumentException | DateTimeParseException | NullPointerException e) {
-            log.warn("Skipping invalid row number {} because {}", dto.getRecordNumber(), e.getMessage());
-            return Optional.empty();
+    private SubscriptionStatusEnum parseStatus(CsvRow row) {
+        for (SubscriptionStatusEnum candidate : STATUSES) {
+            if (row.equalsIgnoreCase(STATUS, STATUS_NAMES[candidate.ordinal()])) {
+                return candidate;
+            }
         }
+        return null;
     }
 }
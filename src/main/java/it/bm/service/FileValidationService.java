@@ -1,17 +1,24 @@
 package it.bm.service;
 
+import com.github.luben.zstd.ZstdIOException;
+import com.github.luben.zstd.ZstdInputStream;
+import it.bm.model.enums.Compression;
 import lombok.RequiredArgsConstructor;
 import org.apache.tika.Tika;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
 
 import static it.bm.util.Constant.EXTENSION_CSV;
 import static it.bm.util.Constant.EXTENSION_TXT;
@@ -29,6 +36,10 @@ import static it.bm.util.Constant.MIME_TYPE_TEXT_PLAIN;
 @Service
 public class FileValidationService {
 
+    /* Tika's magic detection never looks past the first 64KB, so the same prefix covers the header line too */
+    private static final int PREFIX_SIZE = 64 * 1024;
+    private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+
     private final Tika tika;
 
     public FileValidationService() {
@@ -50,7 +61,12 @@ public class FileValidationService {
 
     private static final List<String> EXPECTED_HEADERS = Arrays.asList(HEADER_CUSTOMER_ID, HEADER_SERVICE_TYPE, HEADER_ACTIVATION_DATE, HEADER_EXPIRATION_DATE, HEADER_AMOUNT, HEADER_STATUS);
 
-    public void validateCsvFile(MultipartFile file) throws IOException {
+    /*
+     * Validates the upload and returns the stream the parser must consume. The content is read only once:
+     * the prefix needed for content sniffing and for the header line is peeked through mark/reset on a
+     * buffered stream, so the returned stream still starts at the first byte of the file.
+     */
+    public InputStream validateCsvFile(MultipartFile file) throws IOException {
         if (file == null) {
             throw new IllegalArgumentException("File cannot be null");
         }
@@ -63,26 +79,87 @@ public class FileValidationService {
             throw new IllegalArgumentException("File size cannot be zero");
         }
 
-        String originalFilename = file.getOriginalFilename();
+        return validateCsvStream(file.getInputStream(), file.getOriginalFilename());
+    }
+
+    /*
+     * Gzip and zstd uploads are recognised from their magic bytes and decompressed as a stream in front of the
+     * parser, so they are never inflated to disk or memory. Content sniffing and the header check run on the
+     * decompressed prefix, and the returned stream yields the decompressed content.
+     */
+    public InputStream validateCsvStream(InputStream inputStream, String originalFilename) throws IOException {
         if (originalFilename == null || originalFilename.trim().isEmpty()) {
             throw new IllegalArgumentException("File must have a valid filename");
         }
 
-        if (!hasValidCsvExtension(originalFilename)) {
-            throw new IllegalArgumentException("File must have a valid CSV extension (.csv or .txt)");
+        Compression declaredCompression = Compression.fromFilename(originalFilename);
+        String csvFilename = declaredCompression.stripExtension(originalFilename);
+        if (!hasValidCsvExtension(csvFilename)) {
+            throw new IllegalArgumentException("File must have a valid CSV extension (.csv or .txt), optionally compressed (.gz or .zst)");
         }
 
-        try (InputStream inputStream = file.getInputStream()) {
-            String detectedMimeType = tika.detect(inputStream, originalFilename);
+        BufferedInputStream bufferedStream;
+        try {
+            bufferedStream = new BufferedInputStream(decompressing(inputStream, declaredCompression), PREFIX_SIZE);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+        try {
+            bufferedStream.mark(PREFIX_SIZE);
+            byte[] prefix = readPrefix(bufferedStream);
+            bufferedStream.reset();
+
+            if (prefix.length == 0) {
+                throw new IllegalArgumentException("File cannot be empty");
+            }
+
+            String detectedMimeType = tika.detect(prefix, csvFilename);
             if (!isValidCsvMimeType(detectedMimeType)) {
                 throw new IllegalArgumentException(String.format("File content type '%s' is not a valid CSV type. Expected: %s", detectedMimeType, CSV_MIME_TYPES));
             }
+
+            areExpectedHeadersPresent(headerLine(prefix));
+        } catch (IOException | RuntimeException e) {
+            bufferedStream.close();
+            throw e;
+        }
+        return bufferedStream;
+    }
+
+    /* Compressed uploads can only be read as a stream: ranges of the file cannot be parsed on their own */
+    public boolean isCompressed(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return Compression.fromMagic(inputStream.readNBytes(Compression.MAGIC_SIZE)) != Compression.NONE;
         }
+    }
 
-        try (InputStream headerStream = file.getInputStream()) {
-            areExpectedHeadersPresent(headerStream);
+    /* The magic bytes decide: a .gz or .zst name must match them, while compressed content under a plain name is accepted */
+    private InputStream decompressing(InputStream inputStream, Compression declaredCompression) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, Compression.MAGIC_SIZE);
+        byte[] magic = pushbackStream.readNBytes(Compression.MAGIC_SIZE);
+        pushbackStream.unread(magic);
+        Compression compression = Compression.fromMagic(magic);
+        if (declaredCompression != Compression.NONE && compression != declaredCompression) {
+            throw new IllegalArgumentException("File content is not " + declaredCompression.name().toLowerCase() + " compressed");
         }
+        try {
+            return switch (compression) {
+                case NONE -> pushbackStream;
+                case GZIP -> new GZIPInputStream(pushbackStream, DECOMPRESSION_BUFFER_SIZE);
+                case ZSTD -> new ZstdInputStream(pushbackStream);
+            };
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Compressed content could not be read: " + e.getMessage());
+        }
+    }
 
+    private byte[] readPrefix(BufferedInputStream bufferedStream) throws IOException {
+        try {
+            return bufferedStream.readNBytes(PREFIX_SIZE);
+        } catch (ZipException | ZstdIOException e) {
+            throw new IllegalArgumentException("Compressed content could not be read: " + e.getMessage());
+        }
     }
 
     private boolean hasValidCsvExtension(String filename) {
@@ -94,22 +171,33 @@ public class FileValidationService {
         return CSV_MIME_TYPES.contains(mimeType);
     }
 
-    private void areExpectedHeadersPresent(InputStream inputStream) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                throw new IllegalArgumentException("File does not contain any headers");
-            }
-            String[] headers = headerLine.split(",");
-            if (headers.length != EXPECTED_HEADERS.size()) {
-                throw new IllegalArgumentException("Invalid number of headers. Expected " + EXPECTED_HEADERS.size() + " but found " + headers.length);
-            }
-            for (int i = 0; i < headers.length; i++) {
-                String header = headers[i].trim().toLowerCase();
-                String expected = EXPECTED_HEADERS.get(i);
-                if (!header.equals(expected)) {
-                    throw new IllegalArgumentException(String.format("Invalid header, expected '%s' but found '%s'", expected, header));
-                }
+    private String headerLine(byte[] prefix) {
+        int end = 0;
+        while (end < prefix.length && prefix[end] != '\n') {
+            end++;
+        }
+        if (end == prefix.length && prefix.length == PREFIX_SIZE) {
+            throw new IllegalArgumentException("Header line exceeds " + PREFIX_SIZE + " bytes");
+        }
+        if (end > 0 && prefix[end - 1] == '\r') {
+            end--;
+        }
+        return new String(prefix, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private void areExpectedHeadersPresent(String headerLine) {
+        if (headerLine.isEmpty()) {
+            throw new IllegalArgumentException("File does not contain any headers");
+        }
+        String[] headers = headerLine.split(",");
+        if (headers.length != EXPECTED_HEADERS.size()) {
+            throw new IllegalArgumentException("Invalid number of headers. Expected " + EXPECTED_HEADERS.size() + " but found " + headers.length);
+        }
+        for (int i = 0; i < headers.length; i++) {
+            String header = headers[i].trim().toLowerCase();
+            String expected = EXPECTED_HEADERS.get(i);
+            if (!header.equals(expected)) {
+                throw new IllegalArgumentException(String.format("Invalid header, expected '%s' but found '%s'", expected, header));
             }
         }
     }
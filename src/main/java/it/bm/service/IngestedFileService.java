@@ -0,0 +1,60 @@
+package it.bm.service;
+
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestedFileStatus;
+import it.bm.repository.IngestedFileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@Transactional
+@RequiredArgsConstructor
+public class IngestedFileService {
+
+    private static final int CLAIM_ATTEMPTS = 3;
+
+    private final IngestedFileRepository ingestedFileRepository;
+    private final AuditorAware<String> auditorProvider;
+
+    /*
+     * Records that the content with this digest is being ingested by the job, or returns the earlier ingestion
+     * of the same content. The claim is committed before the job starts so that the same file uploaded twice
+     * at once is caught too; a claim released between the insert and the lookup is simply retried.
+     */
+    public Optional<IngestedFile> claim(String sha256, String fileName, long sizeBytes, UUID jobId) {
+        String createdBy = auditorProvider.getCurrentAuditor().orElse("system");
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            if (ingestedFileRepository.insertIfAbsent(sha256, fileName, sizeBytes, jobId, LocalDateTime.now(), createdBy) == 1) {
+                return Optional.empty();
+            }
+            Optional<IngestedFile> earlier = ingestedFileRepository.findBySha256(sha256);
+            if (earlier.isPresent()) {
+                return earlier;
+            }
+        }
+        throw new IllegalStateException("Could not claim digest " + sha256);
+    }
+
+    public void completed(String sha256, UUID jobId, long rowsPersisted) {
+        ingestedFileRepository.markCompleted(sha256, jobId, rowsPersisted, LocalDateTime.now(), IngestedFileStatus.COMPLETED);
+    }
+
+    /* a job that failed or was cancelled gives its claim back, so the same file can be uploaded again */
+    public void release(String sha256, UUID jobId) {
+        ingestedFileRepository.deleteBySha256AndJobId(sha256, jobId);
+    }
+
+    public void forget(String sha256) {
+        if (ingestedFileRepository.deleteBySha256(sha256) > 0) {
+            log.info("Digest {} forgotten, the file will be ingested again", sha256);
+        }
+    }
+}
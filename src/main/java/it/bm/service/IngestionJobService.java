@@ -0,0 +1,254 @@
+package it.bm.service;
+
+import it.bm.model.DuplicateUploadException;
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestionJobState;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.util.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+
+@Service
+@Slf4j
+public class IngestionJobService {
+
+    @Value("${ingestion.jobs.spool-dir:${java.io.tmpdir}}")
+    private Path spoolDir;
+    @Value("${ingestion.jobs.retention:PT24H}")
+    private Duration retention;
+    @Value("${ingestion.dedup.enabled:true}")
+    private boolean dedupEnabled;
+    @Value("${ingestion.rejects.sample-size:20}")
+    private int rejectsSampleSize;
+    @Value("${ingestion.rejects.error-file-enabled:true}")
+    private boolean rejectsErrorFileEnabled;
+
+    private final FileValidationService fileValidationService;
+    private final ReportService reportService;
+    private final IngestedFileService ingestedFileService;
+    private final AsyncTaskExecutor ingestionJobExecutor;
+    private final AuditorAware<String> auditorProvider;
+    private final Map<UUID, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    public IngestionJobService(FileValidationService fileValidationService,
+                               ReportService reportService,
+                               IngestedFileService ingestedFileService,
+                               @Qualifier("ingestionJobExecutor") AsyncTaskExecutor ingestionJobExecutor,
+                               AuditorAware<String> auditorProvider) {
+        this.fileValidationService = fileValidationService;
+        this.reportService = reportService;
+        this.ingestedFileService = ingestedFileService;
+        this.ingestionJobExecutor = ingestionJobExecutor;
+        this.auditorProvider = auditorProvider;
+    }
+
+    /*
+     * The upload is validated before it is accepted, so malformed files are still refused with a 400, and is then
+     * spooled to a file owned by the job: the multipart temporary file is gone once the request completes. Its
+     * digest is computed on the way to the spooled file. A full job queue surfaces as the executor's
+     * TaskRejectedException.
+     */
+    public IngestionJob submit(MultipartFile file, PersistenceMode persistenceMode, boolean force) throws IOException {
+        try (InputStream ignored = fileValidationService.validateCsvFile(file)) {
+            log.debug("Upload {} validated", file.getOriginalFilename());
+        }
+        Path spooled = Files.createTempFile(spoolDir, "ingestion-job-", ".csv");
+        try {
+            MessageDigest digest = FileUtil.newSha256();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(inputStream, spooled, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return this.submit(file.getOriginalFilename(), List.of(spooled), HexFormat.of().formatHex(digest.digest()),
+                    persistenceMode, force, () -> deleteSpooledFile(spooled));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+    }
+
+    /*
+     * Queues the ingestion of files that are read back to back as one upload. The job owns the files once it is
+     * queued and runs the cleanup when it has finished; if the upload is a duplicate or the queue refuses the job
+     * they stay with the caller.
+     *
+     * Content already ingested, or being ingested, is refused with a DuplicateUploadException, so sending a file
+     * again does not insert its rows and fire its notifications twice. The caller gives the SHA-256 of the content,
+     * computed while it was received, so the files are not read here. With force the earlier ingestion is forgotten,
+     * unless it is still running here.
+     */
+    public IngestionJob submit(String fileName, List<Path> files, String contentSha256, PersistenceMode persistenceMode,
+                               boolean force, Runnable cleanup) throws IOException {
+        evictExpiredJobs();
+        String sha256 = dedupEnabled ? contentSha256 : null;
+        IngestionJob job = new IngestionJob(fileName, persistenceMode, auditorProvider.getCurrentAuditor().orElse("system"), sha256);
+        if (sha256 != null) {
+            if (force && !isIngesting(sha256)) {
+                ingestedFileService.forget(sha256);
+            }
+            Optional<IngestedFile> earlier = ingestedFileService.claim(sha256, fileName, totalSize(files), job.getId());
+            if (earlier.isPresent()) {
+                log.info("Upload {} refused, same content as {} ingested by job {}", fileName, earlier.get().getFileName(), earlier.get().getJobId());
+                throw new DuplicateUploadException(earlier.get());
+            }
+        }
+        /* the future is set before the task can start, so a cancel of a running job always has a thread to interrupt */
+        FutureTask<Void> task = new FutureTask<>(() -> this.run(job, files, cleanup), null);
+        job.setFuture(task);
+        jobs.put(job.getId(), job);
+        try {
+            ingestionJobExecutor.execute(task);
+        } catch (RuntimeException e) {
+            jobs.remove(job.getId());
+            this.recordOutcome(job);
+            throw e;
+        }
+        log.info("Ingestion job {} queued for file {} by {}", job.getId(), job.getFileName(), job.getSubmittedBy());
+        return job;
+    }
+
+    public Optional<IngestionJob> findJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /* the CSV of every row rejected by a finished job, kept as long as the job itself */
+    public Optional<Path> findRejectedRowsFile(UUID jobId) {
+        return findJob(jobId)
+                .filter(job -> job.getState().isFinished())
+                .flatMap(job -> job.getStats().getRejectedRows().getErrorFile());
+    }
+
+    /* jobs of the principal queued or running, what an upload quota is counted on */
+    public int countUnfinishedJobs(String submittedBy) {
+        return (int) jobs.values().stream()
+                .filter(job -> submittedBy.equals(job.getSubmittedBy()) && !job.getState().isFinished())
+                .count();
+    }
+
+    /* jobs of any principal writing rows right now, what the background maintenance gives way to */
+    public int countRunningJobs() {
+        return (int) jobs.values().stream().filter(job -> job.getState() == IngestionJobState.RUNNING).count();
+    }
+
+    /*
+     * A job cancelled while queued gives its digest back right away rather than when its turn comes, so the same
+     * file can be sent again in the meantime.
+     */
+    public Optional<IngestionJob> cancelJob(UUID jobId) {
+        IngestionJob job = jobs.get(jobId);
+        if (job != null && job.cancel()) {
+            log.info("Ingestion job {} cancellation requested", jobId);
+            if (job.getStartedAt() == null) {
+                this.recordOutcome(job);
+            }
+        }
+        return Optional.ofNullable(job);
+    }
+
+    private void run(IngestionJob job, List<Path> files, Runnable cleanup) {
+        try {
+            RejectedRows rejectedRows = new RejectedRows(rejectsSampleSize, rejectsErrorFileEnabled ? rejectedRowsFile(job) : null);
+            if (!job.start(new IngestionStats(rejectedRows))) {
+                return;
+            }
+            reportService.createReport(files, job.getFileName(), job.getPersistenceMode(), job.getStats());
+            job.complete();
+            log.info("Ingestion job {} completed: {}", job.getId(), job.getStats());
+        } catch (Exception e) {
+            if (job.isCancelRequested() || Thread.currentThread().isInterrupted()) {
+                job.cancelled();
+                log.info("Ingestion job {} cancelled after {} rows persisted", job.getId(), job.getStats().getRowsPersisted());
+            } else {
+                job.fail(e.getMessage());
+                log.error("Ingestion job {} failed", job.getId(), e);
+            }
+        } finally {
+            /*
+             * a cancel interrupts the job, and the flag would make the pool fail the connection the outcome is
+             * recorded with; the job is finished by now, so no further cancel can set it again
+             */
+            boolean interrupted = Thread.interrupted();
+            try {
+                this.recordOutcome(job);
+                cleanup.run();
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /* the digest stays claimed only by a completed job, a failed or cancelled upload can be sent again */
+    private void recordOutcome(IngestionJob job) {
+        if (job.getSha256() == null) {
+            return;
+        }
+        try {
+            if (job.getState() == IngestionJobState.COMPLETED) {
+                ingestedFileService.completed(job.getSha256(), job.getId(), job.getStats().getRowsPersisted());
+            } else {
+                ingestedFileService.release(job.getSha256(), job.getId());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not record the outcome of ingestion job {} for digest {}", job.getId(), job.getSha256(), e);
+        }
+    }
+
+    private boolean isIngesting(String sha256) {
+        return jobs.values().stream().anyMatch(job -> sha256.equals(job.getSha256()) && !job.getState().isFinished());
+    }
+
+    private static long totalSize(List<Path> files) throws IOException {
+        long size = 0;
+        for (Path file : files) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+
+    private Path rejectedRowsFile(IngestionJob job) {
+        return spoolDir.resolve("ingestion-job-" + job.getId() + "-rejected.csv");
+    }
+
+    private void deleteSpooledFile(Path spooled) {
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled upload {}", spooled, e);
+        }
+    }
+
+    private void evictExpiredJobs() {
+        Instant threshold = Instant.now().minus(retention);
+        for (IngestionJob job : jobs.values()) {
+            if (job.getState().isFinished() && job.getFinishedAt().isBefore(threshold) && jobs.remove(job.getId(), job)) {
+                deleteSpooledFile(rejectedRowsFile(job));
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.model.FileProcessingException;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.IngestionStats.Stage;
+import it.bm.model.ingestion.UpsertResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+@Service
+@Slf4j
+public class IngestionPipelineService {
+
+    private static final List<CustomerServiceSubscriptions> END_OF_STREAM = List.of();
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    @Value("${ingestion.chunk-size:5000}")
+    private int chunkSize;
+    @Value("${ingestion.queue-capacity:2}")
+    private int queueCapacity;
+
+    private final FileParseService fileParseService;
+    private final ParallelFileParseService parallelFileParseService;
+    private final CustomerServiceSubscriptionService customerServiceSubscriptionService;
+    private final TaskExecutor ingestionExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public IngestionPipelineService(FileParseService fileParseService,
+                                    ParallelFileParseService parallelFileParseService,
+                                    CustomerServiceSubscriptionService customerServiceSubscriptionService,
+                                    @Qualifier("ingestionExecutor") TaskExecutor ingestionExecutor,
+                                    MeterRegistry meterRegistry) {
+        this.fileParseService = fileParseService;
+        this.parallelFileParseService = parallelFileParseService;
+        this.customerServiceSubscriptionService = customerServiceSubscriptionService;
+        this.ingestionExecutor = ingestionExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /*
+     * Parsing runs on the ingestion executor and hands chunks over a small bounded queue, so chunk N+1 is parsed
+     * while chunk N is persisted, then alerted on, by the calling thread: alerts are only raised for rows the
+     * database holds. The queue bound is what keeps memory flat: the parser blocks once it is queueCapacity chunks
+     * ahead of the database. The stats are updated as chunks complete so they can be read while the ingestion runs;
+     * interrupting the calling thread aborts it.
+     */
+    public IngestionStats ingest(InputStream inputStream, PersistenceMode persistenceMode, IngestionStats stats,
+                                 Consumer<List<CustomerServiceSubscriptions>> alertStage) {
+        return this.ingest((size, consumer) -> fileParseService.parseCsvInChunks(inputStream, size, consumer, stats.getRejectedRows()),
+                persistenceMode, stats, alertStage);
+    }
+
+    /* Same pipeline with the file parsed by ranges on the parse pool, chunks still arrive in file order */
+    public IngestionStats ingest(Path file, PersistenceMode persistenceMode, IngestionStats stats,
+                                 Consumer<List<CustomerServiceSubscriptions>> alertStage) {
+        return this.ingest((size, consumer) -> parallelFileParseService.parseCsvInChunks(file, size, consumer, stats.getRejectedRows()),
+                persistenceMode, stats, alertStage);
+    }
+
+    private IngestionStats ingest(ChunkedParser parser, PersistenceMode persistenceMode, IngestionStats stats,
+                                  Consumer<List<CustomerServiceSubscriptions>> alertStage) {
+        BlockingQueue<List<CustomerServiceSubscriptions>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+
+        CompletableFuture<Void> parsing = CompletableFuture.runAsync(() -> {
+            try {
+                long[] chunkStart = {System.nanoTime()};
+                long records = parser.parse(chunkSize, chunk -> {
+                    stats.record(Stage.PARSE, chunk.size(), System.nanoTime() - chunkStart[0]);
+                    stats.advanceRecordsRead();
+                    handOver(queue, chunk, aborted);
+                    chunkStart[0] = System.nanoTime();
+                });
+                stats.setRecordsRead(records);
+            } finally {
+                handOver(queue, END_OF_STREAM, aborted);
+            }
+        }, ingestionExecutor);
+
+        try {
+            List<CustomerServiceSubscriptions> chunk;
+            while ((chunk = queue.take()) != END_OF_STREAM) {
+                long start = System.nanoTime();
+                UpsertResult result = customerServiceSubscriptionService.saveAll(chunk, persistenceMode);
+                long persisted = System.nanoTime();
+                alertStage.accept(chunk);
+                long alerted = System.nanoTime();
+
+                stats.record(Stage.PERSIST, chunk.size(), persisted - start);
+                stats.record(Stage.ALERT, chunk.size(), alerted - persisted);
+                stats.recordPersisted(result);
+                stats.chunkCompleted();
+            }
+            parsing.join();
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            Thread.currentThread().interrupt();
+            throw new FileProcessingException("Ingestion interrupted", e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } catch (RuntimeException e) {
+            aborted.set(true);
+            throw e;
+        } finally {
+            stats.getRejectedRows().close();
+            stats.finish();
+            recordMetrics(stats);
+        }
+        return stats;
+    }
+
+    private void handOver(BlockingQueue<List<CustomerServiceSubscriptions>> queue,
+                          List<CustomerServiceSubscriptions> chunk, AtomicBoolean aborted) {
+        try {
+            while (!queue.offer(chunk, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (aborted.get()) {
+                    throw new CancellationException("Ingestion aborted by consumer");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ingestion parser interrupted");
+        }
+    }
+
+    private void recordMetrics(IngestionStats stats) {
+        for (Stage stage : Stage.values()) {
+            Timer.builder("ingestion.stage")
+                    .tag("stage", stage.name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(stats.getStageMillis(stage), TimeUnit.MILLISECONDS);
+            meterRegistry.counter("ingestion.stage.rows", "stage", stage.name().toLowerCase())
+                    .increment(stats.getStageRows(stage));
+        }
+        stats.getRejectedRows().getCounts().forEach((reason, count) ->
+                meterRegistry.counter("ingestion.rejected.rows", "reason", reason.name().toLowerCase()).increment(count));
+        log.info("Ingestion pipeline finished: {}", stats);
+    }
+
+    @FunctionalInterface
+    private interface ChunkedParser {
+        long parse(int chunkSize, Consumer<List<CustomerServiceSubscriptions>> chunkConsumer);
+    }
+}
@@ -0,0 +1,116 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.repository.NotificationDedupRepository;
+import it.bm.util.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Remembers the alerts sent in the last ttl so that an upload repeating a snapshot does not send them again. The
+ * notification_dedup table is the record, an in-memory bloom filter of its keys sits in front of it: keys the filter
+ * has never seen are new and go straight to the claim, only the keys it may have seen are looked up, and those the
+ * table confirms are dropped without a write. Every key sent is claimed in the table first, which keeps two uploads,
+ * or two instances, from sending the same alert. The filter only grows, it is rebuilt from the live rows every
+ * rebuild interval, when the expired rows are also purged.
+ */
+@Service
+@Slf4j
+public class NotificationDedupService {
+
+    @Value("${notification.dedup.enabled:true}")
+    private boolean enabled;
+    @Value("${notification.dedup.ttl:P30D}")
+    private Duration ttl;
+    @Value("${notification.dedup.expected-keys:1000000}")
+    private long expectedKeys;
+    @Value("${notification.dedup.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    @Value("${notification.dedup.rebuild-interval:PT6H}")
+    private Duration rebuildInterval;
+
+    private final NotificationDedupRepository notificationDedupRepository;
+    private final Counter confirmedCounter;
+    private final Counter unconfirmedCounter;
+    private final Counter suppressedCounter;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile BloomFilter filter;
+    private volatile long filterBuiltAt;
+
+    public NotificationDedupService(NotificationDedupRepository notificationDedupRepository, MeterRegistry meterRegistry) {
+        this.notificationDedupRepository = notificationDedupRepository;
+        this.confirmedCounter = meterRegistry.counter("notification.dedup.lookups", "result", "confirmed");
+        this.unconfirmedCounter = meterRegistry.counter("notification.dedup.lookups", "result", "unconfirmed");
+        this.suppressedCounter = meterRegistry.counter("notification.dedup.suppressed");
+    }
+
+    /* the alerts among the candidates that were not sent within the ttl, now claimed: the caller must send them */
+    public List<AlertKey> claim(Collection<AlertKey> candidates) {
+        if (!enabled || candidates.isEmpty()) {
+            return new ArrayList<>(candidates);
+        }
+        BloomFilter current = currentFilter();
+        Set<AlertKey> unseen = new LinkedHashSet<>();
+        Set<AlertKey> maybeSeen = new LinkedHashSet<>();
+        for (AlertKey key : candidates) {
+            (current.mightContain(key.asFilterKey()) ? maybeSeen : unseen).add(key);
+        }
+        if (!maybeSeen.isEmpty()) {
+            List<AlertKey> active = notificationDedupRepository.findActive(maybeSeen);
+            active.forEach(maybeSeen::remove);
+            confirmedCounter.increment(active.size());
+            unconfirmedCounter.increment(maybeSeen.size());
+            unseen.addAll(maybeSeen);
+        }
+        List<AlertKey> claimed = unseen.isEmpty() ? List.of() : notificationDedupRepository.claim(unseen, ttl);
+        claimed.forEach(key -> current.put(key.asFilterKey()));
+        suppressedCounter.increment(candidates.size() - claimed.size());
+        return claimed;
+    }
+
+    /* gives a claim back when its alert could not be sent, so that the next upload tries again */
+    public void release(AlertKey key) {
+        if (enabled) {
+            notificationDedupRepository.release(key);
+        }
+    }
+
+    /* gives back the claims of alerts that will never be sent, like those of an upload that failed */
+    public void releaseAll(Collection<AlertKey> keys) {
+        if (enabled && !keys.isEmpty()) {
+            notificationDedupRepository.releaseAll(keys);
+        }
+    }
+
+    private BloomFilter currentFilter() {
+        BloomFilter current = filter;
+        if (current != null && System.nanoTime() - filterBuiltAt < rebuildInterval.toNanos()) {
+            return current;
+        }
+        rebuildLock.lock();
+        try {
+            if (filter == current) {
+                long purged = notificationDedupRepository.deleteExpired();
+                BloomFilter rebuilt = new BloomFilter(expectedKeys, falsePositiveRate);
+                long loaded = notificationDedupRepository.forEachActive(key -> rebuilt.put(key.asFilterKey()));
+                filterBuiltAt = System.nanoTime();
+                filter = rebuilt;
+                log.info("Notification dedup filter rebuilt with {} keys, {} expired keys purged", loaded, purged);
+            }
+            return filter;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+}
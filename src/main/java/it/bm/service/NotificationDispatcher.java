@@ -0,0 +1,206 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.kafka.ExpiredServicesKafkaProducer;
+import it.bm.kafka.ExpiringServicesKafkaProducer;
+import it.bm.kafka.UpsellingServiceKafkaProducer;
+import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.model.kafka.ExpiringServiceDTO;
+import it.bm.model.kafka.UpsellingServiceDTO;
+import it.bm.util.MDCUtil;
+import it.bm.util.RingBuffer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Hands notifications to Kafka through a bounded ring buffer drained by a few dedicated threads. A full buffer
+ * makes dispatch wait, so a burst of alerts slows the upload that raises them instead of being rejected. A send
+ * that fails is not retried on the thread that made it: it is scheduled again after the retry backoff, while the
+ * worker moves on. The future returned by dispatch completes once Kafka acknowledged the message, or fails once
+ * the retries are exhausted.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    @Value("${notification.dispatcher.capacity:4096}")
+    private int capacity;
+    @Value("${notification.dispatcher.workers:2}")
+    private int workers;
+    @Value("${notification.dispatcher.wait-strategy:BLOCKING}")
+    private RingBuffer.WaitStrategy waitStrategy;
+    @Value("${retry.maxAttempts:3}")
+    private int maxAttempts;
+    @Value("${retry.initialDelay:1000}")
+    private long initialDelay;
+    @Value("${retry.multiplier:2.0}")
+    private double multiplier;
+    @Value("${retry.maxDelay:5000}")
+    private long maxDelay;
+
+    private final UpsellingServiceKafkaProducer upsellingServiceKafkaProducer;
+    private final ExpiredServicesKafkaProducer expiredServicesKafkaProducer;
+    private final ExpiringServicesKafkaProducer expiringServicesKafkaProducer;
+    private final MeterRegistry meterRegistry;
+    private final Timer latencyTimer;
+    private final Timer backpressureTimer;
+    private final Counter retryCounter;
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private RingBuffer<Dispatch> ringBuffer;
+    private ScheduledExecutorService retryScheduler;
+
+    public NotificationDispatcher(UpsellingServiceKafkaProducer upsellingServiceKafkaProducer,
+                                  ExpiredServicesKafkaProducer expiredServicesKafkaProducer,
+                                  ExpiringServicesKafkaProducer expiringServicesKafkaProducer, MeterRegistry meterRegistry) {
+        this.upsellingServiceKafkaProducer = upsellingServiceKafkaProducer;
+        this.expiredServicesKafkaProducer = expiredServicesKafkaProducer;
+        this.expiringServicesKafkaProducer = expiringServicesKafkaProducer;
+        this.meterRegistry = meterRegistry;
+        this.latencyTimer = meterRegistry.timer("notification.dispatcher.latency");
+        this.backpressureTimer = meterRegistry.timer("notification.dispatcher.backpressure");
+        this.retryCounter = meterRegistry.counter("notification.dispatcher.retries");
+    }
+
+    @PostConstruct
+    void start() {
+        ringBuffer = new RingBuffer<>(capacity, waitStrategy);
+        Gauge.builder("notification.dispatcher.depth", ringBuffer, RingBuffer::size).register(meterRegistry);
+        Gauge.builder("notification.dispatcher.capacity", ringBuffer, RingBuffer::capacity).register(meterRegistry);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("notification-retry").daemon().factory());
+        for (int i = 1; i <= workers; i++) {
+            Thread worker = Thread.ofPlatform().name("notification-dispatcher-" + i).daemon().start(this::drain);
+            workerThreads.add(worker);
+        }
+        log.info("Notification dispatcher started: {} slots, {} workers, {} wait strategy",
+                ringBuffer.capacity(), workers, waitStrategy);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        workerThreads.forEach(Thread::interrupt);
+        for (Thread worker : workerThreads) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        retryScheduler.shutdownNow();
+        Dispatch pending;
+        while ((pending = ringBuffer.poll()) != null) {
+            pending.result.completeExceptionally(new IllegalStateException("Notification dispatcher stopped"));
+        }
+    }
+
+    public CompletableFuture<Void> dispatch(ExpiredServicesDTO message) {
+        return this.enqueue(new Dispatch(message, message.customerId()));
+    }
+
+    public CompletableFuture<Void> dispatch(UpsellingServiceDTO message) {
+        return this.enqueue(new Dispatch(message, message.customerId()));
+    }
+
+    public CompletableFuture<Void> dispatch(ExpiringServiceDTO message) {
+        return this.enqueue(new Dispatch(message, message.customerId()));
+    }
+
+    private CompletableFuture<Void> enqueue(Dispatch dispatch) {
+        if (!ringBuffer.offer(dispatch)) {
+            long waitStart = System.nanoTime();
+            try {
+                ringBuffer.put(dispatch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dispatch.result.completeExceptionally(e);
+            }
+            backpressureTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+        }
+        return dispatch.result;
+    }
+
+    private void drain() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                this.send(ringBuffer.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* the producers read the correlation id from the MDC, so the one of the dispatching thread is set around send */
+    private void send(Dispatch dispatch) {
+        dispatch.attempt++;
+        CompletableFuture<?> sent;
+        try {
+            MDCUtil.setCorrelationId(dispatch.correlationId);
+            sent = switch (dispatch.message) {
+                case UpsellingServiceDTO upselling -> upsellingServiceKafkaProducer.sendMessage(upselling);
+                case ExpiredServicesDTO expired -> expiredServicesKafkaProducer.sendMessage(expired);
+                case ExpiringServiceDTO expiring -> expiringServicesKafkaProducer.sendMessage(expiring);
+                default -> throw new IllegalArgumentException("Unknown notification " + dispatch.message);
+            };
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        } finally {
+            MDCUtil.clearContext();
+        }
+        sent.whenComplete((result, failure) -> {
+            if (failure == null) {
+                latencyTimer.record(System.nanoTime() - dispatch.enqueuedAt, TimeUnit.NANOSECONDS);
+                dispatch.result.complete(null);
+            } else {
+                this.retryOrFail(dispatch, failure);
+            }
+        });
+    }
+
+    private void retryOrFail(Dispatch dispatch, Throwable failure) {
+        if (dispatch.attempt >= maxAttempts) {
+            log.error("Notification for customer {} failed after {} attempts", dispatch.customerId, dispatch.attempt, failure);
+            dispatch.result.completeExceptionally(failure);
+            return;
+        }
+        long delay = (long) Math.min(maxDelay, initialDelay * Math.pow(multiplier, dispatch.attempt - 1));
+        log.warn("Notification for customer {} failed on attempt {}, retrying in {} ms: {}",
+                dispatch.customerId, dispatch.attempt, delay, failure.getMessage());
+        retryCounter.increment();
+        this.scheduleRetry(dispatch, delay);
+    }
+
+    /* the retry thread never waits on a full buffer, it tries again later */
+    private void scheduleRetry(Dispatch dispatch, long delay) {
+        try {
+            retryScheduler.schedule(() -> {
+                if (!ringBuffer.offer(dispatch)) {
+                    this.scheduleRetry(dispatch, initialDelay);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            dispatch.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Dispatch {
+        private final Object message;
+        private final String customerId;
+        private final String correlationId = MDCUtil.getCorrelationId();
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private volatile int attempt;
+
+        private Dispatch(Object message, String customerId) {
+            this.message = message;
+            this.customerId = customerId;
+        }
+    }
+}
@@ -1,85 +1,123 @@
 package it.bm.service;
 
-import it.bm.kafka.ExpiredServicesKafkaProducer;
-import it.bm.kafka.UpsellingServiceKafkaProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.bm.model.enums.AlertType;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.model.ingestion.PublishOutcome;
 import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.model.kafka.ExpiringServiceDTO;
 import it.bm.model.kafka.UpsellingServiceDTO;
-import it.bm.util.MDCUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class NotificationService {
 
-    private final UpsellingServiceKafkaProducer upsellingServiceKafkaProducer;
-    private final ExpiredServicesKafkaProducer expiredServicesKafkaProducer;
+    @Value("${notification.publish.timeout:PT30S}")
+    private Duration publishTimeout;
 
-    @Async("notificationExecutor")
-    @Retryable(
-            retryFor = {Exception.class},
-            maxAttemptsExpression = "${retry.maxAttempts}",
-            backoff = @Backoff(
-                    delayExpression = "${retry.initialDelay}",
-                    multiplierExpression = "${retry.multiplier}",
-                    maxDelayExpression = "${retry.maxDelay}"
-            )
-    )
-    public void sendExpiredServicesNotification(ExpiredServicesDTO message) {
-        Map<String, String> contextMap = MDCUtil.getCopyOfContextMap();
-        try {
-            MDCUtil.setContextMap(contextMap);
-            log.info("Sending expired services notification for customer: {}", message.customerId());
-            expiredServicesKafkaProducer.sendMessage(message);
-        } catch (Exception e) {
-            log.error("Failed to send expired services notification for customer: {}", message.customerId(), e);
-            throw e;
-        } finally {
-            MDCUtil.clearContext();
+    private final NotificationDispatcher notificationDispatcher;
+    private final NotificationDedupService notificationDedupService;
+    private final MeterRegistry meterRegistry;
+
+    /*
+     * The path of the alerts of an upload: every message is handed to the dispatcher at once, so they leave in as
+     * few Kafka batches as the producer makes of them, then the caller waits up to the publish timeout for all the
+     * acknowledgements, retries included. Upselling opportunities that failed give their dedup claims back so the
+     * next upload raises them again.
+     */
+    public PublishOutcome publish(NotificationBatch batch) {
+        if (batch.isEmpty()) {
+            return PublishOutcome.NONE;
+        }
+        List<ExpiredServicesDTO> expiredMessages = batch.getExpiredServicesMessages();
+        List<UpsellingServiceDTO> upsellingMessages = batch.getUpsellingMessages();
+        List<CompletableFuture<?>> sends = new ArrayList<>(expiredMessages.size() + upsellingMessages.size());
+        expiredMessages.forEach(message -> sends.add(notificationDispatcher.dispatch(message)));
+        upsellingMessages.forEach(message -> sends.add(notificationDispatcher.dispatch(message)));
+        awaitAll(sends);
+
+        int published = 0;
+        int failed = 0;
+        int timedOut = 0;
+        for (int i = 0; i < sends.size(); i++) {
+            CompletableFuture<?> future = sends.get(i);
+            if (!future.isDone()) {
+                timedOut++;
+            } else if (!future.isCompletedExceptionally()) {
+                published++;
+            } else {
+                failed++;
+                if (i >= expiredMessages.size()) {
+                    this.releaseClaims(upsellingMessages.get(i - expiredMessages.size()));
+                }
+            }
+        }
+        PublishOutcome outcome = new PublishOutcome(published, failed, timedOut);
+        meterRegistry.counter("notification.published", "result", "acknowledged").increment(published);
+        meterRegistry.counter("notification.published", "result", "failed").increment(failed);
+        meterRegistry.counter("notification.published", "result", "timed_out").increment(timedOut);
+        if (published < outcome.total()) {
+            log.warn("Notifications published with losses: {}", outcome);
+        }
+        return outcome;
+    }
+
+    /*
+     * The notifications of an upload that failed are not sent: part of its records may be persisted, but the alerts
+     * of the rest were never evaluated. The upselling claims taken so far are given back, so that the upload, once
+     * run again, raises them.
+     */
+    public void discard(NotificationBatch batch) {
+        List<AlertKey> claims = batch.getUpsellingMessages().stream()
+                .flatMap(message -> message.upsellingServices().stream()
+                        .map(service -> new AlertKey(message.customerId(), service, AlertType.UPSELLING)))
+                .toList();
+        notificationDedupService.releaseAll(claims);
+        if (!batch.isEmpty()) {
+            log.info("Upload failed, {} notifications discarded and {} upselling claims released", batch.size(), claims.size());
         }
     }
 
-    @Async("notificationExecutor")
-    @Retryable(
-            retryFor = {Exception.class},
-            maxAttemptsExpression = "${retry.maxAttempts}",
-            backoff = @Backoff(
-                    delayExpression = "${retry.initialDelay}",
-                    multiplierExpression = "${retry.multiplier}",
-                    maxDelayExpression = "${retry.maxDelay}"
-            )
-    )
-    public void sendUpsellingNotification(UpsellingServiceDTO message) {
-        Map<String, String> contextMap = MDCUtil.getCopyOfContextMap();
+    /* a message still unanswered at the timeout may yet be delivered, so only failed ones give their claims back */
+    private void awaitAll(List<CompletableFuture<?>> sends) {
         try {
-            MDCUtil.setContextMap(contextMap);
-            log.info("Sending upselling notification for customer: {}", message.customerId());
-            upsellingServiceKafkaProducer.sendMessage(message);
-        } catch (Exception e) {
-            log.error("Failed to send upselling notification for customer: {}", message.customerId(), e);
-            throw e;
-        } finally {
-            MDCUtil.clearContext();
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(publishTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // failures are counted message by message
+        } catch (TimeoutException e) {
+            log.warn("Kafka did not acknowledge every notification within {}", publishTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    @Recover
-    public void recoverExpiredServicesNotification(Exception ex, ExpiredServicesDTO message) {
-        log.error("FINAL FAILURE: Could not send expired services notification for customer {} after all retries. Reason: {}",
-                message.customerId(), ex.getMessage());
+    private void releaseClaims(UpsellingServiceDTO message) {
+        message.upsellingServices().forEach(service ->
+                notificationDedupService.release(new AlertKey(message.customerId(), service, AlertType.UPSELLING)));
     }
 
-    @Recover
-    public void recoverUpsellingNotification(Exception ex, UpsellingServiceDTO message) {
-        log.error("FINAL FAILURE: Could not send upselling notification for customer {} after all retries. Reason: {}",
-                message.customerId(), ex.getMessage());
+    /* the future completes once Kafka acknowledged the reminder or its retries are exhausted */
+    public CompletableFuture<Void> sendExpiringServiceNotification(ExpiringServiceDTO message) {
+        log.debug("Sending expiring service notification for customer: {}", message.customerId());
+        return notificationDispatcher.dispatch(message).whenComplete((result, failure) -> {
+            if (failure != null) {
+                log.error("FINAL FAILURE: Could not send expiring service notification for customer {} after all retries. Reason: {}",
+                        message.customerId(), failure.getMessage());
+            }
+        });
     }
 }
\ No newline at end of file
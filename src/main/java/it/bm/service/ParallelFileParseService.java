@@ -0,0 +1,371 @@
+package it.bm.service;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.RangeRejectedRows;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.util.csv.CsvTokenizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+@Service
+@Slf4j
+public class ParallelFileParseService {
+
+    private static final int SPLITS_PER_THREAD = 4;
+    private static final long MAX_SPLIT_BYTES = 1L << 30;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNKS_AHEAD_PER_THREAD = 4;
+
+    @Value("${ingestion.parallel.min-split-size:8MB}")
+    private DataSize minSplitSize;
+
+    private final FileParseService fileParseService;
+    private final ForkJoinPool parseExecutor;
+
+    public ParallelFileParseService(FileParseService fileParseService,
+                                    @Qualifier("parseExecutor") ForkJoinPool parseExecutor) {
+        this.fileParseService = fileParseService;
+        this.parseExecutor = parseExecutor;
+    }
+
+    /*
+     * Same contract as FileParseService.parseCsvInChunks, but the file is cut into byte ranges that start on
+     * record boundaries and the ranges are parsed concurrently on the parse pool. Chunks and rejected rows are
+     * merged back in file order on the calling thread, with record numbers rebased on the records of the ranges
+     * before them, so chunk order and the rejected record numbers are the ones of a sequential parse.
+     * At most twice the pool parallelism ranges are in flight. The ranges ahead of the one being merged share a
+     * budget of CHUNKS_AHEAD_PER_THREAD chunks per pool thread, so whichever of them is fastest keeps parsing, and the
+     * range being merged may run CHUNKS_AHEAD_PER_THREAD chunks ahead of the merge on its own. The parsed rows held
+     * in memory are bounded by chunks, whatever the size of the ranges. A range waiting for the budget blocks through
+     * ForkJoinPool.managedBlock, so the pool starts a spare worker for the ranges that have not started yet.
+     */
+    public long parseCsvInChunks(Path file, int chunkSize, Consumer<List<CustomerServiceSubscriptions>> chunkConsumer,
+                                 RejectedRows rejectedRows) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = nextRecordStart(channel, 0, false);
+            long[] boundaries = splitBoundaries(channel, headerEnd, size);
+            if (boundaries.length <= 2) {
+                try (InputStream inputStream = Files.newInputStream(file)) {
+                    return fileParseService.parseCsvInChunks(inputStream, chunkSize, chunkConsumer, rejectedRows);
+                }
+            }
+
+            CsvTokenizer headerTokenizer = fileParseService.newTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd));
+            ChunkBudget budget = new ChunkBudget(parseExecutor.getParallelism() * CHUNKS_AHEAD_PER_THREAD);
+            Deque<SplitParse> inFlight = new ArrayDeque<>();
+            int nextSplit = 0;
+            long records = 0;
+            try {
+                while (nextSplit < boundaries.length - 1 || !inFlight.isEmpty()) {
+                    while (nextSplit < boundaries.length - 1 && inFlight.size() < parseExecutor.getParallelism() * 2) {
+                        ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[nextSplit],
+                                boundaries[nextSplit + 1] - boundaries[nextSplit]);
+                        inFlight.add(new SplitParse(headerTokenizer.forRange(range), chunkSize, budget, rejectedRows));
+                        nextSplit++;
+                    }
+                    /* the merged range stays in flight until it is drained, so a failing consumer cancels it too */
+                    SplitParse split = inFlight.peek();
+                    split.drainTo(chunkConsumer);
+                    long splitRecords = split.records.join();
+                    split.rejectedRows.mergeInto(records);
+                    records += splitRecords;
+                    inFlight.poll();
+                }
+            } finally {
+                inFlight.forEach(SplitParse::cancel);
+            }
+            log.debug("Parsed {} records from {} ranges of {}", records, boundaries.length - 1, file);
+            return records;
+
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+            throw new RuntimeException("Failed to parse CSV data: " + cause.getMessage());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse CSV data: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Evenly spaced offsets are moved forward to the next newline that is not inside a quoted field. Whether
+     * an offset falls inside quotes depends on the parity of the quotes before it, so the quotes of every
+     * range are counted in parallel first and the parities are a prefix sum of those counts. Escaped quotes
+     * come in pairs and do not change the parity.
+     */
+    private long[] splitBoundaries(FileChannel channel, long headerEnd, long size) throws IOException {
+        long dataBytes = size - headerEnd;
+        long splitBytes = Math.min(MAX_SPLIT_BYTES,
+                Math.max(minSplitSize.toBytes(), dataBytes / ((long) parseExecutor.getParallelism() * SPLITS_PER_THREAD)));
+        int splits = (int) Math.max(1, (dataBytes + splitBytes - 1) / splitBytes);
+        if (splits == 1) {
+            return new long[]{headerEnd, size};
+        }
+
+        long[] nominal = new long[splits + 1];
+        for (int i = 0; i < splits; i++) {
+            nominal[i] = headerEnd + i * splitBytes;
+        }
+        nominal[splits] = size;
+
+        long[] quotes = runInParallel(splits, i -> countQuotes(channel, nominal[i], nominal[i + 1]));
+        boolean[] insideQuotes = new boolean[splits];
+        long quotesBefore = 0;
+        for (int i = 0; i < splits; i++) {
+            insideQuotes[i] = (quotesBefore & 1) == 1;
+            quotesBefore += quotes[i];
+        }
+
+        long[] boundaries = runInParallel(splits + 1, i -> i == 0 || i == splits
+                ? nominal[i] : nextRecordStart(channel, nominal[i], insideQuotes[i]));
+        return IntStream.range(0, boundaries.length)
+                .filter(i -> i == 0 || boundaries[i] > boundaries[i - 1])
+                .mapToLong(i -> boundaries[i])
+                .toArray();
+    }
+
+    private long[] runInParallel(int tasks, IoTask task) {
+        List<CompletableFuture<Long>> futures = IntStream.range(0, tasks)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.run(i);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, parseExecutor))
+                .toList();
+        return futures.stream().mapToLong(CompletableFuture::join).toArray();
+    }
+
+    private static long countQuotes(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        long quotes = 0;
+        while (range.hasRemaining()) {
+            if (range.get() == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    private static long nextRecordStart(FileChannel channel, long from, boolean insideQuotes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        int read;
+        while ((read = channel.read(buffer.clear(), position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    insideQuotes = !insideQuotes;
+                } else if (b == '\n' && !insideQuotes) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return channel.size();
+    }
+
+    @FunctionalInterface
+    private interface IoTask {
+        long run(int index) throws IOException;
+    }
+
+    /*
+     * Chunks parsed by the ranges ahead of the one being merged and not merged yet. One lock guards the budget and
+     * the chunk queues of all the ranges of a parse: a chunk is a few thousand rows, so it is taken once per chunk.
+     */
+    private static final class ChunkBudget {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private int available;
+
+        private ChunkBudget(int chunks) {
+            this.available = chunks;
+        }
+    }
+
+    /*
+     * The parse of one range on the parse pool. Its chunks are read in order by the merging thread until the parse
+     * is finished, which happens even when the parse fails; records then completes exceptionally. While the range
+     * is ahead of the merge each queued chunk takes one unit of the budget, given back when the chunk is merged;
+     * once it is the merged range it only waits on its own queue. The rejected rows wait for the merge in a
+     * RangeRejectedRows, which spills them to disk past a few hundred; a range cancelled before its merge drops
+     * them once its parse is over, whichever of the parse and the cancel comes last.
+     */
+    private final class SplitParse {
+
+        private final ChunkBudget budget;
+        private final Deque<List<CustomerServiceSubscriptions>> chunks = new ArrayDeque<>();
+        private final RangeRejectedRows rejectedRows;
+        private final CompletableFuture<Long> records;
+        private int budgeted;
+        private boolean merging;
+        private boolean finished;
+        private boolean cancelled;
+
+        private SplitParse(CsvTokenizer tokenizer, int chunkSize, ChunkBudget budget, RejectedRows target) {
+            this.budget = budget;
+            this.rejectedRows = new RangeRejectedRows(target);
+            this.records = CompletableFuture.supplyAsync(() -> {
+                try (tokenizer) {
+                    return fileParseService.parseRecords(tokenizer, chunkSize, this::handOver, rejectedRows::add);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    budget.lock.lock();
+                    try {
+                        finished = true;
+                        if (cancelled) {
+                            rejectedRows.close();
+                        }
+                        budget.changed.signalAll();
+                    } finally {
+                        budget.lock.unlock();
+                    }
+                }
+            }, parseExecutor);
+        }
+
+        private void handOver(List<CustomerServiceSubscriptions> chunk) {
+            HandOver handOver = new HandOver(chunk);
+            try {
+                ForkJoinPool.managedBlock(handOver);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Range parse interrupted");
+            }
+            if (!handOver.queued) {
+                throw new CancellationException("Range parse cancelled");
+            }
+        }
+
+        /* Called with the budget lock held. */
+        private boolean tryQueue(List<CustomerServiceSubscriptions> chunk) {
+            if (merging) {
+                if (chunks.size() >= CHUNKS_AHEAD_PER_THREAD) {
+                    return false;
+                }
+            } else if (budget.available > 0) {
+                budget.available--;
+                budgeted++;
+            } else {
+                return false;
+            }
+            chunks.add(chunk);
+            budget.changed.signalAll();
+            return true;
+        }
+
+        /*
+         * Chunks queued while the range was ahead of the merge were all queued before the first one queued as the
+         * merged range, so the first budgeted chunks taken are the ones that hold the budget.
+         */
+        private void drainTo(Consumer<List<CustomerServiceSubscriptions>> chunkConsumer) {
+            budget.lock.lock();
+            try {
+                merging = true;
+                budget.changed.signalAll();
+            } finally {
+                budget.lock.unlock();
+            }
+            List<CustomerServiceSubscriptions> chunk;
+            while ((chunk = take()) != null) {
+                chunkConsumer.accept(chunk);
+            }
+        }
+
+        private List<CustomerServiceSubscriptions> take() {
+            budget.lock.lock();
+            try {
+                while (chunks.isEmpty() && !finished) {
+                    budget.changed.await();
+                }
+                List<CustomerServiceSubscriptions> chunk = chunks.poll();
+                if (chunk != null) {
+                    if (budgeted > 0) {
+                        budgeted--;
+                        budget.available++;
+                    }
+                    budget.changed.signalAll();
+                }
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Ingestion parser interrupted");
+            } finally {
+                budget.lock.unlock();
+            }
+        }
+
+        private void cancel() {
+            budget.lock.lock();
+            try {
+                cancelled = true;
+                if (finished) {
+                    rejectedRows.close();
+                }
+                budget.changed.signalAll();
+            } finally {
+                budget.lock.unlock();
+            }
+            records.cancel(false);
+        }
+
+        private final class HandOver implements ForkJoinPool.ManagedBlocker {
+
+            private final List<CustomerServiceSubscriptions> chunk;
+            private boolean queued;
+
+            private HandOver(List<CustomerServiceSubscriptions> chunk) {
+                this.chunk = chunk;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                budget.lock.lock();
+                try {
+                    return queued || cancelled || (queued = tryQueue(chunk));
+                } finally {
+                    budget.lock.unlock();
+                }
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                budget.lock.lock();
+                try {
+                    while (!cancelled && !(queued = tryQueue(chunk))) {
+                        budget.changed.await();
+                    }
+                    return true;
+                } finally {
+                    budget.lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package it.bm.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import it.bm.model.projection.AvgCustomerSpending;
+import it.bm.model.response.SummaryPageResponse;
+import it.bm.repository.SubscriptionSummaryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import static it.bm.util.Constant.SUMMARY_EXPIRED_SERVICES_ABOVE;
+import static it.bm.util.Constant.SUMMARY_EXPIRING_WITHIN_DAYS;
+
+/*
+ * The sections of the report summary that hold an entry per customer, read without materializing them: a page of
+ * up to max-page-size customers after a given one, or every customer after it streamed as NDJSON. A stream writes
+ * each row to the response as the cursor fetches it, fetch-size rows at a time, so its memory does not grow with
+ * the section and its first line leaves as soon as the first rows are fetched.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReportSectionService {
+
+    @Value("${report.summary.sections.page-size:1000}")
+    private int defaultPageSize;
+    @Value("${report.summary.sections.max-page-size:10000}")
+    private int maxPageSize;
+    @Value("${report.summary.sections.fetch-size:1000}")
+    private int fetchSize;
+
+    private final SubscriptionSummaryRepository subscriptionSummaryRepository;
+    private final ObjectMapper objectMapper;
+
+    public SummaryPageResponse<AvgCustomerSpending> getAverageSpendingPage(String after, Integer size) {
+        int pageSize = this.pageSize(size);
+        return SummaryPageResponse.of(subscriptionSummaryRepository.findAverageSpendingPage(after, pageSize), pageSize,
+                AvgCustomerSpending::customerId);
+    }
+
+    public void streamAverageSpending(String after, OutputStream out) throws IOException {
+        this.stream(out, line -> subscriptionSummaryRepository.forEachAverageSpending(after, fetchSize, line));
+    }
+
+    public SummaryPageResponse<String> getCustomersWithExpiredServicesPage(String after, Integer size) {
+        int pageSize = this.pageSize(size);
+        return SummaryPageResponse.of(subscriptionSummaryRepository.findCustomersWithExpiredCountAbovePage(
+                SUMMARY_EXPIRED_SERVICES_ABOVE, after, pageSize), pageSize, customerId -> customerId);
+    }
+
+    public void streamCustomersWithExpiredServices(String after, OutputStream out) throws IOException {
+        this.stream(out, line -> subscriptionSummaryRepository.forEachCustomerWithExpiredCountAbove(
+                SUMMARY_EXPIRED_SERVICES_ABOVE, after, fetchSize, line));
+    }
+
+    public SummaryPageResponse<String> getCustomersExpiringSoonPage(String after, Integer size) {
+        int pageSize = this.pageSize(size);
+        LocalDate today = LocalDate.now();
+        return SummaryPageResponse.of(subscriptionSummaryRepository.findCustomersWithRunningExpiringBetweenPage(
+                today, today.plusDays(SUMMARY_EXPIRING_WITHIN_DAYS), after, pageSize), pageSize, customerId -> customerId);
+    }
+
+    public void streamCustomersExpiringSoon(String after, OutputStream out) throws IOException {
+        LocalDate today = LocalDate.now();
+        this.stream(out, line -> subscriptionSummaryRepository.forEachCustomerWithRunningExpiringBetween(
+                today, today.plusDays(SUMMARY_EXPIRING_WITHIN_DAYS), after, fetchSize, line));
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + maxPageSize);
+        }
+        return size;
+    }
+
+    /*
+     * One JSON value per line. Values are not flushed one by one, the generator buffer and the servlet response send
+     * them in chunks; the response is left open to the caller.
+     */
+    private void stream(OutputStream out, Consumer<Consumer<Object>> rows) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            rows.accept(row -> {
+                try {
+                    writer.writeValue(generator, row);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -1,63 +1,123 @@
 package it.bm.service;
 
-import it.bm.kafka.ExpiredServicesKafkaProducer;
-import it.bm.kafka.UpsellingServiceKafkaProducer;
 import it.bm.model.response.ReportSummaryResponse;
+import it.bm.model.response.ReportSummarySnapshot;
 import it.bm.model.entity.CustomerServiceSubscriptions;
-import it.bm.model.enums.SubscriptionStatusEnum;
-import it.bm.model.kafka.ExpiredServicesDTO;
-import it.bm.model.kafka.UpsellingServiceDTO;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionStats;
 import it.bm.model.projection.AvgCustomerSpending;
 import it.bm.model.projection.ServiceTypeCount;
+import it.bm.service.alert.AlertRuleEngine;
+import it.bm.util.FileUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static it.bm.util.Constant.SUMMARY_EXPIRED_SERVICES_ABOVE;
+import static it.bm.util.Constant.SUMMARY_EXPIRING_WITHIN_DAYS;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ReportService {
 
-    @Value("${expired.services.limit:5}")
-    private int expiredServicesLimit;
-    @Value("${years.subscription.limit:3}")
-    private int yearsOfSubscription;
+    @Value("${ingestion.persistence-mode:UPSERT}")
+    private PersistenceMode defaultPersistenceMode;
+    @Value("${ingestion.parallel.enabled:false}")
+    private boolean parallelEnabled;
+    @Value("${ingestion.parallel.min-file-size:64MB}")
+    private DataSize parallelMinFileSize;
 
     private final FileValidationService fileValidationService;
-    private final FileParseService fileParseService;
     private final CustomerServiceSubscriptionService customerServiceSubscriptionService;
+    private final IngestionPipelineService ingestionPipelineService;
+    private final AlertRuleEngine alertRuleEngine;
     private final NotificationService notificationService;
+    private final ExpirationReminderService expirationReminderService;
+    private final ReportSummaryCache reportSummaryCache;
+    private final PlatformTransactionManager transactionManager;
+
+    /*
+     * Entry point of the upload jobs, the only way an upload is ingested. The upload is already on disk, possibly as
+     * consecutive parts that are read back to back, and it goes through the streaming pipeline so that the stats the
+     * job exposes move while it runs. Only a single, uncompressed file can be split into ranges for the parallel
+     * parse. The cached summary is invalidated once the upload is over, whatever its outcome: its chunks may be
+     * committed.
+     */
+    public void createReport(List<Path> files, String filename, PersistenceMode persistenceMode, IngestionStats stats) throws IOException {
+        try {
+            this.ingestReport(files, filename, persistenceMode, stats);
+        } finally {
+            reportSummaryCache.invalidate();
+        }
+    }
 
-    public void createReport(MultipartFile file) throws IOException {
-        fileValidationService.validateCsvFile(file);
-        List<CustomerServiceSubscriptions> records = fileParseService.parseCsvRecordToEntity(file);
-        this.checkForExpiredServices(records, expiredServicesLimit);
-        this.checkForSubscriptionLength(records, yearsOfSubscription);
-        customerServiceSubscriptionService.saveAll(records);
+    private void ingestReport(List<Path> files, String filename, PersistenceMode persistenceMode, IngestionStats stats) throws IOException {
+        PersistenceMode mode = persistenceMode == null ? defaultPersistenceMode : persistenceMode;
+        if (files.size() == 1 && parallelEnabled && Files.size(files.get(0)) >= parallelMinFileSize.toBytes()
+                && !fileValidationService.isCompressed(files.get(0))) {
+            Path file = files.get(0);
+            fileValidationService.validateCsvStream(Files.newInputStream(file), filename).close();
+            this.streamReport(filename, mode, alertStage -> ingestionPipelineService.ingest(file, mode, stats, alertStage));
+            return;
+        }
+        try (InputStream inputStream = fileValidationService.validateCsvStream(FileUtil.concatenate(files), filename)) {
+            this.streamReport(filename, mode, alertStage -> ingestionPipelineService.ingest(inputStream, mode, stats, alertStage));
+        }
     }
 
-    @Transactional(readOnly = true)
-    public ReportSummaryResponse getReportSummary() {
-        List<SubscriptionStatusEnum> activeStatuses = List.of(SubscriptionStatusEnum.ACTIVE, SubscriptionStatusEnum.PENDING_RENEWAL);
+    private void streamReport(String filename, PersistenceMode persistenceMode,
+                              Function<Consumer<List<CustomerServiceSubscriptions>>, IngestionStats> pipeline) {
+        AlertRuleEngine.Run alerts = alertRuleEngine.start();
+        IngestionStats stats;
+        try {
+            stats = pipeline.apply(alerts.andThen(expirationReminderService::schedule));
+        } catch (RuntimeException e) {
+            notificationService.discard(alerts.abandon());
+            throw e;
+        }
+        stats.recordPublished(notificationService.publish(alerts.finish()));
+        log.info("File {} ingested with {} persistence: {}", filename, persistenceMode, stats);
+    }
 
-        Map<String, Long> activeByType = customerServiceSubscriptionService.countServicesByTypeWithStatus(activeStatuses)
+    /*
+     * The summary as served: cached, serialized, and stale when a fresh one took too long. The cache computes it on
+     * its own thread and calls this instance directly, not through the proxy, so the read-only transaction is opened
+     * here rather than declared on getReportSummary.
+     */
+    public ReportSummarySnapshot getReportSummarySnapshot() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return reportSummaryCache.get(() -> readOnly.execute(status -> this.getReportSummary()));
+    }
+
+    /* reads the aggregate tables, whose cost does not grow with the number of subscriptions */
+    public ReportSummaryResponse getReportSummary() {
+        Map<String, Long> activeByType = customerServiceSubscriptionService.countRunningServicesByType()
                 .stream()
                 .collect(Collectors.toMap(ServiceTypeCount::serviceType, ServiceTypeCount::count));
 
         List<AvgCustomerSpending> avgRows = customerServiceSubscriptionService.averageSpendingPerCustomer();
 
-        List<String> customersWithMultipleExpired = customerServiceSubscriptionService.findCustomersWithMultipleExpiredServices(SubscriptionStatusEnum.EXPIRED, 1);
+        List<String> customersWithMultipleExpired = customerServiceSubscriptionService.findCustomersWithMoreExpiredServicesThan(SUMMARY_EXPIRED_SERVICES_ABOVE);
 
-        List<String> customersWithExpiringServices = customerServiceSubscriptionService.findCustomersWithServicesExpiringWithinDays(activeStatuses, LocalDate.now().plusDays(15));
+        LocalDate today = LocalDate.now();
+        List<String> customersWithExpiringServices = customerServiceSubscriptionService.findCustomersWithServicesExpiringBetween(today, today.plusDays(SUMMARY_EXPIRING_WITHIN_DAYS));
 
         return new ReportSummaryResponse(
                 activeByType,
@@ -66,29 +126,4 @@ public class ReportService {
                 customersWithExpiringServices
         );
     }
-
-    private void checkForExpiredServices(List<CustomerServiceSubscriptions> records, int expiredServicesLimit) {
-        Map<String, Long> expiredCountByCustomer = records.stream()
-                .filter(record -> record.getStatus().getCode() == SubscriptionStatusEnum.EXPIRED)
-                .collect(Collectors.groupingBy(CustomerServiceSubscriptions::getCustomerId, Collectors.counting()));
-
-        expiredCountByCustomer.forEach((customerId, count) -> {
-            if (count > expiredServicesLimit) {
-                log.info("Alert: Customer {} has {} expired services.", customerId, count);
-                notificationService.sendExpiredServicesNotification(new ExpiredServicesDTO(customerId, count));
-            }
-        });
-    }
-
-    private void checkForSubscriptionLength(List<CustomerServiceSubscriptions> records, int yearsOfSubscription) {
-        LocalDate threeYearsAgo = LocalDate.now().minusYears(yearsOfSubscription);
-        records.forEach(record -> {
-            if ((record.getStatus().getCode() == SubscriptionStatusEnum.ACTIVE || record.getStatus().getCode() == SubscriptionStatusEnum.PENDING_RENEWAL)
-                    && record.getActivationDate().isBefore(threeYearsAgo)) {
-                log.info("Alert: Upsell opportunity for customer {} about service {}", record.getCustomerId(), record.getServiceType());
-                notificationService.sendUpsellingNotification(new UpsellingServiceDTO(record.getCustomerId(), record.getServiceType()));
-            }
-        });
-    }
-
 }
@@ -0,0 +1,184 @@
+package it.bm.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.model.response.ReportSummaryResponse;
+import it.bm.model.response.ReportSummarySnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+ * The last report summary computed, kept serialized with its ETag so that a poll answered from it costs neither a
+ * query nor a serialization. It stays current until an upload invalidates it, the day changes (the expiring soon
+ * list depends on it) or max-age passes, which bounds how long the changes made elsewhere, by another instance or
+ * the background jobs, go unseen. Concurrent misses share one computation, as long as it was started after the last
+ * invalidation: a miss that follows an upload never takes the summary of a computation started before it. A
+ * computation slower than the compute timeout is left running to refresh the cache, and meanwhile the last summary is served marked stale; with none
+ * yet the caller waits for it.
+ */
+@Service
+@Slf4j
+public class ReportSummaryCache {
+
+    @Value("${report.summary.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${report.summary.cache.max-age:PT1M}")
+    private Duration maxAge;
+    @Value("${report.summary.cache.compute-timeout:PT2S}")
+    private Duration computeTimeout;
+
+    private final ObjectMapper objectMapper;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter staleCounter;
+    private final Timer computeTimer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Clock clock = Clock.systemDefaultZone();
+    private long generation;
+    private Entry current;
+    private CompletableFuture<Entry> computing;
+    private long computingFor;
+    private ExecutorService executor;
+
+    public ReportSummaryCache(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.hitCounter = meterRegistry.counter("report.summary.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("report.summary.cache", "result", "miss");
+        this.staleCounter = meterRegistry.counter("report.summary.cache", "result", "stale");
+        this.computeTimer = meterRegistry.timer("report.summary.compute");
+    }
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("report-summary").daemon().factory());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public ReportSummarySnapshot get(Supplier<ReportSummaryResponse> summary) {
+        if (!enabled) {
+            return this.compute(summary, 0).snapshot;
+        }
+        Entry last;
+        CompletableFuture<Entry> pending;
+        lock.lock();
+        try {
+            last = current;
+            if (last != null && this.isCurrent(last)) {
+                hitCounter.increment();
+                return last.cachedSnapshot;
+            }
+            missCounter.increment();
+            pending = computing != null && computingFor == generation ? computing : this.startComputing(summary);
+        } finally {
+            lock.unlock();
+        }
+        return this.await(pending, last);
+    }
+
+    /* the summary served from now on is computed after this call */
+    public void invalidate() {
+        lock.lock();
+        try {
+            generation++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReportSummarySnapshot await(CompletableFuture<Entry> pending, Entry last) {
+        try {
+            return last == null ? pending.get().snapshot : pending.get(computeTimeout.toMillis(), TimeUnit.MILLISECONDS).snapshot;
+        } catch (TimeoutException e) {
+            staleCounter.increment();
+            log.warn("Report summary not computed within {}, serving the one of {}", computeTimeout, last.snapshot.computedAt());
+            return last.snapshot.asStale();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the report summary", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * The caller holds the lock; computing is set before the completion can clear it. A computation of an earlier
+     * generation still running is left to complete, it only clears computing if no newer one replaced it.
+     */
+    private CompletableFuture<Entry> startComputing(Supplier<ReportSummaryResponse> summary) {
+        long startedFor = generation;
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        computing = future;
+        computingFor = startedFor;
+        future.whenComplete((entry, failure) -> {
+            lock.lock();
+            try {
+                if (computing == future) {
+                    computing = null;
+                }
+                if (entry != null && (current == null || entry.generation >= current.generation)) {
+                    current = entry;
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+        executor.execute(() -> {
+            try {
+                future.complete(this.compute(summary, startedFor));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private Entry compute(Supplier<ReportSummaryResponse> summary, long startedFor) {
+        long start = System.nanoTime();
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(summary.get());
+            String eTag = "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)) + "\"";
+            ReportSummarySnapshot snapshot = new ReportSummarySnapshot(body, eTag, Instant.now(clock), false, false);
+            return new Entry(snapshot, snapshot.asCached(), startedFor, LocalDate.now(clock), System.nanoTime());
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Report summary could not be serialized", e);
+        } finally {
+            computeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /* the caller holds the lock */
+    private boolean isCurrent(Entry entry) {
+        return entry.generation == generation && entry.day.equals(LocalDate.now(clock))
+                && System.nanoTime() - entry.computedAtNanos < maxAge.toNanos();
+    }
+
+    private record Entry(ReportSummarySnapshot snapshot, ReportSummarySnapshot cachedSnapshot, long generation, LocalDate day,
+                         long computedAtNanos) {
+    }
+}
@@ -0,0 +1,121 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.model.ingestion.StatusTransitionBatch;
+import it.bm.repository.SubscriptionStatusTransitionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Turns the ACTIVE and PENDING_RENEWAL subscriptions whose expiration date has passed into EXPIRED, every interval,
+ * so that the stored status no longer depends on the one the CSV had. A run walks only the running rows expiring
+ * before today, in batches, each its own short transaction, and pauses between the batches that wrote something. While
+ * an upload is running on this instance the run waits, it never takes rows or counter locks from an ingestion. Running
+ * on several instances at once is harmless: a row is turned once, the others skip it.
+ */
+@Service
+@Slf4j
+public class SubscriptionStatusTransitionService {
+
+    private static final LocalDate FIRST_KEY = LocalDate.of(1, 1, 1);
+
+    @Value("${subscriptions.transition.enabled:true}")
+    private boolean enabled;
+    @Value("${subscriptions.transition.interval:PT1H}")
+    private Duration interval;
+    @Value("${subscriptions.transition.batch-size:1000}")
+    private int batchSize;
+    @Value("${subscriptions.transition.pause:PT0.1S}")
+    private Duration pause;
+
+    private final SubscriptionStatusTransitionRepository subscriptionStatusTransitionRepository;
+    private final IngestionJobService ingestionJobService;
+    private final Timer runTimer;
+    private final DistributionSummary expiredPerRun;
+    private final DistributionSummary batchesPerRun;
+    private final Counter failedRuns;
+    private Clock clock = Clock.systemDefaultZone();
+    private ScheduledExecutorService scheduler;
+
+    public SubscriptionStatusTransitionService(SubscriptionStatusTransitionRepository subscriptionStatusTransitionRepository,
+                                               IngestionJobService ingestionJobService, MeterRegistry meterRegistry) {
+        this.subscriptionStatusTransitionRepository = subscriptionStatusTransitionRepository;
+        this.ingestionJobService = ingestionJobService;
+        this.runTimer = meterRegistry.timer("subscriptions.transition.run");
+        this.expiredPerRun = meterRegistry.summary("subscriptions.transition.expired");
+        this.batchesPerRun = meterRegistry.summary("subscriptions.transition.batches");
+        this.failedRuns = meterRegistry.counter("subscriptions.transition.failures");
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("subscription-transition").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::run, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /* never throws: an exception would cancel the periodic run; the rows left are taken by the next one */
+    void run() {
+        LocalDate today = LocalDate.now(clock);
+        long start = System.nanoTime();
+        long scanned = 0;
+        long expired = 0;
+        int batches = 0;
+        try {
+            Optional<StatusTransitionBatch> batch = this.nextBatch(today, FIRST_KEY, 0);
+            while (batch.isPresent()) {
+                StatusTransitionBatch done = batch.get();
+                batches++;
+                scanned += done.scanned();
+                expired += done.expired();
+                if (done.expired() > 0) {
+                    Thread.sleep(pause.toMillis());
+                }
+                batch = this.nextBatch(today, done.lastExpirationDate(), done.lastId());
+            }
+            log.info("Subscription status transition: {} rows expiring before {} scanned in {} batches, {} turned EXPIRED",
+                    scanned, today, batches, expired);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failedRuns.increment();
+            log.error("Subscription status transition failed after {} batches, {} rows turned EXPIRED", batches, expired, e);
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            expiredPerRun.record(expired);
+            batchesPerRun.record(batches);
+        }
+    }
+
+    /* the batch after the given key, once no upload is running on this instance */
+    private Optional<StatusTransitionBatch> nextBatch(LocalDate today, LocalDate lastExpirationDate, long lastId)
+            throws InterruptedException {
+        while (ingestionJobService.countRunningJobs() > 0) {
+            Thread.sleep(pause.toMillis());
+        }
+        return subscriptionStatusTransitionRepository.expireBatch(today, lastExpirationDate, lastId, batchSize);
+    }
+}
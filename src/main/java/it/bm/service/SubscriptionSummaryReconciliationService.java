@@ -0,0 +1,129 @@
+package it.bm.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.repository.SubscriptionSummaryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/*
+ * Checks the summary aggregate tables against the subscriptions table every interval and corrects the rows that
+ * drifted, which the triggers alone should never let happen. The service types are checked in one transaction, the
+ * customers in ranges of batch-size customers, each its own transaction. A range an upload wrote to while it was being
+ * checked fails on a serialization error and is left to the next run; like the status transition, a run waits while
+ * an upload is running on this instance. Every correction is counted: a steady non zero rate means a write path the
+ * triggers miss.
+ */
+@Service
+@Slf4j
+public class SubscriptionSummaryReconciliationService {
+
+    @Value("${subscriptions.summary.reconciliation.enabled:true}")
+    private boolean enabled;
+    @Value("${subscriptions.summary.reconciliation.interval:P1D}")
+    private Duration interval;
+    @Value("${subscriptions.summary.reconciliation.batch-size:1000}")
+    private int batchSize;
+    @Value("${subscriptions.summary.reconciliation.pause:PT0.1S}")
+    private Duration pause;
+
+    private final SubscriptionSummaryRepository subscriptionSummaryRepository;
+    private final IngestionJobService ingestionJobService;
+    private final Timer runTimer;
+    private final DistributionSummary correctedPerRun;
+    private final Counter conflicts;
+    private final Counter failedRuns;
+    private ScheduledExecutorService scheduler;
+
+    public SubscriptionSummaryReconciliationService(SubscriptionSummaryRepository subscriptionSummaryRepository,
+                                                    IngestionJobService ingestionJobService, MeterRegistry meterRegistry) {
+        this.subscriptionSummaryRepository = subscriptionSummaryRepository;
+        this.ingestionJobService = ingestionJobService;
+        this.runTimer = meterRegistry.timer("subscriptions.summary.reconciliation.run");
+        this.correctedPerRun = meterRegistry.summary("subscriptions.summary.reconciliation.corrected");
+        this.conflicts = meterRegistry.counter("subscriptions.summary.reconciliation.conflicts");
+        this.failedRuns = meterRegistry.counter("subscriptions.summary.reconciliation.failures");
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("summary-reconciliation").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::run, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /* never throws: an exception would cancel the periodic run */
+    void run() {
+        long start = System.nanoTime();
+        long corrected = 0;
+        int ranges = 0;
+        try {
+            this.awaitIdleIngestion();
+            corrected += this.reconcile(subscriptionSummaryRepository::reconcileServiceTypes);
+            String after = "";
+            Optional<String> upTo = this.nextRange(after);
+            while (upTo.isPresent()) {
+                String from = after;
+                String to = upTo.get();
+                corrected += this.reconcile(() -> subscriptionSummaryRepository.reconcileCustomers(from, to));
+                ranges++;
+                Thread.sleep(pause.toMillis());
+                after = to;
+                upTo = this.nextRange(after);
+            }
+            log.info("Summary reconciliation: service types and {} customer ranges checked, {} rows corrected", ranges, corrected);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failedRuns.increment();
+            log.error("Summary reconciliation failed after {} customer ranges, {} rows corrected", ranges, corrected, e);
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            correctedPerRun.record(corrected);
+        }
+    }
+
+    private Optional<String> nextRange(String after) throws InterruptedException {
+        this.awaitIdleIngestion();
+        return subscriptionSummaryRepository.findNextCustomerBoundary(after, batchSize);
+    }
+
+    /* the rows corrected, none when an upload wrote to the same rows meanwhile */
+    private long reconcile(LongSupplier step) {
+        try {
+            return step.getAsLong();
+        } catch (ConcurrencyFailureException e) {
+            conflicts.increment();
+            log.debug("Summary reconciliation step left to the next run: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void awaitIdleIngestion() throws InterruptedException {
+        while (ingestionJobService.countRunningJobs() > 0) {
+            Thread.sleep(pause.toMillis());
+        }
+    }
+}
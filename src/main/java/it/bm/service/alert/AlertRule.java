@@ -0,0 +1,32 @@
+package it.bm.service.alert;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.NotificationBatch;
+
+/*
+ * A business rule over the ingested records. Every upload starts a new evaluation, which sees each persisted record
+ * once, in the single pass the AlertRuleEngine makes over a chunk for all rules, and keeps whatever state the rule
+ * needs until the upload ends. Alerts go to the notification batch of the upload, which is published once the upload
+ * is persisted. Rules are Spring beans, a new one is picked up by the engine as it is declared.
+ */
+public interface AlertRule {
+
+    String name();
+
+    Evaluation start(NotificationBatch notifications);
+
+    interface Evaluation {
+
+        void accept(CustomerServiceSubscriptions record);
+
+        /* called after the last record of every chunk, returns the number of alerts added to the batch */
+        default int endChunk() {
+            return 0;
+        }
+
+        /* called once the whole upload is persisted, returns the number of alerts added to the batch */
+        default int endUpload() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package it.bm.service.alert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.NotificationBatch;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Evaluates every AlertRule in one traversal of each chunk: a record is handed to all the rules before the next one
+ * is read. The time spent in each rule, chunk hooks included, is recorded under alert.rule.evaluation and the alerts
+ * it fired under alert.rule.fired, both tagged with the rule name.
+ */
+@Service
+public class AlertRuleEngine {
+
+    private final List<AlertRule> rules;
+    private final Timer[] evaluationTimers;
+    private final Counter[] firedCounters;
+
+    public AlertRuleEngine(List<AlertRule> rules, MeterRegistry meterRegistry) {
+        this.rules = List.copyOf(rules);
+        this.evaluationTimers = new Timer[this.rules.size()];
+        this.firedCounters = new Counter[this.rules.size()];
+        for (int i = 0; i < this.rules.size(); i++) {
+            String name = this.rules.get(i).name();
+            evaluationTimers[i] = Timer.builder("alert.rule.evaluation").tag("rule", name).register(meterRegistry);
+            firedCounters[i] = Counter.builder("alert.rule.fired").tag("rule", name).register(meterRegistry);
+        }
+    }
+
+    /*
+     * The evaluation of one upload: feed it the persisted chunks, from a single thread, then finish it and publish,
+     * or abandon it when the upload fails.
+     */
+    public Run start() {
+        NotificationBatch notifications = new NotificationBatch();
+        AlertRule.Evaluation[] evaluations = new AlertRule.Evaluation[rules.size()];
+        for (int i = 0; i < evaluations.length; i++) {
+            evaluations[i] = rules.get(i).start(notifications);
+        }
+        return new Run(evaluations, notifications);
+    }
+
+    public final class Run implements Consumer<List<CustomerServiceSubscriptions>> {
+
+        private final AlertRule.Evaluation[] evaluations;
+        private final NotificationBatch notifications;
+        private final long[] elapsedNanos;
+
+        private Run(AlertRule.Evaluation[] evaluations, NotificationBatch notifications) {
+            this.evaluations = evaluations;
+            this.notifications = notifications;
+            this.elapsedNanos = new long[evaluations.length];
+        }
+
+        @Override
+        public void accept(List<CustomerServiceSubscriptions> chunk) {
+            for (CustomerServiceSubscriptions record : chunk) {
+                long start = System.nanoTime();
+                for (int i = 0; i < evaluations.length; i++) {
+                    evaluations[i].accept(record);
+                    long end = System.nanoTime();
+                    elapsedNanos[i] += end - start;
+                    start = end;
+                }
+            }
+            for (int i = 0; i < evaluations.length; i++) {
+                long start = System.nanoTime();
+                firedCounters[i].increment(evaluations[i].endChunk());
+                evaluationTimers[i].record(elapsedNanos[i] + System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                elapsedNanos[i] = 0;
+            }
+        }
+
+        /* the notifications raised by the whole upload */
+        public NotificationBatch finish() {
+            for (int i = 0; i < evaluations.length; i++) {
+                long start = System.nanoTime();
+                firedCounters[i].increment(evaluations[i].endUpload());
+                evaluationTimers[i].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            return notifications;
+        }
+
+        /* the notifications raised before the upload failed, without the end of upload rules: none is to be sent */
+        public NotificationBatch abandon() {
+            return notifications;
+        }
+    }
+}
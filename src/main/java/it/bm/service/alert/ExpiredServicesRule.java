@@ -0,0 +1,49 @@
+package it.bm.service.alert;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.repository.CustomerExpiredCounterRepository;
+import it.bm.util.StringLongMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/*
+ * The limit applies to the expired services a customer has across all uploads: only the customers that got an
+ * EXPIRED row from this upload can have crossed it, and their totals are read from the maintained counters.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ExpiredServicesRule extends KeyAggregationAlertRule {
+
+    @Value("${expired.services.limit:5}")
+    private int expiredServicesLimit;
+
+    private final CustomerExpiredCounterRepository customerExpiredCounterRepository;
+
+    @Override
+    public String name() {
+        return "expired-services";
+    }
+
+    @Override
+    protected String key(CustomerServiceSubscriptions record) {
+        return record.getStatus().getCode() == SubscriptionStatusEnum.EXPIRED ? record.getCustomerId() : null;
+    }
+
+    @Override
+    protected int fire(StringLongMap expiredInUploadByCustomer, NotificationBatch notifications) {
+        Map<String, Long> totals = customerExpiredCounterRepository.findExpiredCountsAbove(expiredInUploadByCustomer.keySet(), expiredServicesLimit);
+        totals.forEach((customerId, count) -> {
+            log.info("Alert: Customer {} has {} expired services, {} of them in this upload.",
+                    customerId, count, expiredInUploadByCustomer.get(customerId));
+            notifications.addExpiredServices(customerId, count);
+        });
+        return totals.size();
+    }
+}
@@ -0,0 +1,36 @@
+package it.bm.service.alert;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.util.StringLongMap;
+
+/*
+ * A rule over a count per key, customer or otherwise, accumulated across the whole upload in primitive counters and
+ * handed over once it is persisted.
+ */
+public abstract class KeyAggregationAlertRule implements AlertRule {
+
+    /* the key a record counts for, null when it does not count */
+    protected abstract String key(CustomerServiceSubscriptions record);
+
+    protected abstract int fire(StringLongMap countsByKey, NotificationBatch notifications);
+
+    @Override
+    public Evaluation start(NotificationBatch notifications) {
+        StringLongMap countsByKey = new StringLongMap();
+        return new Evaluation() {
+            @Override
+            public void accept(CustomerServiceSubscriptions record) {
+                String key = key(record);
+                if (key != null) {
+                    countsByKey.addTo(key, 1);
+                }
+            }
+
+            @Override
+            public int endUpload() {
+                return countsByKey.isEmpty() ? 0 : fire(countsByKey, notifications);
+            }
+        };
+    }
+}
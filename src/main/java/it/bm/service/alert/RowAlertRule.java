@@ -0,0 +1,41 @@
+package it.bm.service.alert;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.ingestion.NotificationBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/* a rule that looks at records one by one: those matching the predicate are handed over at the end of each chunk */
+public abstract class RowAlertRule implements AlertRule {
+
+    /* evaluated once per upload, so that what the predicate depends on, like today's date, is computed once */
+    protected abstract Predicate<CustomerServiceSubscriptions> predicate();
+
+    protected abstract int fire(List<CustomerServiceSubscriptions> matches, NotificationBatch notifications);
+
+    @Override
+    public Evaluation start(NotificationBatch notifications) {
+        Predicate<CustomerServiceSubscriptions> predicate = predicate();
+        List<CustomerServiceSubscriptions> matches = new ArrayList<>();
+        return new Evaluation() {
+            @Override
+            public void accept(CustomerServiceSubscriptions record) {
+                if (predicate.test(record)) {
+                    matches.add(record);
+                }
+            }
+
+            @Override
+            public int endChunk() {
+                if (matches.isEmpty()) {
+                    return 0;
+                }
+                int fired = fire(matches, notifications);
+                matches.clear();
+                return fired;
+            }
+        };
+    }
+}
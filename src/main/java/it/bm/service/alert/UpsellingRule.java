@@ -0,0 +1,52 @@
+package it.bm.service.alert;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.enums.AlertType;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.service.NotificationDedupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Predicate;
+
+/* an upsell already sent for the same customer and service within the dedup window is not sent again */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UpsellingRule extends RowAlertRule {
+
+    @Value("${years.subscription.limit:3}")
+    private int yearsOfSubscription;
+
+    private final NotificationDedupService notificationDedupService;
+
+    @Override
+    public String name() {
+        return "upselling";
+    }
+
+    @Override
+    protected Predicate<CustomerServiceSubscriptions> predicate() {
+        LocalDate activatedBefore = LocalDate.now().minusYears(yearsOfSubscription);
+        return record -> (record.getStatus().getCode() == SubscriptionStatusEnum.ACTIVE || record.getStatus().getCode() == SubscriptionStatusEnum.PENDING_RENEWAL)
+                && record.getActivationDate().isBefore(activatedBefore);
+    }
+
+    @Override
+    protected int fire(List<CustomerServiceSubscriptions> matches, NotificationBatch notifications) {
+        List<AlertKey> claimed = notificationDedupService.claim(matches.stream()
+                .map(record -> new AlertKey(record.getCustomerId(), record.getServiceType(), AlertType.UPSELLING))
+                .toList());
+        claimed.forEach(key -> {
+            log.info("Alert: Upsell opportunity for customer {} about service {}", key.customerId(), key.serviceType());
+            notifications.addUpselling(key.customerId(), key.serviceType());
+        });
+        return claimed.size();
+    }
+}
@@ -0,0 +1,78 @@
+package it.bm.util;
+
+/*
+ * A concurrency limit that follows latency, gradient style: the latency of every completed call is compared with a
+ * slow moving average of the past ones. While they agree the limit grows by its square root; when latency rises past
+ * the tolerance the limit shrinks in proportion, never by more than half per sample, and a call over the limit is
+ * refused instead of waiting. Samples taken while less than half of the limit
+ * was in use say nothing about the limit and do not grow it.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    /* how much latency may rise over the average before the limit starts to shrink */
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double longLatencyNanos;
+    private long samples;
+    private int inFlight;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit bounds " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /* ends a call admitted by tryAcquire, latencyNanos < 0 when it failed and its latency is no sample */
+    public synchronized void release(long latencyNanos) {
+        int inFlightBefore = inFlight;
+        inFlight--;
+        if (latencyNanos >= 0) {
+            update(Math.max(1, latencyNanos), inFlightBefore);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /* the average latency, what a refused caller should wait before trying again */
+    public synchronized long getLatencyNanos() {
+        return (long) longLatencyNanos;
+    }
+
+    private void update(long latencyNanos, int inFlightBefore) {
+        samples++;
+        double weight = samples < LONG_WINDOW ? 1.0 / samples : 2.0 / (LONG_WINDOW + 1);
+        longLatencyNanos += (latencyNanos - longLatencyNanos) * weight;
+        /* after a lasting drop of latency the average would hide the next rise for too long, it catches up faster */
+        if (longLatencyNanos / latencyNanos > 2) {
+            longLatencyNanos *= 0.95;
+        }
+        if (inFlightBefore < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatencyNanos / latencyNanos));
+        double target = gradient < 1.0 ? limit * gradient : limit + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+}
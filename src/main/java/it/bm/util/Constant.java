@@ -9,6 +9,8 @@ public class Constant {
 
     public static final String EXTENSION_CSV = ".csv";
     public static final String EXTENSION_TXT = ".txt";
+    public static final String EXTENSION_GZIP = ".gz";
+    public static final String EXTENSION_ZSTD = ".zst";
 
     public static final String HEADER_CUSTOMER_ID = "customer_id";
     public static final String HEADER_SERVICE_TYPE = "service_type";
@@ -18,4 +20,7 @@ public class Constant {
     public static final String HEADER_STATUS = "status";
 
     public static final String CORRELATION_ID_HEADER_NAME = "X-Correlation-Id";
+
+    public static final long SUMMARY_EXPIRED_SERVICES_ABOVE = 1;
+    public static final int SUMMARY_EXPIRING_WITHIN_DAYS = 15;
 }
@@ -0,0 +1,176 @@
+package it.bm.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A bounded queue over a preallocated array whose size is a power of two. Every slot carries a sequence telling
+ * whose turn it is: the writer may fill slot i for position p once its sequence is p, a reader may take it once it
+ * is p + 1, and taking it hands it to the writer of the next lap by setting it to p + capacity. Writers take turns
+ * on a lock, so the write cursor has a single owner at a time, while readers claim positions with a compare and
+ * swap and never block each other. A full buffer makes put wait, it never drops an element; readers and the writer
+ * wait with the configured strategy.
+ */
+public class RingBuffer<T> {
+
+    public enum WaitStrategy {
+        /* spins on the cpu: lowest latency, burns a core per waiting thread */
+        BUSY_SPIN,
+        /* spins a little, then yields the cpu to other threads */
+        YIELDING,
+        /* spins, yields, then parks for short periods */
+        SLEEPING,
+        /* spins a little, then sleeps on a condition until signalled */
+        BLOCKING
+    }
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCKING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong readCursor = new AtomicLong();
+    private volatile long writeCursor;
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition changed = waitLock.newCondition();
+    private final AtomicInteger blockedWaiters = new AtomicInteger();
+
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity " + capacity);
+        }
+        /* at least two slots: with one, "filled for p" and "free for p + 1" would be the same sequence */
+        int size = Math.max(2, Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1);
+        this.entries = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /* adds the element if there is room and no other writer holds the cursor, without waiting */
+    public boolean offer(T element) {
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            return insert(element);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /* adds the element, waiting as long as the buffer is full */
+    public void put(T element) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            writeLock.lockInterruptibly();
+            try {
+                if (insert(element)) {
+                    return;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            idle(attempt);
+        }
+    }
+
+    /* the oldest element, or null when the buffer is empty */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        while (true) {
+            long position = readCursor.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence < position + 1) {
+                return null;
+            }
+            if (sequence == position + 1 && readCursor.compareAndSet(position, position + 1)) {
+                T element = (T) entries[slot];
+                entries[slot] = null;
+                sequences.set(slot, position + entries.length);
+                signal();
+                return element;
+            }
+        }
+    }
+
+    /* the oldest element, waiting as long as the buffer is empty */
+    public T take() throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            T element = poll();
+            if (element != null) {
+                return element;
+            }
+            idle(attempt);
+        }
+    }
+
+    public int size() {
+        return (int) Math.max(0, writeCursor - readCursor.get());
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    private boolean insert(T element) {
+        long position = writeCursor;
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position) {
+            return false;
+        }
+        entries[slot] = element;
+        sequences.set(slot, position + 1);
+        writeCursor = position + 1;
+        signal();
+        return true;
+    }
+
+    private void idle(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitStrategy == WaitStrategy.BUSY_SPIN || attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (waitStrategy == WaitStrategy.YIELDING
+                || (waitStrategy == WaitStrategy.SLEEPING && attempt < SPIN_TRIES + YIELD_TRIES)) {
+            Thread.yield();
+        } else if (waitStrategy == WaitStrategy.SLEEPING) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        } else {
+            /* timed, so that a signal sent between the last check and the wait costs a millisecond and not a hang */
+            waitLock.lockInterruptibly();
+            blockedWaiters.incrementAndGet();
+            try {
+                changed.awaitNanos(BLOCKING_WAIT_NANOS);
+            } finally {
+                blockedWaiters.decrementAndGet();
+                waitLock.unlock();
+            }
+        }
+    }
+
+    private void signal() {
+        if (blockedWaiters.get() > 0) {
+            waitLock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+}
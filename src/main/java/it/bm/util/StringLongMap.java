@@ -0,0 +1,87 @@
+package it.bm.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+/*
+ * Counters by String key without a boxed Long or an entry object per key: keys and values sit in parallel arrays,
+ * open addressing with linear probing, and a counter is bumped in place. Not thread safe.
+ */
+public class StringLongMap {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int size;
+
+    public void addTo(String key, long delta) {
+        int slot = slot(keys, key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = delta;
+                grow();
+                return;
+            }
+        }
+        values[slot] += delta;
+    }
+
+    public long get(String key) {
+        int slot = slot(keys, key);
+        return keys[slot] == null ? 0 : values[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public Set<String> keySet() {
+        Set<String> keySet = HashSet.newHashSet(size);
+        for (String key : keys) {
+            if (key != null) {
+                keySet.add(key);
+            }
+        }
+        return keySet;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /* the slot holding key, or the empty slot where it belongs */
+    private static int slot(String[] keys, String key) {
+        int mask = keys.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
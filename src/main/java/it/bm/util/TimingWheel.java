@@ -0,0 +1,123 @@
+package it.bm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Timers on a hierarchy of wheels of wheelSize buckets each: a bucket of level 0 spans one tick, a bucket of level n
+ * spans wheelSize^n ticks. A timer goes to the lowest level whose wheel reaches its deadline, so scheduling costs the
+ * same whatever the number of timers or how far ahead they are. When time enters the span of a higher level bucket,
+ * its timers are spread again over the levels below, and a level 0 bucket fires all its timers when its tick comes.
+ * Deadlines are rounded up to the next tick, a timer never fires early. Levels are added as far deadlines need them.
+ * Not thread safe.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final List<List<Timer<T>>[]> levels = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis < 1 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Invalid timing wheel of " + wheelSize + " buckets of " + tickMillis + " ms");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    /* false when the deadline is already due at the current tick: the caller runs it instead */
+    public boolean schedule(T item, long deadlineMillis) {
+        long dueTick = -Math.floorDiv(-deadlineMillis, tickMillis);
+        if (dueTick <= currentTick) {
+            return false;
+        }
+        this.place(new Timer<>(dueTick, item));
+        size++;
+        return true;
+    }
+
+    /* moves time forward to nowMillis tick by tick, handing every timer due by then to expired */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.size() - 1; level >= 1; level--) {
+                int shift = bits * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    this.cascade(level, (int) (currentTick >>> shift) & mask, expired);
+                }
+            }
+            List<Timer<T>> due = this.take(0, (int) currentTick & mask);
+            if (due != null) {
+                size -= due.size();
+                due.forEach(timer -> expired.accept(timer.item));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long currentTimeMillis() {
+        return currentTick * tickMillis;
+    }
+
+    private void cascade(int level, int bucket, Consumer<T> expired) {
+        List<Timer<T>> timers = this.take(level, bucket);
+        if (timers == null) {
+            return;
+        }
+        for (Timer<T> timer : timers) {
+            if (timer.dueTick <= currentTick) {
+                size--;
+                expired.accept(timer.item);
+            } else {
+                this.place(timer);
+            }
+        }
+    }
+
+    /*
+     * The lowest level whose wheel, seen from the current tick, reaches the due tick. By construction the bucket is
+     * never the one the current tick is in: for level 0 the deadline is ahead, for the others the level below was
+     * too short, so the deadline falls in a later bucket that will cascade before it is due.
+     */
+    @SuppressWarnings("unchecked")
+    private void place(Timer<T> timer) {
+        int level = 0;
+        while (((timer.dueTick >>> (bits * level)) - (currentTick >>> (bits * level))) > mask) {
+            level++;
+        }
+        while (levels.size() <= level) {
+            @SuppressWarnings("unchecked")
+            List<Timer<T>>[] buckets = (List<Timer<T>>[]) new List<?>[mask + 1];
+            levels.add(buckets);
+        }
+        List<Timer<T>>[] buckets = levels.get(level);
+        int bucket = (int) (timer.dueTick >>> (bits * level)) & mask;
+        if (buckets[bucket] == null) {
+            buckets[bucket] = new ArrayList<>();
+        }
+        buckets[bucket].add(timer);
+    }
+
+    private List<Timer<T>> take(int level, int bucket) {
+        if (level >= levels.size()) {
+            return null;
+        }
+        List<Timer<T>>[] buckets = levels.get(level);
+        List<Timer<T>> timers = buckets[bucket];
+        buckets[bucket] = null;
+        return timers;
+    }
+
+    private record Timer<T>(long dueTick, T item) {
+    }
+}
@@ -0,0 +1,192 @@
+package it.bm.util.csv;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A view over the fields of the current record, addressed by the column index of the schema the tokenizer was
+ * built with. Fields are slices of the tokenizer buffer: they are only valid until the next call to
+ * CsvTokenizer.next, and nothing is copied unless a String is explicitly asked for.
+ */
+public class CsvRow {
+
+    /* returned by the decoding accessors for a field that does not have the expected format */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int MAX_CENTS_INTEGER_DIGITS = 15;
+    private static final long DAYS_0000_TO_1970 = 719_528;
+
+    byte[] data;
+    final int[] starts;
+    final int[] ends;
+    final StringDictionary dictionary;
+    int recordStart;
+    int recordEnd;
+    byte[] escapedRecord;
+    long recordNumber;
+    String malformedReason;
+
+    CsvRow(int columns, StringDictionary dictionary) {
+        this.starts = new int[columns];
+        this.ends = new int[columns];
+        this.dictionary = dictionary;
+    }
+
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    public boolean isMalformed() {
+        return malformedReason != null;
+    }
+
+    public String getMalformedReason() {
+        return malformedReason;
+    }
+
+    /*
+     * The record as read, quotes and escapes included and the terminator excluded, cut on a character boundary to
+     * at most maxBytes followed by "..." when longer. Built on demand, for the rows that are rejected.
+     */
+    public String getRawRecord(int maxBytes) {
+        byte[] source = escapedRecord != null ? escapedRecord : data;
+        int start = escapedRecord != null ? 0 : recordStart;
+        int end = escapedRecord != null ? escapedRecord.length : recordEnd;
+        while (end > start && (source[end - 1] == '\n' || source[end - 1] == '\r')) {
+            end--;
+        }
+        if (end - start <= maxBytes) {
+            return new String(source, start, end - start, StandardCharsets.UTF_8);
+        }
+        int cut = start + maxBytes;
+        while (cut > start && (source[cut] & 0xC0) == 0x80) {
+            cut--;
+        }
+        return new String(source, start, cut - start, StandardCharsets.UTF_8) + "...";
+    }
+
+    public int length(int column) {
+        return ends[column] - starts[column];
+    }
+
+    public boolean isBlank(int column) {
+        return length(column) == 0;
+    }
+
+    public String getString(int column) {
+        return new String(data, starts[column], length(column), StandardCharsets.UTF_8);
+    }
+
+    /* For repetitive columns: equal fields of the rows of a tokenizer come back as the same String instance */
+    public String getDictionaryString(int column) {
+        return dictionary.get(data, starts[column], length(column));
+    }
+
+    /* Compares the field with an upper case ASCII constant, ignoring the case of the field */
+    public boolean equalsIgnoreCase(int column, byte[] upperCaseAscii) {
+        int start = starts[column];
+        if (length(column) != upperCaseAscii.length) {
+            return false;
+        }
+        for (int i = 0; i < upperCaseAscii.length; i++) {
+            byte b = data[start + i];
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != upperCaseAscii[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Decodes a yyyy-MM-dd field straight to its epoch day, the value LocalDate.toEpochDay would return, without
+     * building a String or throwing: INVALID for any other format or for a date that does not exist.
+     */
+    public long getEpochDay(int column) {
+        int start = starts[column];
+        if (length(column) != 10 || data[start + 4] != '-' || data[start + 7] != '-') {
+            return INVALID;
+        }
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /*
+     * Decodes a [sign]digits[.digits] amount to hundredths, the unscaled value of a DECIMAL(n,2), without building
+     * a String or throwing. Fraction digits past the second are accepted only when they are zeros, since they
+     * could not be stored; INVALID for anything else, including exponents and more integer digits than a long holds.
+     */
+    public long getCents(int column) {
+        int index = starts[column];
+        int end = ends[column];
+        boolean negative = false;
+        if (index < end && (data[index] == '-' || data[index] == '+')) {
+            negative = data[index] == '-';
+            index++;
+        }
+        long units = 0;
+        int integerDigits = 0;
+        for (; index < end && data[index] >= '0' && data[index] <= '9'; index++) {
+            units = units * 10 + (data[index] - '0');
+            integerDigits++;
+        }
+        if (integerDigits > MAX_CENTS_INTEGER_DIGITS) {
+            return INVALID;
+        }
+        long cents = units * 100;
+        int fractionDigits = 0;
+        if (index < end && data[index] == '.') {
+            for (index++; index < end && data[index] >= '0' && data[index] <= '9'; index++) {
+                int digit = data[index] - '0';
+                if (fractionDigits == 0) {
+                    cents += digit * 10L;
+                } else if (fractionDigits == 1) {
+                    cents += digit;
+                } else if (digit != 0) {
+                    return INVALID;
+                }
+                fractionDigits++;
+            }
+        }
+        if (index != end || integerDigits + fractionDigits == 0) {
+            return INVALID;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,325 @@
+package it.bm.util.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * RFC 4180 tokenizer working directly on UTF-8 bytes for a fixed set of columns. The header record is resolved
+ * once into column positions, then every record is scanned into a reusable CsvRow whose fields are slices of
+ * the read buffer, trimmed like CSVFormat.setTrim(true). Empty lines are skipped and are not counted as records.
+ *
+ * The buffer is a sliding window: when a record crosses its end the record is moved to the front, the window
+ * is refilled (or grown for records larger than the buffer) and the record is scanned again.
+ */
+public class CsvTokenizer implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int NEED_MORE = -1;
+
+    private final Source source;
+    private final Closeable closeable;
+    private final List<String> columns;
+    private final StringDictionary dictionary = new StringDictionary();
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private long[] escapedFields = new long[1];
+    private int fieldCount;
+    private String malformedReason;
+    private int[] columnFields;
+    private int requiredFields;
+    private long recordNumber;
+    private int recordStart;
+    private int recordEnd;
+    private byte[] escapedRecord;
+
+    public CsvTokenizer(InputStream inputStream, List<String> columns) {
+        this(inputStream::read, inputStream, columns);
+    }
+
+    /* For heap or memory-mapped buffers: the window is filled with bulk copies instead of stream reads */
+    public CsvTokenizer(ByteBuffer byteBuffer, List<String> columns) {
+        this((target, offset, length) -> {
+            if (!byteBuffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, byteBuffer.remaining());
+            byteBuffer.get(target, offset, read);
+            return read;
+        }, null, columns);
+    }
+
+    private CsvTokenizer(Source source, Closeable closeable, List<String> columns) {
+        this.source = source;
+        this.closeable = closeable;
+        this.columns = List.copyOf(columns);
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    /*
+     * Tokenizer for a range of the same file that starts on a record boundary past the header, reusing the
+     * column positions resolved here. Its record numbers restart from 1, and it has its own dictionary since
+     * ranges are parsed on different threads.
+     */
+    public CsvTokenizer forRange(ByteBuffer range) throws IOException {
+        if (columnFields == null) {
+            readHeader();
+        }
+        CsvTokenizer tokenizer = new CsvTokenizer(range, columns);
+        tokenizer.columnFields = columnFields;
+        tokenizer.requiredFields = requiredFields;
+        return tokenizer;
+    }
+
+    public CsvRow newRow() {
+        return new CsvRow(columns.size(), dictionary);
+    }
+
+    /* Fills the row with the next record; returns false at the end of the input */
+    public boolean next(CsvRow row) throws IOException {
+        if (columnFields == null) {
+            readHeader();
+        }
+        if (!nextRecord()) {
+            return false;
+        }
+        recordNumber++;
+        row.data = buffer;
+        row.recordStart = recordStart;
+        row.recordEnd = recordEnd;
+        row.escapedRecord = escapedRecord;
+        row.recordNumber = recordNumber;
+        row.malformedReason = malformedReason;
+        if (fieldCount < requiredFields && malformedReason == null) {
+            row.malformedReason = String.format("expected at least %d fields but found %d", requiredFields, fieldCount);
+        }
+        for (int column = 0; column < columnFields.length; column++) {
+            int field = columnFields[column];
+            row.starts[column] = field < fieldCount ? fieldStarts[field] : 0;
+            row.ends[column] = field < fieldCount ? fieldEnds[field] : 0;
+        }
+        return true;
+    }
+
+    /* Number of records returned so far, the header excluded */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeable != null) {
+            closeable.close();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (!nextRecord()) {
+            throw new IOException("Missing header record");
+        }
+        List<String> header = new ArrayList<>(fieldCount);
+        for (int field = 0; field < fieldCount; field++) {
+            header.add(new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8)
+                    .toLowerCase(Locale.ROOT));
+        }
+        columnFields = new int[columns.size()];
+        for (int column = 0; column < columns.size(); column++) {
+            columnFields[column] = header.indexOf(columns.get(column).toLowerCase(Locale.ROOT));
+            if (columnFields[column] < 0) {
+                throw new IOException("Header '" + columns.get(column) + "' not found in " + header);
+            }
+            requiredFields = Math.max(requiredFields, columnFields[column] + 1);
+        }
+    }
+
+    private boolean nextRecord() throws IOException {
+        while (true) {
+            if (position == limit && !fill(position)) {
+                return false;
+            }
+            int recordStart = position;
+            int end = scanRecord(recordStart);
+            if (end == NEED_MORE) {
+                if (!fill(recordStart)) {
+                    throw new IOException("End of input reached inside a quoted field at record " + (recordNumber + 1));
+                }
+                continue;
+            }
+            position = end;
+            if (fieldCount == 1 && fieldStarts[0] == fieldEnds[0] && !isEscaped(0) && isBlankLine(recordStart, end)) {
+                continue;
+            }
+            this.recordStart = recordStart;
+            this.recordEnd = end;
+            escapedRecord = hasEscapedFields() ? Arrays.copyOfRange(buffer, recordStart, end) : null;
+            unescapeQuotedFields();
+            return true;
+        }
+    }
+
+    /*
+     * Scans one record starting at from, recording trimmed field boundaries. Returns the offset just past the
+     * record terminator, or NEED_MORE when the record is not complete in the window. The buffer is not modified
+     * here so that a record can be rescanned after a refill.
+     */
+    private int scanRecord(int from) {
+        int p = from;
+        fieldCount = 0;
+        malformedReason = null;
+        Arrays.fill(escapedFields, 0);
+        while (true) {
+            int start;
+            int end;
+            if (p < limit && buffer[p] == '"') {
+                p++;
+                start = p;
+                while (true) {
+                    if (p >= limit) {
+                        return NEED_MORE;
+                    }
+                    if (buffer[p] == '"') {
+                        if (p + 1 >= limit && !endOfInput) {
+                            return NEED_MORE;
+                        }
+                        if (p + 1 < limit && buffer[p + 1] == '"') {
+                            markEscaped(fieldCount);
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                end = p++;
+                while (p < limit && (buffer[p] == ' ' || buffer[p] == '\t' || buffer[p] == '\r')) {
+                    p++;
+                }
+                if (p < limit && buffer[p] != ',' && buffer[p] != '\n') {
+                    malformedReason = "unexpected character after closing quote";
+                    while (p < limit && buffer[p] != ',' && buffer[p] != '\n') {
+                        p++;
+                    }
+                }
+            } else {
+                start = p;
+                while (p < limit && buffer[p] != ',' && buffer[p] != '\n') {
+                    p++;
+                }
+                end = p;
+            }
+            if (p >= limit && !endOfInput) {
+                return NEED_MORE;
+            }
+            addField(start, end);
+            if (p < limit && buffer[p] == ',') {
+                p++;
+                continue;
+            }
+            return p < limit ? p + 1 : p;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void markEscaped(int field) {
+        if (field >> 6 >= escapedFields.length) {
+            escapedFields = Arrays.copyOf(escapedFields, (field >> 6) + 1);
+        }
+        escapedFields[field >> 6] |= 1L << field;
+    }
+
+    private boolean isEscaped(int field) {
+        return field >> 6 < escapedFields.length && (escapedFields[field >> 6] & 1L << field) != 0;
+    }
+
+    private boolean hasEscapedFields() {
+        for (long escaped : escapedFields) {
+            if (escaped != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * "" becomes " in place, which alters the record as read: the few records with escaped quotes are copied first,
+     * so that CsvRow.getRawRecord can still return them. The unescaped field is shorter, so it never overwrites
+     * bytes still to be read.
+     */
+    private void unescapeQuotedFields() {
+        for (int field = 0; field < fieldCount; field++) {
+            if (!isEscaped(field)) {
+                continue;
+            }
+            int write = fieldStarts[field];
+            for (int read = fieldStarts[field]; read < fieldEnds[field]; read++) {
+                buffer[write++] = buffer[read];
+                if (buffer[read] == '"') {
+                    read++;
+                }
+            }
+            fieldEnds[field] = write;
+        }
+    }
+
+    private boolean isBlankLine(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != '\n' && buffer[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Moves the bytes from keepFrom to the front of the window and reads more; false when nothing more was read */
+    private boolean fill(int keepFrom) throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        int kept = limit - keepFrom;
+        if (keepFrom == 0 && kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else if (keepFrom > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, kept);
+        }
+        position = 0;
+        limit = kept;
+        int read = source.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+            return kept > 0;
+        }
+        limit += read;
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        int read(byte[] target, int offset, int length) throws IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package it.bm.util.csv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Canonical String instances for byte slices, looked up without decoding: a value seen before is returned as the
+ * same instance, so its hash code is computed once and the rows of an upload share a handful of service types and
+ * one String per customer. Open addressing over the UTF-8 bytes; once maxEntries values are held new ones are
+ * decoded but no longer added, which bounds the memory of high cardinality columns. Not thread safe, each
+ * tokenizer has its own.
+ */
+public class StringDictionary {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxEntries;
+    private byte[][] keys = new byte[INITIAL_CAPACITY][];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public StringDictionary() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public StringDictionary(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public String get(byte[] data, int start, int length) {
+        int hash = hash(data, start, length);
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, data, start, start + length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(data, start, length, StandardCharsets.UTF_8);
+        if (size < maxEntries) {
+            keys[slot] = Arrays.copyOfRange(data, start, start + length);
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /* spreads the high bits into the low ones, slots are taken from them */
+    private static int hash(byte[] data, int start, int length) {
+        int hash = 1;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,19 @@
+-- Digest of every ingested upload, so that a file sent again is recognised before it is parsed
+CREATE TABLE ingested_file (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    sha256              VARCHAR(64) NOT NULL,
+    file_name           VARCHAR(255) NOT NULL,
+    size_bytes          BIGINT NOT NULL,
+    job_id              UUID NOT NULL,
+    status              VARCHAR(20) NOT NULL,
+    rows_persisted      BIGINT,
+    created_at          TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    created_by          VARCHAR(100) NOT NULL,
+    completed_at        TIMESTAMP,
+
+    CONSTRAINT pk_ingested_file PRIMARY KEY (id),
+    CONSTRAINT uk_ingested_file_sha256 UNIQUE (sha256),
+    CONSTRAINT ck_ingested_file_status CHECK (
+        status IN ('IN_PROGRESS', 'COMPLETED')
+    )
+);
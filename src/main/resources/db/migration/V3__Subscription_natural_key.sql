@@ -0,0 +1,37 @@
+-- Rows are identified by (customer_id, service_type, activation_date), so that delta files can be upserted.
+-- Earlier duplicates of a natural key are moved to customer_service_subscriptions_duplicates, keeping the last row
+-- loaded in place, so nothing is lost and the archived rows can be reviewed or restored by hand.
+CREATE TABLE customer_service_subscriptions_duplicates (
+    id                  BIGINT NOT NULL,
+    customer_id         VARCHAR(100) NOT NULL,
+    service_type        VARCHAR(100) NOT NULL,
+    amount              DECIMAL(10,2) NOT NULL,
+    activation_date     DATE NOT NULL,
+    expiration_date     DATE NOT NULL,
+    status_id           BIGINT NOT NULL,
+    created_at          TIMESTAMP,
+    created_by          VARCHAR(100) NOT NULL,
+    archived_at         TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT pk_customer_service_subscriptions_duplicates PRIMARY KEY (id)
+);
+
+WITH archived AS (
+    DELETE FROM customer_service_subscriptions older
+        USING customer_service_subscriptions newer
+        WHERE older.customer_id = newer.customer_id
+          AND older.service_type = newer.service_type
+          AND older.activation_date = newer.activation_date
+          AND older.id < newer.id
+        RETURNING older.*
+)
+INSERT INTO customer_service_subscriptions_duplicates
+    (id, customer_id, service_type, amount, activation_date, expiration_date, status_id, created_at, created_by)
+SELECT id, customer_id, service_type, amount, activation_date, expiration_date, status_id, created_at, created_by
+FROM archived;
+
+CREATE UNIQUE INDEX uk_customer_subscriptions_natural_key
+    ON customer_service_subscriptions(customer_id, service_type, activation_date);
+
+-- customer_id lookups are served by the leading column of the natural key
+DROP INDEX idx_customer_subscriptions_customer_id;
@@ -0,0 +1,66 @@
+-- Number of EXPIRED subscriptions of every customer across all uploads, so that the expired services alert reads
+-- cumulative totals for the customers of an upload instead of counting the whole table again.
+CREATE TABLE customer_expired_counter (
+    customer_id         VARCHAR(100) NOT NULL,
+    expired_count       BIGINT NOT NULL,
+    updated_at          TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT pk_customer_expired_counter PRIMARY KEY (customer_id)
+);
+
+INSERT INTO customer_expired_counter (customer_id, expired_count)
+SELECT c.customer_id, count(*)
+FROM customer_service_subscriptions c
+JOIN subscription_status s ON s.id = c.status_id
+WHERE s.code = 'EXPIRED'
+GROUP BY c.customer_id;
+
+-- Statement level, over the transition tables: a COPY or an upsert of a whole chunk applies one aggregated delta
+-- per customer, whichever persistence mode wrote the rows. Customers are locked in key order, so that concurrent
+-- uploads sharing customers cannot deadlock on their counters.
+CREATE FUNCTION apply_customer_expired_delta() RETURNS trigger
+LANGUAGE plpgsql AS $$
+DECLARE
+    expired_id BIGINT := (SELECT id FROM subscription_status WHERE code = 'EXPIRED');
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO customer_expired_counter AS k (customer_id, expired_count, updated_at)
+        SELECT customer_id, count(*), now() FROM new_rows WHERE status_id = expired_id
+        GROUP BY customer_id ORDER BY customer_id
+        ON CONFLICT (customer_id) DO UPDATE
+            SET expired_count = k.expired_count + EXCLUDED.expired_count, updated_at = EXCLUDED.updated_at;
+    ELSIF TG_OP = 'UPDATE' THEN
+        INSERT INTO customer_expired_counter AS k (customer_id, expired_count, updated_at)
+        SELECT customer_id, sum(delta), now()
+        FROM (SELECT customer_id, 1 AS delta FROM new_rows WHERE status_id = expired_id
+              UNION ALL
+              SELECT customer_id, -1 FROM old_rows WHERE status_id = expired_id) d
+        GROUP BY customer_id HAVING sum(delta) <> 0 ORDER BY customer_id
+        ON CONFLICT (customer_id) DO UPDATE
+            SET expired_count = k.expired_count + EXCLUDED.expired_count, updated_at = EXCLUDED.updated_at;
+    ELSE
+        INSERT INTO customer_expired_counter AS k (customer_id, expired_count, updated_at)
+        SELECT customer_id, -count(*), now() FROM old_rows WHERE status_id = expired_id
+        GROUP BY customer_id ORDER BY customer_id
+        ON CONFLICT (customer_id) DO UPDATE
+            SET expired_count = k.expired_count + EXCLUDED.expired_count, updated_at = EXCLUDED.updated_at;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+-- a trigger with transition tables handles a single event, hence one per event
+CREATE TRIGGER trg_customer_expired_counter_insert
+    AFTER INSERT ON customer_service_subscriptions
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_customer_expired_delta();
+
+CREATE TRIGGER trg_customer_expired_counter_update
+    AFTER UPDATE ON customer_service_subscriptions
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_customer_expired_delta();
+
+CREATE TRIGGER trg_customer_expired_counter_delete
+    AFTER DELETE ON customer_service_subscriptions
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_customer_expired_delta();
@@ -0,0 +1,13 @@
+-- Notifications already sent, one row per (customer, service, alert type) until expires_at: an upload that finds
+-- the same alert again within the window does not send it a second time.
+CREATE TABLE notification_dedup (
+    customer_id         VARCHAR(100) NOT NULL,
+    service_type        VARCHAR(100) NOT NULL,
+    alert_type          VARCHAR(30) NOT NULL,
+    expires_at          TIMESTAMP NOT NULL,
+
+    CONSTRAINT pk_notification_dedup PRIMARY KEY (customer_id, service_type, alert_type)
+);
+
+CREATE INDEX idx_notification_dedup_expires_at
+    ON notification_dedup(expires_at);
@@ -0,0 +1,107 @@
+-- Precomputed figures of the report summary, so that it reads a row per service type, customer or expiration day
+-- instead of aggregating the whole subscriptions table. The per customer EXPIRED totals are customer_expired_counter.
+CREATE TABLE service_type_summary (
+    service_type        VARCHAR(100) NOT NULL,
+    running_count       BIGINT NOT NULL,
+    updated_at          TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT pk_service_type_summary PRIMARY KEY (service_type)
+);
+
+CREATE TABLE customer_summary (
+    customer_id         VARCHAR(100) NOT NULL,
+    subscription_count  BIGINT NOT NULL,
+    amount_sum          DECIMAL(20,2) NOT NULL,
+    updated_at          TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT pk_customer_summary PRIMARY KEY (customer_id)
+);
+
+-- running subscriptions per customer and expiration day, what "expiring within N days" is a range of
+CREATE TABLE customer_expiration_summary (
+    expiration_date     DATE NOT NULL,
+    customer_id         VARCHAR(100) NOT NULL,
+    running_count       BIGINT NOT NULL,
+
+    CONSTRAINT pk_customer_expiration_summary PRIMARY KEY (expiration_date, customer_id)
+);
+
+-- the reconciliation job reads and corrects the day rows of a range of customers
+CREATE INDEX idx_customer_expiration_summary_customer_id
+    ON customer_expiration_summary(customer_id);
+
+INSERT INTO service_type_summary (service_type, running_count)
+SELECT c.service_type, count(*)
+FROM customer_service_subscriptions c
+JOIN subscription_status s ON s.id = c.status_id
+WHERE s.code IN ('ACTIVE', 'PENDING_RENEWAL')
+GROUP BY c.service_type;
+
+INSERT INTO customer_summary (customer_id, subscription_count, amount_sum)
+SELECT customer_id, count(*), sum(amount)
+FROM customer_service_subscriptions
+GROUP BY customer_id;
+
+INSERT INTO customer_expiration_summary (expiration_date, customer_id, running_count)
+SELECT c.expiration_date, c.customer_id, count(*)
+FROM customer_service_subscriptions c
+JOIN subscription_status s ON s.id = c.status_id
+WHERE s.code IN ('ACTIVE', 'PENDING_RENEWAL')
+GROUP BY c.expiration_date, c.customer_id;
+
+-- Statement level, like apply_customer_expired_delta: the rows written by a statement, counted +1 as new and -1 as
+-- old, are aggregated into one delta per key and applied in key order, in the transaction of the statement. The
+-- transition tables of the event are picked by the delta query, the statement applying it is shared.
+CREATE FUNCTION apply_subscription_summary_delta() RETURNS trigger
+LANGUAGE plpgsql AS $$
+DECLARE
+    running_ids BIGINT[] := ARRAY(SELECT id FROM subscription_status WHERE code IN ('ACTIVE', 'PENDING_RENEWAL'));
+    delta TEXT := CASE TG_OP
+        WHEN 'INSERT' THEN 'SELECT customer_id, service_type, amount, expiration_date, status_id, 1 AS sign FROM new_rows'
+        WHEN 'UPDATE' THEN 'SELECT customer_id, service_type, amount, expiration_date, status_id, 1 AS sign FROM new_rows
+                            UNION ALL
+                            SELECT customer_id, service_type, amount, expiration_date, status_id, -1 FROM old_rows'
+        ELSE 'SELECT customer_id, service_type, amount, expiration_date, status_id, -1 AS sign FROM old_rows'
+    END;
+BEGIN
+    EXECUTE format($sql$
+        WITH d AS (%s),
+        by_type AS (
+            INSERT INTO service_type_summary AS k (service_type, running_count, updated_at)
+            SELECT service_type, sum(sign), now() FROM d WHERE status_id = ANY ($1)
+            GROUP BY service_type HAVING sum(sign) <> 0 ORDER BY service_type
+            ON CONFLICT (service_type) DO UPDATE
+                SET running_count = k.running_count + EXCLUDED.running_count, updated_at = EXCLUDED.updated_at
+        ),
+        by_customer AS (
+            INSERT INTO customer_summary AS k (customer_id, subscription_count, amount_sum, updated_at)
+            SELECT customer_id, sum(sign), sum(sign * amount), now() FROM d
+            GROUP BY customer_id HAVING sum(sign) <> 0 OR sum(sign * amount) <> 0 ORDER BY customer_id
+            ON CONFLICT (customer_id) DO UPDATE
+                SET subscription_count = k.subscription_count + EXCLUDED.subscription_count,
+                    amount_sum = k.amount_sum + EXCLUDED.amount_sum, updated_at = EXCLUDED.updated_at
+        )
+        INSERT INTO customer_expiration_summary AS k (expiration_date, customer_id, running_count)
+        SELECT expiration_date, customer_id, sum(sign) FROM d WHERE status_id = ANY ($1)
+        GROUP BY expiration_date, customer_id HAVING sum(sign) <> 0 ORDER BY expiration_date, customer_id
+        ON CONFLICT (expiration_date, customer_id) DO UPDATE
+            SET running_count = k.running_count + EXCLUDED.running_count
+        $sql$, delta) USING running_ids;
+    RETURN NULL;
+END;
+$$;
+
+CREATE TRIGGER trg_subscription_summary_insert
+    AFTER INSERT ON customer_service_subscriptions
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_subscription_summary_delta();
+
+CREATE TRIGGER trg_subscription_summary_update
+    AFTER UPDATE ON customer_service_subscriptions
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_subscription_summary_delta();
+
+CREATE TRIGGER trg_subscription_summary_delete
+    AFTER DELETE ON customer_service_subscriptions
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION apply_subscription_summary_delta();
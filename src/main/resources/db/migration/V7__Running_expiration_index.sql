@@ -0,0 +1,13 @@
+-- The status transition job reads only the running subscriptions, ACTIVE or PENDING_RENEWAL, in (expiration_date,
+-- id) order. Once a row is EXPIRED it never comes back to the job, so a partial index on the running rows keeps each
+-- run to the rows turned since the last one instead of the whole history. The status ids are identity values, the
+-- predicate is written with those of this database.
+DO $$
+BEGIN
+    EXECUTE format('CREATE INDEX idx_customer_subscriptions_running_expiration '
+                   'ON customer_service_subscriptions(expiration_date, id) WHERE status_id IN (%s)',
+                   (SELECT string_agg(id::text, ', ' ORDER BY id)
+                    FROM subscription_status
+                    WHERE code IN ('ACTIVE', 'PENDING_RENEWAL')));
+END
+$$;
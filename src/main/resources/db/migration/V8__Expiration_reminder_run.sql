@@ -0,0 +1,13 @@
+-- The expiration reminders of a day, one row per (expiration date, lead days), claimed by the instance that sends
+-- them so that the other instances skip the day. last_id is the last subscription sent: an instance that stopped
+-- halfway leaves its claim behind, and once the lease is over another one takes it and goes on from there.
+CREATE TABLE expiration_reminder_run (
+    expiration_date     DATE NOT NULL,
+    days_left           INTEGER NOT NULL,
+    claimed_by          VARCHAR(36) NOT NULL,
+    claimed_at          TIMESTAMP NOT NULL,
+    last_id             BIGINT NOT NULL,
+    completed_at        TIMESTAMP,
+
+    CONSTRAINT pk_expiration_reminder_run PRIMARY KEY (expiration_date, days_left)
+);
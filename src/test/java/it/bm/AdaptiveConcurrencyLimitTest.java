@@ -0,0 +1,77 @@
+package it.bm;
+
+import it.bm.util.AdaptiveConcurrencyLimit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLI = 1_000_000;
+
+    private static void runAtFullLimit(AdaptiveConcurrencyLimit limit, long latencyNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int calls = limit.getLimit();
+            for (int i = 0; i < calls; i++) {
+                assertTrue(limit.tryAcquire());
+            }
+            for (int i = 0; i < calls; i++) {
+                limit.release(latencyNanos);
+            }
+        }
+    }
+
+    @Test
+    void refusesCallsOverTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        limit.release(10 * MILLI);
+
+        assertTrue(limit.tryAcquire());
+        assertEquals(2, limit.getInFlight());
+    }
+
+    @Test
+    void shrinksWhenLatencyRisesAndRecoversWhenItFalls() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 20);
+        runAtFullLimit(limit, 10 * MILLI, 20);
+        assertEquals(20, limit.getLimit());
+
+        runAtFullLimit(limit, 200 * MILLI, 10);
+        assertTrue(limit.getLimit() < 5, "limit " + limit.getLimit());
+
+        runAtFullLimit(limit, 10 * MILLI, 100);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void neverGoesBelowTheMinimum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 10);
+        runAtFullLimit(limit, MILLI, 5);
+
+        for (long latency = 2 * MILLI; latency < 100_000 * MILLI; latency *= 2) {
+            runAtFullLimit(limit, latency, 1);
+        }
+
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void failedCallsAreNoSample() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 4);
+        runAtFullLimit(limit, 10 * MILLI, 5);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(-1);
+        }
+
+        assertEquals(4, limit.getLimit());
+        assertEquals(10 * MILLI, limit.getLatencyNanos());
+    }
+}
@@ -0,0 +1,120 @@
+package it.bm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.config.AdmissionControlFilter;
+import it.bm.model.enums.AdmissionLane;
+import it.bm.service.AdmissionControlService;
+import it.bm.service.IngestionJobService;
+import it.bm.util.AdaptiveConcurrencyLimit;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlFilterTest {
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    private AdmissionControlService admissionControlService;
+
+    private AdmissionControlFilter admissionControlFilter;
+
+    @BeforeEach
+    void setUp() {
+        admissionControlService = new AdmissionControlService(ingestionJobService, auditorProvider,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(admissionControlService, "enabled", true);
+        ReflectionTestUtils.setField(admissionControlService, "uploadMaxConcurrency", 4);
+        ReflectionTestUtils.setField(admissionControlService, "summaryMaxConcurrency", 8);
+        ReflectionTestUtils.setField(admissionControlService, "summaryPerPrincipal", 1);
+        ReflectionTestUtils.setField(admissionControlService, "quotaRetryAfter", Duration.ofSeconds(30));
+        ReflectionTestUtils.invokeMethod(admissionControlService, "init");
+        admissionControlFilter = new AdmissionControlFilter(admissionControlService, new ObjectMapper());
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("analyst"));
+    }
+
+    @Test
+    void aSynchronousRequestReleasesItsPermitWhenItReturns() throws Exception {
+        assertEquals(200, this.summary(new MockFilterChain()).getStatus());
+        assertEquals(200, this.summary(new MockFilterChain()).getStatus());
+    }
+
+    @Test
+    void aStreamKeepsItsPermitUntilItEnds() throws Exception {
+        MockHttpServletRequest streaming = this.summaryRequest();
+        admissionControlFilter.doFilter(streaming, new MockHttpServletResponse(),
+                (request, response) -> request.startAsync());
+
+        assertEquals(429, this.summary(new MockFilterChain()).getStatus());
+
+        ((MockAsyncContext) streaming.getAsyncContext()).complete();
+
+        assertEquals(200, this.summary(new MockFilterChain()).getStatus());
+    }
+
+    @Test
+    void theAsyncDispatchOfAStreamIsNotAdmittedAgain() throws Exception {
+        MockHttpServletRequest streaming = this.summaryRequest();
+        admissionControlFilter.doFilter(streaming, new MockHttpServletResponse(),
+                (request, response) -> request.startAsync());
+        AtomicInteger dispatched = new AtomicInteger();
+
+        streaming.setDispatcherType(DispatcherType.ASYNC);
+        admissionControlFilter.doFilter(streaming, new MockHttpServletResponse(),
+                (request, response) -> dispatched.incrementAndGet());
+
+        assertEquals(1, dispatched.get());
+    }
+
+    @Test
+    void anAnswerFromTheCacheIsNoLatencySample() throws Exception {
+        this.summary((request, response) -> request.setAttribute(AdmissionControlService.NO_LATENCY_SAMPLE, Boolean.TRUE));
+        assertEquals(0, this.summaryLimit().getLatencyNanos());
+
+        this.summary(new MockFilterChain());
+        assertTrue(this.summaryLimit().getLatencyNanos() > 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AdaptiveConcurrencyLimit summaryLimit() {
+        Map<AdmissionLane, AdaptiveConcurrencyLimit> limits = (Map<AdmissionLane, AdaptiveConcurrencyLimit>) ReflectionTestUtils.getField(
+                admissionControlService, "limits");
+        return limits.get(AdmissionLane.SUMMARY);
+    }
+
+    private MockHttpServletResponse summary(FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        admissionControlFilter.doFilter(this.summaryRequest(), response, chain);
+        return response;
+    }
+
+    private MockHttpServletRequest summaryRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/report/summary/average-spending/stream");
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
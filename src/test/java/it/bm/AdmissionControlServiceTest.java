@@ -0,0 +1,140 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.AdmissionRejectedException;
+import it.bm.model.enums.AdmissionLane;
+import it.bm.service.AdmissionControlService;
+import it.bm.service.IngestionJobService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlServiceTest {
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AdmissionControlService admissionControlService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        admissionControlService = new AdmissionControlService(ingestionJobService, auditorProvider, meterRegistry);
+        ReflectionTestUtils.setField(admissionControlService, "uploadMaxConcurrency", 3);
+        ReflectionTestUtils.setField(admissionControlService, "uploadPerPrincipal", 2);
+        ReflectionTestUtils.setField(admissionControlService, "summaryMaxConcurrency", 2);
+        ReflectionTestUtils.setField(admissionControlService, "summaryPerPrincipal", 2);
+        ReflectionTestUtils.setField(admissionControlService, "quotaRetryAfter", Duration.ofSeconds(30));
+        ReflectionTestUtils.invokeMethod(admissionControlService, "init");
+    }
+
+    private void callerIs(String principal) {
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of(principal));
+    }
+
+    @Test
+    void uploadQuotaCountsTheJobsStillRunning() {
+        callerIs("analyst");
+        when(ingestionJobService.countUnfinishedJobs("analyst")).thenReturn(1);
+        AdmissionControlService.Permit permit = admissionControlService.acquire(AdmissionLane.UPLOAD);
+
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+
+        assertEquals(AdmissionControlService.QUOTA_EXCEEDED, e.getErrorCode());
+        assertEquals(Duration.ofSeconds(30), e.getRetryAfter());
+        assertEquals(1, meterRegistry.counter("admission.rejected", "lane", "upload", "reason", "quota_exceeded").count());
+        permit.release(true);
+        assertDoesNotThrow(() -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+    }
+
+    @Test
+    void quotaIsKeptPerPrincipal() {
+        callerIs("analyst");
+        admissionControlService.acquire(AdmissionLane.UPLOAD);
+        admissionControlService.acquire(AdmissionLane.UPLOAD);
+        assertThrows(AdmissionRejectedException.class, () -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+
+        callerIs("another-analyst");
+        assertDoesNotThrow(() -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+    }
+
+    @Test
+    void concurrencyLimitIsSharedByEveryPrincipal() {
+        callerIs("analyst");
+        admissionControlService.acquire(AdmissionLane.SUMMARY);
+        callerIs("another-analyst");
+        admissionControlService.acquire(AdmissionLane.SUMMARY);
+
+        callerIs("third-analyst");
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admissionControlService.acquire(AdmissionLane.SUMMARY));
+
+        assertEquals(AdmissionControlService.CONCURRENCY_LIMIT_EXCEEDED, e.getErrorCode());
+        assertEquals(Duration.ofSeconds(1), e.getRetryAfter());
+        assertDoesNotThrow(() -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+    }
+
+    @Test
+    void uploadLimitDoesNotFollowLatency() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            callerIs("analyst-" + i);
+            AdmissionControlService.Permit fast = admissionControlService.acquire(AdmissionLane.UPLOAD);
+            fast.release(true);
+        }
+        List<AdmissionControlService.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            callerIs("analyst-" + i);
+            permits.add(admissionControlService.acquire(AdmissionLane.UPLOAD));
+        }
+        Thread.sleep(20);
+        permits.forEach(permit -> permit.release(true));
+
+        assertEquals(3, meterRegistry.get("admission.limit").tag("lane", "upload").gauge().value());
+        for (int i = 0; i < 3; i++) {
+            callerIs("late-analyst-" + i);
+            admissionControlService.acquire(AdmissionLane.UPLOAD);
+        }
+        callerIs("late-analyst-3");
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admissionControlService.acquire(AdmissionLane.UPLOAD));
+        assertEquals(AdmissionControlService.CONCURRENCY_LIMIT_EXCEEDED, e.getErrorCode());
+        assertEquals(Duration.ofSeconds(30), e.getRetryAfter());
+    }
+
+    @Test
+    void refusedRequestsDoNotHoldTheQuota() {
+        callerIs("analyst");
+        admissionControlService.acquire(AdmissionLane.SUMMARY);
+        AdmissionControlService.Permit permit = admissionControlService.acquire(AdmissionLane.SUMMARY);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(AdmissionRejectedException.class, () -> admissionControlService.acquire(AdmissionLane.SUMMARY));
+        }
+
+        permit.release(false);
+        permit.release(false);
+
+        assertDoesNotThrow(() -> admissionControlService.acquire(AdmissionLane.SUMMARY));
+        assertThrows(AdmissionRejectedException.class, () -> admissionControlService.acquire(AdmissionLane.SUMMARY));
+    }
+}
@@ -0,0 +1,140 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.service.alert.AlertRule;
+import it.bm.service.alert.AlertRuleEngine;
+import it.bm.service.alert.KeyAggregationAlertRule;
+import it.bm.service.alert.RowAlertRule;
+import it.bm.util.StringLongMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlertRuleEngineTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> visits = new ArrayList<>();
+
+    private static CustomerServiceSubscriptions subscription(String customerId, String serviceType, SubscriptionStatusEnum status) {
+        CustomerServiceSubscriptions subscription = new CustomerServiceSubscriptions();
+        subscription.setCustomerId(customerId);
+        subscription.setServiceType(serviceType);
+        subscription.setStatus(new SubscriptionStatus(status));
+        return subscription;
+    }
+
+    private class PecRule extends RowAlertRule {
+
+        private final List<List<String>> firedChunks = new ArrayList<>();
+
+        @Override
+        public String name() {
+            return "pec";
+        }
+
+        @Override
+        protected Predicate<CustomerServiceSubscriptions> predicate() {
+            return record -> {
+                visits.add("pec:" + record.getCustomerId());
+                return "pec".equals(record.getServiceType());
+            };
+        }
+
+        @Override
+        protected int fire(List<CustomerServiceSubscriptions> matches, NotificationBatch notifications) {
+            firedChunks.add(matches.stream().map(CustomerServiceSubscriptions::getCustomerId).toList());
+            return matches.size();
+        }
+    }
+
+    private class ExpiredRule extends KeyAggregationAlertRule {
+
+        private final Map<String, Long> fired = new HashMap<>();
+
+        @Override
+        public String name() {
+            return "expired";
+        }
+
+        @Override
+        protected String key(CustomerServiceSubscriptions record) {
+            visits.add("expired:" + record.getCustomerId());
+            return record.getStatus().getCode() == SubscriptionStatusEnum.EXPIRED ? record.getCustomerId() : null;
+        }
+
+        @Override
+        protected int fire(StringLongMap countsByKey, NotificationBatch notifications) {
+            countsByKey.forEach((customerId, count) -> {
+                if (count > 1) {
+                    fired.put(customerId, count);
+                    notifications.addExpiredServices(customerId, count);
+                }
+            });
+            return fired.size();
+        }
+    }
+
+    @Test
+    void everyRecordMeetsAllRulesBeforeTheNextOne() {
+        PecRule pecRule = new PecRule();
+        ExpiredRule expiredRule = new ExpiredRule();
+        AlertRuleEngine.Run run = new AlertRuleEngine(List.of(pecRule, expiredRule), meterRegistry).start();
+
+        run.accept(List.of(
+                subscription("C001", "pec", SubscriptionStatusEnum.EXPIRED),
+                subscription("C002", "hosting", SubscriptionStatusEnum.ACTIVE)));
+
+        assertEquals(List.of("pec:C001", "expired:C001", "pec:C002", "expired:C002"), visits);
+    }
+
+    @Test
+    void rowRulesFirePerChunkAndAggregationsOncePerUpload() {
+        PecRule pecRule = new PecRule();
+        ExpiredRule expiredRule = new ExpiredRule();
+        AlertRuleEngine.Run run = new AlertRuleEngine(List.of(pecRule, expiredRule), meterRegistry).start();
+
+        run.accept(List.of(
+                subscription("C001", "pec", SubscriptionStatusEnum.EXPIRED),
+                subscription("C002", "pec", SubscriptionStatusEnum.ACTIVE)));
+        run.accept(List.of(
+                subscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED),
+                subscription("C003", "pec", SubscriptionStatusEnum.EXPIRED)));
+        assertTrue(expiredRule.fired.isEmpty());
+        NotificationBatch notifications = run.finish();
+
+        assertEquals(List.of(List.of("C001", "C002"), List.of("C003")), pecRule.firedChunks);
+        assertEquals(List.of(new ExpiredServicesDTO("C001", 2)), notifications.getExpiredServicesMessages());
+        assertEquals(Map.of("C001", 2L), expiredRule.fired);
+        assertEquals(3.0, meterRegistry.counter("alert.rule.fired", "rule", "pec").count());
+        assertEquals(1.0, meterRegistry.counter("alert.rule.fired", "rule", "expired").count());
+        assertEquals(3, meterRegistry.timer("alert.rule.evaluation", "rule", "pec").count());
+        assertEquals(3, meterRegistry.timer("alert.rule.evaluation", "rule", "expired").count());
+    }
+
+    @Test
+    void everyUploadStartsFromFreshState() {
+        ExpiredRule expiredRule = new ExpiredRule();
+        AlertRuleEngine engine = new AlertRuleEngine(List.<AlertRule>of(expiredRule), meterRegistry);
+
+        AlertRuleEngine.Run first = engine.start();
+        first.accept(List.of(subscription("C001", "pec", SubscriptionStatusEnum.EXPIRED)));
+        first.finish();
+        AlertRuleEngine.Run second = engine.start();
+        second.accept(List.of(subscription("C001", "spid", SubscriptionStatusEnum.EXPIRED)));
+        second.finish();
+
+        assertTrue(expiredRule.fired.isEmpty());
+    }
+}
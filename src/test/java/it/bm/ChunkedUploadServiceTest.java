@@ -0,0 +1,273 @@
+package it.bm;
+
+import it.bm.model.UploadConflictException;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.ingestion.UploadPart;
+import it.bm.model.ingestion.UploadSession;
+import it.bm.service.ChunkedUploadService;
+import it.bm.service.FileValidationService;
+import it.bm.service.IngestionJobService;
+import it.bm.util.FileUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadServiceTest {
+
+    private static final String FIRST_PART = "customer_id,service_type,activation_date,expiration_date,amount,status\nC001,pec,2024-";
+    private static final String SECOND_PART = "01-01,2025-01-01,10.00,ACTIVE\n";
+    private static final String SHA256_OF_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Mock
+    private FileValidationService fileValidationService;
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    @TempDir
+    private Path uploadsDir;
+
+    private ChunkedUploadService chunkedUploadService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("report-user"));
+        chunkedUploadService = new ChunkedUploadService(fileValidationService, ingestionJobService, auditorProvider);
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadsDir", uploadsDir);
+        ReflectionTestUtils.setField(chunkedUploadService, "maxPartSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(chunkedUploadService, "maxParts", 100);
+        ReflectionTestUtils.setField(chunkedUploadService, "expiry", Duration.ofHours(24));
+    }
+
+    private static InputStream content(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha256(String content) {
+        return HexFormat.of().formatHex(FileUtil.newSha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private UploadSession uploadBothParts() throws IOException {
+        UploadSession session = chunkedUploadService.initiate("test.csv");
+        chunkedUploadService.putPart(session.getId(), 2, content(SECOND_PART), null);
+        chunkedUploadService.putPart(session.getId(), 1, content(FIRST_PART), null);
+        return session;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void completeHandsThePartsInOrderToAnIngestionJob() throws IOException {
+        UploadSession session = uploadBothParts();
+        IngestionJob job = new IngestionJob("test.csv", PersistenceMode.COPY, "report-user", null);
+        when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenAnswer(invocation -> {
+            assertEquals(FIRST_PART + SECOND_PART, new String(invocation.<InputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8));
+            return new ByteArrayInputStream(new byte[0]);
+        });
+        when(ingestionJobService.submit(eq("test.csv"), anyList(), eq(sha256(FIRST_PART + SECOND_PART)), eq(PersistenceMode.COPY), eq(false), any()))
+                .thenReturn(job);
+
+        assertEquals(Optional.of(job), chunkedUploadService.complete(session.getId(), PersistenceMode.COPY, false));
+
+        ArgumentCaptor<List<Path>> files = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Runnable> cleanup = ArgumentCaptor.forClass(Runnable.class);
+        verify(ingestionJobService).submit(eq("test.csv"), files.capture(), any(), eq(PersistenceMode.COPY), eq(false), cleanup.capture());
+        assertEquals(List.of(session.getDirectory().resolve("part-00001"), session.getDirectory().resolve("part-00002")), files.getValue());
+        assertEquals(job.getId(), session.getJobId());
+
+        when(ingestionJobService.findJob(job.getId())).thenReturn(Optional.of(job));
+        assertEquals(Optional.of(job), chunkedUploadService.complete(session.getId(), PersistenceMode.COPY, false));
+
+        cleanup.getValue().run();
+        assertFalse(Files.exists(session.getDirectory()));
+    }
+
+    @Test
+    void contentSentInOrderIsDigestedWhileItIsWritten() throws IOException {
+        UploadSession session = chunkedUploadService.initiate("test.csv");
+        chunkedUploadService.putPart(session.getId(), 1, content(FIRST_PART), null);
+        chunkedUploadService.putPart(session.getId(), 2, content(SECOND_PART), null);
+        /* the parts are not read back: the digest is the one of the content as it was received */
+        Files.writeString(session.getDirectory().resolve("part-00001"), "changed on disk");
+
+        assertEquals(sha256(FIRST_PART + SECOND_PART), session.getContentSha256());
+    }
+
+    @Test
+    void contentSentOutOfOrderOrReplacedIsStillDigestedInPartOrder() throws IOException {
+        UploadSession session = uploadBothParts();
+        assertEquals(sha256(FIRST_PART + SECOND_PART), session.getContentSha256());
+
+        chunkedUploadService.putPart(session.getId(), 1, content("abc"), SHA256_OF_ABC);
+        assertEquals(sha256("abc" + SECOND_PART), session.getContentSha256());
+
+        chunkedUploadService.putPart(session.getId(), 1, content("abc"), SHA256_OF_ABC);
+        chunkedUploadService.putPart(session.getId(), 2, content("def"), null);
+        assertEquals(sha256("abcdef"), session.getContentSha256());
+    }
+
+    @Test
+    void retriedPartReplacesThePreviousOne() throws IOException {
+        UploadSession session = chunkedUploadService.initiate("test.csv");
+
+        chunkedUploadService.putPart(session.getId(), 1, content("partial"), null);
+        UploadPart part = chunkedUploadService.putPart(session.getId(), 1, content("abc"), SHA256_OF_ABC).orElseThrow();
+
+        assertEquals(3, part.size());
+        assertEquals(SHA256_OF_ABC, part.sha256());
+        assertEquals("abc", Files.readString(part.path()));
+        assertEquals(List.of(part), session.getParts());
+        try (var files = Files.list(session.getDirectory())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void partWithWrongChecksumOrTooLargeIsNotStored() throws IOException {
+        UploadSession session = chunkedUploadService.initiate("test.csv");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> chunkedUploadService.putPart(session.getId(), 1, content("abd"), SHA256_OF_ABC));
+        assertThrows(IllegalArgumentException.class,
+                () -> chunkedUploadService.putPart(session.getId(), 2, content("x".repeat(2048)), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> chunkedUploadService.putPart(session.getId(), 101, content("abc"), null));
+
+        assertTrue(session.getParts().isEmpty());
+        try (var files = Files.list(session.getDirectory())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void completeWithMissingPartsIsRefused() throws IOException {
+        UploadSession session = chunkedUploadService.initiate("test.csv");
+        chunkedUploadService.putPart(session.getId(), 1, content(FIRST_PART), null);
+        chunkedUploadService.putPart(session.getId(), 3, content(SECOND_PART), null);
+
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> chunkedUploadService.complete(session.getId(), null, false));
+
+        assertTrue(thrown.getMessage().endsWith("is missing parts [2]"));
+        verify(ingestionJobService, never()).submit(any(), anyList(), any(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void uploadStaysOpenWhenTheJobQueueIsFull() throws IOException {
+        UploadSession session = uploadBothParts();
+        when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(ingestionJobService.submit(eq("test.csv"), anyList(), any(), any(), eq(false), any())).thenThrow(new TaskRejectedException("queue full"));
+
+        assertThrows(TaskRejectedException.class, () -> chunkedUploadService.complete(session.getId(), null, false));
+
+        assertFalse(session.isCompleted());
+        assertEquals(2, session.getParts().size());
+        assertTrue(chunkedUploadService.putPart(session.getId(), 2, content(SECOND_PART), null).isPresent());
+    }
+
+    @Test
+    void completedUploadRefusesPartsAndAbort() throws IOException {
+        UploadSession session = uploadBothParts();
+        when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(ingestionJobService.submit(eq("test.csv"), anyList(), any(), any(), eq(false), any()))
+                .thenReturn(new IngestionJob("test.csv", null, "report-user", null));
+        chunkedUploadService.complete(session.getId(), null, false);
+
+        assertThrows(UploadConflictException.class,
+                () -> chunkedUploadService.putPart(session.getId(), 3, content("abc"), null));
+        assertThrows(UploadConflictException.class, () -> chunkedUploadService.abort(session.getId()));
+    }
+
+    @Test
+    void abortDeletesTheParts() throws IOException {
+        UploadSession session = uploadBothParts();
+
+        assertTrue(chunkedUploadService.abort(session.getId()));
+
+        assertFalse(Files.exists(session.getDirectory()));
+        assertTrue(chunkedUploadService.findSession(session.getId()).isEmpty());
+        assertFalse(chunkedUploadService.abort(session.getId()));
+    }
+
+    @Test
+    void uploadOfAnotherUserIsNotFound() throws IOException {
+        UploadSession session = uploadBothParts();
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("other-user"));
+
+        assertTrue(chunkedUploadService.findSession(session.getId()).isEmpty());
+        assertTrue(chunkedUploadService.putPart(session.getId(), 3, content("abc"), null).isEmpty());
+        assertTrue(chunkedUploadService.complete(session.getId(), null, false).isEmpty());
+        assertFalse(chunkedUploadService.abort(session.getId()));
+
+        assertEquals(2, session.getParts().size());
+        assertTrue(Files.exists(session.getDirectory()));
+        verifyNoInteractions(ingestionJobService);
+    }
+
+    @Test
+    void expiredUploadInUseIsNotEvictedUntilItsLockIsFree() throws Exception {
+        UploadSession session = uploadBothParts();
+        ReflectionTestUtils.setField(chunkedUploadService, "expiry", Duration.ZERO);
+        Thread.sleep(5);
+
+        session.getLock().readLock().lock();
+        try {
+            chunkedUploadService.initiate("other.csv");
+            assertEquals(Optional.of(session), chunkedUploadService.findSession(session.getId()));
+            assertTrue(Files.exists(session.getDirectory()));
+        } finally {
+            session.getLock().readLock().unlock();
+        }
+
+        chunkedUploadService.initiate("other.csv");
+        assertTrue(chunkedUploadService.findSession(session.getId()).isEmpty());
+        assertFalse(Files.exists(session.getDirectory()));
+    }
+
+    @Test
+    void unknownUploadIsNotFound() throws IOException {
+        UUID uploadId = UUID.randomUUID();
+
+        assertTrue(chunkedUploadService.putPart(uploadId, 1, content("abc"), null).isEmpty());
+        assertTrue(chunkedUploadService.complete(uploadId, null, false).isEmpty());
+        assertTrue(chunkedUploadService.findSession(uploadId).isEmpty());
+    }
+}
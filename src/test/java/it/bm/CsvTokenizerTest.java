@@ -0,0 +1,182 @@
+package it.bm;
+
+import it.bm.util.csv.CsvRow;
+import it.bm.util.csv.CsvTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTokenizerTest {
+
+    private static final List<String> COLUMNS = List.of("id", "name", "amount");
+
+    private static CsvTokenizer tokenizer(String csv) {
+        return new CsvTokenizer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), COLUMNS);
+    }
+
+    private static List<List<String>> readAll(CsvTokenizer tokenizer) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        CsvRow row = tokenizer.newRow();
+        while (tokenizer.next(row)) {
+            rows.add(List.of(row.getString(0), row.getString(1), row.getString(2)));
+        }
+        return rows;
+    }
+
+    @Test
+    void resolvesColumnsFromHeaderInAnyOrderAndCase() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("AMOUNT, Id ,name,extra\n10.50,C1,hosting,x\n");
+
+        assertEquals(List.of(List.of("C1", "hosting", "10.50")), readAll(tokenizer));
+        assertEquals(1, tokenizer.getRecordNumber());
+    }
+
+    @Test
+    void handlesQuotedFieldsWithDelimitersNewlinesAndEscapedQuotes() throws IOException {
+        String csv = "id,name,amount\r\n" +
+                "\"C1\",\"a, \"\"quoted\"\"\nname\",\"1\"\r\n" +
+                "C2,\"\",2\r\n";
+
+        assertEquals(List.of(
+                List.of("C1", "a, \"quoted\"\nname", "1"),
+                List.of("C2", "", "2")), readAll(tokenizer(csv)));
+    }
+
+    @Test
+    void trimsFieldsAndSkipsEmptyLines() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\n\n  C1 , pec ,  3 \n\r\nC2,mail,4");
+
+        assertEquals(List.of(List.of("C1", "pec", "3"), List.of("C2", "mail", "4")), readAll(tokenizer));
+        assertEquals(2, tokenizer.getRecordNumber());
+    }
+
+    @Test
+    void flagsRecordsWithMissingFields() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\nC1,pec\nC2,mail,4\n");
+        CsvRow row = tokenizer.newRow();
+
+        assertTrue(tokenizer.next(row));
+        assertTrue(row.isMalformed());
+        assertEquals(1, row.getRecordNumber());
+        assertTrue(tokenizer.next(row));
+        assertFalse(row.isMalformed());
+        assertEquals("C2", row.getString(0));
+        assertEquals(2, row.getRecordNumber());
+    }
+
+    @Test
+    void readsRecordsSpanningBufferRefills() throws IOException {
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        String longName = "x".repeat(100_000);
+        for (int i = 0; i < 2_000; i++) {
+            csv.append('C').append(i).append(",\"").append(i == 1_000 ? longName : "n\"\"" + i).append("\",").append(i).append('\n');
+        }
+        InputStream trickle = new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7_919));
+            }
+        };
+
+        List<List<String>> rows = readAll(new CsvTokenizer(trickle, COLUMNS));
+
+        assertEquals(2_000, rows.size());
+        assertEquals(List.of("C0", "n\"0", "0"), rows.get(0));
+        assertEquals(longName, rows.get(1_000).get(1));
+        assertEquals(List.of("C1999", "n\"1999", "1999"), rows.get(1_999));
+    }
+
+    @Test
+    void readsFromByteBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap("id,name,amount\nC1,pec,1\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(List.of(List.of("C1", "pec", "1")), readAll(new CsvTokenizer(buffer, COLUMNS)));
+    }
+
+    @Test
+    void equalsIgnoreCaseComparesAsciiFieldsOfAnyCase() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\nC1,ACTIVE,1\nC2,active,1\nC3,ACTIVES,1\n");
+        CsvRow row = tokenizer.newRow();
+
+        assertTrue(tokenizer.next(row));
+        assertTrue(row.equalsIgnoreCase(1, "ACTIVE".getBytes(StandardCharsets.US_ASCII)));
+
+        assertTrue(tokenizer.next(row));
+        assertTrue(row.equalsIgnoreCase(1, "ACTIVE".getBytes(StandardCharsets.US_ASCII)));
+
+        assertTrue(tokenizer.next(row));
+        assertFalse(row.equalsIgnoreCase(1, "ACTIVE".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void decodingAccessorsMatchJdkOrReportInvalid() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\n2024-02-29,x,49.99\n1969-12-31,x,-0.5\n0000-01-01,x,12.340\n"
+                + "2023-02-29,x,1e3\n2024-13-01,x,1.234\n24-01-01,x,.\n2024-1-01,x,1234567890123456\n");
+        CsvRow row = tokenizer.newRow();
+
+        assertTrue(tokenizer.next(row));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), row.getEpochDay(0));
+        assertEquals(4999, row.getCents(2));
+        assertTrue(tokenizer.next(row));
+        assertEquals(-1, row.getEpochDay(0));
+        assertEquals(-50, row.getCents(2));
+        assertTrue(tokenizer.next(row));
+        assertEquals(LocalDate.of(0, 1, 1).toEpochDay(), row.getEpochDay(0));
+        assertEquals(1234, row.getCents(2));
+
+        while (tokenizer.next(row)) {
+            assertEquals(CsvRow.INVALID, row.getEpochDay(0));
+            assertEquals(CsvRow.INVALID, row.getCents(2));
+        }
+    }
+
+    @Test
+    void dictionaryStringsAreSharedByEqualFields() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\nC1,pec,1\nC2,\"pec\",2\nC1,spid,3\n");
+        CsvRow row = tokenizer.newRow();
+        List<String> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        while (tokenizer.next(row)) {
+            ids.add(row.getDictionaryString(0));
+            names.add(row.getDictionaryString(1));
+        }
+
+        assertEquals(List.of("C1", "C2", "C1"), ids);
+        assertEquals(List.of("pec", "pec", "spid"), names);
+        assertSame(ids.get(0), ids.get(2));
+        assertSame(names.get(0), names.get(1));
+    }
+
+    @Test
+    void rawRecordKeepsQuotesAsReadAndIsCutOnACharacterBoundary() throws IOException {
+        CsvTokenizer tokenizer = tokenizer("id,name,amount\r\nC1,\"say \"\"hi\"\"\",1\r\nC2,caff\u00e8,2\n");
+        CsvRow row = tokenizer.newRow();
+
+        assertTrue(tokenizer.next(row));
+        assertEquals("say \"hi\"", row.getString(1));
+        assertEquals("C1,\"say \"\"hi\"\"\",1", row.getRawRecord(1024));
+        assertTrue(tokenizer.next(row));
+        assertEquals("C2,caff\u00e8,2", row.getRawRecord(1024));
+        assertEquals("C2,caff...", row.getRawRecord(8));
+        assertEquals("C2,caff\u00e8...", row.getRawRecord(9));
+    }
+
+    @Test
+    void failsOnMissingHeaderOrUnterminatedQuote() {
+        assertThrows(IOException.class, () -> readAll(tokenizer("id,amount\nC1,1\n")));
+        assertThrows(IOException.class, () -> readAll(tokenizer("id,name,amount\nC1,\"open,1\n")));
+    }
+}
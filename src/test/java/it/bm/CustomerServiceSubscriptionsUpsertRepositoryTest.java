@@ -0,0 +1,156 @@
+package it.bm;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.UpsertResult;
+import it.bm.repository.CustomerServiceSubscriptionsUpsertRepository;
+import it.bm.repository.SubscriptionIdAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerServiceSubscriptionsUpsertRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private SubscriptionIdAllocator subscriptionIdAllocator;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private CustomerServiceSubscriptionsUpsertRepository upsertRepository;
+
+    @BeforeEach
+    void setUp() {
+        upsertRepository = new CustomerServiceSubscriptionsUpsertRepository(jdbcTemplate, subscriptionIdAllocator, auditorProvider);
+    }
+
+    private static CustomerServiceSubscriptions subscription(String customerId, String amount) {
+        SubscriptionStatus status = new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE);
+        ReflectionTestUtils.setField(status, "id", 1L);
+        CustomerServiceSubscriptions subscription = new CustomerServiceSubscriptions();
+        subscription.setCustomerId(customerId);
+        subscription.setServiceType("pec");
+        subscription.setActivationDate(LocalDate.of(2024, 1, 1));
+        subscription.setExpirationDate(LocalDate.of(2025, 1, 1));
+        subscription.setAmount(new BigDecimal(amount));
+        subscription.setStatus(status);
+        return subscription;
+    }
+
+    private void statementReturns(Boolean... inserted) throws Exception {
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("report-user"));
+        when(jdbcTemplate.execute(ArgumentMatchers.<ConnectionCallback<Object>>any()))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<Object>>getArgument(0).doInConnection(connection));
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.createArrayOf(anyString(), any())).thenReturn(mock(Array.class));
+        when(statement.executeQuery()).thenReturn(resultSet);
+        Boolean[] hasNext = new Boolean[inserted.length + 1];
+        for (int i = 0; i < inserted.length; i++) {
+            hasNext[i] = true;
+        }
+        hasNext[inserted.length] = false;
+        when(resultSet.next()).thenReturn(hasNext[0], List.of(hasNext).subList(1, hasNext.length).toArray(Boolean[]::new));
+        if (inserted.length > 0) {
+            when(resultSet.getBoolean(1)).thenReturn(inserted[0], List.of(inserted).subList(1, inserted.length).toArray(Boolean[]::new));
+        }
+    }
+
+    @Test
+    void upsert_CountsInsertedUpdatedAndUnchangedRows() throws Exception {
+        when(subscriptionIdAllocator.allocate(3)).thenReturn(new long[]{31, 32, 33});
+        statementReturns(true, false);
+
+        UpsertResult result = upsertRepository.upsert(List.of(subscription("C1", "10.00"), subscription("C2", "10.00"),
+                subscription("C3", "10.00")));
+
+        assertEquals(new UpsertResult(1, 1, 1), result);
+        verify(connection).createArrayOf(eq("bigint"), eq(new Long[]{31L, 32L, 33L}));
+    }
+
+    @Test
+    void upsert_WritesOnlyTheLastRowOfAKeyRepeatedInTheChunk() throws Exception {
+        when(subscriptionIdAllocator.allocate(2)).thenReturn(new long[]{31, 32});
+        statementReturns(true, true);
+
+        UpsertResult result = upsertRepository.upsert(List.of(subscription("C1", "10.00"), subscription("C2", "10.00"),
+                subscription("C1", "12.00")));
+
+        assertEquals(new UpsertResult(2, 1, 0), result);
+        verify(connection).createArrayOf(eq("varchar"), eq(new String[]{"C1", "C2"}));
+        verify(connection).createArrayOf(eq("numeric"), eq(new BigDecimal[]{new BigDecimal("12.00"), new BigDecimal("10.00")}));
+    }
+
+    @Test
+    void withoutExistingKeys_SkipsKeysInTheTableAndRepeatedInTheChunk() throws Exception {
+        when(jdbcTemplate.execute(ArgumentMatchers.<ConnectionCallback<Object>>any()))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<Object>>getArgument(0).doInConnection(connection));
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.createArrayOf(anyString(), any())).thenReturn(mock(Array.class));
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(2L);
+        CustomerServiceSubscriptions first = subscription("C1", "10.00");
+        CustomerServiceSubscriptions existing = subscription("C2", "10.00");
+        CustomerServiceSubscriptions repeated = subscription("C1", "12.00");
+        CustomerServiceSubscriptions last = subscription("C3", "10.00");
+
+        List<CustomerServiceSubscriptions> rows = upsertRepository.withoutExistingKeys(List.of(first, existing, repeated, last));
+
+        assertEquals(List.of(first, last), rows);
+        verify(connection).createArrayOf(eq("varchar"), eq(new String[]{"C1", "C2", "C1", "C3"}));
+    }
+
+    @Test
+    void upsert_EmptyChunkSkipsTheDatabase() {
+        assertEquals(new UpsertResult(0, 0, 0), upsertRepository.upsert(List.of()));
+
+        verifyNoInteractions(jdbcTemplate, subscriptionIdAllocator);
+    }
+
+    @Test
+    void withoutExistingKeys_EmptyChunkSkipsTheDatabase() {
+        assertEquals(List.of(), upsertRepository.withoutExistingKeys(List.of()));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,215 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.ExpirationReminder;
+import it.bm.model.ingestion.ExpiringSubscription;
+import it.bm.model.kafka.ExpiringServiceDTO;
+import it.bm.repository.SubscriptionExpirationRepository;
+import it.bm.service.ExpirationReminderService;
+import it.bm.service.NotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExpirationReminderServiceTest {
+
+    private static final LocalDate EXPIRATION = LocalDate.of(2026, 1, 11);
+
+    @Mock
+    private SubscriptionExpirationRepository subscriptionExpirationRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T08:00:00Z"));
+
+    private ExpirationReminderService expirationReminderService;
+
+    @BeforeEach
+    void setUp() {
+        expirationReminderService = new ExpirationReminderService(subscriptionExpirationRepository, notificationService, meterRegistry);
+        ReflectionTestUtils.setField(expirationReminderService, "enabled", true);
+        ReflectionTestUtils.setField(expirationReminderService, "leadDays", new int[]{1, 30, 7});
+        ReflectionTestUtils.setField(expirationReminderService, "sendHour", 9);
+        ReflectionTestUtils.setField(expirationReminderService, "tick", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(expirationReminderService, "wheelSize", 64);
+        ReflectionTestUtils.setField(expirationReminderService, "clock", clock);
+        lenient().when(subscriptionExpirationRepository.claimRun(any(), anyString(), any())).thenReturn(OptionalLong.of(0));
+        lenient().when(subscriptionExpirationRepository.recordProgress(any(), anyString(), anyLong())).thenReturn(true);
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "initialize");
+    }
+
+    @Test
+    void remindsTheSubscriptionsOfTheDayAtEveryLeadStillAhead() {
+        when(subscriptionExpirationRepository.findRunningExpiringOn(eq(EXPIRATION), eq(0L), anyInt()))
+                .thenReturn(List.of(new ExpiringSubscription(1, "C001", "pec"), new ExpiringSubscription(2, "C002", "pec")));
+        expirationReminderService.schedule(List.of(subscription("C001", SubscriptionStatusEnum.ACTIVE, EXPIRATION),
+                subscription("C002", SubscriptionStatusEnum.ACTIVE, EXPIRATION)));
+        assertEquals(1, expirationReminderService.scheduledCount());
+
+        clock.set(Instant.parse("2026-01-04T08:59:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+        verify(notificationService, never()).sendExpiringServiceNotification(any());
+
+        clock.set(Instant.parse("2026-01-04T09:00:30Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C001", "pec", EXPIRATION, 7));
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C002", "pec", EXPIRATION, 7));
+        verify(subscriptionExpirationRepository).recordProgress(new ExpirationReminder(EXPIRATION, 7), getInstanceId(), 2);
+        verify(subscriptionExpirationRepository).completeRun(new ExpirationReminder(EXPIRATION, 7), getInstanceId());
+        assertEquals(1, expirationReminderService.scheduledCount());
+
+        clock.set(Instant.parse("2026-01-10T09:01:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C001", "pec", EXPIRATION, 1));
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C002", "pec", EXPIRATION, 1));
+        assertEquals(0, expirationReminderService.scheduledCount());
+        assertEquals(4.0, meterRegistry.counter("expiring.reminders.sent").count());
+    }
+
+    @Test
+    void leavesTheDayClaimedByAnotherInstance() {
+        when(subscriptionExpirationRepository.claimRun(any(), anyString(), any())).thenReturn(OptionalLong.empty());
+        expirationReminderService.schedule(List.of(subscription("C001", SubscriptionStatusEnum.ACTIVE, EXPIRATION)));
+
+        clock.set(Instant.parse("2026-01-04T09:01:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+
+        verify(subscriptionExpirationRepository, never()).findRunningExpiringOn(any(), anyLong(), anyInt());
+        verify(notificationService, never()).sendExpiringServiceNotification(any());
+        assertEquals(1, expirationReminderService.scheduledCount());
+        assertEquals(1.0, meterRegistry.counter("expiring.reminders.claimed.elsewhere").count());
+    }
+
+    @Test
+    void resumesAfterTheLastSentAndStopsWhenTakenOver() {
+        when(subscriptionExpirationRepository.claimRun(any(), anyString(), any())).thenReturn(OptionalLong.of(5));
+        when(subscriptionExpirationRepository.findRunningExpiringOn(eq(EXPIRATION), eq(5L), anyInt()))
+                .thenReturn(List.of(new ExpiringSubscription(6, "C006", "pec")));
+        when(subscriptionExpirationRepository.recordProgress(any(), anyString(), anyLong())).thenReturn(false);
+        expirationReminderService.schedule(List.of(subscription("C006", SubscriptionStatusEnum.ACTIVE, EXPIRATION)));
+
+        clock.set(Instant.parse("2026-01-04T09:01:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C006", "pec", EXPIRATION, 7));
+        verify(subscriptionExpirationRepository, never()).completeRun(any(), anyString());
+    }
+
+    @Test
+    void retriesTheDayOnTheNextTickAfterAFailure() {
+        when(subscriptionExpirationRepository.findRunningExpiringOn(eq(EXPIRATION), eq(0L), anyInt()))
+                .thenThrow(new IllegalStateException("connection refused"))
+                .thenReturn(List.of(new ExpiringSubscription(1, "C001", "pec")));
+        expirationReminderService.schedule(List.of(subscription("C001", SubscriptionStatusEnum.ACTIVE, EXPIRATION)));
+
+        clock.set(Instant.parse("2026-01-04T09:01:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+        verify(notificationService, never()).sendExpiringServiceNotification(any());
+        assertEquals(1, expirationReminderService.scheduledCount());
+
+        clock.set(Instant.parse("2026-01-04T09:03:00Z"));
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "tick");
+        verify(notificationService).sendExpiringServiceNotification(new ExpiringServiceDTO("C001", "pec", EXPIRATION, 7));
+        verify(subscriptionExpirationRepository, times(2)).claimRun(eq(new ExpirationReminder(EXPIRATION, 7)), anyString(), any());
+    }
+
+    @Test
+    void schedulesOneTimerPerExpirationDateOfTheRunningSubscriptions() {
+        CustomerServiceSubscriptions active = subscription("C001", SubscriptionStatusEnum.ACTIVE, EXPIRATION);
+
+        expirationReminderService.schedule(List.of(active, subscription("C002", SubscriptionStatusEnum.EXPIRED, LocalDate.of(2026, 2, 11))));
+        expirationReminderService.schedule(List.of(active, subscription("C003", SubscriptionStatusEnum.PENDING_RENEWAL, EXPIRATION),
+                subscription("C004", SubscriptionStatusEnum.PENDING_RENEWAL, LocalDate.of(2026, 3, 11))));
+
+        assertEquals(2, expirationReminderService.scheduledCount());
+    }
+
+    @Test
+    void rebuildLoadsTheRunningExpirationDates() {
+        when(subscriptionExpirationRepository.findRunningExpirationDatesAfter(LocalDate.of(2026, 1, 1)))
+                .thenReturn(List.of(EXPIRATION, LocalDate.of(2026, 1, 2), LocalDate.of(2026, 1, 3)));
+        clock.set(Instant.parse("2026-01-01T09:30:00Z"));
+
+        ReflectionTestUtils.invokeMethod(expirationReminderService, "rebuild");
+
+        assertEquals(2, expirationReminderService.scheduledCount());
+        verify(subscriptionExpirationRepository).deleteRunsBefore(LocalDate.of(2026, 1, 1));
+        assertTrue(meterRegistry.timer("expiring.reminders.rebuild").count() >= 1);
+    }
+
+    private String getInstanceId() {
+        return (String) ReflectionTestUtils.getField(expirationReminderService, "instanceId");
+    }
+
+    private static CustomerServiceSubscriptions subscription(String customerId, SubscriptionStatusEnum status, LocalDate expirationDate) {
+        CustomerServiceSubscriptions subscription = new CustomerServiceSubscriptions();
+        subscription.setCustomerId(customerId);
+        subscription.setServiceType("pec");
+        subscription.setActivationDate(LocalDate.of(2023, 1, 11));
+        subscription.setExpirationDate(expirationDate);
+        subscription.setAmount(BigDecimal.TEN);
+        subscription.setStatus(new SubscriptionStatus(status));
+        return subscription;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -2,21 +2,27 @@ package it.bm;
 
 import it.bm.model.entity.CustomerServiceSubscriptions;
 import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.RejectReason;
 import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
 import it.bm.service.FileParseService;
 import it.bm.service.SubscriptionStatusService;
+import it.bm.util.csv.CsvTokenizer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.mock.web.MockMultipartFile;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,8 +41,11 @@ class FileParseServiceTest {
         fileParseService = new FileParseService(subscriptionStatusService);
     }
 
-    private MockMultipartFile csvFile(String name, String content) {
-        return new MockMultipartFile("file", name, "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    private List<CustomerServiceSubscriptions> parse(String content) {
+        List<CustomerServiceSubscriptions> result = new ArrayList<>();
+        fileParseService.parseCsvInChunks(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                Integer.MAX_VALUE, result::addAll, new RejectedRows());
+        return result;
     }
 
     @Test
@@ -48,8 +57,7 @@ class FileParseServiceTest {
         SubscriptionStatus status = new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE);
         when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(status);
 
-        MultipartFile file = csvFile("ok.csv", csv);
-        List<CustomerServiceSubscriptions> result = fileParseService.parseCsvRecordToEntity(file);
+        List<CustomerServiceSubscriptions> result = parse(csv);
 
         assertEquals(1, result.size());
         CustomerServiceSubscriptions row = result.get(0);
@@ -89,8 +97,7 @@ class FileParseServiceTest {
         when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(active);
         when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.PENDING_RENEWAL)).thenReturn(pending);
 
-        MultipartFile file = csvFile("mix.csv", csv);
-        List<CustomerServiceSubscriptions> result = fileParseService.parseCsvRecordToEntity(file);
+        List<CustomerServiceSubscriptions> result = parse(csv);
 
         assertEquals(2, result.size());
 
@@ -111,8 +118,7 @@ class FileParseServiceTest {
         SubscriptionStatus active = new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE);
         when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(active);
 
-        MultipartFile file = csvFile("headers.csv", csv);
-        List<CustomerServiceSubscriptions> result = fileParseService.parseCsvRecordToEntity(file);
+        List<CustomerServiceSubscriptions> result = parse(csv);
         assertEquals(1, result.size());
         CustomerServiceSubscriptions row = result.get(0);
         assertEquals("C777", row.getCustomerId());
@@ -130,22 +136,76 @@ class FileParseServiceTest {
 
         when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(null);
 
-        MultipartFile file = csvFile("nullstatus.csv", csv);
-        List<CustomerServiceSubscriptions> result = fileParseService.parseCsvRecordToEntity(file);
+        List<CustomerServiceSubscriptions> result = parse(csv);
         assertTrue(result.isEmpty());
     }
 
     @Test
     void returnsEmptyList_WhenOnlyHeaderPresent() {
         String csv = "customer_id,service_type,activation_date,expiration_date,amount,status\n";
-        MultipartFile file = csvFile("header-only.csv", csv);
-
-        List<CustomerServiceSubscriptions> result = fileParseService.parseCsvRecordToEntity(file);
+        List<CustomerServiceSubscriptions> result = parse(csv);
 
         assertNotNull(result);
         assertTrue(result.isEmpty());
         verifyNoInteractions(subscriptionStatusService);
     }
 
-}
+    @Test
+    void parseCsvInChunks_EmitsFixedSizeChunks() {
+        String csv ="customer_id,service_type,activation_date,expiration_date,amount,status\n" +
+                        "C001,hosting,2024-01-01,2025-12-31,49.99,ACTIVE\n" +
+                        "C002,pec,2024-01-01,2025-12-31,9.99,ACTIVE\n" +
+                        "C003,pec,not-a-date,2025-12-31,19.99,ACTIVE\n" +
+                        "C004,mail,2024-03-01,2025-12-31,5.00,ACTIVE\n" +
+                        "C005,spid,2024-03-01,2025-12-31,5.00,ACTIVE\n";
+
+        SubscriptionStatus active = new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE);
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(active);
+
+        List<List<CustomerServiceSubscriptions>> chunks = new ArrayList<>();
+        RejectedRows rejectedRows = new RejectedRows();
+        long records = fileParseService.parseCsvInChunks(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 2, chunks::add, rejectedRows);
+
+        assertEquals(5, records);
+        assertEquals(2, chunks.size());
+        assertEquals(List.of("C001", "C002"), chunks.get(0).stream().map(CustomerServiceSubscriptions::getCustomerId).toList());
+        assertEquals(List.of("C004", "C005"), chunks.get(1).stream().map(CustomerServiceSubscriptions::getCustomerId).toList());
+        assertEquals(1, rejectedRows.getTotal());
+    }
+
+    @Test
+    void parseRecords_ReportsEveryRejectedRowWithItsReason() throws IOException {
+        String csv ="customer_id,service_type,activation_date,expiration_date,amount,status\n" +
+                        "C001,hosting,2024-01-01,2025-12-31,49.99,ACTIVE\n" +
+                        ",pec,2024-02-01,2025-12-31,10,ACTIVE\n" +
+                        "C003,pec,2024-02-30,2025-12-31,19.99,ACTIVE\n" +
+                        "C004,mail,2024-03-01,2023-12-31,5.00,ACTIVE\n" +
+                        "C005,mail,2024-03-01,2025-12-31,0.00,ACTIVE\n" +
+                        "C006,mail,2024-03-01,2025-12-31,5.001,ACTIVE\n" +
+                        "C007,mail,2024-03-01,2025-12-31,5.00,CLOSED\n" +
+                        "C008,mail,2024-03-01\n";
 
+        SubscriptionStatus active = new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE);
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE)).thenReturn(active);
+
+        List<CustomerServiceSubscriptions> valid = new ArrayList<>();
+        List<RejectedRow> rejected = new ArrayList<>();
+        CsvTokenizer tokenizer = fileParseService.newTokenizer(ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8)));
+        fileParseService.parseRecords(tokenizer, 10, valid::addAll, rejected::add);
+
+        assertEquals(1, valid.size());
+        assertEquals(new BigDecimal("49.99"), valid.get(0).getAmount());
+        assertEquals(List.of(
+                new RejectedRow(2, RejectReason.MISSING_CUSTOMER_ID, "", ",pec,2024-02-01,2025-12-31,10,ACTIVE"),
+                new RejectedRow(3, RejectReason.INVALID_ACTIVATION_DATE, "2024-02-30",
+                        "C003,pec,2024-02-30,2025-12-31,19.99,ACTIVE"),
+                new RejectedRow(4, RejectReason.EXPIRATION_BEFORE_ACTIVATION, "2023-12-31",
+                        "C004,mail,2024-03-01,2023-12-31,5.00,ACTIVE"),
+                new RejectedRow(5, RejectReason.AMOUNT_OUT_OF_RANGE, "0.00", "C005,mail,2024-03-01,2025-12-31,0.00,ACTIVE"),
+                new RejectedRow(6, RejectReason.INVALID_AMOUNT, "5.001", "C006,mail,2024-03-01,2025-12-31,5.001,ACTIVE"),
+                new RejectedRow(7, RejectReason.INVALID_STATUS, "CLOSED", "C007,mail,2024-03-01,2025-12-31,5.00,CLOSED")), rejected.subList(0, 6));
+        assertEquals(RejectReason.MALFORMED_RECORD, rejected.get(6).reason());
+        assertEquals("C008,mail,2024-03-01", rejected.get(6).record());
+    }
+}
@@ -1,22 +1,34 @@
 package it.bm;
 
+import com.github.luben.zstd.Zstd;
 import it.bm.service.FileValidationService;
 import org.apache.tika.Tika;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -70,7 +82,7 @@ class FileValidationServiceTest {
     void testInvalidMimeType_ThrowsException() throws IOException {
         MockMultipartFile file = new MockMultipartFile("file", "test.csv", "application/pdf", VALID_CSV.getBytes());
 
-        when(tikaMock.detect(any(InputStream.class), eq("test.csv"))).thenReturn("application/pdf");
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("application/pdf");
 
         assertThrows(IllegalArgumentException.class, () -> fileValidationService.validateCsvFile(file));
     }
@@ -80,10 +92,10 @@ class FileValidationServiceTest {
         MockMultipartFile file = new MockMultipartFile("file", "test.csv", "text/csv",
                 VALID_CSV.getBytes(StandardCharsets.UTF_8));
 
-        when(tikaMock.detect(any(InputStream.class), eq("test.csv"))).thenReturn("text/csv");
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("text/csv");
 
         assertDoesNotThrow(() -> fileValidationService.validateCsvFile(file));
-        verify(tikaMock).detect(any(InputStream.class), eq("test.csv"));
+        verify(tikaMock).detect(any(byte[].class), eq("test.csv"));
     }
 
 
@@ -92,10 +104,10 @@ class FileValidationServiceTest {
         MockMultipartFile file = new MockMultipartFile("file", "data.txt", "text/plain",
                 VALID_CSV.getBytes(StandardCharsets.UTF_8));
 
-        when(tikaMock.detect(any(InputStream.class), eq("data.txt"))).thenReturn("text/plain");
+        when(tikaMock.detect(any(byte[].class), eq("data.txt"))).thenReturn("text/plain");
 
         assertDoesNotThrow(() -> fileValidationService.validateCsvFile(file));
-        verify(tikaMock).detect(any(InputStream.class), eq("data.txt"));
+        verify(tikaMock).detect(any(byte[].class), eq("data.txt"));
     }
 
     @Test
@@ -103,7 +115,7 @@ class FileValidationServiceTest {
         MockMultipartFile file = new MockMultipartFile("file", "fail.csv", "text/csv",
                 VALID_CSV.getBytes(StandardCharsets.UTF_8));
 
-        when(tikaMock.detect(any(InputStream.class), eq("fail.csv")))
+        when(tikaMock.detect(any(byte[].class), eq("fail.csv")))
                 .thenThrow(new RuntimeException("Error"));
 
         assertThrows(RuntimeException.class,
@@ -134,4 +146,111 @@ class FileValidationServiceTest {
 
         assertThrows(IllegalArgumentException.class, () -> fileValidationService.validateCsvFile(file));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testValidFile_ReturnsStreamFromFirstByte() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "test.csv", "text/csv",
+                VALID_CSV.getBytes(StandardCharsets.UTF_8));
+
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("text/csv");
+
+        try (InputStream validated = fileValidationService.validateCsvFile(file)) {
+            assertEquals(VALID_CSV, new String(validated.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testNonRereadableStream_IsReadOnlyOnce() throws IOException {
+        InputStream singleUse = spy(new ByteArrayInputStream(VALID_CSV.getBytes(StandardCharsets.UTF_8)));
+
+        when(tikaMock.detect(any(byte[].class), eq("body.csv"))).thenReturn("text/csv");
+
+        try (InputStream validated = fileValidationService.validateCsvStream(singleUse, "body.csv")) {
+            assertEquals(VALID_CSV, new String(validated.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(singleUse, never()).reset();
+    }
+
+    @Test
+    void testHeaderLineWithCrLf_IsAccepted() throws IOException {
+        String crlfContent = VALID_CSV.replace("\n", "\r\n");
+        MockMultipartFile file = new MockMultipartFile("file", "test.csv", "text/csv",
+                crlfContent.getBytes(StandardCharsets.UTF_8));
+
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("text/csv");
+
+        assertDoesNotThrow(() -> fileValidationService.validateCsvFile(file).close());
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    @Test
+    void testGzipFile_IsValidatedAndReadDecompressed() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "test.csv.gz", "application/gzip", gzip(VALID_CSV));
+
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("text/csv");
+
+        try (InputStream validated = fileValidationService.validateCsvFile(file)) {
+            assertEquals(VALID_CSV, new String(validated.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        verify(tikaMock).detect(eq(VALID_CSV.getBytes(StandardCharsets.UTF_8)), eq("test.csv"));
+    }
+
+    @Test
+    void testZstdFile_IsValidatedAndReadDecompressed() throws IOException {
+        byte[] compressed = Zstd.compress(VALID_CSV.getBytes(StandardCharsets.UTF_8));
+        MockMultipartFile file = new MockMultipartFile("file", "data.TXT.zst", "application/zstd", compressed);
+
+        when(tikaMock.detect(any(byte[].class), eq("data.TXT"))).thenReturn("text/plain");
+
+        try (InputStream validated = fileValidationService.validateCsvFile(file)) {
+            assertEquals(VALID_CSV, new String(validated.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testCompressedContentUnderPlainName_IsDecompressed() throws IOException {
+        when(tikaMock.detect(any(byte[].class), eq("test.csv"))).thenReturn("text/csv");
+
+        try (InputStream validated = fileValidationService.validateCsvStream(new ByteArrayInputStream(gzip(VALID_CSV)), "test.csv")) {
+            assertEquals(VALID_CSV, new String(validated.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testCompressedNameWithPlainContent_ThrowsException() {
+        MockMultipartFile file = new MockMultipartFile("file", "test.csv.gz", "application/gzip",
+                VALID_CSV.getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> fileValidationService.validateCsvFile(file));
+        verify(tikaMock, never()).detect(any(byte[].class), any(String.class));
+    }
+
+    @Test
+    void testCorruptGzip_ThrowsException() throws IOException {
+        byte[] compressed = gzip(VALID_CSV);
+        compressed[compressed.length / 2] ^= 0x5a;
+        MockMultipartFile file = new MockMultipartFile("file", "test.csv.gz", "application/gzip", compressed);
+
+        assertThrows(IllegalArgumentException.class, () -> fileValidationService.validateCsvFile(file));
+    }
+
+    @Test
+    void testCompressedArchiveOfOtherType_ThrowsException() {
+        MockMultipartFile file = new MockMultipartFile("file", "test.zip.gz", "application/gzip", new byte[]{0x1f, (byte) 0x8b});
+
+        assertThrows(IllegalArgumentException.class, () -> fileValidationService.validateCsvFile(file));
+    }
+
+    @Test
+    void testIsCompressed_ReadsMagicBytes(@TempDir Path tempDir) throws IOException {
+        assertTrue(fileValidationService.isCompressed(Files.write(tempDir.resolve("a.csv"), gzip(VALID_CSV))));
+        assertFalse(fileValidationService.isCompressed(Files.write(tempDir.resolve("b.csv"), VALID_CSV.getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,89 @@
+package it.bm;
+
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestedFileStatus;
+import it.bm.repository.IngestedFileRepository;
+import it.bm.service.IngestedFileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.AuditorAware;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IngestedFileServiceTest {
+
+    private static final String SHA256 = "ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73";
+
+    @Mock
+    private IngestedFileRepository ingestedFileRepository;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    private IngestedFileService ingestedFileService;
+
+    private final UUID jobId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("report-user"));
+        ingestedFileService = new IngestedFileService(ingestedFileRepository, auditorProvider);
+    }
+
+    @Test
+    void newContentIsClaimed() {
+        when(ingestedFileRepository.insertIfAbsent(eq(SHA256), eq("test.csv"), eq(7L), eq(jobId), any(LocalDateTime.class), eq("report-user")))
+                .thenReturn(1);
+
+        assertTrue(ingestedFileService.claim(SHA256, "test.csv", 7, jobId).isEmpty());
+
+        verify(ingestedFileRepository, never()).findBySha256(any());
+    }
+
+    @Test
+    void knownContentReturnsTheEarlierIngestion() {
+        IngestedFile earlier = new IngestedFile(SHA256, "yesterday.csv", 7, UUID.randomUUID(),
+                IngestedFileStatus.COMPLETED, "report-user", LocalDateTime.now().minusDays(1));
+        when(ingestedFileRepository.insertIfAbsent(eq(SHA256), eq("test.csv"), eq(7L), eq(jobId), any(LocalDateTime.class), eq("report-user")))
+                .thenReturn(0);
+        when(ingestedFileRepository.findBySha256(SHA256)).thenReturn(Optional.of(earlier));
+
+        assertEquals(Optional.of(earlier), ingestedFileService.claim(SHA256, "test.csv", 7, jobId));
+    }
+
+    @Test
+    void claimReleasedDuringTheLookupIsRetried() {
+        when(ingestedFileRepository.insertIfAbsent(eq(SHA256), eq("test.csv"), eq(7L), eq(jobId), any(LocalDateTime.class), eq("report-user")))
+                .thenReturn(0, 1);
+        when(ingestedFileRepository.findBySha256(SHA256)).thenReturn(Optional.empty());
+
+        assertTrue(ingestedFileService.claim(SHA256, "test.csv", 7, jobId).isEmpty());
+
+        verify(ingestedFileRepository, times(2)).insertIfAbsent(eq(SHA256), eq("test.csv"), eq(7L), eq(jobId), any(LocalDateTime.class), eq("report-user"));
+    }
+
+    @Test
+    void claimThatKeepsFlippingFails() {
+        when(ingestedFileRepository.insertIfAbsent(eq(SHA256), eq("test.csv"), eq(7L), eq(jobId), any(LocalDateTime.class), eq("report-user")))
+                .thenReturn(0);
+        when(ingestedFileRepository.findBySha256(SHA256)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalStateException.class, () -> ingestedFileService.claim(SHA256, "test.csv", 7, jobId));
+    }
+}
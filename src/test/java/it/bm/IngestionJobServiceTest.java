@@ -0,0 +1,333 @@
+package it.bm;
+
+import it.bm.model.DuplicateUploadException;
+import it.bm.model.entity.IngestedFile;
+import it.bm.model.enums.IngestedFileStatus;
+import it.bm.model.enums.IngestionJobState;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.enums.RejectReason;
+import it.bm.model.ingestion.IngestionJob;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.service.FileValidationService;
+import it.bm.service.IngestedFileService;
+import it.bm.service.IngestionJobService;
+import it.bm.service.ReportService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionJobServiceTest {
+
+    /* sha256 of "content", the spooled upload */
+    private static final String CONTENT_SHA256 = "ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73";
+
+    @Mock
+    private FileValidationService fileValidationService;
+
+    @Mock
+    private ReportService reportService;
+
+    @Mock
+    private IngestedFileService ingestedFileService;
+
+    @Mock
+    private AuditorAware<String> auditorProvider;
+
+    @Mock
+    private MultipartFile multipartFile;
+
+    @TempDir
+    private Path spoolDir;
+
+    private final List<Runnable> queuedTasks = new ArrayList<>();
+
+    private IngestionJobService ingestionJobService;
+
+    @BeforeEach
+    void setUp() {
+        ingestionJobService = new IngestionJobService(fileValidationService, reportService, ingestedFileService,
+                new TaskExecutorAdapter(queuedTasks::add), auditorProvider);
+        ReflectionTestUtils.setField(ingestionJobService, "spoolDir", spoolDir);
+        ReflectionTestUtils.setField(ingestionJobService, "retention", Duration.ofHours(24));
+        ReflectionTestUtils.setField(ingestionJobService, "dedupEnabled", true);
+        ReflectionTestUtils.setField(ingestionJobService, "rejectsSampleSize", 20);
+        ReflectionTestUtils.setField(ingestionJobService, "rejectsErrorFileEnabled", true);
+    }
+
+    private void mockUpload() throws IOException {
+        when(fileValidationService.validateCsvFile(multipartFile)).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(multipartFile.getOriginalFilename()).thenReturn("test.csv");
+        when(auditorProvider.getCurrentAuditor()).thenReturn(Optional.of("report-user"));
+        when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void runQueuedTasks() {
+        queuedTasks.forEach(Runnable::run);
+        queuedTasks.clear();
+    }
+
+    private long spooledFiles() throws IOException {
+        try (var files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void submittedJobIsQueuedAndCompletesOnTheJobExecutor() throws IOException {
+        mockUpload();
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, PersistenceMode.COPY, false);
+
+        assertEquals(IngestionJobState.QUEUED, job.getState());
+        assertEquals("report-user", job.getSubmittedBy());
+        assertEquals(1, spooledFiles());
+        verifyNoInteractions(reportService);
+
+        runQueuedTasks();
+
+        assertEquals(IngestionJobState.COMPLETED, job.getState());
+        assertTrue(job.getStartedAt() != null && job.getFinishedAt() != null);
+        verify(reportService).createReport(anyList(), eq("test.csv"), eq(PersistenceMode.COPY), any(IngestionStats.class));
+        assertEquals(0, spooledFiles());
+        assertEquals(Optional.of(job), ingestionJobService.findJob(job.getId()));
+        assertEquals(CONTENT_SHA256, job.getSha256());
+        verify(ingestedFileService).claim(CONTENT_SHA256, "test.csv", 7, job.getId());
+        verify(ingestedFileService).completed(CONTENT_SHA256, job.getId(), 0);
+    }
+
+    @Test
+    void rejectedRowsOfAFinishedJobCanBeDownloaded() throws IOException {
+        mockUpload();
+        doAnswer(invocation -> {
+            RejectedRows rejectedRows = invocation.getArgument(3, IngestionStats.class).getRejectedRows();
+            rejectedRows.add(new RejectedRow(3, RejectReason.INVALID_AMOUNT, "1,5", "C003,pec,2024-02-01,2025-12-31,\"1,5\",ACTIVE"));
+            rejectedRows.close();
+            return null;
+        }).when(reportService).createReport(anyList(), any(), any(), any());
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        assertTrue(ingestionJobService.findRejectedRowsFile(job.getId()).isEmpty());
+        runQueuedTasks();
+
+        Path rejected = ingestionJobService.findRejectedRowsFile(job.getId()).orElseThrow();
+        assertEquals("record_number,reason,detail,record\n3,INVALID_AMOUNT,\"1,5\",\"C003,pec,2024-02-01,2025-12-31,\"\"1,5\"\",ACTIVE\"\n", Files.readString(rejected));
+        assertEquals(Map.of(RejectReason.INVALID_AMOUNT, 1L), job.getStats().getRejectedRows().getCounts());
+    }
+
+    @Test
+    void failingIngestionMarksTheJobFailed() throws IOException {
+        mockUpload();
+        doThrow(new RuntimeException("Failed to parse CSV data: boom"))
+                .when(reportService).createReport(anyList(), any(), any(), any());
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        runQueuedTasks();
+
+        assertEquals(IngestionJobState.FAILED, job.getState());
+        assertEquals("Failed to parse CSV data: boom", job.getError());
+        assertEquals(0, spooledFiles());
+        verify(ingestedFileService).release(CONTENT_SHA256, job.getId());
+    }
+
+    @Test
+    void jobCancelledWhileQueuedIsSkippedAndItsUploadDeleted() throws IOException {
+        mockUpload();
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        assertEquals(Optional.of(job), ingestionJobService.cancelJob(job.getId()));
+        runQueuedTasks();
+
+        assertEquals(IngestionJobState.CANCELLED, job.getState());
+        assertTrue(job.isCancelRequested());
+        verify(reportService, never()).createReport(anyList(), any(), any(), any());
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    void jobCancelledWhileQueuedReleasesItsDigestBeforeItsTurn() throws IOException {
+        mockUpload();
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        ingestionJobService.cancelJob(job.getId());
+
+        verify(ingestedFileService).release(CONTENT_SHA256, job.getId());
+        assertEquals(0, ingestionJobService.countUnfinishedJobs("report-user"));
+    }
+
+    @Test
+    void jobCancelledAsSoonAsItRunsIsInterrupted() throws IOException {
+        mockUpload();
+        List<IngestionJob> submitted = new ArrayList<>();
+        doAnswer(invocation -> {
+            ingestionJobService.cancelJob(submitted.get(0).getId());
+            assertTrue(Thread.interrupted());
+            throw new IllegalStateException("Ingestion interrupted");
+        }).when(reportService).createReport(anyList(), any(), any(), any());
+
+        submitted.add(ingestionJobService.submit(multipartFile, null, false));
+        runQueuedTasks();
+
+        IngestionJob job = submitted.get(0);
+        assertEquals(IngestionJobState.CANCELLED, job.getState());
+        assertNull(job.getError());
+        verify(ingestedFileService).release(CONTENT_SHA256, job.getId());
+    }
+
+    @Test
+    void interruptedJobReleasesItsDigestWithTheInterruptCleared() throws IOException {
+        mockUpload();
+        List<IngestionJob> submitted = new ArrayList<>();
+        doAnswer(invocation -> {
+            ingestionJobService.cancelJob(submitted.get(0).getId());
+            throw new IllegalStateException("Ingestion interrupted");
+        }).when(reportService).createReport(anyList(), any(), any(), any());
+        List<Boolean> interruptedOnRelease = new ArrayList<>();
+        doAnswer(invocation -> interruptedOnRelease.add(Thread.currentThread().isInterrupted()))
+                .when(ingestedFileService).release(eq(CONTENT_SHA256), any(UUID.class));
+
+        submitted.add(ingestionJobService.submit(multipartFile, null, false));
+        runQueuedTasks();
+
+        assertEquals(IngestionJobState.CANCELLED, submitted.get(0).getState());
+        assertEquals(List.of(false), interruptedOnRelease);
+        /* the interrupt is given back to the worker once the outcome is recorded */
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    void finishedJobCannotBeCancelled() throws IOException {
+        mockUpload();
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        runQueuedTasks();
+        ingestionJobService.cancelJob(job.getId());
+
+        assertEquals(IngestionJobState.COMPLETED, job.getState());
+        assertFalse(job.isCancelRequested());
+        assertNull(job.getError());
+    }
+
+    @Test
+    void invalidUploadIsRefusedBeforeAnyJobIsCreated() throws IOException {
+        when(fileValidationService.validateCsvFile(multipartFile)).thenThrow(new IllegalArgumentException("File cannot be empty"));
+
+        assertThrows(IllegalArgumentException.class, () -> ingestionJobService.submit(multipartFile, null, false));
+
+        assertTrue(queuedTasks.isEmpty());
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    void rejectedSubmissionDeletesTheSpooledUpload() throws IOException {
+        mockUpload();
+        ingestionJobService = new IngestionJobService(fileValidationService, reportService, ingestedFileService,
+                new TaskExecutorAdapter(task -> {
+                    throw new TaskRejectedException("queue full");
+                }), auditorProvider);
+        ReflectionTestUtils.setField(ingestionJobService, "spoolDir", spoolDir);
+        ReflectionTestUtils.setField(ingestionJobService, "retention", Duration.ofHours(24));
+        ReflectionTestUtils.setField(ingestionJobService, "dedupEnabled", true);
+
+        assertThrows(TaskRejectedException.class, () -> ingestionJobService.submit(multipartFile, null, false));
+
+        assertEquals(0, spooledFiles());
+        verify(ingestedFileService).release(eq(CONTENT_SHA256), any(UUID.class));
+    }
+
+    @Test
+    void alreadyIngestedContentIsRefusedWithoutParsing() throws IOException {
+        mockUpload();
+        IngestedFile earlier = new IngestedFile(CONTENT_SHA256, "yesterday.csv", 7, UUID.randomUUID(),
+                IngestedFileStatus.COMPLETED, "report-user", LocalDateTime.now().minusDays(1));
+        when(ingestedFileService.claim(eq(CONTENT_SHA256), eq("test.csv"), eq(7L), any(UUID.class))).thenReturn(Optional.of(earlier));
+
+        DuplicateUploadException thrown = assertThrows(DuplicateUploadException.class,
+                () -> ingestionJobService.submit(multipartFile, null, false));
+
+        assertEquals(earlier, thrown.getEarlierIngestion());
+        assertTrue(queuedTasks.isEmpty());
+        assertEquals(0, spooledFiles());
+        verify(ingestedFileService, never()).forget(any());
+        verifyNoInteractions(reportService);
+    }
+
+    @Test
+    void forcedUploadForgetsTheEarlierIngestion() throws IOException {
+        mockUpload();
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, true);
+
+        verify(ingestedFileService).forget(CONTENT_SHA256);
+        verify(ingestedFileService).claim(CONTENT_SHA256, "test.csv", 7, job.getId());
+        assertEquals(IngestionJobState.QUEUED, job.getState());
+    }
+
+    @Test
+    void forcedUploadDoesNotForgetAContentStillBeingIngested() throws IOException {
+        mockUpload();
+        ingestionJobService.submit(multipartFile, null, false);
+        when(fileValidationService.validateCsvFile(multipartFile)).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        ingestionJobService.submit(multipartFile, null, true);
+
+        verify(ingestedFileService, never()).forget(any());
+    }
+
+    @Test
+    void disabledDeduplicationIgnoresTheDigest() throws IOException {
+        mockUpload();
+        ReflectionTestUtils.setField(ingestionJobService, "dedupEnabled", false);
+
+        IngestionJob job = ingestionJobService.submit(multipartFile, null, false);
+        runQueuedTasks();
+
+        assertNull(job.getSha256());
+        assertEquals(IngestionJobState.COMPLETED, job.getState());
+        verifyNoInteractions(ingestedFileService);
+    }
+
+    @Test
+    void unknownJobIsNotFound() {
+        assertTrue(ingestionJobService.findJob(UUID.randomUUID()).isEmpty());
+        assertTrue(ingestionJobService.cancelJob(UUID.randomUUID()).isEmpty());
+    }
+}
@@ -0,0 +1,181 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.model.enums.RejectReason;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.model.ingestion.UpsertResult;
+import it.bm.service.CustomerServiceSubscriptionService;
+import it.bm.service.FileParseService;
+import it.bm.service.IngestionPipelineService;
+import it.bm.service.ParallelFileParseService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionPipelineServiceTest {
+
+    @Mock
+    private FileParseService fileParseService;
+
+    @Mock
+    private ParallelFileParseService parallelFileParseService;
+
+    @Mock
+    private CustomerServiceSubscriptionService customerServiceSubscriptionService;
+
+    private IngestionPipelineService ingestionPipelineService;
+
+    private final InputStream inputStream = new ByteArrayInputStream(new byte[0]);
+
+    @BeforeEach
+    void setUp() {
+        ingestionPipelineService = new IngestionPipelineService(fileParseService, parallelFileParseService, customerServiceSubscriptionService,
+                new SimpleAsyncTaskExecutor("test-ingestion-"), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(ingestionPipelineService, "chunkSize", 2);
+        ReflectionTestUtils.setField(ingestionPipelineService, "queueCapacity", 1);
+    }
+
+    private static List<CustomerServiceSubscriptions> chunk(int size) {
+        List<CustomerServiceSubscriptions> chunk = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            chunk.add(new CustomerServiceSubscriptions());
+        }
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void parserEmits(long records, List<List<CustomerServiceSubscriptions>> chunks) {
+        when(fileParseService.parseCsvInChunks(any(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> consumer = invocation.getArgument(2);
+            chunks.forEach(consumer);
+            return records;
+        });
+    }
+
+    @Test
+    void ingest_AlertsAndPersistsEveryChunkInOrder() {
+        List<CustomerServiceSubscriptions> first = chunk(2);
+        List<CustomerServiceSubscriptions> second = chunk(2);
+        List<CustomerServiceSubscriptions> third = chunk(1);
+        when(fileParseService.parseCsvInChunks(any(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> consumer = invocation.getArgument(2);
+            consumer.accept(first);
+            invocation.<RejectedRows>getArgument(3).add(new RejectedRow(3, RejectReason.INVALID_STATUS, "UNKNOWN",
+                    "C003,pec,2024-02-01,2025-12-31,10,UNKNOWN"));
+            consumer.accept(second);
+            consumer.accept(third);
+            return 6L;
+        });
+        when(customerServiceSubscriptionService.saveAll(any(), any()))
+                .thenAnswer(invocation -> UpsertResult.inserted(invocation.<List<?>>getArgument(0).size()));
+
+        List<List<CustomerServiceSubscriptions>> alerted = new ArrayList<>();
+        IngestionStats stats = ingestionPipelineService.ingest(inputStream, PersistenceMode.JPA, new IngestionStats(), chunk -> {
+            /* the alert stage only sees chunks already persisted */
+            verify(customerServiceSubscriptionService).saveAll(chunk, PersistenceMode.JPA);
+            alerted.add(chunk);
+        });
+
+        assertEquals(List.of(first, second, third), alerted);
+        verify(customerServiceSubscriptionService, times(3)).saveAll(any(), any());
+        assertEquals(6, stats.getRecordsRead());
+        assertEquals(5, stats.getRowsAccepted());
+        assertEquals(1, stats.getRowsRejected());
+        assertEquals(5, stats.getRowsPersisted());
+        assertEquals(5, stats.getRowsInserted());
+        assertEquals(3, stats.getChunks());
+    }
+
+    @Test
+    void ingest_RecordsReadAndRejectedMoveWhileTheUploadRuns() {
+        IngestionStats stats = new IngestionStats();
+        List<long[]> readAndRejected = new ArrayList<>();
+        when(fileParseService.parseCsvInChunks(any(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> consumer = invocation.getArgument(2);
+            RejectedRows rejectedRows = invocation.getArgument(3);
+            rejectedRows.add(new RejectedRow(1, RejectReason.MISSING_CUSTOMER_ID, "", ",pec,2024-02-01,2025-12-31,10,ACTIVE"));
+            consumer.accept(chunk(2));
+            readAndRejected.add(new long[]{stats.getRecordsRead(), stats.getRowsRejected()});
+            rejectedRows.add(new RejectedRow(5, RejectReason.INVALID_AMOUNT, "x", "C005,pec,2024-02-01,2025-12-31,x,ACTIVE"));
+            consumer.accept(chunk(2));
+            readAndRejected.add(new long[]{stats.getRecordsRead(), stats.getRowsRejected()});
+            return 7L;
+        });
+        when(customerServiceSubscriptionService.saveAll(any(), any())).thenReturn(UpsertResult.inserted(2));
+
+        ingestionPipelineService.ingest(inputStream, PersistenceMode.JPA, stats, chunk -> { });
+
+        assertArrayEquals(new long[]{3, 1}, readAndRejected.get(0));
+        assertArrayEquals(new long[]{6, 2}, readAndRejected.get(1));
+        /* a trailing blank record is only known from the parser total */
+        assertEquals(7, stats.getRecordsRead());
+    }
+
+    @Test
+    void ingest_SumsUpsertOutcomeOfEveryChunk() {
+        List<CustomerServiceSubscriptions> first = chunk(2);
+        List<CustomerServiceSubscriptions> second = chunk(2);
+        parserEmits(4, List.of(first, second));
+        when(customerServiceSubscriptionService.saveAll(first, PersistenceMode.UPSERT)).thenReturn(new UpsertResult(1, 1, 0));
+        when(customerServiceSubscriptionService.saveAll(second, PersistenceMode.UPSERT)).thenReturn(new UpsertResult(0, 1, 1));
+
+        IngestionStats stats = ingestionPipelineService.ingest(inputStream, PersistenceMode.UPSERT, new IngestionStats(), chunk -> { });
+
+        assertEquals(4, stats.getRowsPersisted());
+        assertEquals(1, stats.getRowsInserted());
+        assertEquals(2, stats.getRowsUpdated());
+        assertEquals(1, stats.getRowsUnchanged());
+    }
+
+    @Test
+    void ingest_PropagatesParserFailure() {
+        when(fileParseService.parseCsvInChunks(any(), anyInt(), any(), any()))
+                .thenThrow(new RuntimeException("Failed to parse CSV data: boom"));
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> ingestionPipelineService.ingest(inputStream, PersistenceMode.JPA, new IngestionStats(), chunk -> { }));
+
+        assertEquals("Failed to parse CSV data: boom", thrown.getMessage());
+    }
+
+    @Test
+    void ingest_PersistFailureStopsPipeline() {
+        List<CustomerServiceSubscriptions> first = chunk(2);
+        parserEmits(8, List.of(first, chunk(2), chunk(2), chunk(2)));
+        doThrow(new RuntimeException("DB down")).when(customerServiceSubscriptionService).saveAll(first, PersistenceMode.JPA);
+
+        List<List<CustomerServiceSubscriptions>> alerted = new ArrayList<>();
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> ingestionPipelineService.ingest(inputStream, PersistenceMode.JPA, new IngestionStats(), alerted::add));
+
+        assertEquals("DB down", thrown.getMessage());
+        verify(customerServiceSubscriptionService, times(1)).saveAll(any(), any());
+        assertTrue(alerted.isEmpty());
+    }
+}
@@ -0,0 +1,122 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.enums.AlertType;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.repository.NotificationDedupRepository;
+import it.bm.service.NotificationDedupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDedupServiceTest {
+
+    private static final Duration TTL = Duration.ofDays(30);
+
+    @Mock
+    private NotificationDedupRepository notificationDedupRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private NotificationDedupService notificationDedupService;
+
+    private final AlertKey hosting = new AlertKey("C001", "hosting", AlertType.UPSELLING);
+    private final AlertKey pec = new AlertKey("C002", "pec", AlertType.UPSELLING);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        notificationDedupService = new NotificationDedupService(notificationDedupRepository, meterRegistry);
+        ReflectionTestUtils.setField(notificationDedupService, "enabled", true);
+        ReflectionTestUtils.setField(notificationDedupService, "ttl", TTL);
+        ReflectionTestUtils.setField(notificationDedupService, "expectedKeys", 1_000L);
+        ReflectionTestUtils.setField(notificationDedupService, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(notificationDedupService, "rebuildInterval", Duration.ofHours(6));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void tableHolds(AlertKey... keys) {
+        when(notificationDedupRepository.forEachActive(any())).thenAnswer(invocation -> {
+            Consumer<AlertKey> consumer = invocation.getArgument(0);
+            List.of(keys).forEach(consumer);
+            return (long) keys.length;
+        });
+    }
+
+    @Test
+    void unseenKeysAreClaimedWithoutALookup() {
+        tableHolds();
+        when(notificationDedupRepository.claim(Set.of(hosting, pec), TTL)).thenReturn(List.of(hosting, pec));
+
+        List<AlertKey> claimed = notificationDedupService.claim(List.of(hosting, pec, hosting));
+
+        assertEquals(List.of(hosting, pec), claimed);
+        verify(notificationDedupRepository, never()).findActive(any());
+    }
+
+    @Test
+    void keysSentBeforeAreConfirmedAndNotClaimedAgain() {
+        tableHolds(hosting);
+        when(notificationDedupRepository.findActive(Set.of(hosting))).thenReturn(List.of(hosting));
+        when(notificationDedupRepository.claim(Set.of(pec), TTL)).thenReturn(List.of(pec));
+
+        List<AlertKey> claimed = notificationDedupService.claim(List.of(hosting, pec));
+
+        assertEquals(List.of(pec), claimed);
+        assertEquals(1.0, meterRegistry.counter("notification.dedup.suppressed").count());
+        assertEquals(1.0, meterRegistry.counter("notification.dedup.lookups", "result", "confirmed").count());
+    }
+
+    @Test
+    void keysTheTableNoLongerHoldsAreClaimedAgain() {
+        tableHolds(hosting);
+        when(notificationDedupRepository.findActive(Set.of(hosting))).thenReturn(List.of());
+        when(notificationDedupRepository.claim(Set.of(hosting), TTL)).thenReturn(List.of(hosting));
+
+        assertEquals(List.of(hosting), notificationDedupService.claim(List.of(hosting)));
+        assertEquals(1.0, meterRegistry.counter("notification.dedup.lookups", "result", "unconfirmed").count());
+    }
+
+    @Test
+    void claimedKeysAreLookedUpOnTheNextUpload() {
+        tableHolds();
+        when(notificationDedupRepository.claim(Set.of(hosting), TTL)).thenReturn(List.of(hosting));
+        when(notificationDedupRepository.findActive(Set.of(hosting))).thenReturn(List.of(hosting));
+
+        notificationDedupService.claim(List.of(hosting));
+        List<AlertKey> second = notificationDedupService.claim(List.of(hosting));
+
+        assertEquals(List.of(), second);
+        verify(notificationDedupRepository, times(1)).claim(any(), any());
+        verify(notificationDedupRepository, times(1)).forEachActive(any());
+        verify(notificationDedupRepository, times(1)).deleteExpired();
+    }
+
+    @Test
+    void disabledDedupClaimsEverything() {
+        ReflectionTestUtils.setField(notificationDedupService, "enabled", false);
+
+        Collection<AlertKey> claimed = notificationDedupService.claim(List.of(hosting, pec));
+
+        assertEquals(List.of(hosting, pec), claimed);
+        verifyNoInteractions(notificationDedupRepository);
+    }
+}
@@ -0,0 +1,134 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.kafka.ExpiredServicesKafkaProducer;
+import it.bm.kafka.ExpiringServicesKafkaProducer;
+import it.bm.kafka.UpsellingServiceKafkaProducer;
+import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.model.kafka.UpsellingServiceDTO;
+import it.bm.service.NotificationDispatcher;
+import it.bm.util.RingBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTest {
+
+    @Mock
+    private UpsellingServiceKafkaProducer upsellingServiceKafkaProducer;
+
+    @Mock
+    private ExpiredServicesKafkaProducer expiredServicesKafkaProducer;
+
+    @Mock
+    private ExpiringServicesKafkaProducer expiringServicesKafkaProducer;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private NotificationDispatcher notificationDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        notificationDispatcher = new NotificationDispatcher(upsellingServiceKafkaProducer, expiredServicesKafkaProducer,
+                expiringServicesKafkaProducer, meterRegistry);
+        ReflectionTestUtils.setField(notificationDispatcher, "capacity", 8);
+        ReflectionTestUtils.setField(notificationDispatcher, "workers", 2);
+        ReflectionTestUtils.setField(notificationDispatcher, "waitStrategy", RingBuffer.WaitStrategy.BLOCKING);
+        ReflectionTestUtils.setField(notificationDispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(notificationDispatcher, "initialDelay", 10L);
+        ReflectionTestUtils.setField(notificationDispatcher, "multiplier", 2.0);
+        ReflectionTestUtils.setField(notificationDispatcher, "maxDelay", 20L);
+        ReflectionTestUtils.invokeMethod(notificationDispatcher, "start");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(notificationDispatcher, "stop");
+    }
+
+    @Test
+    void dispatch_CompletesOnceKafkaAcknowledges() throws Exception {
+        ExpiredServicesDTO expired = new ExpiredServicesDTO("C001", 6);
+        UpsellingServiceDTO upselling = new UpsellingServiceDTO("C002", "pec");
+        when(expiredServicesKafkaProducer.sendMessage(expired)).thenReturn(CompletableFuture.completedFuture(null));
+        when(upsellingServiceKafkaProducer.sendMessage(upselling)).thenReturn(CompletableFuture.completedFuture(null));
+
+        CompletableFuture.allOf(notificationDispatcher.dispatch(expired), notificationDispatcher.dispatch(upselling))
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, meterRegistry.timer("notification.dispatcher.latency").count());
+        assertEquals(8.0, meterRegistry.get("notification.dispatcher.capacity").gauge().value());
+    }
+
+    @Test
+    void dispatch_RetriesAFailedSendWithoutBlockingTheWorkers() throws Exception {
+        UpsellingServiceDTO message = new UpsellingServiceDTO("C002", "hosting");
+        when(upsellingServiceKafkaProducer.sendMessage(message))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")))
+                .thenThrow(new IllegalStateException("buffer exhausted"))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        notificationDispatcher.dispatch(message).get(1, TimeUnit.SECONDS);
+
+        verify(upsellingServiceKafkaProducer, times(3)).sendMessage(message);
+        assertEquals(2.0, meterRegistry.counter("notification.dispatcher.retries").count());
+    }
+
+    @Test
+    void dispatch_FailsOnceTheRetriesAreExhausted() {
+        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 6);
+        when(expiredServicesKafkaProducer.sendMessage(message))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> notificationDispatcher.dispatch(message).get(1, TimeUnit.SECONDS));
+
+        assertEquals("broker down", failure.getCause().getMessage());
+        verify(expiredServicesKafkaProducer, times(3)).sendMessage(message);
+    }
+
+    @Test
+    void dispatch_WaitsForRoomWhenTheBufferIsFull() throws Exception {
+        CompletableFuture<Object> stalled = new CompletableFuture<>();
+        when(expiredServicesKafkaProducer.sendMessage(any()))
+                .thenAnswer(invocation -> {
+                    stalled.join();
+                    return CompletableFuture.completedFuture(null);
+                });
+        Thread release = Thread.ofPlatform().start(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stalled.complete(null);
+        });
+
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[20];
+        for (int i = 0; i < sends.length; i++) {
+            sends[i] = notificationDispatcher.dispatch(new ExpiredServicesDTO("C" + i, 6));
+        }
+        CompletableFuture.allOf(sends).get(2, TimeUnit.SECONDS);
+        release.join();
+
+        verify(expiredServicesKafkaProducer, times(20)).sendMessage(any());
+        assertTrue(meterRegistry.timer("notification.dispatcher.backpressure").count() > 0);
+    }
+}
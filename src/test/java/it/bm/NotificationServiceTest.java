@@ -1,243 +1,134 @@
 package it.bm;
 
-import it.bm.kafka.ExpiredServicesKafkaProducer;
-import it.bm.kafka.UpsellingServiceKafkaProducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.enums.AlertType;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.model.ingestion.PublishOutcome;
 import it.bm.model.kafka.ExpiredServicesDTO;
+import it.bm.model.kafka.ExpiringServiceDTO;
 import it.bm.model.kafka.UpsellingServiceDTO;
+import it.bm.service.NotificationDedupService;
+import it.bm.service.NotificationDispatcher;
 import it.bm.service.NotificationService;
-import it.bm.util.MDCUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
-import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import static it.bm.util.Constant.CORRELATION_ID_HEADER_NAME;
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.argThat;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.mockStatic;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class NotificationServiceTest {
 
     @Mock
-    private UpsellingServiceKafkaProducer upsellingServiceKafkaProducer;
+    private NotificationDispatcher notificationDispatcher;
 
     @Mock
-    private ExpiredServicesKafkaProducer expiredServicesKafkaProducer;
+    private NotificationDedupService notificationDedupService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     private NotificationService notificationService;
 
     @BeforeEach
     void setUp() {
-        notificationService = new NotificationService(upsellingServiceKafkaProducer, expiredServicesKafkaProducer);
-    }
-
-    @Test
-    void sendExpiredServicesNotificationSuccessfully() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 3);
-        assertDoesNotThrow(() -> notificationService.sendExpiredServicesNotification(message));
-        verify(expiredServicesKafkaProducer).sendMessage(message);
-    }
-
-    @Test
-    void sendExpiredServicesNotificationWithValidMessage() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 5);
-        notificationService.sendExpiredServicesNotification(message);
-        verify(expiredServicesKafkaProducer, times(1)).sendMessage(message);
-        verify(expiredServicesKafkaProducer).sendMessage(argThat(msg ->
-                "C001".equals(msg.customerId()) && msg.numberOfExpiredServices() == 5));
-    }
-
-    @Test
-    void sendExpiredServicesNotificationThrowsExceptionPropagatesException() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 3);
-        RuntimeException kafkaException = new RuntimeException("Kafka producer failed");
-        doThrow(kafkaException).when(expiredServicesKafkaProducer).sendMessage(message);
-
-        RuntimeException thrownException = assertThrows(RuntimeException.class, () ->
-                notificationService.sendExpiredServicesNotification(message));
-
-        assertEquals("Kafka producer failed", thrownException.getMessage());
-        verify(expiredServicesKafkaProducer).sendMessage(message);
+        notificationService = new NotificationService(notificationDispatcher, notificationDedupService, meterRegistry);
+        ReflectionTestUtils.setField(notificationService, "publishTimeout", Duration.ofSeconds(1));
     }
 
     @Test
-    void sendExpiredServicesNotification_MultipleMessages() {
-        ExpiredServicesDTO message1 = new ExpiredServicesDTO("C001", 2);
-        ExpiredServicesDTO message2 = new ExpiredServicesDTO("C002", 4);
+    void sendExpiringServiceNotification_ReturnsTheDelivery() {
+        ExpiringServiceDTO message = new ExpiringServiceDTO("C001", "pec", LocalDate.of(2026, 1, 11), 7);
+        when(notificationDispatcher.dispatch(message)).thenReturn(CompletableFuture.completedFuture(null));
 
-        notificationService.sendExpiredServicesNotification(message1);
-        notificationService.sendExpiredServicesNotification(message2);
+        assertTrue(notificationService.sendExpiringServiceNotification(message).isDone());
 
-        verify(expiredServicesKafkaProducer).sendMessage(message1);
-        verify(expiredServicesKafkaProducer).sendMessage(message2);
-        verify(expiredServicesKafkaProducer, times(2)).sendMessage(any(ExpiredServicesDTO.class));
-    }
-
-
-    @Test
-    void sendUpsellingNotification_WithValidMessage() {
-        UpsellingServiceDTO message = new UpsellingServiceDTO("C009", "email");
-        notificationService.sendUpsellingNotification(message);
-        verify(upsellingServiceKafkaProducer, times(1)).sendMessage(message);
-        verify(upsellingServiceKafkaProducer).sendMessage(argThat(msg ->
-                "C009".equals(msg.customerId()) && "email".equals(msg.upsellingService())));
-    }
-
-    @Test
-    void sendUpsellingNotification_ThrowsException_PropagatesException() {
-        UpsellingServiceDTO message = new UpsellingServiceDTO("C009", "hosting");
-        RuntimeException kafkaException = new RuntimeException("Kafka upselling producer failed");
-        doThrow(kafkaException).when(upsellingServiceKafkaProducer).sendMessage(message);
-
-        RuntimeException thrownException = assertThrows(RuntimeException.class, () ->
-                notificationService.sendUpsellingNotification(message));
-
-        assertEquals("Kafka upselling producer failed", thrownException.getMessage());
-        verify(upsellingServiceKafkaProducer).sendMessage(message);
+        verify(notificationDispatcher).dispatch(message);
     }
 
     @Test
-    void sendUpsellingNotification_MultipleMessages() {
-        UpsellingServiceDTO message1 = new UpsellingServiceDTO("C009", "cloud");
-        UpsellingServiceDTO message2 = new UpsellingServiceDTO("C008", "pec");
+    void publish_SendsEveryMessageAndWaitsForTheAcknowledgements() {
+        NotificationBatch batch = new NotificationBatch();
+        batch.addExpiredServices("C001", 6);
+        batch.addUpselling("C002", "hosting");
+        batch.addUpselling("C002", "pec");
+        batch.addUpselling("C003", "spid");
+        when(notificationDispatcher.dispatch(any(ExpiredServicesDTO.class))).thenReturn(CompletableFuture.completedFuture(null));
+        when(notificationDispatcher.dispatch(any(UpsellingServiceDTO.class))).thenReturn(CompletableFuture.completedFuture(null));
 
-        notificationService.sendUpsellingNotification(message1);
-        notificationService.sendUpsellingNotification(message2);
+        PublishOutcome outcome = notificationService.publish(batch);
 
-        verify(upsellingServiceKafkaProducer).sendMessage(message1);
-        verify(upsellingServiceKafkaProducer).sendMessage(message2);
-        verify(upsellingServiceKafkaProducer, times(2)).sendMessage(any(UpsellingServiceDTO.class));
+        assertEquals(new PublishOutcome(3, 0, 0), outcome);
+        verify(notificationDispatcher).dispatch(new ExpiredServicesDTO("C001", 6));
+        verify(notificationDispatcher).dispatch(new UpsellingServiceDTO("C002", List.of("hosting", "pec")));
+        verify(notificationDispatcher).dispatch(new UpsellingServiceDTO("C003", "spid"));
+        assertEquals(3.0, meterRegistry.counter("notification.published", "result", "acknowledged").count());
     }
 
     @Test
-    void recoverExpiredServicesNotification_DoesNotThrowException() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C009", 5);
-        Exception exception = new RuntimeException("Final failure after retries");
+    void publish_FailedUpsellingGivesItsClaimsBack() {
+        NotificationBatch batch = new NotificationBatch();
+        batch.addUpselling("C002", "hosting");
+        batch.addUpselling("C002", "pec");
+        batch.addUpselling("C003", "spid");
+        when(notificationDispatcher.dispatch(new UpsellingServiceDTO("C002", List.of("hosting", "pec"))))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        when(notificationDispatcher.dispatch(new UpsellingServiceDTO("C003", "spid")))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("retries exhausted")));
 
-        assertDoesNotThrow(() -> notificationService.recoverExpiredServicesNotification(exception, message));
+        PublishOutcome outcome = notificationService.publish(batch);
 
-        verifyNoInteractions(expiredServicesKafkaProducer);
-        verifyNoInteractions(upsellingServiceKafkaProducer);
+        assertEquals(new PublishOutcome(0, 2, 0), outcome);
+        verify(notificationDedupService).release(new AlertKey("C002", "hosting", AlertType.UPSELLING));
+        verify(notificationDedupService).release(new AlertKey("C002", "pec", AlertType.UPSELLING));
+        verify(notificationDedupService).release(new AlertKey("C003", "spid", AlertType.UPSELLING));
     }
 
     @Test
-    void recoverUpsellingNotification_DoesNotThrowException() {
-        UpsellingServiceDTO message = new UpsellingServiceDTO("C009", "email");
-        Exception exception = new RuntimeException("Final failure after retries");
+    void discard_ReleasesTheUpsellingClaimsWithoutSending() {
+        NotificationBatch batch = new NotificationBatch();
+        batch.addExpiredServices("C001", 6);
+        batch.addUpselling("C002", "hosting");
+        batch.addUpselling("C002", "pec");
+        batch.addUpselling("C003", "spid");
 
-        assertDoesNotThrow(() -> notificationService.recoverUpsellingNotification(exception, message));
+        notificationService.discard(batch);
 
-        verifyNoInteractions(expiredServicesKafkaProducer);
-        verifyNoInteractions(upsellingServiceKafkaProducer);
+        verify(notificationDedupService).releaseAll(List.of(new AlertKey("C002", "hosting", AlertType.UPSELLING),
+                new AlertKey("C002", "pec", AlertType.UPSELLING), new AlertKey("C003", "spid", AlertType.UPSELLING)));
+        verifyNoInteractions(notificationDispatcher);
     }
 
-
     @Test
-    void bothNotificationTypes_IndependentExecution() {
-        ExpiredServicesDTO expiredMessage = new ExpiredServicesDTO("C001", 2);
-        UpsellingServiceDTO upsellingMessage = new UpsellingServiceDTO("C009", "hosting");
+    void publish_UnacknowledgedMessagesTimeOutWithoutReleasingTheirClaims() {
+        ReflectionTestUtils.setField(notificationService, "publishTimeout", Duration.ofMillis(50));
+        NotificationBatch batch = new NotificationBatch();
+        batch.addUpselling("C002", "hosting");
+        when(notificationDispatcher.dispatch(any(UpsellingServiceDTO.class))).thenReturn(new CompletableFuture<>());
 
-        notificationService.sendExpiredServicesNotification(expiredMessage);
-        notificationService.sendUpsellingNotification(upsellingMessage);
+        PublishOutcome outcome = notificationService.publish(batch);
 
-        verify(expiredServicesKafkaProducer).sendMessage(expiredMessage);
-        verify(upsellingServiceKafkaProducer).sendMessage(upsellingMessage);
+        assertEquals(new PublishOutcome(0, 0, 1), outcome);
+        verifyNoInteractions(notificationDedupService);
     }
 
     @Test
-    void recoverMethodsHandle_DifferentExceptionTypes() {
-        ExpiredServicesDTO expiredMessage = new ExpiredServicesDTO("C001", 5);
-        UpsellingServiceDTO upsellingMessage = new UpsellingServiceDTO("C009", "pec");
-
-        IllegalStateException illegalStateException = new IllegalStateException("Invalid state");
-        NullPointerException nullPointerException = new NullPointerException("Null reference");
-
-        assertDoesNotThrow(() -> notificationService.recoverExpiredServicesNotification(illegalStateException, expiredMessage));
-        assertDoesNotThrow(() -> notificationService.recoverUpsellingNotification(nullPointerException, upsellingMessage));
-    }
-
-    @Test
-    void sendExpiredServicesNotificationMDCContextHandling() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 2);
-        Map<String, String> originalContext = new HashMap<>();
-        originalContext.put(CORRELATION_ID_HEADER_NAME, "test-correlation-id");
-
-        try (MockedStatic<MDCUtil> mdcUtilMock = mockStatic(MDCUtil.class)) {
-            mdcUtilMock.when(MDCUtil::getCopyOfContextMap).thenReturn(originalContext);
-
-            notificationService.sendExpiredServicesNotification(message);
-
-            mdcUtilMock.verify(MDCUtil::getCopyOfContextMap);
-            mdcUtilMock.verify(() -> MDCUtil.setContextMap(originalContext));
-            mdcUtilMock.verify(MDCUtil::clearContext);
-            verify(expiredServicesKafkaProducer).sendMessage(message);
-        }
-    }
-
-    @Test
-    void sendUpsellingNotification_MDCContextHandling() {
-        UpsellingServiceDTO message = new UpsellingServiceDTO("C009", "cloud");
-        Map<String, String> originalContext = new HashMap<>();
-        originalContext.put(CORRELATION_ID_HEADER_NAME, "test-correlation-id");
-
-        try (MockedStatic<MDCUtil> mdcUtilMock = mockStatic(MDCUtil.class)) {
-            mdcUtilMock.when(MDCUtil::getCopyOfContextMap).thenReturn(originalContext);
-
-            notificationService.sendUpsellingNotification(message);
-
-            mdcUtilMock.verify(MDCUtil::getCopyOfContextMap);
-            mdcUtilMock.verify(() -> MDCUtil.setContextMap(originalContext));
-            mdcUtilMock.verify(MDCUtil::clearContext);
-            verify(upsellingServiceKafkaProducer).sendMessage(message);
-        }
-    }
-
-    @Test
-    void sendExpiredServicesNotification_ClearsContextEvenWhenExceptionThrown() {
-        ExpiredServicesDTO message = new ExpiredServicesDTO("C001", 8);
-        Map<String, String> contextMap = new HashMap<>();
-        contextMap.put(CORRELATION_ID_HEADER_NAME, "test-correlation-id");
-
-        try (MockedStatic<MDCUtil> mdcUtilMock = mockStatic(MDCUtil.class)) {
-            mdcUtilMock.when(MDCUtil::getCopyOfContextMap).thenReturn(contextMap);
-            doThrow(new RuntimeException("Producer error")).when(expiredServicesKafkaProducer).sendMessage(message);
-
-            assertThrows(RuntimeException.class, () ->
-                    notificationService.sendExpiredServicesNotification(message));
-
-            mdcUtilMock.verify(() -> MDCUtil.setContextMap(contextMap));
-            mdcUtilMock.verify(MDCUtil::clearContext);
-        }
-    }
-
-    @Test
-    void sendUpsellingNotification_ClearsContextEvenWhenExceptionThrown() {
-        UpsellingServiceDTO message = new UpsellingServiceDTO("C009", "spid");
-        Map<String, String> contextMap = new HashMap<>();
-        contextMap.put(CORRELATION_ID_HEADER_NAME, "test-correlation-id");
-
-        try (MockedStatic<MDCUtil> mdcUtilMock = mockStatic(MDCUtil.class)) {
-            mdcUtilMock.when(MDCUtil::getCopyOfContextMap).thenReturn(contextMap);
-            doThrow(new RuntimeException("Producer error")).when(upsellingServiceKafkaProducer).sendMessage(message);
-
-            assertThrows(RuntimeException.class, () ->
-                    notificationService.sendUpsellingNotification(message));
+    void publish_EmptyBatchSendsNothing() {
+        assertEquals(PublishOutcome.NONE, notificationService.publish(new NotificationBatch()));
 
-            mdcUtilMock.verify(() -> MDCUtil.setContextMap(contextMap));
-            mdcUtilMock.verify(MDCUtil::clearContext);
-        }
+        verifyNoInteractions(notificationDispatcher);
     }
 }
@@ -0,0 +1,261 @@
+package it.bm;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.service.FileParseService;
+import it.bm.service.ParallelFileParseService;
+import it.bm.service.SubscriptionStatusService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ParallelFileParseServiceTest {
+
+    private static final String HEADER = "customer_id,service_type,activation_date,expiration_date,amount,status\n";
+
+    @Mock
+    private SubscriptionStatusService subscriptionStatusService;
+
+    @TempDir
+    private Path tempDir;
+
+    private final ForkJoinPool parseExecutor = new ForkJoinPool(4);
+
+    private FileParseService fileParseService;
+
+    private ParallelFileParseService parallelFileParseService;
+
+    @BeforeEach
+    void setUp() {
+        fileParseService = spy(new FileParseService(subscriptionStatusService));
+        parallelFileParseService = new ParallelFileParseService(fileParseService, parseExecutor);
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofBytes(256));
+    }
+
+    @AfterEach
+    void tearDown() {
+        parseExecutor.shutdown();
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = tempDir.resolve("upload.csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void parsesRangesInFileOrderWithQuotedNewlinesAcrossSplitPoints() throws IOException {
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE))
+                .thenReturn(new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE));
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 500; i++) {
+            String serviceType = i % 7 == 0 ? "\"multi\nline, \"\"quoted\"\"\nservice\"" : "hosting";
+            csv.append('C').append(i).append(',').append(serviceType).append(",2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        }
+        Path file = write(csv.toString());
+
+        List<List<CustomerServiceSubscriptions>> chunks = new ArrayList<>();
+        long records = parallelFileParseService.parseCsvInChunks(file, 50, chunks::add, new RejectedRows());
+
+        List<CustomerServiceSubscriptions> rows = chunks.stream().flatMap(List::stream).toList();
+        assertEquals(500, records);
+        assertEquals(500, rows.size());
+        for (int i = 1; i <= 500; i++) {
+            CustomerServiceSubscriptions row = rows.get(i - 1);
+            assertEquals("C" + i, row.getCustomerId());
+            assertEquals(i % 7 == 0 ? "multi\nline, \"quoted\"\nservice" : "hosting", row.getServiceType());
+        }
+    }
+
+    @Test
+    void rejectedRowsKeepTheirRecordNumberInTheWholeFile() throws IOException {
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE))
+                .thenReturn(new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE));
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 300; i++) {
+            String activation = i % 50 == 0 ? "not-a-date" : "2024-01-01";
+            csv.append('C').append(i).append(",pec,").append(activation).append(",2025-01-01,10.00,ACTIVE\n");
+        }
+        Path file = write(csv.toString());
+
+        List<CustomerServiceSubscriptions> rows = new ArrayList<>();
+        RejectedRows rejectedRows = new RejectedRows();
+        parallelFileParseService.parseCsvInChunks(file, Integer.MAX_VALUE, rows::addAll, rejectedRows);
+
+        assertEquals(294, rows.size());
+        assertEquals(6, rejectedRows.getTotal());
+        assertEquals(List.of(50L, 100L, 150L, 200L, 250L, 300L),
+                rejectedRows.getSample().stream().map(RejectedRow::recordNumber).toList());
+        verify(fileParseService, atLeastOnce()).newTokenizer(any());
+    }
+
+    @Test
+    void rangesAheadOfTheMergedOneShareABoundedChunkBudget() throws Exception {
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE))
+                .thenReturn(new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE));
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 4000; i++) {
+            csv.append('C').append(i).append(",pec,2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        }
+        Path file = write(csv.toString());
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofBytes(16 * 1024));
+        AtomicInteger parsedChunks = new AtomicInteger();
+        doAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> merge = invocation.getArgument(2);
+            invocation.getArguments()[2] = (Consumer<List<CustomerServiceSubscriptions>>) chunk -> {
+                parsedChunks.incrementAndGet();
+                merge.accept(chunk);
+            };
+            return invocation.callRealMethod();
+        }).when(fileParseService).parseRecords(any(), anyInt(), any(), any());
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicInteger merged = new AtomicInteger();
+
+        CompletableFuture<Long> parse = CompletableFuture.supplyAsync(() -> parallelFileParseService.parseCsvInChunks(file, 10, chunk -> {
+            merged.addAndGet(chunk.size());
+            firstChunk.countDown();
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, new RejectedRows()));
+
+        assertTrue(firstChunk.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        /* the merged range has one chunk merged, four queued and one built; the other ranges share a budget of four
+           chunks per thread and have one built each */
+        int parallelism = parseExecutor.getParallelism();
+        assertTrue(parsedChunks.get() <= 6 + parallelism * 4 + (parallelism * 2 - 1), "parsed " + parsedChunks.get());
+        resume.countDown();
+        assertEquals(4000, parse.get(10, TimeUnit.SECONDS));
+        assertEquals(4000, merged.get());
+    }
+
+    @Test
+    void rangesBeyondThePoolSizeKeepParsingWhileTheMergeWaits() throws Exception {
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE))
+                .thenReturn(new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE));
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 4000; i++) {
+            csv.append('C').append(i).append(",pec,2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        }
+        Path file = write(csv.toString());
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofBytes(16 * 1024));
+        AtomicInteger startedRanges = new AtomicInteger();
+        doAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> merge = invocation.getArgument(2);
+            AtomicBoolean started = new AtomicBoolean();
+            invocation.getArguments()[2] = (Consumer<List<CustomerServiceSubscriptions>>) chunk -> {
+                if (started.compareAndSet(false, true)) {
+                    startedRanges.incrementAndGet();
+                }
+                merge.accept(chunk);
+            };
+            return invocation.callRealMethod();
+        }).when(fileParseService).parseRecords(any(), anyInt(), any(), any());
+        CountDownLatch resume = new CountDownLatch(1);
+
+        CompletableFuture<Long> parse = CompletableFuture.supplyAsync(() -> parallelFileParseService.parseCsvInChunks(file, 10, chunk -> {
+            try {
+                resume.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, new RejectedRows()));
+
+        /* every range in flight gets a worker, even though the pool has fewer threads and all of them wait */
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (startedRanges.get() < parseExecutor.getParallelism() * 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(parseExecutor.getParallelism() * 2, startedRanges.get());
+        resume.countDown();
+        assertEquals(4000, parse.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failingConsumerReleasesEveryRange() throws IOException {
+        when(subscriptionStatusService.findByCodeStatus(SubscriptionStatusEnum.ACTIVE))
+                .thenReturn(new SubscriptionStatus(SubscriptionStatusEnum.ACTIVE));
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 4000; i++) {
+            csv.append('C').append(i).append(",pec,2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        }
+        Path file = write(csv.toString());
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofBytes(16 * 1024));
+
+        assertThrows(IllegalStateException.class, () -> parallelFileParseService.parseCsvInChunks(file, 10, chunk -> {
+            throw new IllegalStateException("saveAll failed");
+        }, new RejectedRows()));
+
+        /* the range being merged when the consumer failed is cancelled too, so no worker stays blocked on the budget */
+        assertTrue(parseExecutor.awaitQuiescence(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fallsBackToSequentialParseForSmallFiles() throws IOException {
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofMegabytes(1));
+        Path file = write(HEADER + "C1,pec,2024-01-01,2025-01-01,10.00,UNKNOWN\n");
+
+        List<CustomerServiceSubscriptions> rows = new ArrayList<>();
+        RejectedRows rejectedRows = new RejectedRows();
+
+        parallelFileParseService.parseCsvInChunks(file, 1000, rows::addAll, rejectedRows);
+
+        assertEquals(0, rows.size());
+        assertEquals(1, rejectedRows.getTotal());
+        verify(fileParseService).parseCsvInChunks(any(), any(Integer.class), any(), any());
+    }
+
+    @Test
+    void unterminatedQuoteFailsTheParse() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= 100; i++) {
+            csv.append('C').append(i).append(",pec,2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        }
+        csv.append("C101,\"open,2024-01-01,2025-01-01,10.00,ACTIVE\n");
+        Path file = write(csv.toString());
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> parallelFileParseService.parseCsvInChunks(file, 50, chunk -> { }, new RejectedRows()));
+
+        assertTrue(thrown.getMessage().startsWith("Failed to parse CSV data: End of input reached inside a quoted field"));
+    }
+}
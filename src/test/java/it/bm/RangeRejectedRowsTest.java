@@ -0,0 +1,84 @@
+package it.bm;
+
+import it.bm.model.enums.RejectReason;
+import it.bm.model.ingestion.RangeRejectedRows;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RangeRejectedRowsTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static RejectedRow row(long recordNumber) {
+        return new RejectedRow(recordNumber, RejectReason.INVALID_AMOUNT, "x" + recordNumber, "C" + recordNumber + ",\"a\"\"b\"");
+    }
+
+    private long filesInTempDir() throws IOException {
+        try (var files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void rowsPastTheMemoryBoundAreSpilledAndMergedInOrder() throws IOException {
+        Path errorFile = tempDir.resolve("rejected.csv");
+        RejectedRows rejectedRows = new RejectedRows(2, errorFile);
+        RangeRejectedRows range = new RangeRejectedRows(rejectedRows);
+        for (int i = 1; i <= 1000; i++) {
+            range.add(row(i));
+        }
+        assertEquals(1, filesInTempDir());
+
+        rejectedRows.add(row(1));
+        range.mergeInto(10);
+        rejectedRows.close();
+
+        assertEquals(1001, rejectedRows.getTotal());
+        assertEquals(List.of(1L, 11L), rejectedRows.getSample().stream().map(RejectedRow::recordNumber).toList());
+        List<String> lines = Files.readAllLines(errorFile);
+        assertEquals(1002, lines.size());
+        assertEquals("11,INVALID_AMOUNT,\"x1\",\"C1,\"\"a\"\"\"\"b\"\"\"", lines.get(2));
+        assertEquals("1010,INVALID_AMOUNT,\"x1000\",\"C1000,\"\"a\"\"\"\"b\"\"\"", lines.get(1001));
+        /* only the error file is left, the spill is gone */
+        assertEquals(1, filesInTempDir());
+    }
+
+    @Test
+    void withoutAnErrorFileOnlyTheSampleIsKeptAndTheRestCounted() {
+        RejectedRows rejectedRows = new RejectedRows(3, null);
+        RangeRejectedRows range = new RangeRejectedRows(rejectedRows);
+        for (int i = 1; i <= 1000; i++) {
+            range.add(row(i));
+        }
+
+        range.mergeInto(0);
+
+        assertEquals(Map.of(RejectReason.INVALID_AMOUNT, 1000L), rejectedRows.getCounts());
+        assertEquals(List.of(1L, 2L, 3L), rejectedRows.getSample().stream().map(RejectedRow::recordNumber).toList());
+    }
+
+    @Test
+    void closedRangeDeletesItsSpill() throws IOException {
+        RejectedRows rejectedRows = new RejectedRows(2, tempDir.resolve("rejected.csv"));
+        RangeRejectedRows range = new RangeRejectedRows(rejectedRows);
+        for (int i = 1; i <= 1000; i++) {
+            range.add(row(i));
+        }
+
+        range.close();
+
+        assertEquals(0, filesInTempDir());
+        assertEquals(0, rejectedRows.getTotal());
+    }
+}
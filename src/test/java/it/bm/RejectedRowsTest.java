@@ -0,0 +1,69 @@
+package it.bm;
+
+import it.bm.model.enums.RejectReason;
+import it.bm.model.ingestion.RejectedRow;
+import it.bm.model.ingestion.RejectedRows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RejectedRowsTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void countsEveryRowButKeepsOnlyTheSample() {
+        RejectedRows rejectedRows = new RejectedRows(2, null);
+
+        rejectedRows.add(new RejectedRow(1, RejectReason.INVALID_AMOUNT, "abc", "C001,pec,2024-02-01,2025-12-31,abc,ACTIVE"));
+        rejectedRows.add(new RejectedRow(2, RejectReason.INVALID_STATUS, "CLOSED", "C002,pec,2024-02-01,2025-12-31,10,CLOSED"));
+        rejectedRows.add(new RejectedRow(5, RejectReason.INVALID_AMOUNT, "1e3", "C005,pec,2024-02-01,2025-12-31,1e3,ACTIVE"));
+
+        assertEquals(3, rejectedRows.getTotal());
+        assertEquals(Map.of(RejectReason.INVALID_STATUS, 1L, RejectReason.INVALID_AMOUNT, 2L), rejectedRows.getCounts());
+        assertEquals(List.of(1L, 2L), rejectedRows.getSample().stream().map(RejectedRow::recordNumber).toList());
+    }
+
+    @Test
+    void writesEveryRowToTheErrorFileOnceClosed() throws IOException {
+        Path errorFile = tempDir.resolve("rejected.csv");
+        RejectedRows rejectedRows = new RejectedRows(1, errorFile);
+
+        rejectedRows.add(new RejectedRow(1, RejectReason.MALFORMED_RECORD, "unexpected character after closing quote",
+                "C001,\"pec\"x,2024-02-01"));
+        rejectedRows.add(new RejectedRow(7, RejectReason.INVALID_STATUS, "say \"hi\"",
+                "C007,pec,2024-02-01,2025-12-31,10,\"say \"\"hi\"\"\""));
+        assertTrue(rejectedRows.getErrorFile().isEmpty());
+        rejectedRows.close();
+        rejectedRows.add(new RejectedRow(9, RejectReason.INVALID_AMOUNT, "late", "C009,pec,2024-02-01,2025-12-31,late,ACTIVE"));
+
+        assertEquals(errorFile, rejectedRows.getErrorFile().orElseThrow());
+        assertEquals("""
+                record_number,reason,detail,record
+                1,MALFORMED_RECORD,"unexpected character after closing quote","C001,""pec""x,2024-02-01"
+                7,INVALID_STATUS,"say ""hi""\","C007,pec,2024-02-01,2025-12-31,10,""say ""\""hi""\"""\""
+                """, Files.readString(errorFile));
+        assertEquals(3, rejectedRows.getTotal());
+    }
+
+    @Test
+    void cleanUploadLeavesNoErrorFile() {
+        Path errorFile = tempDir.resolve("rejected.csv");
+        RejectedRows rejectedRows = new RejectedRows(10, errorFile);
+
+        rejectedRows.close();
+
+        assertFalse(Files.exists(errorFile));
+        assertTrue(rejectedRows.getErrorFile().isEmpty());
+    }
+}
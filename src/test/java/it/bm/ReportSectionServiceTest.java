@@ -0,0 +1,140 @@
+package it.bm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.bm.model.projection.AvgCustomerSpending;
+import it.bm.model.response.SummaryPageResponse;
+import it.bm.repository.SubscriptionSummaryRepository;
+import it.bm.service.ReportSectionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReportSectionServiceTest {
+
+    @Mock
+    private SubscriptionSummaryRepository subscriptionSummaryRepository;
+
+    private ReportSectionService reportSectionService;
+
+    @BeforeEach
+    void setUp() {
+        reportSectionService = new ReportSectionService(subscriptionSummaryRepository, new ObjectMapper());
+        ReflectionTestUtils.setField(reportSectionService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(reportSectionService, "maxPageSize", 3);
+        ReflectionTestUtils.setField(reportSectionService, "fetchSize", 50);
+    }
+
+    @Test
+    void aFullPageLinksTheNextOneAndAShortPageEndsTheSection() {
+        when(subscriptionSummaryRepository.findAverageSpendingPage("", 2)).thenReturn(List.of(
+                new AvgCustomerSpending("C001", 10.0), new AvgCustomerSpending("C002", 20.0)));
+        when(subscriptionSummaryRepository.findAverageSpendingPage("C002", 2)).thenReturn(List.of(
+                new AvgCustomerSpending("C003", 30.0)));
+
+        SummaryPageResponse<AvgCustomerSpending> first = reportSectionService.getAverageSpendingPage("", null);
+        SummaryPageResponse<AvgCustomerSpending> last = reportSectionService.getAverageSpendingPage(first.nextAfter(), null);
+
+        assertEquals("C002", first.nextAfter());
+        assertEquals(List.of(new AvgCustomerSpending("C003", 30.0)), last.items());
+        assertNull(last.nextAfter());
+    }
+
+    @Test
+    void pagesTheCustomersWithMoreThanOneExpiredService() {
+        when(subscriptionSummaryRepository.findCustomersWithExpiredCountAbovePage(1, "C010", 3))
+                .thenReturn(List.of("C011", "C014", "C020"));
+
+        SummaryPageResponse<String> page = reportSectionService.getCustomersWithExpiredServicesPage("C010", 3);
+
+        assertEquals(List.of("C011", "C014", "C020"), page.items());
+        assertEquals("C020", page.nextAfter());
+    }
+
+    @Test
+    void rejectsAPageSizeOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> reportSectionService.getCustomersExpiringSoonPage("", 0));
+        assertThrows(IllegalArgumentException.class, () -> reportSectionService.getCustomersExpiringSoonPage("", 4));
+        verifyNoInteractions(subscriptionSummaryRepository);
+    }
+
+    @Test
+    void streamsTheAverageSpendingAsOneJsonObjectPerLine() throws IOException {
+        doAnswer(invocation -> {
+            Consumer<AvgCustomerSpending> consumer = invocation.getArgument(2);
+            consumer.accept(new AvgCustomerSpending("C001", 10.5));
+            consumer.accept(new AvgCustomerSpending("C002", 20.0));
+            return null;
+        }).when(subscriptionSummaryRepository).forEachAverageSpending(eq("C000"), eq(50), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        reportSectionService.streamAverageSpending("C000", out);
+
+        assertEquals("""
+                {"customerId":"C001","avgAmount":10.5}
+                {"customerId":"C002","avgAmount":20.0}
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void streamsTheCustomersExpiringWithinFifteenDays() throws IOException {
+        LocalDate today = LocalDate.now();
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(4);
+            consumer.accept("C001");
+            consumer.accept("C\"7");
+            return null;
+        }).when(subscriptionSummaryRepository).forEachCustomerWithRunningExpiringBetween(any(), any(), eq(""), eq(50), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        reportSectionService.streamCustomersExpiringSoon("", out);
+
+        assertEquals("\"C001\"\n\"C\\\"7\"\n", out.toString(StandardCharsets.UTF_8));
+        verify(subscriptionSummaryRepository).forEachCustomerWithRunningExpiringBetween(eq(today), eq(today.plusDays(15)),
+                eq(""), eq(50), any());
+    }
+
+    @Test
+    void aClosedConnectionStopsTheStream() {
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(3);
+            for (int i = 0; i < 100_000; i++) {
+                consumer.accept("C" + i);
+            }
+            return null;
+        }).when(subscriptionSummaryRepository).forEachCustomerWithExpiredCountAbove(eq(1L), anyString(), anyInt(), any());
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        IOException failure = assertThrows(IOException.class,
+                () -> reportSectionService.streamCustomersWithExpiredServices("", closed));
+        assertEquals("Broken pipe", failure.getMessage());
+    }
+}
@@ -1,33 +1,60 @@
 package it.bm;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.bm.model.entity.CustomerServiceSubscriptions;
 import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.AlertType;
+import it.bm.model.enums.PersistenceMode;
 import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.AlertKey;
+import it.bm.model.ingestion.IngestionStats;
+import it.bm.model.ingestion.NotificationBatch;
+import it.bm.model.ingestion.PublishOutcome;
 import it.bm.model.kafka.ExpiredServicesDTO;
 import it.bm.model.kafka.UpsellingServiceDTO;
 import it.bm.model.projection.AvgCustomerSpending;
 import it.bm.model.projection.ServiceTypeCount;
 import it.bm.model.response.ReportSummaryResponse;
+import it.bm.repository.CustomerExpiredCounterRepository;
 import it.bm.service.CustomerServiceSubscriptionService;
-import it.bm.service.FileParseService;
+import it.bm.service.ExpirationReminderService;
 import it.bm.service.FileValidationService;
+import it.bm.service.IngestionPipelineService;
+import it.bm.service.NotificationDedupService;
 import it.bm.service.NotificationService;
 import it.bm.service.ReportService;
+import it.bm.service.ReportSummaryCache;
+import it.bm.service.alert.AlertRuleEngine;
+import it.bm.service.alert.ExpiredServicesRule;
+import it.bm.service.alert.UpsellingRule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -38,9 +65,6 @@ class ReportServiceTest {
     @Mock
     private FileValidationService fileValidationService;
 
-    @Mock
-    private FileParseService fileParseService;
-
     @Mock
     private CustomerServiceSubscriptionService customerServiceSubscriptionService;
 
@@ -48,17 +72,84 @@ class ReportServiceTest {
     private NotificationService notificationService;
 
     @Mock
-    private MultipartFile multipartFile;
+    private IngestionPipelineService ingestionPipelineService;
+
+    @Mock
+    private CustomerExpiredCounterRepository customerExpiredCounterRepository;
+
+    @Mock
+    private NotificationDedupService notificationDedupService;
+
+    @Mock
+    private ExpirationReminderService expirationReminderService;
+
+    @Mock
+    private ReportSummaryCache reportSummaryCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path tempDir;
+
+    private Path upload;
+
+    private final InputStream validatedStream = new ByteArrayInputStream(new byte[0]);
+
+    private final IngestionStats stats = new IngestionStats();
+
+    private ExpiredServicesRule expiredServicesRule;
+
+    private UpsellingRule upsellingRule;
 
     private ReportService reportService;
 
+    private final List<NotificationBatch> published = new ArrayList<>();
+
     @BeforeEach
-    void setUp() {
-        reportService = new ReportService(fileValidationService, fileParseService,
-                customerServiceSubscriptionService, notificationService);
+    void setUp() throws IOException {
+        upload = Files.writeString(tempDir.resolve("upload.csv"), "content");
+        lenient().when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenReturn(validatedStream);
+        expiredServicesRule = new ExpiredServicesRule(customerExpiredCounterRepository);
+        upsellingRule = new UpsellingRule(notificationDedupService);
+        reportService = new ReportService(fileValidationService, customerServiceSubscriptionService, ingestionPipelineService,
+                new AlertRuleEngine(List.of(expiredServicesRule, upsellingRule), new SimpleMeterRegistry()), notificationService,
+                expirationReminderService, reportSummaryCache, transactionManager);
+        lenient().when(notificationService.publish(any())).thenAnswer(invocation -> {
+            NotificationBatch batch = invocation.getArgument(0);
+            published.add(batch);
+            return new PublishOutcome(batch.size(), 0, 0);
+        });
+        lenient().when(notificationDedupService.claim(any())).thenAnswer(invocation -> List.copyOf(invocation.<List<AlertKey>>getArgument(0)));
+
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 5);
+        ReflectionTestUtils.setField(upsellingRule, "yearsOfSubscription", 3);
+        ReflectionTestUtils.setField(reportService, "defaultPersistenceMode", PersistenceMode.JPA);
+    }
+
+    private void createReport(PersistenceMode persistenceMode) throws IOException {
+        reportService.createReport(List.of(upload), "test.csv", persistenceMode, stats);
+    }
+
+    /* stands in for the pipeline: each chunk is persisted, then handed to the alert stage */
+    @SafeVarargs
+    private void ingestsInChunks(PersistenceMode persistenceMode, List<CustomerServiceSubscriptions>... chunks) {
+        when(ingestionPipelineService.ingest(eq(validatedStream), eq(persistenceMode), same(stats), any())).thenAnswer(invocation -> {
+            Consumer<List<CustomerServiceSubscriptions>> alertStage = invocation.getArgument(3);
+            for (List<CustomerServiceSubscriptions> chunk : chunks) {
+                customerServiceSubscriptionService.saveAll(chunk, persistenceMode);
+                alertStage.accept(chunk);
+            }
+            return stats;
+        });
+    }
+
+    private List<ExpiredServicesDTO> expiredSent() {
+        return published.stream().flatMap(batch -> batch.getExpiredServicesMessages().stream()).toList();
+    }
 
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 5);
-        ReflectionTestUtils.setField(reportService, "yearsOfSubscription", 3);
+    private List<UpsellingServiceDTO> upsellingSent() {
+        return published.stream().flatMap(batch -> batch.getUpsellingMessages().stream()).toList();
     }
 
     private CustomerServiceSubscriptions createSubscription(String customerId, String serviceType,
@@ -83,45 +174,56 @@ class ReportServiceTest {
                 createSubscription("C002", "email", SubscriptionStatusEnum.EXPIRED, LocalDate.now().minusYears(2))
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(parsedRecords);
-        reportService.createReport(multipartFile);
+        ingestsInChunks(PersistenceMode.JPA, parsedRecords);
+        this.createReport(null);
+
+        verify(fileValidationService).validateCsvStream(any(InputStream.class), eq("test.csv"));
+        verify(customerServiceSubscriptionService).saveAll(parsedRecords, PersistenceMode.JPA);
+        verify(expirationReminderService).schedule(parsedRecords);
+        verify(reportSummaryCache).invalidate();
+    }
+
+    @Test
+    void createReport_UsesRequestedPersistenceMode() throws IOException {
+        List<CustomerServiceSubscriptions> parsedRecords = List.of(
+                createSubscription("C001", "hosting", SubscriptionStatusEnum.ACTIVE, LocalDate.now().minusYears(1))
+        );
+
+        ingestsInChunks(PersistenceMode.COPY, parsedRecords);
+        this.createReport(PersistenceMode.COPY);
 
-        verify(fileValidationService).validateCsvFile(multipartFile);
-        verify(fileParseService).parseCsvRecordToEntity(multipartFile);
-        verify(customerServiceSubscriptionService).saveAll(parsedRecords);
+        verify(customerServiceSubscriptionService).saveAll(parsedRecords, PersistenceMode.COPY);
     }
 
     @Test
     void createReport_FileValidation_ThrowsException() throws IOException {
         IOException validationException = new IOException("Invalid file format");
-        doThrow(validationException).when(fileValidationService).validateCsvFile(multipartFile);
+        when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenThrow(validationException);
 
-        IOException thrownException = assertThrows(IOException.class, () ->
-                reportService.createReport(multipartFile));
+        IOException thrownException = assertThrows(IOException.class, () -> this.createReport(null));
 
         assertEquals("Invalid file format", thrownException.getMessage());
-        verify(fileValidationService).validateCsvFile(multipartFile);
-        verifyNoInteractions(fileParseService);
+        verifyNoInteractions(ingestionPipelineService);
         verifyNoInteractions(customerServiceSubscriptionService);
+        verify(reportSummaryCache).invalidate();
     }
 
     @Test
     void createReport_FileParse_ThrowsException() throws IOException {
         RuntimeException parseException = new RuntimeException("Parse error");
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenThrow(parseException);
+        when(ingestionPipelineService.ingest(eq(validatedStream), eq(PersistenceMode.JPA), same(stats), any())).thenThrow(parseException);
 
-        RuntimeException thrownException = assertThrows(RuntimeException.class, () ->
-                reportService.createReport(multipartFile));
+        RuntimeException thrownException = assertThrows(RuntimeException.class, () -> this.createReport(null));
 
         assertEquals("Parse error", thrownException.getMessage());
-        verify(fileValidationService).validateCsvFile(multipartFile);
-        verify(fileParseService).parseCsvRecordToEntity(multipartFile);
+        verify(reportSummaryCache).invalidate();
+        verify(notificationService, never()).publish(any());
         verifyNoInteractions(customerServiceSubscriptionService);
     }
 
     @Test
     void createReport_TriggersExpiredServicesNotification() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 2);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 2);
 
         List<CustomerServiceSubscriptions> expiredRecords = Arrays.asList(
                 createSubscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
@@ -129,33 +231,34 @@ class ReportServiceTest {
                 createSubscription("C001", "domain", SubscriptionStatusEnum.EXPIRED, LocalDate.now())
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(expiredRecords);
+        ingestsInChunks(PersistenceMode.JPA, expiredRecords);
 
-        reportService.createReport(multipartFile);
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001"), 2L)).thenReturn(Map.of("C001", 3L));
 
-        verify(notificationService).sendExpiredServicesNotification(
-                argThat(dto -> "C001".equals(dto.customerId()) && dto.numberOfExpiredServices() == 3L));
+        this.createReport(null);
+
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 3)));
     }
 
     @Test
     void createReport_DoesNotTriggerExpiredServicesNotificationWhenBelowLimit() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 5);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 5);
 
         List<CustomerServiceSubscriptions> expiredRecords = Arrays.asList(
                 createSubscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
                 createSubscription("C001", "email", SubscriptionStatusEnum.EXPIRED, LocalDate.now())
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(expiredRecords);
+        ingestsInChunks(PersistenceMode.JPA, expiredRecords);
 
-        reportService.createReport(multipartFile);
+        this.createReport(null);
 
-        verify(notificationService, never()).sendExpiredServicesNotification(any());
+        assertTrue(expiredSent().isEmpty());
     }
 
     @Test
     void createReport_TriggersUpsellingNotification() throws IOException {
-        ReflectionTestUtils.setField(reportService, "yearsOfSubscription", 3);
+        ReflectionTestUtils.setField(upsellingRule, "yearsOfSubscription", 3);
         LocalDate fourYearsAgo = LocalDate.now().minusYears(4);
 
         List<CustomerServiceSubscriptions> oldSubscriptions = Arrays.asList(
@@ -163,14 +266,12 @@ class ReportServiceTest {
                 createSubscription("C002", "email", SubscriptionStatusEnum.PENDING_RENEWAL, fourYearsAgo)
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(oldSubscriptions);
+        ingestsInChunks(PersistenceMode.JPA, oldSubscriptions);
 
-        reportService.createReport(multipartFile);
+        this.createReport(null);
 
-        verify(notificationService).sendUpsellingNotification(
-                argThat(dto -> "C001".equals(dto.customerId()) && "hosting".equals(dto.upsellingService())));
-        verify(notificationService).sendUpsellingNotification(
-                argThat(dto -> "C002".equals(dto.customerId()) && "email".equals(dto.upsellingService())));
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C001", "hosting")));
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C002", "email")));
     }
 
     @Test
@@ -181,9 +282,30 @@ class ReportServiceTest {
                 createSubscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED, fourYearsAgo)
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(expiredSubscriptions);
-        reportService.createReport(multipartFile);
-        verify(notificationService, never()).sendUpsellingNotification(any());
+        ingestsInChunks(PersistenceMode.JPA, expiredSubscriptions);
+        this.createReport(null);
+        assertTrue(upsellingSent().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getReportSummarySnapshot_ComputesInAReadOnlyTransaction() {
+        TransactionStatus status = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(customerServiceSubscriptionService.countRunningServicesByType()).thenReturn(List.of(new ServiceTypeCount("hosting", 1L)));
+        when(reportSummaryCache.get(any())).thenAnswer(invocation -> {
+            invocation.<Supplier<ReportSummaryResponse>>getArgument(0).get();
+            return null;
+        });
+
+        reportService.getReportSummarySnapshot();
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        InOrder order = inOrder(transactionManager, customerServiceSubscriptionService);
+        order.verify(transactionManager).getTransaction(definition.capture());
+        order.verify(customerServiceSubscriptionService).countRunningServicesByType();
+        order.verify(transactionManager).commit(status);
+        assertTrue(definition.getValue().isReadOnly());
     }
 
     @Test
@@ -201,10 +323,10 @@ class ReportServiceTest {
         List<String> expiredCustomers = Arrays.asList("C003", "C004");
         List<String> expiringCustomers = Arrays.asList("C005", "C006");
 
-        when(customerServiceSubscriptionService.countServicesByTypeWithStatus(any())).thenReturn(serviceTypeCounts);
+        when(customerServiceSubscriptionService.countRunningServicesByType()).thenReturn(serviceTypeCounts);
         when(customerServiceSubscriptionService.averageSpendingPerCustomer()).thenReturn(avgSpending);
-        when(customerServiceSubscriptionService.findCustomersWithMultipleExpiredServices(any(), any())).thenReturn(expiredCustomers);
-        when(customerServiceSubscriptionService.findCustomersWithServicesExpiringWithinDays(any(), any())).thenReturn(expiringCustomers);
+        when(customerServiceSubscriptionService.findCustomersWithMoreExpiredServicesThan(1)).thenReturn(expiredCustomers);
+        when(customerServiceSubscriptionService.findCustomersWithServicesExpiringBetween(any(), any())).thenReturn(expiringCustomers);
 
         ReportSummaryResponse response = reportService.getReportSummary();
         assertNotNull(response);
@@ -219,11 +341,12 @@ class ReportServiceTest {
 
         assertEquals(Arrays.asList("C003", "C004"), response.customersWithMoreThanOneServiceExpired());
         assertEquals(Arrays.asList("C005", "C006"), response.customersWithServicesExpiringSoon());
+        verify(customerServiceSubscriptionService).findCustomersWithServicesExpiringBetween(LocalDate.now(), LocalDate.now().plusDays(15));
     }
 
     @Test
     void createReport_MultipleCustomersWithExpiredServices() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 1);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 1);
 
         List<CustomerServiceSubscriptions> mixedRecords = Arrays.asList(
                 createSubscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
@@ -234,21 +357,22 @@ class ReportServiceTest {
                 createSubscription("C003", "hosting", SubscriptionStatusEnum.ACTIVE, LocalDate.now())
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(mixedRecords);
+        ingestsInChunks(PersistenceMode.JPA, mixedRecords);
+
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001", "C002"), 1L))
+                .thenReturn(Map.of("C001", 2L, "C002", 3L));
 
-        reportService.createReport(multipartFile);
+        this.createReport(null);
 
-        verify(notificationService).sendExpiredServicesNotification(
-                argThat(dto -> "C001".equals(dto.customerId()) && dto.numberOfExpiredServices() == 2L));
-        verify(notificationService).sendExpiredServicesNotification(
-                argThat(dto -> "C002".equals(dto.customerId()) && dto.numberOfExpiredServices() == 3L));
-        verify(notificationService, times(2)).sendExpiredServicesNotification(any(ExpiredServicesDTO.class));
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 2)));
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C002", 3)));
+        assertEquals(2, expiredSent().size());
     }
 
     @Test
     void createReport_CustomLimitsFromProperties() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 3);
-        ReflectionTestUtils.setField(reportService, "yearsOfSubscription", 2);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 3);
+        ReflectionTestUtils.setField(upsellingRule, "yearsOfSubscription", 2);
 
         LocalDate threeYearsAgo = LocalDate.now().minusYears(3);
 
@@ -260,20 +384,20 @@ class ReportServiceTest {
                 createSubscription("C002", "hosting", SubscriptionStatusEnum.ACTIVE, threeYearsAgo)
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(records);
+        ingestsInChunks(PersistenceMode.JPA, records);
+
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001"), 3L)).thenReturn(Map.of("C001", 4L));
 
-        reportService.createReport(multipartFile);
+        this.createReport(null);
 
-        verify(notificationService).sendExpiredServicesNotification(
-                argThat(dto -> "C001".equals(dto.customerId()) && dto.numberOfExpiredServices() == 4L));
-        verify(notificationService).sendUpsellingNotification(
-                argThat(dto -> "C002".equals(dto.customerId()) && "hosting".equals(dto.upsellingService())));
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 4)));
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C002", "hosting")));
     }
 
     @Test
     void createReport_MixedSubscriptionStatuses() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 2);
-        ReflectionTestUtils.setField(reportService, "yearsOfSubscription", 3);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 2);
+        ReflectionTestUtils.setField(upsellingRule, "yearsOfSubscription", 3);
 
         LocalDate fourYearsAgo = LocalDate.now().minusYears(4);
         LocalDate twoYearsAgo = LocalDate.now().minusYears(2);
@@ -291,23 +415,22 @@ class ReportServiceTest {
                 createSubscription("C004", "ssl", SubscriptionStatusEnum.EXPIRED, fourYearsAgo)
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(mixedRecords);
-        reportService.createReport(multipartFile);
+        ingestsInChunks(PersistenceMode.JPA, mixedRecords);
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001", "C004"), 2L)).thenReturn(Map.of("C001", 3L));
+        this.createReport(null);
 
-        verify(notificationService).sendExpiredServicesNotification(
-                argThat(dto -> "C001".equals(dto.customerId()) && dto.numberOfExpiredServices() == 3L));
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 3)));
 
-        verify(notificationService).sendUpsellingNotification(
-                argThat(dto -> "C002".equals(dto.customerId()) && "hosting".equals(dto.upsellingService())));
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C002", "hosting")));
 
-        verify(notificationService, times(1)).sendExpiredServicesNotification(any());
-        verify(notificationService, times(1)).sendUpsellingNotification(any());
+        assertEquals(1, expiredSent().size());
+        assertEquals(1, upsellingSent().size());
     }
 
     @Test
     void createReport_BoundaryConditions() throws IOException {
-        ReflectionTestUtils.setField(reportService, "expiredServicesLimit", 2);
-        ReflectionTestUtils.setField(reportService, "yearsOfSubscription", 3);
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 2);
+        ReflectionTestUtils.setField(upsellingRule, "yearsOfSubscription", 3);
 
         LocalDate exactlyThreeYearsAgo = LocalDate.now().minusYears(3);
         LocalDate justOverThreeYears = LocalDate.now().minusYears(3).minusDays(1);
@@ -322,21 +445,162 @@ class ReportServiceTest {
                 createSubscription("C003", "email", SubscriptionStatusEnum.ACTIVE, justOverThreeYears)
         );
 
-        when(fileParseService.parseCsvRecordToEntity(multipartFile)).thenReturn(boundaryRecords);
+        ingestsInChunks(PersistenceMode.JPA, boundaryRecords);
+
+        this.createReport(null);
+
+        verify(customerExpiredCounterRepository).findExpiredCountsAbove(Set.of("C001"), 2L);
+        assertTrue(expiredSent().isEmpty());
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C003", "email")));
+        assertEquals(1, upsellingSent().size());
+    }
+
+    @Test
+    void createReport_ExpiredServicesCountAcrossUploads() throws IOException {
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 2);
+
+        List<CustomerServiceSubscriptions> records = List.of(
+                createSubscription("C001", "pec", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
+                createSubscription("C002", "hosting", SubscriptionStatusEnum.EXPIRED, LocalDate.now())
+        );
+
+        ingestsInChunks(PersistenceMode.JPA, records);
+        // C001 already had 2 expired services from earlier uploads, C002 has only this one
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001", "C002"), 2L)).thenReturn(Map.of("C001", 3L));
 
-        reportService.createReport(multipartFile);
+        this.createReport(null);
 
-        verify(notificationService, never()).sendExpiredServicesNotification(any());
-        verify(notificationService).sendUpsellingNotification(
-                argThat(dto -> "C003".equals(dto.customerId()) && "email".equals(dto.upsellingService())));
-        verify(notificationService, times(1)).sendUpsellingNotification(any());
+        InOrder inOrder = inOrder(customerServiceSubscriptionService, customerExpiredCounterRepository);
+        inOrder.verify(customerServiceSubscriptionService).saveAll(records, PersistenceMode.JPA);
+        inOrder.verify(customerExpiredCounterRepository).findExpiredCountsAbove(Set.of("C001", "C002"), 2L);
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 3)));
+        assertEquals(1, expiredSent().size());
+    }
+
+    @Test
+    void createReport_NoExpiredRowsSkipsTheCounterLookup() throws IOException {
+        List<CustomerServiceSubscriptions> records = List.of(
+                createSubscription("C001", "hosting", SubscriptionStatusEnum.ACTIVE, LocalDate.now()));
+
+        ingestsInChunks(PersistenceMode.JPA, records);
+
+        this.createReport(null);
+
+        verifyNoInteractions(customerExpiredCounterRepository);
+    }
+
+    @Test
+    void createReport_UpsellAlreadySentIsNotSentAgain() throws IOException {
+        LocalDate fourYearsAgo = LocalDate.now().minusYears(4);
+        List<CustomerServiceSubscriptions> records = List.of(
+                createSubscription("C001", "hosting", SubscriptionStatusEnum.ACTIVE, fourYearsAgo),
+                createSubscription("C002", "pec", SubscriptionStatusEnum.ACTIVE, fourYearsAgo)
+        );
+        AlertKey alreadySent = new AlertKey("C001", "hosting", AlertType.UPSELLING);
+        AlertKey fresh = new AlertKey("C002", "pec", AlertType.UPSELLING);
+
+        ingestsInChunks(PersistenceMode.JPA, records);
+        when(notificationDedupService.claim(List.of(alreadySent, fresh))).thenReturn(List.of(fresh));
+
+        this.createReport(null);
+
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C002", "pec")));
+        assertEquals(1, upsellingSent().size());
+    }
+
+    @Test
+    void createReport_FailedUploadDiscardsItsAlerts() throws IOException {
+        LocalDate fourYearsAgo = LocalDate.now().minusYears(4);
+        List<CustomerServiceSubscriptions> persisted = List.of(
+                createSubscription("C001", "hosting", SubscriptionStatusEnum.ACTIVE, fourYearsAgo));
+        when(ingestionPipelineService.ingest(eq(validatedStream), eq(PersistenceMode.JPA), same(stats), any())).thenAnswer(invocation -> {
+            invocation.<Consumer<List<CustomerServiceSubscriptions>>>getArgument(3).accept(persisted);
+            throw new IllegalStateException("DB down");
+        });
+
+        assertThrows(IllegalStateException.class, () -> this.createReport(null));
+
+        ArgumentCaptor<NotificationBatch> discarded = ArgumentCaptor.forClass(NotificationBatch.class);
+        verify(notificationService).discard(discarded.capture());
+        assertEquals(List.of(new UpsellingServiceDTO("C001", "hosting")), discarded.getValue().getUpsellingMessages());
+        verify(notificationService, never()).publish(any());
+        verify(reportSummaryCache).invalidate();
     }
 
     @Test
     void getReportSummary_ServiceExceptions() {
-        when(customerServiceSubscriptionService.countServicesByTypeWithStatus(any()))
+        when(customerServiceSubscriptionService.countRunningServicesByType())
                 .thenThrow(new RuntimeException("Database connection failed"));
 
         assertThrows(RuntimeException.class, () -> reportService.getReportSummary());
     }
-}
\ No newline at end of file
+
+    @Test
+    void createReport_AlertsAcrossChunks() throws IOException {
+        ReflectionTestUtils.setField(expiredServicesRule, "expiredServicesLimit", 2);
+        LocalDate fourYearsAgo = LocalDate.now().minusYears(4);
+
+        List<CustomerServiceSubscriptions> firstChunk = Arrays.asList(
+                createSubscription("C001", "hosting", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
+                createSubscription("C001", "email", SubscriptionStatusEnum.EXPIRED, LocalDate.now())
+        );
+        List<CustomerServiceSubscriptions> secondChunk = Arrays.asList(
+                createSubscription("C001", "domain", SubscriptionStatusEnum.EXPIRED, LocalDate.now()),
+                createSubscription("C002", "pec", SubscriptionStatusEnum.ACTIVE, fourYearsAgo)
+        );
+
+        ingestsInChunks(PersistenceMode.COPY, firstChunk, secondChunk);
+        when(customerExpiredCounterRepository.findExpiredCountsAbove(Set.of("C001"), 2L)).thenReturn(Map.of("C001", 3L));
+
+        this.createReport(PersistenceMode.COPY);
+
+        assertTrue(expiredSent().contains(new ExpiredServicesDTO("C001", 3)));
+        assertTrue(upsellingSent().contains(new UpsellingServiceDTO("C002", "pec")));
+        assertEquals(1, published.size());
+        verify(expirationReminderService).schedule(firstChunk);
+        verify(expirationReminderService).schedule(secondChunk);
+    }
+
+    @Test
+    void createReport_LargeFileIsParsedByRanges() throws IOException {
+        ReflectionTestUtils.setField(reportService, "parallelEnabled", true);
+        ReflectionTestUtils.setField(reportService, "parallelMinFileSize", DataSize.ofBytes(1));
+        when(ingestionPipelineService.ingest(eq(upload), eq(PersistenceMode.JPA), same(stats), any())).thenReturn(stats);
+
+        this.createReport(null);
+
+        verify(fileValidationService).validateCsvStream(any(InputStream.class), eq("test.csv"));
+        verify(ingestionPipelineService, never()).ingest(any(InputStream.class), any(), any(), any());
+    }
+
+    @Test
+    void createReport_LargeCompressedFileIsStreamed() throws IOException {
+        ReflectionTestUtils.setField(reportService, "parallelEnabled", true);
+        ReflectionTestUtils.setField(reportService, "parallelMinFileSize", DataSize.ofBytes(1));
+        when(fileValidationService.isCompressed(upload)).thenReturn(true);
+        when(ingestionPipelineService.ingest(eq(validatedStream), eq(PersistenceMode.JPA), same(stats), any())).thenReturn(stats);
+
+        this.createReport(null);
+
+        verify(ingestionPipelineService, never()).ingest(any(Path.class), any(), any(), any());
+    }
+
+    @Test
+    void createReport_JobPartsAreReadBackToBack() throws IOException {
+        ReflectionTestUtils.setField(reportService, "parallelEnabled", true);
+        ReflectionTestUtils.setField(reportService, "parallelMinFileSize", DataSize.ofBytes(1));
+        Path firstPart = Files.writeString(tempDir.resolve("part-00001"), "customer_id,service_type\nC0");
+        Path secondPart = Files.writeString(tempDir.resolve("part-00002"), "01,pec\n");
+        when(fileValidationService.validateCsvStream(any(InputStream.class), eq("test.csv"))).thenAnswer(invocation -> {
+            assertEquals("customer_id,service_type\nC001,pec\n",
+                    new String(invocation.<InputStream>getArgument(0).readAllBytes()));
+            return validatedStream;
+        });
+        when(ingestionPipelineService.ingest(eq(validatedStream), eq(PersistenceMode.COPY), same(stats), any())).thenReturn(stats);
+
+        reportService.createReport(List.of(firstPart, secondPart), "test.csv", PersistenceMode.COPY, stats);
+
+        verify(ingestionPipelineService).ingest(eq(validatedStream), eq(PersistenceMode.COPY), same(stats), any());
+        verify(ingestionPipelineService, never()).ingest(any(Path.class), any(), any(), any());
+    }
+}
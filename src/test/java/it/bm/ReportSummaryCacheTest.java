@@ -0,0 +1,203 @@
+package it.bm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.response.ReportSummaryResponse;
+import it.bm.model.response.ReportSummarySnapshot;
+import it.bm.service.ReportSummaryCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportSummaryCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private ReportSummaryCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReportSummaryCache(new ObjectMapper(), meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxAge", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(cache, "computeTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.invokeMethod(cache, "start");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(cache, "stop");
+    }
+
+    @Test
+    void servesTheSameSnapshotUntilInvalidated() {
+        ReportSummarySnapshot first = cache.get(this.summaryOf("hosting", 2));
+        ReportSummarySnapshot second = cache.get(this.summaryOf("hosting", 3));
+
+        assertSame(first.body(), second.body());
+        assertFalse(first.cached());
+        assertTrue(second.cached());
+        assertEquals(1, computations.get());
+        assertEquals(1.0, this.cacheCount("hit"));
+        assertEquals(1.0, this.cacheCount("miss"));
+
+        cache.invalidate();
+        ReportSummarySnapshot third = cache.get(this.summaryOf("hosting", 3));
+
+        assertEquals(2, computations.get());
+        assertNotEquals(first.eTag(), third.eTag());
+        assertTrue(new String(third.body(), StandardCharsets.UTF_8).contains("\"hosting\":3"));
+        assertEquals(2, meterRegistry.timer("report.summary.compute").count());
+    }
+
+    @Test
+    void theETagDependsOnlyOnTheContent() {
+        ReportSummarySnapshot first = cache.get(this.summaryOf("email", 5));
+        cache.invalidate();
+        ReportSummarySnapshot second = cache.get(this.summaryOf("email", 5));
+
+        assertEquals(2, computations.get());
+        assertEquals(first.eTag(), second.eTag());
+        assertTrue(first.eTag().startsWith("\"") && first.eTag().endsWith("\""));
+    }
+
+    @Test
+    void recomputesPastMaxAgeAndOnTheNextDay() {
+        cache.get(this.summaryOf("hosting", 1));
+        ReflectionTestUtils.setField(cache, "maxAge", Duration.ZERO);
+        cache.get(this.summaryOf("hosting", 1));
+        assertEquals(2, computations.get());
+
+        ReflectionTestUtils.setField(cache, "maxAge", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(cache, "clock", Clock.fixed(Instant.now().plus(Duration.ofDays(1)), ZoneId.systemDefault()));
+        cache.get(this.summaryOf("hosting", 1));
+        assertEquals(3, computations.get());
+    }
+
+    @Test
+    void servesTheLastSnapshotAsStaleWhenTheComputationIsSlow() throws InterruptedException {
+        ReflectionTestUtils.setField(cache, "computeTimeout", Duration.ofMillis(50));
+        ReportSummarySnapshot first = cache.get(this.summaryOf("hosting", 1));
+        cache.invalidate();
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch computed = new CountDownLatch(1);
+        ReportSummarySnapshot stale = cache.get(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            computed.countDown();
+            return this.summaryOf("hosting", 2).get();
+        });
+
+        assertTrue(stale.stale());
+        assertEquals(first.eTag(), stale.eTag());
+        assertEquals(1.0, this.cacheCount("stale"));
+
+        release.countDown();
+        assertTrue(computed.await(5, TimeUnit.SECONDS));
+        ReportSummarySnapshot fresh = this.awaitFresh(first.eTag());
+        assertFalse(fresh.stale());
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void aPollAfterAnInvalidationDoesNotTakeAComputationStartedBeforeIt() throws InterruptedException {
+        ReflectionTestUtils.setField(cache, "computeTimeout", Duration.ofMillis(50));
+        cache.get(this.summaryOf("hosting", 1));
+        cache.invalidate();
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(cache.get(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return this.summaryOf("hosting", 2).get();
+        }).stale());
+
+        cache.invalidate();
+        ReportSummarySnapshot afterUpload = cache.get(this.summaryOf("hosting", 3));
+        release.countDown();
+
+        assertTrue(afterUpload.stale());
+        for (int attempt = 0; attempt < 100; attempt++) {
+            ReportSummarySnapshot snapshot = cache.get(this.summaryOf("hosting", 9));
+            if (!snapshot.stale()) {
+                assertTrue(new String(snapshot.body(), StandardCharsets.UTF_8).contains("\"hosting\":3"));
+                assertEquals(3, computations.get());
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("the computation started after the invalidation never refreshed the cache");
+    }
+
+    @Test
+    void aFailedComputationIsThrownAndNotCached() {
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> cache.get(() -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertEquals("database down", failure.getMessage());
+
+        cache.get(this.summaryOf("hosting", 1));
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void computesEveryTimeWhenDisabled() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        cache.get(this.summaryOf("hosting", 1));
+        cache.get(this.summaryOf("hosting", 1));
+
+        assertEquals(2, computations.get());
+    }
+
+    /* the slow computation refreshes the cache once it completes, shortly after the latch is released */
+    private ReportSummarySnapshot awaitFresh(String staleETag) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            ReportSummarySnapshot snapshot = cache.get(this.summaryOf("hosting", 9));
+            if (!snapshot.eTag().equals(staleETag)) {
+                return snapshot;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("the slow computation never refreshed the cache");
+    }
+
+    private Supplier<ReportSummaryResponse> summaryOf(String serviceType, long running) {
+        return () -> {
+            computations.incrementAndGet();
+            return new ReportSummaryResponse(Map.of(serviceType, running), List.of(), List.of("C001"), List.of());
+        };
+    }
+
+    private double cacheCount(String result) {
+        return meterRegistry.counter("report.summary.cache", "result", result).count();
+    }
+}
@@ -0,0 +1,107 @@
+package it.bm;
+
+import it.bm.util.RingBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferTest {
+
+    @Test
+    void keepsInsertionOrderAcrossLaps() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3, RingBuffer.WaitStrategy.BUSY_SPIN);
+        assertEquals(4, ring.capacity());
+
+        List<Integer> taken = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(i));
+            taken.add(ring.poll());
+        }
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), taken);
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void refusesOffersWhenFull() {
+        RingBuffer<String> ring = new RingBuffer<>(2, RingBuffer.WaitStrategy.YIELDING);
+
+        assertTrue(ring.offer("a"));
+        assertTrue(ring.offer("b"));
+        assertFalse(ring.offer("c"));
+        assertEquals(2, ring.size());
+        assertEquals("a", ring.poll());
+        assertTrue(ring.offer("c"));
+    }
+
+    @Test
+    void putWaitsForRoomInsteadOfDropping() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(1, RingBuffer.WaitStrategy.BLOCKING);
+        assertEquals(2, ring.capacity());
+        ring.put(0);
+        ring.put(1);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread writer = Thread.ofPlatform().start(() -> {
+            try {
+                ring.put(2);
+                added.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertFalse(added.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(0, ring.take());
+        assertEquals(1, ring.take());
+        assertTrue(added.await(1, TimeUnit.SECONDS));
+        assertEquals(2, ring.take());
+        writer.join();
+    }
+
+    @Test
+    void everyElementIsTakenByExactlyOneReader() throws InterruptedException {
+        int elements = 100_000;
+        RingBuffer<Integer> ring = new RingBuffer<>(64, RingBuffer.WaitStrategy.SLEEPING);
+        Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(elements);
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    while (true) {
+                        if (!taken.add(ring.take())) {
+                            throw new IllegalStateException("element taken twice");
+                        }
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        for (int i = 0; i < elements; i++) {
+            ring.put(i);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        readers.forEach(Thread::interrupt);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < elements; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, taken);
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,47 @@
+package it.bm;
+
+import it.bm.util.csv.StringDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StringDictionaryTest {
+
+    private static String lookup(StringDictionary dictionary, String value) {
+        byte[] bytes = ("|" + value + "|").getBytes(StandardCharsets.UTF_8);
+        return dictionary.get(bytes, 1, bytes.length - 2);
+    }
+
+    @Test
+    void keepsEveryValueAcrossGrowth() {
+        StringDictionary dictionary = new StringDictionary();
+        String[] first = new String[1000];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = lookup(dictionary, "CUST" + i);
+        }
+
+        for (int i = 0; i < first.length; i++) {
+            assertSame(first[i], lookup(dictionary, "CUST" + i));
+        }
+        assertEquals(1000, dictionary.size());
+        assertEquals("città", lookup(dictionary, "città"));
+    }
+
+    @Test
+    void stopsAddingValuesOnceFull() {
+        StringDictionary dictionary = new StringDictionary(2);
+        String pec = lookup(dictionary, "pec");
+        lookup(dictionary, "spid");
+
+        String mail = lookup(dictionary, "mail");
+
+        assertEquals("mail", mail);
+        assertNotSame(mail, lookup(dictionary, "mail"));
+        assertSame(pec, lookup(dictionary, "pec"));
+        assertEquals(2, dictionary.size());
+    }
+}
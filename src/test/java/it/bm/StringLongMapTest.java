@@ -0,0 +1,52 @@
+package it.bm;
+
+import it.bm.util.StringLongMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StringLongMapTest {
+
+    @Test
+    void countsEveryKeyAcrossGrowth() {
+        StringLongMap counts = new StringLongMap();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                counts.addTo("CUST" + i, i);
+            }
+        }
+
+        assertEquals(1000, counts.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(3L * i, counts.get("CUST" + i));
+        }
+        assertEquals(0, counts.get("CUST1000"));
+    }
+
+    @Test
+    void visitsEachKeyOnce() {
+        StringLongMap counts = new StringLongMap();
+        counts.addTo("C001", 1);
+        counts.addTo("C002", 2);
+        counts.addTo("C001", 1);
+
+        Map<String, Long> visited = new HashMap<>();
+        counts.forEach(visited::put);
+
+        assertEquals(Map.of("C001", 2L, "C002", 2L), visited);
+        assertEquals(Set.of("C001", "C002"), counts.keySet());
+    }
+
+    @Test
+    void startsEmpty() {
+        StringLongMap counts = new StringLongMap();
+
+        assertTrue(counts.isEmpty());
+        assertTrue(counts.keySet().isEmpty());
+    }
+}
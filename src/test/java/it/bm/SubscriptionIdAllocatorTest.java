@@ -0,0 +1,63 @@
+package it.bm;
+
+import it.bm.repository.SubscriptionIdAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionIdAllocatorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SubscriptionIdAllocator subscriptionIdAllocator;
+
+    @BeforeEach
+    void setUp() {
+        subscriptionIdAllocator = new SubscriptionIdAllocator(jdbcTemplate);
+    }
+
+    @Test
+    void allocate_UsesBlockEndingAtSequenceValue() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(1))).thenReturn(List.of(91L));
+
+        long[] ids = subscriptionIdAllocator.allocate(3);
+
+        assertArrayEquals(new long[]{62, 63, 64}, ids);
+    }
+
+    @Test
+    void allocate_SpansSeveralBlocks() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(2))).thenReturn(List.of(61L, 121L));
+
+        long[] ids = subscriptionIdAllocator.allocate(45);
+
+        assertEquals(32, ids[0]);
+        assertEquals(61, ids[29]);
+        assertEquals(92, ids[30]);
+        assertEquals(106, ids[44]);
+    }
+
+    @Test
+    void allocate_SkipsIncompleteFirstBlockOfSequence() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(1)))
+                .thenReturn(List.of(1L))
+                .thenReturn(List.of(31L));
+
+        long[] ids = subscriptionIdAllocator.allocate(2);
+
+        assertArrayEquals(new long[]{2, 3}, ids);
+    }
+}
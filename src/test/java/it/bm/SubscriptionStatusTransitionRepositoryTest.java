@@ -0,0 +1,60 @@
+package it.bm;
+
+import it.bm.repository.SubscriptionStatusTransitionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionStatusTransitionRepositoryTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 10);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private SubscriptionStatusTransitionRepository subscriptionStatusTransitionRepository;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void scansOnlyTheRunningStatusesWrittenAsLiterals() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(List.of(1L, 3L));
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+
+        subscriptionStatusTransitionRepository.expireBatch(TODAY, LocalDate.of(1, 1, 1), 0, 100);
+        subscriptionStatusTransitionRepository.expireBatch(TODAY, LocalDate.of(2025, 3, 1), 7, 100);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).query(sql.capture(), any(RowMapper.class), any(Object[].class));
+        assertTrue(sql.getValue().contains("WHERE c.status_id IN (1, 3)\n"));
+        assertEquals(sql.getAllValues().get(0), sql.getValue());
+        verify(jdbcTemplate).queryForList(anyString(), eq(Long.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void noRowLeftEndsTheRun() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(List.of(1L, 3L));
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+
+        assertTrue(subscriptionStatusTransitionRepository.expireBatch(TODAY, TODAY.minusDays(9), 4, 2).isEmpty());
+    }
+}
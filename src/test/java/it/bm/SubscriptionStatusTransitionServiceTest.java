@@ -0,0 +1,103 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.model.ingestion.StatusTransitionBatch;
+import it.bm.repository.SubscriptionStatusTransitionRepository;
+import it.bm.service.IngestionJobService;
+import it.bm.service.SubscriptionStatusTransitionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionStatusTransitionServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 10);
+    private static final LocalDate FIRST_KEY = LocalDate.of(1, 1, 1);
+
+    @Mock
+    private SubscriptionStatusTransitionRepository subscriptionStatusTransitionRepository;
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SubscriptionStatusTransitionService subscriptionStatusTransitionService;
+
+    @BeforeEach
+    void setUp() {
+        subscriptionStatusTransitionService = new SubscriptionStatusTransitionService(subscriptionStatusTransitionRepository,
+                ingestionJobService, meterRegistry);
+        ReflectionTestUtils.setField(subscriptionStatusTransitionService, "batchSize", 2);
+        ReflectionTestUtils.setField(subscriptionStatusTransitionService, "pause", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(subscriptionStatusTransitionService, "clock",
+                Clock.fixed(Instant.parse("2026-01-10T12:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test
+    void walksTheOverdueRowsBatchAfterBatch() {
+        LocalDate firstDay = LocalDate.of(2025, 3, 1);
+        LocalDate secondDay = LocalDate.of(2025, 6, 1);
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, FIRST_KEY, 0, 2))
+                .thenReturn(Optional.of(new StatusTransitionBatch(2, 1, firstDay, 7)));
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, firstDay, 7, 2))
+                .thenReturn(Optional.of(new StatusTransitionBatch(2, 0, secondDay, 3)));
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, secondDay, 3, 2))
+                .thenReturn(Optional.of(new StatusTransitionBatch(1, 1, secondDay, 9)));
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, secondDay, 9, 2)).thenReturn(Optional.empty());
+
+        ReflectionTestUtils.invokeMethod(subscriptionStatusTransitionService, "run");
+
+        verify(subscriptionStatusTransitionRepository, times(4)).expireBatch(eq(TODAY), any(), anyLong(), anyInt());
+        assertEquals(2.0, meterRegistry.summary("subscriptions.transition.expired").totalAmount());
+        assertEquals(3.0, meterRegistry.summary("subscriptions.transition.batches").totalAmount());
+        assertEquals(1, meterRegistry.timer("subscriptions.transition.run").count());
+    }
+
+    @Test
+    void waitsForTheRunningUploadsBeforeEveryBatch() {
+        when(ingestionJobService.countRunningJobs()).thenReturn(1, 1, 0);
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, FIRST_KEY, 0, 2)).thenReturn(Optional.empty());
+
+        ReflectionTestUtils.invokeMethod(subscriptionStatusTransitionService, "run");
+
+        InOrder order = inOrder(ingestionJobService, subscriptionStatusTransitionRepository);
+        order.verify(ingestionJobService, times(3)).countRunningJobs();
+        order.verify(subscriptionStatusTransitionRepository).expireBatch(TODAY, FIRST_KEY, 0, 2);
+    }
+
+    @Test
+    void aFailedBatchEndsTheRunWithoutThrowing() {
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, FIRST_KEY, 0, 2))
+                .thenReturn(Optional.of(new StatusTransitionBatch(2, 2, TODAY.minusDays(1), 5)));
+        when(subscriptionStatusTransitionRepository.expireBatch(TODAY, TODAY.minusDays(1), 5, 2))
+                .thenThrow(new IllegalStateException("connection lost"));
+
+        ReflectionTestUtils.invokeMethod(subscriptionStatusTransitionService, "run");
+
+        assertEquals(1.0, meterRegistry.counter("subscriptions.transition.failures").count());
+        assertEquals(2.0, meterRegistry.summary("subscriptions.transition.expired").totalAmount());
+    }
+}
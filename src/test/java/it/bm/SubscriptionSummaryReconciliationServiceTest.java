@@ -0,0 +1,96 @@
+package it.bm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.repository.SubscriptionSummaryRepository;
+import it.bm.service.IngestionJobService;
+import it.bm.service.SubscriptionSummaryReconciliationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionSummaryReconciliationServiceTest {
+
+    @Mock
+    private SubscriptionSummaryRepository subscriptionSummaryRepository;
+
+    @Mock
+    private IngestionJobService ingestionJobService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SubscriptionSummaryReconciliationService reconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        reconciliationService = new SubscriptionSummaryReconciliationService(subscriptionSummaryRepository,
+                ingestionJobService, meterRegistry);
+        ReflectionTestUtils.setField(reconciliationService, "batchSize", 2);
+        ReflectionTestUtils.setField(reconciliationService, "pause", Duration.ofMillis(1));
+    }
+
+    @Test
+    void checksTheServiceTypesThenEveryCustomerRange() {
+        when(subscriptionSummaryRepository.reconcileServiceTypes()).thenReturn(1L);
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("", 2)).thenReturn(Optional.of("C002"));
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("C002", 2)).thenReturn(Optional.of("C004"));
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("C004", 2)).thenReturn(Optional.empty());
+        when(subscriptionSummaryRepository.reconcileCustomers("", "C002")).thenReturn(0L);
+        when(subscriptionSummaryRepository.reconcileCustomers("C002", "C004")).thenReturn(3L);
+
+        ReflectionTestUtils.invokeMethod(reconciliationService, "run");
+
+        InOrder order = inOrder(subscriptionSummaryRepository);
+        order.verify(subscriptionSummaryRepository).reconcileServiceTypes();
+        order.verify(subscriptionSummaryRepository).reconcileCustomers("", "C002");
+        order.verify(subscriptionSummaryRepository).reconcileCustomers("C002", "C004");
+        assertEquals(4.0, meterRegistry.summary("subscriptions.summary.reconciliation.corrected").totalAmount());
+        assertEquals(1, meterRegistry.timer("subscriptions.summary.reconciliation.run").count());
+    }
+
+    @Test
+    void aRangeWrittenMeanwhileIsLeftToTheNextRun() {
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("", 2)).thenReturn(Optional.of("C002"));
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("C002", 2)).thenReturn(Optional.of("C004"));
+        when(subscriptionSummaryRepository.findNextCustomerBoundary("C004", 2)).thenReturn(Optional.empty());
+        when(subscriptionSummaryRepository.reconcileCustomers("", "C002"))
+                .thenThrow(new CannotAcquireLockException("could not serialize access due to concurrent update"));
+        when(subscriptionSummaryRepository.reconcileCustomers("C002", "C004")).thenReturn(2L);
+
+        ReflectionTestUtils.invokeMethod(reconciliationService, "run");
+
+        assertEquals(1.0, meterRegistry.counter("subscriptions.summary.reconciliation.conflicts").count());
+        assertEquals(2.0, meterRegistry.summary("subscriptions.summary.reconciliation.corrected").totalAmount());
+        assertEquals(0.0, meterRegistry.counter("subscriptions.summary.reconciliation.failures").count());
+    }
+
+    @Test
+    void waitsForTheRunningUploadsAndStopsOnAFailure() {
+        when(ingestionJobService.countRunningJobs()).thenReturn(1, 0);
+        when(subscriptionSummaryRepository.reconcileServiceTypes())
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+
+        ReflectionTestUtils.invokeMethod(reconciliationService, "run");
+
+        verify(ingestionJobService, times(2)).countRunningJobs();
+        verify(subscriptionSummaryRepository, never()).reconcileCustomers(anyString(), anyString());
+        assertEquals(1.0, meterRegistry.counter("subscriptions.summary.reconciliation.failures").count());
+    }
+}
@@ -0,0 +1,65 @@
+package it.bm;
+
+import it.bm.util.TimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void firesEachTimerAtTheFirstTickNotBeforeItsDeadline() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 4, 1_000);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = 1_001 + random.nextLong(200_000);
+            deadlines.add(deadline);
+            assertTrue(wheel.schedule(deadline, deadline));
+        }
+        assertEquals(2_000, wheel.size());
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 1_000; now <= 202_000; now += 7) {
+            long current = now;
+            wheel.advance(now, deadline -> {
+                assertTrue(deadline <= current, "fired early");
+                assertTrue(current - deadline < 10 + 7, "fired late");
+                fired.add(deadline);
+            });
+        }
+
+        assertEquals(0, wheel.size());
+        assertEquals(deadlines.stream().sorted().toList(), fired.stream().sorted().toList());
+    }
+
+    @Test
+    void refusesDeadlinesAlreadyDue() {
+        TimingWheel<String> wheel = new TimingWheel<>(60_000, 64, 120_000);
+
+        assertFalse(wheel.schedule("past", 60_000));
+        assertFalse(wheel.schedule("now", 120_000));
+        assertTrue(wheel.schedule("next tick", 120_001));
+    }
+
+    @Test
+    void reachesDeadlinesYearsAhead() {
+        long minute = 60_000;
+        TimingWheel<String> wheel = new TimingWheel<>(minute, 64, 0);
+        long threeYears = 3 * 365 * 24 * 60 * minute;
+        wheel.schedule("far", threeYears);
+        wheel.schedule("near", 5 * minute);
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(threeYears - minute, fired::add);
+        assertEquals(List.of("near"), fired);
+        wheel.advance(threeYears, fired::add);
+        assertEquals(List.of("near", "far"), fired);
+    }
+}
@@ -1,5 +1,8 @@
 package it.bm;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import it.bm.kafka.UpsellingServiceKafkaConsumer;
 import it.bm.model.kafka.UpsellingServiceDTO;
 import it.bm.service.EmailService;
@@ -13,6 +16,7 @@ import org.springframework.mail.MailException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -41,6 +45,19 @@ class UpsellingServiceKafkaConsumerTest {
         ReflectionTestUtils.setField(upsellingServiceKafkaConsumer, "topicName", TEST_TOPIC);
     }
 
+    @Test
+    void upsellingMessage_IsReadableByOldAndNewConsumers() throws JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(new UpsellingServiceDTO("C001", List.of("hosting", "pec"))));
+
+        assertEquals("hosting", json.get("upsellingService").asText());
+        assertEquals(2, json.get("upsellingServices").size());
+        assertEquals(new UpsellingServiceDTO("C001", List.of("hosting", "pec")), objectMapper.treeToValue(json, UpsellingServiceDTO.class));
+        assertEquals(new UpsellingServiceDTO("C002", "email"),
+                objectMapper.readValue("{\"customerId\":\"C002\",\"upsellingService\":\"email\"}", UpsellingServiceDTO.class));
+    }
+
     @Test
     void upsellingServiceConsumer_WithValidMessage_ProcessesSuccessfully() throws MessagingException, MailException {
         UpsellingServiceDTO message = new UpsellingServiceDTO("C001", "hosting");
@@ -63,7 +80,7 @@ class UpsellingServiceKafkaConsumerTest {
 
         verify(emailService).sendEmail(message);
         verify(emailService).sendEmail(argThat(dto ->
-                "C002".equals(dto.customerId()) && "email".equals(dto.upsellingService())));
+                "C002".equals(dto.customerId()) && List.of("email").equals(dto.upsellingServices())));
     }
 
     @Test
@@ -137,7 +154,7 @@ class UpsellingServiceKafkaConsumerTest {
 
         verify(emailService).sendEmail(argThat(dto ->
                 "C009".equals(dto.customerId()) &&
-                        "hosting".equals(dto.upsellingService())));
+                        List.of("hosting").equals(dto.upsellingServices())));
         verify(emailService, times(1)).sendEmail(any(UpsellingServiceDTO.class));
     }
 }
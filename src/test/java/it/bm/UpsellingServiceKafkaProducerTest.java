@@ -13,6 +13,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.times;
@@ -58,7 +60,7 @@ class UpsellingServiceKafkaProducerTest {
             ProducerRecord<String, Object> producerRecord = (ProducerRecord<String, Object>) record;
             UpsellingServiceDTO sentMessage = (UpsellingServiceDTO) producerRecord.value();
             return "C001".equals(sentMessage.customerId()) &&
-                    "cloud".equals(sentMessage.upsellingService()) &&
+                    List.of("cloud").equals(sentMessage.upsellingServices()) &&
                     TEST_TOPIC.equals(producerRecord.topic());
         }));
         verify(kafkaTemplate, times(1)).send(any(ProducerRecord.class));
@@ -0,0 +1,53 @@
+package it.bm;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.bm.config.VirtualThreadPinningMonitor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadPinningMonitorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor(meterRegistry);
+    private final Object monitorLock = new Object();
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(monitor, "stop");
+    }
+
+    private void sleepHoldingAMonitor() {
+        synchronized (monitorLock) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void reportsPinningWithTheApplicationFrameThatCausedIt() throws Exception {
+        ReflectionTestUtils.setField(monitor, "threshold", Duration.ofMillis(10));
+        ReflectionTestUtils.invokeMethod(monitor, "start");
+
+        Thread.ofVirtual().start(this::sleepHoldingAMonitor).join();
+
+        String site = getClass().getName() + ".sleepHoldingAMonitor";
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (meterRegistry.find("threads.virtual.pinned").tag("site", site).timer() == null && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        Timer pinned = meterRegistry.find("threads.virtual.pinned").tag("site", site).timer();
+        assertNotNull(pinned, "no pinning reported for " + site + ", got " + meterRegistry.getMetersAsString());
+        assertTrue(pinned.totalTime(TimeUnit.MILLISECONDS) >= 40);
+    }
+}
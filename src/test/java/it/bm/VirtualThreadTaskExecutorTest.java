@@ -0,0 +1,97 @@
+package it.bm;
+
+import it.bm.config.AsyncConfig;
+import it.bm.config.VirtualThreadTaskExecutor;
+import it.bm.util.MDCUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadTaskExecutorTest {
+
+    @AfterEach
+    void tearDown() {
+        MDCUtil.clearContext();
+    }
+
+    @Test
+    void runsAtMostConcurrencyTasksAtOnce() throws Exception {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("test-", 2, 10, new AsyncConfig.MdcTaskDecorator());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(12);
+
+        for (int i = 0; i < 12; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void rejectsTasksBeyondTheQueueCapacity() throws Exception {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("test-", 1, 1, new AsyncConfig.MdcTaskDecorator());
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> first = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        Future<?> second = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals("accepted", executor.submit(() -> "accepted").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void carriesTheMdcOfTheSubmittingThread() throws Exception {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("test-", 1, 0, new AsyncConfig.MdcTaskDecorator());
+        MDCUtil.setCorrelationId("correlation-1");
+
+        Future<String> correlationId = executor.submit(() -> Thread.currentThread().isVirtual() ? MDCUtil.getCorrelationId() : null);
+
+        assertEquals("correlation-1", correlationId.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelInterruptsARunningTask() throws Exception {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("test-", 1, 1, new AsyncConfig.MdcTaskDecorator());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<?> future = executor.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        future.cancel(true);
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertEquals("next", executor.submit(() -> "next").get(5, TimeUnit.SECONDS));
+    }
+}
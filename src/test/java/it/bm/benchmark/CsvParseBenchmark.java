@@ -0,0 +1,125 @@
+package it.bm.benchmark;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.service.FileParseService;
+import it.bm.service.SubscriptionStatusService;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static it.bm.util.Constant.HEADER_ACTIVATION_DATE;
+import static it.bm.util.Constant.HEADER_AMOUNT;
+import static it.bm.util.Constant.HEADER_CUSTOMER_ID;
+import static it.bm.util.Constant.HEADER_EXPIRATION_DATE;
+import static it.bm.util.Constant.HEADER_SERVICE_TYPE;
+import static it.bm.util.Constant.HEADER_STATUS;
+
+/*
+ * Parses the same in-memory upload with the previous commons-csv path (CSVRecord looked up by header name,
+ * then String based parsing) and with FileParseService on the byte tokenizer. badRowPercent rows carry a date
+ * that does not exist, the previous path rejected them by catching the parse exception. Scores are rows/s; run
+ * with -prof gc and read gc.alloc.rate.norm for the bytes allocated per row:
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=CsvParseBenchmark -Djmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParseBenchmark {
+
+    private static final int ROWS = 100_000;
+    private static final String[] STATUSES = {"ACTIVE", "EXPIRED", "PENDING_RENEWAL"};
+
+    @Param({"0", "5"})
+    private int badRowPercent;
+
+    private byte[] csv;
+    private FileParseService fileParseService;
+    private Map<SubscriptionStatusEnum, SubscriptionStatus> statuses;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("customer_id,service_type,activation_date,expiration_date,amount,status\n");
+        LocalDate activation = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < ROWS; i++) {
+            builder.append("CUST").append(i % 20_000).append(',')
+                    .append(i % 10 == 0 ? "\"hosting, premium\"" : "hosting").append(',')
+                    .append(i % 100 < badRowPercent ? "2024-02-30" : activation.plusDays(i % 1000)).append(',')
+                    .append(activation.plusDays(i % 1000 + 365)).append(',')
+                    .append(10 + i % 500).append('.').append(i % 90 + 10).append(',')
+                    .append(STATUSES[i % STATUSES.length]).append('\n');
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        statuses = new EnumMap<>(SubscriptionStatusEnum.class);
+        for (SubscriptionStatusEnum status : SubscriptionStatusEnum.values()) {
+            statuses.put(status, new SubscriptionStatus(status));
+        }
+        fileParseService = new FileParseService(new SubscriptionStatusService(null) {
+            @Override
+            public SubscriptionStatus findByCodeStatus(SubscriptionStatusEnum status) {
+                return statuses.get(status);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void commonsCsv(Blackhole blackhole) throws IOException {
+        try (CSVParser csvParser = CSVParser.parse(
+                new BufferedReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8)),
+                CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).setIgnoreHeaderCase(true).setTrim(true).get())) {
+            for (CSVRecord csvRecord : csvParser) {
+                try {
+                    CustomerServiceSubscriptions row = new CustomerServiceSubscriptions();
+                    row.setCustomerId(csvRecord.get(HEADER_CUSTOMER_ID));
+                    row.setServiceType(csvRecord.get(HEADER_SERVICE_TYPE));
+                    row.setActivationDate(LocalDate.parse(csvRecord.get(HEADER_ACTIVATION_DATE)));
+                    row.setExpirationDate(LocalDate.parse(csvRecord.get(HEADER_EXPIRATION_DATE)));
+                    row.setAmount(new BigDecimal(csvRecord.get(HEADER_AMOUNT)));
+                    row.setStatus(statuses.get(SubscriptionStatusEnum.valueOf(csvRecord.get(HEADER_STATUS).toUpperCase())));
+                    blackhole.consume(row);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    blackhole.consume(e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long tokenizer(Blackhole blackhole) {
+        return fileParseService.parseCsvInChunks(new ByteArrayInputStream(csv), 5_000, blackhole::consume, new RejectedRows());
+    }
+}
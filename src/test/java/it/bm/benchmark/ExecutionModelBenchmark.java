@@ -0,0 +1,137 @@
+package it.bm.benchmark;
+
+import it.bm.config.AsyncConfig;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.service.FileParseService;
+import it.bm.service.SubscriptionStatusService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A burst on the executors of AsyncConfig, with platform threads and with virtual threads: uploads parsed with
+ * FileParseService whose chunks wait on a simulated 5 ms JDBC write, and summary requests on the web tier waiting
+ * on a simulated 10 ms query. Notifications are left out, they go through the workers of NotificationDispatcher
+ * whatever the execution model. The web
+ * tier is a 200 thread pool, Tomcat's default, or a virtual thread per request, what Tomcat uses with
+ * spring.threads.virtual.enabled. Scores are milliseconds until the whole burst has been served:
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ExecutionModelBenchmark -Djmh.args="-p requests=200,800"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModelBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int ROWS_PER_UPLOAD = 50_000;
+    private static final String[] STATUSES = {"ACTIVE", "EXPIRED", "PENDING_RENEWAL"};
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"4"})
+    private int uploads;
+
+    @Param({"400"})
+    private int requests;
+
+    private byte[] csv;
+    private FileParseService fileParseService;
+    private ExecutorService webExecutor;
+    private AsyncTaskExecutor ingestionJobExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("customer_id,service_type,activation_date,expiration_date,amount,status\n");
+        LocalDate activation = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < ROWS_PER_UPLOAD; i++) {
+            builder.append("CUST").append(i % 10_000).append(",hosting,")
+                    .append(activation.plusDays(i % 1000)).append(',')
+                    .append(activation.plusDays(i % 1000 + 365)).append(',')
+                    .append(10 + i % 500).append('.').append(i % 90 + 10).append(',')
+                    .append(STATUSES[i % STATUSES.length]).append('\n');
+        }
+        csv = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        Map<SubscriptionStatusEnum, SubscriptionStatus> statuses = new EnumMap<>(SubscriptionStatusEnum.class);
+        for (SubscriptionStatusEnum status : SubscriptionStatusEnum.values()) {
+            statuses.put(status, new SubscriptionStatus(status));
+        }
+        fileParseService = new FileParseService(new SubscriptionStatusService(null) {
+            @Override
+            public SubscriptionStatus findByCodeStatus(SubscriptionStatusEnum status) {
+                return statuses.get(status);
+            }
+        });
+
+        AsyncConfig asyncConfig = new AsyncConfig();
+        ReflectionTestUtils.setField(asyncConfig, "jobsPoolSize", 2);
+        ReflectionTestUtils.setField(asyncConfig, "jobsQueueCapacity", 20);
+        ReflectionTestUtils.setField(asyncConfig, "virtualThreads", virtualThreads);
+        ingestionJobExecutor = asyncConfig.ingestionJobExecutor();
+        webExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        webExecutor.shutdownNow();
+        if (ingestionJobExecutor instanceof ThreadPoolTaskExecutor threadPool) {
+            threadPool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void burst(Blackhole blackhole) throws Exception {
+        List<Future<?>> pending = new ArrayList<>();
+        for (int i = 0; i < uploads; i++) {
+            pending.add(ingestionJobExecutor.submit(() -> blackhole.consume(
+                    fileParseService.parseCsvInChunks(new ByteArrayInputStream(csv), 5_000, chunk -> blockFor(5), new RejectedRows()))));
+        }
+        for (int i = 0; i < requests; i++) {
+            pending.add(webExecutor.submit(() -> blockFor(10)));
+        }
+        for (Future<?> future : pending) {
+            future.get();
+        }
+    }
+
+    private static void blockFor(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package it.bm.benchmark;
+
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.SubscriptionStatusEnum;
+import it.bm.model.ingestion.RejectedRows;
+import it.bm.service.FileParseService;
+import it.bm.service.ParallelFileParseService;
+import it.bm.service.SubscriptionStatusService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Parse time of a file on disk against the parse pool size, to check how close to linear the range split
+ * scales on a given box:
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ParallelParseBenchmark -Djmh.args="-p parallelism=1,8,16,32"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelParseBenchmark {
+
+    @Param({"2000000"})
+    private int rows;
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private Path file;
+    private ForkJoinPool parseExecutor;
+    private ParallelFileParseService parallelFileParseService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("parallel-parse-", ".csv");
+        LocalDate activation = LocalDate.of(2020, 1, 1);
+        String[] statuses = {"ACTIVE", "EXPIRED", "PENDING_RENEWAL"};
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("customer_id,service_type,activation_date,expiration_date,amount,status\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write("CUST" + (i % 200_000) + "," + (i % 10 == 0 ? "\"hosting,\npremium\"" : "hosting") + ","
+                        + activation.plusDays(i % 1000) + "," + activation.plusDays(i % 1000 + 365) + ","
+                        + (10 + i % 500) + "." + (i % 90 + 10) + "," + statuses[i % statuses.length] + "\n");
+            }
+        }
+
+        Map<SubscriptionStatusEnum, SubscriptionStatus> statusByCode = new EnumMap<>(SubscriptionStatusEnum.class);
+        for (SubscriptionStatusEnum status : SubscriptionStatusEnum.values()) {
+            statusByCode.put(status, new SubscriptionStatus(status));
+        }
+        FileParseService fileParseService = new FileParseService(new SubscriptionStatusService(null) {
+            @Override
+            public SubscriptionStatus findByCodeStatus(SubscriptionStatusEnum status) {
+                return statusByCode.get(status);
+            }
+        });
+        parseExecutor = new ForkJoinPool(parallelism);
+        parallelFileParseService = new ParallelFileParseService(fileParseService, parseExecutor);
+        ReflectionTestUtils.setField(parallelFileParseService, "minSplitSize", DataSize.ofMegabytes(8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parseExecutor.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long parse(Blackhole blackhole) {
+        return parallelFileParseService.parseCsvInChunks(file, 5_000, blackhole::consume, new RejectedRows());
+    }
+}
@@ -0,0 +1,161 @@
+package it.bm.benchmark;
+
+import it.bm.model.entity.CustomerServiceSubscriptions;
+import it.bm.model.entity.SubscriptionStatus;
+import it.bm.model.enums.PersistenceMode;
+import it.bm.repository.CustomerServiceSubscriptionsCopyRepository;
+import it.bm.repository.CustomerServiceSubscriptionsUpsertRepository;
+import it.bm.repository.SubscriptionIdAllocator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the JPA saveAll, COPY and UPSERT paths on a real PostgreSQL, in chunks of the same size the
+ * ingestion pipeline uses. The target database is migrated with Flyway and truncated before every iteration:
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PersistenceBenchmark \
+ *     -Djmh.args="-jvmArgs -Dbenchmark.datasource.url=jdbc:postgresql://localhost:5432/bm_bench -p rows=1000000"
+ *
+ * Credentials are read from benchmark.datasource.username / benchmark.datasource.password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"5000"})
+    private int chunkSize;
+
+    @Param({"JPA", "COPY", "UPSERT"})
+    private PersistenceMode mode;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+    private SimpleJpaRepository<CustomerServiceSubscriptions, Long> jpaRepository;
+    private CustomerServiceSubscriptionsCopyRepository copyRepository;
+    private CustomerServiceSubscriptionsUpsertRepository upsertRepository;
+    private SubscriptionStatus active;
+    private SubscriptionStatus expired;
+    private List<List<CustomerServiceSubscriptions>> chunks;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("benchmark.datasource.url", "jdbc:postgresql://localhost:5432/business_monitoring"),
+                System.getProperty("benchmark.datasource.username", "userBM"),
+                System.getProperty("benchmark.datasource.password", "userBM123"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate();
+
+        entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(dataSource);
+        entityManagerFactoryBean.setPackagesToScan("it.bm.model.entity");
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.jdbc.batch_size", System.getProperty("benchmark.jdbc.batch-size", "50"),
+                "hibernate.order_inserts", "true"));
+        entityManagerFactoryBean.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = entityManagerFactoryBean.getObject();
+
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        transactionManager.setDataSource(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        jpaRepository = new SimpleJpaRepository<>(CustomerServiceSubscriptions.class, entityManager);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        copyRepository = new CustomerServiceSubscriptionsCopyRepository(jdbcTemplate,
+                new SubscriptionIdAllocator(jdbcTemplate), () -> Optional.of("benchmark"));
+        upsertRepository = new CustomerServiceSubscriptionsUpsertRepository(jdbcTemplate,
+                new SubscriptionIdAllocator(jdbcTemplate), () -> Optional.of("benchmark"));
+
+        List<SubscriptionStatus> statuses = transactionTemplate.execute(status ->
+                entityManager.createQuery("SELECT s FROM SubscriptionStatus s", SubscriptionStatus.class).getResultList());
+        active = statuses.stream().filter(s -> s.getCode().name().equals("ACTIVE")).findFirst().orElseThrow();
+        expired = statuses.stream().filter(s -> s.getCode().name().equals("EXPIRED")).findFirst().orElseThrow();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        jdbcTemplate.execute("TRUNCATE customer_service_subscriptions");
+        chunks = new ArrayList<>();
+        LocalDate activation = LocalDate.of(2020, 1, 1);
+        List<CustomerServiceSubscriptions> chunk = new ArrayList<>(chunkSize);
+        for (int i = 0; i < rows; i++) {
+            CustomerServiceSubscriptions record = new CustomerServiceSubscriptions();
+            // five consecutive rows per customer, with distinct service types, keep the natural key unique
+            record.setCustomerId("CUST" + (i / 5));
+            record.setServiceType("service-" + (i % 12));
+            record.setActivationDate(activation.plusDays(i % 1000));
+            record.setExpirationDate(activation.plusDays(i % 1000 + 365));
+            record.setAmount(BigDecimal.valueOf(1000 + i % 50_000, 2));
+            record.setStatus(i % 7 == 0 ? expired : active);
+            // AuditingEntityListener is not wired outside Spring, fill what it would have set
+            record.setCreatedBy("benchmark");
+            record.setCreatedAt(LocalDateTime.now());
+            chunk.add(record);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManagerFactoryBean.destroy();
+    }
+
+    @Benchmark
+    public long persist() {
+        long written = 0;
+        for (List<CustomerServiceSubscriptions> chunk : chunks) {
+            written += switch (mode) {
+                case JPA -> transactionTemplate.execute(status -> jpaRepository.saveAll(chunk).size());
+                case COPY -> transactionTemplate.execute(status -> copyRepository.copyIn(chunk));
+                case UPSERT -> transactionTemplate.execute(status -> upsertRepository.upsert(chunk).inserted());
+            };
+        }
+        return written;
+    }
+}